@@ -2,11 +2,18 @@ package com.khorn.terraincontrol.bukkit;
 
 import com.khorn.terraincontrol.*;
 import com.khorn.terraincontrol.configuration.BiomeConfig;
+import com.khorn.terraincontrol.configuration.ReplaceTable;
+import com.khorn.terraincontrol.configuration.TCDefaultValues;
 import com.khorn.terraincontrol.configuration.WorldConfig;
+import com.khorn.terraincontrol.generator.BlockBatch;
+import com.khorn.terraincontrol.generator.ColumnHeights;
+import com.khorn.terraincontrol.generator.PendingBlocks;
 import com.khorn.terraincontrol.generator.resourcegens.TreeType;
 import net.minecraft.server.*;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Random;
 
@@ -18,7 +25,6 @@ public class BukkitWorld implements LocalWorld
     private String name;
     private long Seed;
     private IBiomeManager biomeManager;
-    private TCWorldChunkManagerOld old_biomeManager;
 
     // TODO: We must refactor so fields start with lowercase chars.
     // TODO: It is bad practice to use a big char as start of a field name.
@@ -47,12 +53,27 @@ public class BukkitWorld implements LocalWorld
     private WorldGenMegaTree JungleTree;
     private WorldGenGroundBush GroundBush;
 
-    private boolean CreateNewChunks;
-    private Chunk[] ChunkCache;
-    private Chunk CachedChunk;
+    // Not null when blocks for unloaded chunks are kept instead of dropped
+    private PendingBlocks pendingBlocks;
 
-    private int CurrentChunkX;
-    private int CurrentChunkZ;
+    // Every thread populates its own chunks, see PopulationScheduler
+    private final ThreadLocal<PopulationState> populationState = new ThreadLocal<PopulationState>()
+    {
+        @Override
+        protected PopulationState initialValue()
+        {
+            return new PopulationState();
+        }
+    };
+    // Held while calling server code that isn't thread safe: biomes,
+    // structures, trees, physics, light, players and chunk loading
+    private final Object serverLock = new Object();
+
+    // Not null while a pregeneration populates the chunks the server wants
+    // populated itself, see PregenerateCommand
+    private int[] deferredChunks;
+    private int deferredChunksCount;
+    private final Object deferredChunksLock = new Object();
 
     private BiomeBase[] BiomeArray;
 
@@ -62,6 +83,23 @@ public class BukkitWorld implements LocalWorld
 
     private int CustomBiomesCount = 21;
 
+    private static class PopulationState
+    {
+        boolean CreateNewChunks;
+        Chunk[] ChunkCache = new Chunk[4];
+        // Heights of the columns of ChunkCache while populating
+        ColumnHeights heights = new ColumnHeights();
+        // Biome of every column and the replaced block ids of the chunk in DoBlockReplace
+        ReplaceTable[] replaceTables = new ReplaceTable[256];
+        long[] replaceCandidates = new long[4];
+        // Blocks of a batch chunk whose light must be updated, see setBlocks
+        int[] relightBlocks = new int[64];
+        Chunk CachedChunk;
+
+        int CurrentChunkX;
+        int CurrentChunkZ;
+    }
+
     static
     {
         for (int i = 0; i < DefaultBiome.values().length; i++)
@@ -123,47 +161,79 @@ public class BukkitWorld implements LocalWorld
 
     public int[] getBiomesUnZoomed(int[] biomeArray, int x, int z, int x_size, int z_size)
     {
+        // The biome manager of TerrainControl has its own locks
         if (this.biomeManager != null)
             return this.biomeManager.getBiomesUnZoomedTC(biomeArray, x, z, x_size, z_size);
-
-        BiomeArray = this.world.worldProvider.d.getBiomes(BiomeArray, x, z, x_size, z_size);
-        if (biomeArray == null || biomeArray.length < x_size * z_size)
-            biomeArray = new int[x_size * z_size];
-        for (int i = 0; i < x_size * z_size; i++)
-            biomeArray[i] = BiomeArray[i].id;
-        return biomeArray;
+        synchronized (this.serverLock)
+        {
+            BiomeArray = this.world.worldProvider.d.getBiomes(BiomeArray, x, z, x_size, z_size);
+            if (biomeArray == null || biomeArray.length < x_size * z_size)
+                biomeArray = new int[x_size * z_size];
+            for (int i = 0; i < x_size * z_size; i++)
+                biomeArray[i] = BiomeArray[i].id;
+            return biomeArray;
+        }
     }
 
     public float[] getTemperatures(int x, int z, int x_size, int z_size)
     {
         if (this.biomeManager != null)
             return this.biomeManager.getTemperaturesTC(x, z, x_size, z_size);
-        return this.world.worldProvider.d.getTemperatures(null, x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            return this.world.worldProvider.d.getTemperatures(null, x, z, x_size, z_size);
+        }
     }
 
     public int[] getBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
     {
         if (this.biomeManager != null)
             return this.biomeManager.getBiomesTC(biomeArray, x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            BiomeArray = this.world.worldProvider.d.a(BiomeArray, x, z, x_size, z_size, true);
+            if (biomeArray == null || biomeArray.length < x_size * z_size)
+                biomeArray = new int[x_size * z_size];
+            for (int i = 0; i < x_size * z_size; i++)
+                biomeArray[i] = BiomeArray[i].id;
+            return biomeArray;
+        }
+    }
 
-        BiomeArray = this.world.worldProvider.d.a(BiomeArray, x, z, x_size, z_size, true);
-        if (biomeArray == null || biomeArray.length < x_size * z_size)
-            biomeArray = new int[x_size * z_size];
-        for (int i = 0; i < x_size * z_size; i++)
-            biomeArray[i] = BiomeArray[i].id;
-        return biomeArray;
+    public int[] getBiomes(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        if (this.biomeManager != null)
+            return this.biomeManager.getBiomesTC(biomeArray, temperatureArray, wetnessArray, x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            biomeArray = this.getBiomes(biomeArray, x, z, x_size, z_size);
+            if (temperatureArray != null)
+                this.world.worldProvider.d.getTemperatures(temperatureArray, x, z, x_size, z_size);
+            if (wetnessArray != null)
+                this.world.worldProvider.d.getWetness(wetnessArray, x, z, x_size, z_size);
+            return biomeArray;
+        }
     }
 
-    public int getCalculatedBiomeId(int x, int z)
+    public int[] getBiomes(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
     {
         if (this.biomeManager != null)
-            return this.biomeManager.getBiomeTC(x, z);
-        return this.world.worldProvider.d.getBiome(x, z).id;
+            return this.biomeManager.getBiomesTC(unZoomedArray, ux, uz, ux_size, uz_size, biomeArray, temperatureArray, x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            this.getBiomesUnZoomed(unZoomedArray, ux, uz, ux_size, uz_size);
+            return this.getBiomes(biomeArray, temperatureArray, null, x, z, x_size, z_size);
+        }
     }
 
-    public double getBiomeFactorForOldBM(int index)
+    public int getCalculatedBiomeId(int x, int z)
     {
-        return this.old_biomeManager.old_temperature[index] * this.old_biomeManager.old_rain[index];
+        if (this.biomeManager != null)
+            return this.biomeManager.getBiomeTC(x, z);
+        synchronized (this.serverLock)
+        {
+            return this.world.worldProvider.d.getBiome(x, z).id;
+        }
     }
 
     public void PrepareTerrainObjects(int x, int z, byte[] chunkArray, boolean dry)
@@ -184,10 +254,27 @@ public class BukkitWorld implements LocalWorld
 
     public void PlaceDungeons(Random rand, int x, int y, int z)
     {
-        new WorldGenDungeons().a(this.world, rand, x, y, z);
+        synchronized (this.serverLock)
+        {
+            if (!new WorldGenDungeons().a(this.world, rand, x, y, z))
+                return;
+        }
+        this.populationState.get().heights.invalidate();
     }
 
     public boolean PlaceTree(TreeType type, Random rand, int x, int y, int z)
+    {
+        // The server places the blocks of the tree, so the heights are outdated
+        synchronized (this.serverLock)
+        {
+            if (!this.SpawnTree(type, rand, x, y, z))
+                return false;
+        }
+        this.populationState.get().heights.invalidate();
+        return true;
+    }
+
+    private boolean SpawnTree(TreeType type, Random rand, int x, int y, int z)
     {
         switch (type)
         {
@@ -220,74 +307,129 @@ public class BukkitWorld implements LocalWorld
     public boolean PlaceTerrainObjects(Random rand, int chunk_x, int chunk_z)
     {
         boolean Village = false;
-        if (this.settings.StrongholdsEnabled)
-            this.strongholdGen.a(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.MineshaftsEnabled)
-            this.MineshaftGen.a(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.VillagesEnabled)
-            Village = this.VillageGen.a(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.PyramidsEnabled)
-            this.PyramidsGen.a(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.NetherFortress)
-            this.NetherFortress.a(this.world, rand, chunk_x, chunk_z);
+        synchronized (this.serverLock)
+        {
+            if (this.settings.StrongholdsEnabled)
+                this.strongholdGen.a(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.MineshaftsEnabled)
+                this.MineshaftGen.a(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.VillagesEnabled)
+                Village = this.VillageGen.a(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.PyramidsEnabled)
+                this.PyramidsGen.a(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.NetherFortress)
+                this.NetherFortress.a(this.world, rand, chunk_x, chunk_z);
+        }
+        this.populationState.get().heights.invalidate();
 
         return Village;
     }
 
     // This part work with ReplacedBlocks after all spawns
-    // TODO: check how its work.
     public void DoBlockReplace()
     {
-        if (this.settings.BiomeConfigsHaveReplacement)
-        {
-            Chunk rawChunk = this.ChunkCache[0];
-
-            ChunkSection[] sectionsArray = rawChunk.i();
+        if (!this.settings.BiomeConfigsHaveReplacement)
+            return;
 
-            byte[] ChunkBiomes = rawChunk.m();
+        PopulationState state = this.populationState.get();
+        Chunk rawChunk = state.ChunkCache[0];
 
-            int x = this.CurrentChunkX * 16;
-            int z = this.CurrentChunkZ * 16;
+        byte[] ChunkBiomes = rawChunk.m();
 
-            for (ChunkSection section : sectionsArray)
+        // Only the biomes in this chunk matter
+        Arrays.fill(state.replaceCandidates, 0);
+        int minY = Integer.MAX_VALUE;
+        int maxY = -1;
+        for (int i = 0; i < 256; i++)
+        {
+            BiomeConfig biomeConfig = this.settings.biomeConfigs[ChunkBiomes[i] & 0xFF];
+            if (biomeConfig == null || biomeConfig.getReplaceTable().isEmpty())
             {
-                if (section == null)
-                    continue;
+                state.replaceTables[i] = null;
+                continue;
+            }
+            ReplaceTable replaceTable = biomeConfig.getReplaceTable();
+            state.replaceTables[i] = replaceTable;
+            if (i > 0 && state.replaceTables[i - 1] == replaceTable)
+                continue;
+            replaceTable.addCandidates(state.replaceCandidates);
+            minY = Math.min(minY, replaceTable.getMinY());
+            maxY = Math.max(maxY, replaceTable.getMaxY());
+        }
+        if (maxY == -1)
+            return;
+
+        boolean replaced = false;
+        for (ChunkSection section : rawChunk.i())
+        {
+            if (section == null)
+                continue;
+
+            int sectionBase = section.d();
+            int startY = Math.max(minY - sectionBase, 0);
+            int endY = Math.min(maxY - sectionBase, 15);
+            if (startY > endY || !hasReplaceCandidates(section.g(), state.replaceCandidates))
+                continue;
 
-                for (int sectionX = 0; sectionX < 16; sectionX++)
+            for (int sectionX = 0; sectionX < 16; sectionX++)
+            {
+                for (int sectionZ = 0; sectionZ < 16; sectionZ++)
                 {
-                    for (int sectionZ = 0; sectionZ < 16; sectionZ++)
+                    ReplaceTable replaceTable = state.replaceTables[(sectionZ << 4) | sectionX];
+                    if (replaceTable == null)
+                        continue;
+
+                    for (int sectionY = startY; sectionY <= endY; sectionY++)
                     {
-                        BiomeConfig biomeConfig = this.settings.biomeConfigs[ChunkBiomes[(sectionZ << 4) | sectionX] & 0xFF ];
-                        if (biomeConfig != null && biomeConfig.ReplaceCount > 0)
-                        {
-                            for (int sectionY = 0; sectionY < 16; sectionY++)
-                            {
-                                int blockId = section.a(sectionX, sectionY, sectionZ);
-                                if (biomeConfig.ReplaceMatrixBlocks[blockId] == null)
-                                    continue;
-
-                                int replaceTo = biomeConfig.ReplaceMatrixBlocks[blockId][section.d() + sectionY];
-                                if (replaceTo == -1)
-                                    continue;
-
-                                section.a(sectionX, sectionY, sectionZ, replaceTo >> 4);
-                                section.b(sectionX, sectionY, sectionZ, replaceTo & 0xF);
-                                world.notify((x + sectionX), (section.d() + sectionY), (z + sectionZ));
-
-                            }
-                        }
+                        int blockId = section.a(sectionX, sectionY, sectionZ);
+                        if (!replaceTable.isCandidate(blockId))
+                            continue;
+
+                        int replaceTo = replaceTable.get(blockId, sectionBase + sectionY);
+                        if (replaceTo == -1)
+                            continue;
+
+                        section.a(sectionX, sectionY, sectionZ, replaceTo >> 4);
+                        section.b(sectionX, sectionY, sectionZ, replaceTo & 0xF);
+                        replaced = true;
                     }
                 }
             }
         }
+
+        // The chunk is sent again as a whole instead of block by block
+        if (replaced)
+        {
+            state.heights.invalidate();
+            if (rawChunk.seenByPlayer)
+            {
+                synchronized (this.serverLock)
+                {
+                    this.world.getWorld().refreshChunk(state.CurrentChunkX, state.CurrentChunkZ);
+                }
+            }
+        }
+    }
+
+    // Whether one of the block ids of a section is replaced. Only the lowest
+    // eight bits of the ids are looked at, which may give a false positive
+    // but never misses a block.
+    private static boolean hasReplaceCandidates(byte[] blockIds, long[] candidates)
+    {
+        for (byte blockId : blockIds)
+        {
+            int id = blockId & 0xFF;
+            if ((candidates[id >> 6] & (1L << id)) != 0)
+                return true;
+        }
+        return false;
     }
 
     public void DoBiomeReplace()
     {
         if (this.settings.HaveBiomeReplace)
         {
-            byte[] ChunkBiomes = this.ChunkCache[0].m();
+            byte[] ChunkBiomes = this.populationState.get().ChunkCache[0].m();
 
             for (int i = 0; i < ChunkBiomes.length; i++)
                 ChunkBiomes[i] = this.settings.ReplaceMatrixBiomes[ChunkBiomes[i]];
@@ -295,18 +437,113 @@ public class BukkitWorld implements LocalWorld
 
     }
 
+    /**
+     * Places the blocks that were left for the chunk while it wasn't loaded.
+     */
+    public void ApplyPendingBlocks(Chunk chunk)
+    {
+        if (this.pendingBlocks == null)
+            return;
+        int[] blocks = this.pendingBlocks.remove(chunk.x, chunk.z);
+        if (blocks == null)
+            return;
+        for (int i = 0; i < blocks.length; i += 2)
+            chunk.a(PendingBlocks.getX(blocks, i), PendingBlocks.getY(blocks, i), PendingBlocks.getZ(blocks, i), PendingBlocks.getTypeId(blocks, i), PendingBlocks.getData(blocks, i));
+    }
+
+    public void SavePendingBlocks()
+    {
+        if (this.pendingBlocks != null)
+            this.pendingBlocks.save();
+    }
+
+    /**
+     * From now on the chunks the server populates are only remembered, until
+     * StopDeferringPopulation. Get them with TakeDeferredChunks.
+     */
+    public void StartDeferringPopulation()
+    {
+        synchronized (this.deferredChunksLock)
+        {
+            this.deferredChunks = new int[64];
+            this.deferredChunksCount = 0;
+        }
+    }
+
+    /**
+     * @return True if the population of the chunk is deferred, and TCBlockPopulator must leave it alone.
+     */
+    public boolean DeferPopulation(int chunkX, int chunkZ)
+    {
+        synchronized (this.deferredChunksLock)
+        {
+            if (this.deferredChunks == null)
+                return false;
+            if (this.deferredChunksCount == this.deferredChunks.length)
+                this.deferredChunks = Arrays.copyOf(this.deferredChunks, this.deferredChunks.length * 2);
+            this.deferredChunks[this.deferredChunksCount++] = chunkX;
+            this.deferredChunks[this.deferredChunksCount++] = chunkZ;
+            return true;
+        }
+    }
+
+    /**
+     * @return The deferred chunks since the last call, as x and z after each other.
+     */
+    public int[] TakeDeferredChunks()
+    {
+        synchronized (this.deferredChunksLock)
+        {
+            if (this.deferredChunks == null)
+                return new int[0];
+            int[] chunks = Arrays.copyOf(this.deferredChunks, this.deferredChunksCount);
+            this.deferredChunksCount = 0;
+            return chunks;
+        }
+    }
+
+    public void StopDeferringPopulation()
+    {
+        synchronized (this.deferredChunksLock)
+        {
+            this.deferredChunks = null;
+            this.deferredChunksCount = 0;
+        }
+    }
+
+    public void StartPopulation(int chunkX, int chunkZ)
+    {
+        Chunk chunk;
+        synchronized (this.serverLock)
+        {
+            chunk = this.world.getChunkAt(chunkX, chunkZ);
+        }
+        this.LoadChunk(chunk);
+    }
+
     public void LoadChunk(Chunk chunk)
     {
-        this.CurrentChunkX = chunk.x;
-        this.CurrentChunkZ = chunk.z;
-        this.ChunkCache[0] = chunk;
-        this.ChunkCache[1] = this.world.getChunkAt(chunk.x + 1, chunk.z);
-        this.ChunkCache[2] = this.world.getChunkAt(chunk.x, chunk.z + 1);
-        this.ChunkCache[3] = this.world.getChunkAt(chunk.x + 1, chunk.z + 1);
-        this.CreateNewChunks = true;
+        PopulationState state = this.populationState.get();
+        state.CurrentChunkX = chunk.x;
+        state.CurrentChunkZ = chunk.z;
+        state.ChunkCache[0] = chunk;
+        synchronized (this.serverLock)
+        {
+            state.ChunkCache[1] = this.world.getChunkAt(chunk.x + 1, chunk.z);
+            state.ChunkCache[2] = this.world.getChunkAt(chunk.x, chunk.z + 1);
+            state.ChunkCache[3] = this.world.getChunkAt(chunk.x + 1, chunk.z + 1);
+        }
+        state.CachedChunk = null;
+        state.CreateNewChunks = true;
+        state.heights.start(chunk.x, chunk.z);
+    }
+
+    public void EndPopulation()
+    {
+        this.populationState.get().heights.stop();
     }
 
-    private Chunk getChunk(int x, int y, int z)
+    private Chunk getChunk(PopulationState state, int x, int y, int z)
     {
         if (y < 0 || y >= worldHeight)
             return null;
@@ -314,49 +551,62 @@ public class BukkitWorld implements LocalWorld
         x = x >> 4;
         z = z >> 4;
 
-        if (this.CachedChunk != null && this.CachedChunk.x == x && this.CachedChunk.z == z)
-            return this.CachedChunk;
+        if (state.CachedChunk != null && state.CachedChunk.x == x && state.CachedChunk.z == z)
+            return state.CachedChunk;
 
-        int index_x = (x - this.CurrentChunkX);
-        int index_z = (z - this.CurrentChunkZ);
+        int index_x = (x - state.CurrentChunkX);
+        int index_z = (z - state.CurrentChunkZ);
         if ((index_x == 0 || index_x == 1) && (index_z == 0 || index_z == 1))
-            return CachedChunk = this.ChunkCache[index_x | (index_z << 1)];
-        else if (this.CreateNewChunks || this.world.chunkProvider.isChunkLoaded(x, z))
-            return CachedChunk = this.world.getChunkAt(x, z);
-        else
-            return null;
-
+            return state.CachedChunk = state.ChunkCache[index_x | (index_z << 1)];
+        synchronized (this.serverLock)
+        {
+            if ((state.CreateNewChunks && this.pendingBlocks == null) || this.world.chunkProvider.isChunkLoaded(x, z))
+                return state.CachedChunk = this.world.getChunkAt(x, z);
+        }
+        return null;
     }
 
     public int getLiquidHeight(int x, int z)
     {
-        Chunk chunk = this.getChunk(x, 0, z);
+        PopulationState state = this.populationState.get();
+        int height = state.heights.getLiquidHeight(x, z);
+        if (height != ColumnHeights.Unknown)
+            return height;
+        Chunk chunk = this.getChunk(state, x, 0, z);
         if (chunk == null)
             return -1;
-        z = z & 0xF;
-        x = x & 0xF;
         for (int y = worldHeight - 1; y > 0; y--)
         {
-            int id = chunk.getTypeId(x, y, z);
+            int id = chunk.getTypeId(x & 0xF, y, z & 0xF);
             if (DefaultMaterial.getMaterial(id).isLiquid())
+            {
+                state.heights.setLiquidHeight(x, z, y);
                 return y;
+            }
         }
+        state.heights.setLiquidHeight(x, z, -1);
         return -1;
     }
     
     public int getSolidHeight(int x, int z)
     {
-        Chunk chunk = this.getChunk(x, 0, z);
+        PopulationState state = this.populationState.get();
+        int height = state.heights.getSolidHeight(x, z);
+        if (height != ColumnHeights.Unknown)
+            return height;
+        Chunk chunk = this.getChunk(state, x, 0, z);
         if (chunk == null)
             return -1;
-        z = z & 0xF;
-        x = x & 0xF;
         for (int y = worldHeight - 1; y > 0; y--)
         {
-            int id = chunk.getTypeId(x, y, z);
+            int id = chunk.getTypeId(x & 0xF, y, z & 0xF);
             if (DefaultMaterial.getMaterial(id).isSolid())
+            {
+                state.heights.setSolidHeight(x, z, y);
                 return y;
+            }
         }
+        state.heights.setSolidHeight(x, z, -1);
         return -1;
     }
 
@@ -367,7 +617,8 @@ public class BukkitWorld implements LocalWorld
 
     public int getTypeId(int x, int y, int z)
     {
-        Chunk chunk = this.getChunk(x, y, z);
+        PopulationState state = this.populationState.get();
+        Chunk chunk = this.getChunk(state, x, y, z);
         if (chunk == null)
         {
             return 0;
@@ -381,34 +632,51 @@ public class BukkitWorld implements LocalWorld
 
     public void setBlock(final int x, final int y, final int z, final int typeId, final int data, final boolean updateLight, final boolean applyPhysics, final boolean notifyPlayers)
     {
+        PopulationState state = this.populationState.get();
         // If minecraft was updated and obfuscation is off - take a look at these methods:
         // this.world.setRawTypeIdAndData(i, j, k, l, i1)
         // this.world.setTypeIdAndData(i, j, k, l, i1)
 
         // We fetch the chunk from a custom cache in order to speed things up.
-        Chunk chunk = this.getChunk(x, y, z);
+        Chunk chunk = this.getChunk(state, x, y, z);
 
         if (chunk == null)
         {
+            if (this.pendingBlocks != null && y >= 0 && y < worldHeight)
+                this.pendingBlocks.add(x, y, z, typeId, data);
             return;
         }
-        if (applyPhysics)
+        // Placing a block calls onPlace of the block, which can schedule
+        // liquid ticks and add tile entities in the world
+        synchronized (this.serverLock)
         {
             int oldTypeId = chunk.getTypeId(x & 15, y, z & 15);
-            chunk.a(x & 15, y, z & 15, typeId, data);
-            this.world.applyPhysics(x, y, z, typeId == 0 ? oldTypeId : typeId);
-        } else
             chunk.a(x & 15, y, z & 15, typeId, data); // Set typeId and Data
+            if (applyPhysics)
+                this.world.applyPhysics(x, y, z, typeId == 0 ? oldTypeId : typeId);
+        }
+
+        // Physics can change the blocks around it
+        if (applyPhysics)
+            state.heights.invalidate();
+        else
+            state.heights.blockChanged(x, y, z, typeId);
 
 
         if (updateLight)
         {
-            this.world.v(x, y, z);
+            synchronized (this.serverLock)
+            {
+                this.world.v(x, y, z);
+            }
         }
 
         if (notifyPlayers && chunk.seenByPlayer)
         {
-            this.world.notify(x, y, z);
+            synchronized (this.serverLock)
+            {
+                this.world.notify(x, y, z);
+            }
         }
     }
 
@@ -417,20 +685,85 @@ public class BukkitWorld implements LocalWorld
         this.setBlock(x, y, z, typeId, data, false, false, true);
     }
 
+    public void setBlocks(BlockBatch batch)
+    {
+        PopulationState state = this.populationState.get();
+        for (int i = 0; i < batch.getChunkCount(); i++)
+        {
+            int chunkX = batch.getChunkX(i);
+            int chunkZ = batch.getChunkZ(i);
+            int[] blocks = batch.getBlocks(i);
+            int size = batch.getSize(i);
+
+            Chunk chunk = this.getChunk(state, chunkX << 4, 0, chunkZ << 4);
+            if (chunk == null)
+            {
+                if (this.pendingBlocks != null)
+                    this.pendingBlocks.addAll(chunkX, chunkZ, blocks, size);
+                continue;
+            }
+
+            // Placing blocks has side effects in the world, like in setBlock,
+            // so the blocks of a chunk are placed and relit under one lock
+            synchronized (this.serverLock)
+            {
+                int relightCount = 0;
+                for (int j = 0; j < size; j += 2)
+                {
+                    int x = PendingBlocks.getX(blocks, j);
+                    int y = PendingBlocks.getY(blocks, j);
+                    int z = PendingBlocks.getZ(blocks, j);
+                    int typeId = PendingBlocks.getTypeId(blocks, j);
+                    if (y >= worldHeight)
+                        continue;
+                    int oldTypeId = chunk.getTypeId(x, y, z);
+                    chunk.a(x, y, z, typeId, PendingBlocks.getData(blocks, j));
+                    state.heights.blockChanged((chunkX << 4) + x, y, (chunkZ << 4) + z, typeId);
+
+                    // Light only changes where the block lets through or gives off another amount
+                    if (batch.updateLight() && (Block.lightBlock[oldTypeId] != Block.lightBlock[typeId] || Block.lightEmission[oldTypeId] != Block.lightEmission[typeId]))
+                    {
+                        if (relightCount == state.relightBlocks.length)
+                            state.relightBlocks = Arrays.copyOf(state.relightBlocks, relightCount * 2);
+                        state.relightBlocks[relightCount++] = j;
+                    }
+                }
+
+                // The same update as setBlock, once all blocks of the chunk are placed
+                for (int k = 0; k < relightCount; k++)
+                {
+                    int j = state.relightBlocks[k];
+                    this.world.v((chunkX << 4) + PendingBlocks.getX(blocks, j), PendingBlocks.getY(blocks, j), (chunkZ << 4) + PendingBlocks.getZ(blocks, j));
+                }
+            }
+
+            if (batch.notifyPlayers() && chunk.seenByPlayer)
+            {
+                synchronized (this.serverLock)
+                {
+                    this.world.getWorld().refreshChunk(chunkX, chunkZ);
+                }
+            }
+        }
+    }
+
     public int getHighestBlockYAt(int x, int z)
     {
-        Chunk chunk = this.getChunk(x, 0, z);
+        PopulationState state = this.populationState.get();
+        int y = state.heights.getHighestBlockY(x, z);
+        if (y != ColumnHeights.Unknown)
+            return y;
+        Chunk chunk = this.getChunk(state, x, 0, z);
         if (chunk == null)
         {
             return -1;
         }
-        z = z & 0xF;
-        x = x & 0xF;
-        int y = chunk.b(x, z);
-        while(chunk.getTypeId(x, y, z) != DefaultMaterial.AIR.id && y <= worldHeight) {
+        y = chunk.b(x & 0xF, z & 0xF);
+        while(chunk.getTypeId(x & 0xF, y, z & 0xF) != DefaultMaterial.AIR.id && y <= worldHeight) {
             // Fix for incorrect lightmap
             y += 1;
         }
+        state.heights.setHighestBlockY(x, z, y);
         return y;
     }
 
@@ -442,17 +775,23 @@ public class BukkitWorld implements LocalWorld
 
     public void setChunksCreations(boolean createNew)
     {
-        this.CreateNewChunks = createNew;
+        this.populationState.get().CreateNewChunks = createNew;
     }
 
     public int getLightLevel(int x, int y, int z)
     {
-        return world.getLightLevel(x, y, z);
+        synchronized (this.serverLock)
+        {
+            return world.getLightLevel(x, y, z);
+        }
     }
 
     public boolean isLoaded(int x, int y, int z)
     {
-        return world.isLoaded(x, y, z);
+        synchronized (this.serverLock)
+        {
+            return world.isLoaded(x, y, z);
+        }
     }
 
     public WorldConfig getSettings()
@@ -498,7 +837,8 @@ public class BukkitWorld implements LocalWorld
         // TODO: Should WorldProviderTC extend even more? For example for spawn point etc?
         // this.world.worldProvider = new TCWorldProvider().setSeaLevel(this.settings.waterLevelMax); // cause errors with entity burn, disabled temporary.
 
-        this.ChunkCache = new Chunk[4];
+        if (this.settings.deferCrossChunkBlocks)
+            this.pendingBlocks = PendingBlocks.load(new File(this.world.getWorld().getWorldFolder(), "data" + File.separator + TCDefaultValues.PendingBlocksName.stringValue() + ".dat"), this.Seed);
 
         switch (this.settings.ModeTerrain)
         {
@@ -541,7 +881,6 @@ public class BukkitWorld implements LocalWorld
 
     public void setOldBiomeManager(TCWorldChunkManagerOld manager)
     {
-        this.old_biomeManager = manager;
         this.biomeManager = manager;
     }
 
@@ -560,6 +899,9 @@ public class BukkitWorld implements LocalWorld
     @Override
     public LocalBiome getBiome(int x, int z)
     {
-        return getBiomeById(world.getBiome(x, z).id);
+        synchronized (this.serverLock)
+        {
+            return getBiomeById(world.getBiome(x, z).id);
+        }
     }
 }
\ No newline at end of file
@@ -23,7 +23,11 @@ public class TCBlockPopulator extends BlockPopulator
     @Override
     public void populate(World world, Random random, Chunk chunk)
     {
+        // A pregeneration populates it together with the other chunks
+        if (this.world.DeferPopulation(chunk.getX(), chunk.getZ()))
+            return;
         this.world.LoadChunk(((CraftChunk) chunk).getHandle());
         this.spawner.populate(chunk.getX(),chunk.getZ());
+        this.world.EndPopulation();
     }
 }
@@ -3,13 +3,16 @@ package com.khorn.terraincontrol.bukkit;
 import java.util.Random;
 
 import org.bukkit.Bukkit;
+import org.bukkit.craftbukkit.CraftChunk;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.event.world.StructureGrowEvent;
 import org.bukkit.event.world.WorldInitEvent;
+import org.bukkit.event.world.WorldSaveEvent;
 
 import com.khorn.terraincontrol.configuration.BiomeConfig;
 import com.khorn.terraincontrol.generator.resourcegens.SaplingGen;
@@ -30,6 +33,22 @@ public class TCListener implements Listener
         this.tcPlugin.WorldInit(event.getWorld());
     }
 
+    @EventHandler(priority = EventPriority.LOW)
+    public void onChunkLoad(ChunkLoadEvent event)
+    {
+        BukkitWorld bukkitWorld = this.tcPlugin.worlds.get(event.getWorld().getUID());
+        if (bukkitWorld != null)
+            bukkitWorld.ApplyPendingBlocks(((CraftChunk) event.getChunk()).getHandle());
+    }
+
+    @EventHandler(priority = EventPriority.NORMAL)
+    public void onWorldSave(WorldSaveEvent event)
+    {
+        BukkitWorld bukkitWorld = this.tcPlugin.worlds.get(event.getWorld().getUID());
+        if (bukkitWorld != null)
+            bukkitWorld.SavePendingBlocks();
+    }
+
     @EventHandler(priority = EventPriority.NORMAL)
     public void onStructureGrow(StructureGrowEvent event)
     {
@@ -10,6 +10,10 @@ public enum TCPerm
     CMD_RELOAD("cmd.reload"),
     CMD_SPAWN("cmd.spawn"),
     CMD_REPLACE("cmd.replace"),
+    CMD_PRECOMPUTE("cmd.precompute"),
+    CMD_LOCATE("cmd.locate"),
+    CMD_PROFILE("cmd.profile"),
+    CMD_PREGENERATE("cmd.pregenerate"),
     ;
     
     public final String node;
@@ -36,6 +36,8 @@ public class TCPlugin extends JavaPlugin implements TerrainControlEngine
     public void onDisable()
     {
         TerrainControl.log("Can not be disabled.");
+        for (BukkitWorld world : worlds.values())
+            world.SavePendingBlocks();
         TerrainControl.stopEngine();
     }
 
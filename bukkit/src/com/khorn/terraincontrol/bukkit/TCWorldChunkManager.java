@@ -1,5 +1,7 @@
 package com.khorn.terraincontrol.bukkit;
 
+import com.khorn.terraincontrol.biomelayers.BiomePresenceIndex;
+import com.khorn.terraincontrol.biomelayers.PrecomputedBiomeMap;
 import com.khorn.terraincontrol.biomelayers.layers.Layer;
 import com.khorn.terraincontrol.configuration.WorldConfig;
 import com.khorn.terraincontrol.DefaultBiome;
@@ -14,11 +16,16 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
 {
     private Layer UnZoomedLayer;
     private Layer BiomeLayer;
+    private BiomePresenceIndex PresenceIndex;
+    // Replaced by the precompute command from another thread
+    private volatile PrecomputedBiomeMap PrecomputedMap;
     private BiomeCache Cache = new BiomeCache(this);
     private final Object LockObject = new Object();
     private float[] buffer = new float[256];
 
     private WorldConfig worldConfig;
+    private float[] temperatureTable;
+    private float[] wetnessTable;
 
     public TCWorldChunkManager(LocalWorld world)
     {
@@ -38,6 +45,64 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
 
         this.UnZoomedLayer = layers[0];
         this.BiomeLayer = layers[1];
+        this.PresenceIndex = new BiomePresenceIndex(this.UnZoomedLayer);
+        this.PrecomputedMap = PrecomputedBiomeMap.open(this.worldConfig, world.getSeed());
+
+        this.InitClimateTables();
+    }
+
+    public void ReloadPrecomputedBiomes(LocalWorld world)
+    {
+        this.PrecomputedMap = PrecomputedBiomeMap.open(this.worldConfig, world.getSeed());
+        synchronized (this.LockObject)
+        {
+            this.Cache = new BiomeCache(this);
+        }
+    }
+
+    // From the precomputed biomes when the area is inside them, otherwise from
+    // the layers. The array is reused when it is big enough.
+    private int[] CalculateBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.PrecomputedMap;
+        if (map != null && map.contains(x, z, x_size, z_size))
+            return map.getBiomes(biomeArray, x, z, x_size, z_size);
+        return this.BiomeLayer.Calculate(biomeArray, x, z, x_size, z_size);
+    }
+
+    private int[] CalculateUnZoomedBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.PrecomputedMap;
+        if (map != null && map.containsUnZoomed(x, z, x_size, z_size))
+            return map.getUnZoomedBiomes(biomeArray, x, z, x_size, z_size);
+        return this.UnZoomedLayer.Calculate(biomeArray, x, z, x_size, z_size);
+    }
+
+    private void InitClimateTables()
+    {
+        float[] temperatures = new float[this.worldConfig.biomeConfigs.length];
+        float[] wetness = new float[this.worldConfig.biomeConfigs.length];
+        for (int i = 0; i < this.worldConfig.biomeConfigs.length; i++)
+        {
+            if (this.worldConfig.biomeConfigs[i] == null)
+                continue;
+
+            float f1 = this.worldConfig.biomeConfigs[i].getTemperature() / 65536.0F;
+            if (f1 < this.worldConfig.minTemperature)
+                f1 = this.worldConfig.minTemperature;
+            if (f1 > this.worldConfig.maxTemperature)
+                f1 = this.worldConfig.maxTemperature;
+            temperatures[i] = f1;
+
+            f1 = this.worldConfig.biomeConfigs[i].getWetness() / 65536.0F;
+            if (f1 < this.worldConfig.minMoisture)
+                f1 = this.worldConfig.minMoisture;
+            if (f1 > this.worldConfig.maxMoisture)
+                f1 = this.worldConfig.maxMoisture;
+            wetness[i] = f1;
+        }
+        this.temperatureTable = temperatures;
+        this.wetnessTable = wetness;
     }
 
     public BiomeBase getBiome(int paramInt1, int paramInt2)
@@ -55,15 +120,10 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
             paramArrayOfFloat = new float[paramInt3 * paramInt4];
         }
 
-        int[] arrayOfInt = this.BiomeLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] arrayOfInt = this.CalculateBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
-            float f1 = worldConfig.biomeConfigs[arrayOfInt[i]].getWetness() / 65536.0F;
-            if (f1 < this.worldConfig.minMoisture)
-                f1 = this.worldConfig.minMoisture;
-            if (f1 > this.worldConfig.maxMoisture)
-                f1 = this.worldConfig.maxMoisture;
-            paramArrayOfFloat[i] = f1;
+            paramArrayOfFloat[i] = this.wetnessTable[arrayOfInt[i]];
         }
 
         return paramArrayOfFloat;
@@ -77,15 +137,10 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
             paramArrayOfFloat = new float[paramInt3 * paramInt4];
         }
 
-        int[] arrayOfInt = this.BiomeLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] arrayOfInt = this.CalculateBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
-            float f1 = worldConfig.biomeConfigs[arrayOfInt[i]].getTemperature() / 65536.0F;
-            if (f1 < this.worldConfig.minTemperature)
-                f1 = this.worldConfig.minTemperature;
-            if (f1 > this.worldConfig.maxTemperature)
-                f1 = this.worldConfig.maxTemperature;
-            paramArrayOfFloat[i] = f1;
+            paramArrayOfFloat[i] = this.temperatureTable[arrayOfInt[i]];
         }
 
         return paramArrayOfFloat;
@@ -98,7 +153,7 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
             paramArrayOfBiomeBase = new BiomeBase[paramInt3 * paramInt4];
         }
 
-        int[] arrayOfInt = this.UnZoomedLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] arrayOfInt = this.CalculateUnZoomedBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
             paramArrayOfBiomeBase[i] = BiomeBase.biomes[arrayOfInt[i]];
@@ -123,7 +178,7 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
             }
             return paramArrayOfBiomeBase;
         }
-        int[] localObject = this.BiomeLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] localObject = this.CalculateBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
             paramArrayOfBiomeBase[i] = BiomeBase.biomes[localObject[i]];
@@ -142,17 +197,7 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
 
         int n = k - i + 1;
         int i1 = m - j + 1;
-        int[] arrayOfInt = this.UnZoomedLayer.Calculate(i, j, n, i1);
-        for (int i2 = 0; i2 < n * i1; i2++)
-        {
-            if (arrayOfInt[i2] >= DefaultBiome.values().length)
-                return false;
-            BiomeBase localBiomeBase = BiomeBase.biomes[arrayOfInt[i2]];
-            if (!paramList.contains(localBiomeBase))
-                return false;
-        }
-
-        return true;
+        return this.PresenceIndex.areBiomesAllowed(i, j, n, i1, this.getAllowedBiomes(paramList));
     }
 
     @SuppressWarnings("rawtypes")
@@ -165,17 +210,17 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
 
         int n = k - i + 1;
         int i1 = m - j + 1;
-        int[] arrayOfInt = this.UnZoomedLayer.Calculate(i, j, n, i1);
+        boolean[] allowed = this.getAllowedBiomes(paramList);
+        int[] arrayOfInt = this.PresenceIndex.getCandidateBiomes(i, j, n, i1, allowed);
         ChunkPosition localChunkPosition = null;
         int i2 = 0;
         for (int i3 = 0; i3 < arrayOfInt.length; i3++)
         {
-            if (arrayOfInt[i3] >= DefaultBiome.values().length)
+            if (arrayOfInt[i3] < 0 || arrayOfInt[i3] >= allowed.length)
                 continue;
             int i4 = i + i3 % n << 2;
             int i5 = j + i3 / n << 2;
-            BiomeBase localBiomeBase = BiomeBase.biomes[arrayOfInt[i3]];
-            if ((!paramList.contains(localBiomeBase)) || ((localChunkPosition != null) && (paramRandom.nextInt(i2 + 1) != 0)))
+            if ((!allowed[arrayOfInt[i3]]) || ((localChunkPosition != null) && (paramRandom.nextInt(i2 + 1) != 0)))
                 continue;
             localChunkPosition = new ChunkPosition(i4, 0, i5);
             i2++;
@@ -184,6 +229,16 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
         return localChunkPosition;
     }
 
+    // Custom biomes are never allowed, like in vanilla
+    @SuppressWarnings("rawtypes")
+    private boolean[] getAllowedBiomes(List paramList)
+    {
+        boolean[] allowed = new boolean[DefaultBiome.values().length];
+        for (int i = 0; i < allowed.length; i++)
+            allowed[i] = paramList.contains(BiomeBase.biomes[i]);
+        return allowed;
+    }
+
     public void b()
     {
         synchronized (this.LockObject)
@@ -194,16 +249,15 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
 
     public int[] getBiomesUnZoomedTC(int[] biomeArray, int x, int z, int x_size, int z_size)
     {
-        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
-        {
-            biomeArray = new int[x_size * z_size];
-        }
-
-        int[] arrayOfInt = this.UnZoomedLayer.Calculate(x, z, x_size, z_size);
-
-        System.arraycopy(arrayOfInt, 0, biomeArray, 0, x_size * z_size);
+        return this.CalculateUnZoomedBiomes(biomeArray, x, z, x_size, z_size);
+    }
 
-        return biomeArray;
+    public byte[] getBiomesUnZoomedTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.PrecomputedMap;
+        if (map != null && map.containsUnZoomed(x, z, x_size, z_size))
+            return map.getUnZoomedBiomes(biomeArray, x, z, x_size, z_size);
+        return this.UnZoomedLayer.Calculate(biomeArray, x, z, x_size, z_size);
     }
 
     public float[] getTemperaturesTC(int x, int z, int x_size, int z_size)
@@ -230,12 +284,53 @@ public class TCWorldChunkManager extends WorldChunkManager implements IBiomeMana
             return biomeArray;
         }
 
-        int[] arrayOfInt = this.BiomeLayer.Calculate(x, z, x_size, z_size);
+        return this.CalculateBiomes(biomeArray, x, z, x_size, z_size);
 
-        System.arraycopy(arrayOfInt, 0, biomeArray, 0, x_size * z_size);
+    }
+
+    public byte[] getBiomesTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.PrecomputedMap;
+        if (map != null && map.contains(x, z, x_size, z_size))
+            return map.getBiomes(biomeArray, x, z, x_size, z_size);
+        return this.BiomeLayer.Calculate(biomeArray, x, z, x_size, z_size);
+    }
+
+    public int[] getBiomesTC(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        biomeArray = this.getBiomesTC(biomeArray, x, z, x_size, z_size);
+
+        float[] temperatures = this.temperatureTable;
+        float[] wetness = this.wetnessTable;
+        for (int i = 0; i < x_size * z_size; i++)
+        {
+            if (temperatureArray != null)
+                temperatureArray[i] = temperatures[biomeArray[i]];
+            if (wetnessArray != null)
+                wetnessArray[i] = wetness[biomeArray[i]];
+        }
 
         return biomeArray;
+    }
+
+    public int[] getBiomesTC(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.PrecomputedMap;
+        if (map != null && (map.containsUnZoomed(ux, uz, ux_size, uz_size) || map.contains(x, z, x_size, z_size)))
+        {
+            this.getBiomesUnZoomedTC(unZoomedArray, ux, uz, ux_size, uz_size);
+            biomeArray = this.getBiomesTC(biomeArray, x, z, x_size, z_size);
+        } else
+            biomeArray = this.BiomeLayer.Calculate(unZoomedArray, ux, uz, ux_size, uz_size, biomeArray, x, z, x_size, z_size);
 
+        if (temperatureArray != null)
+        {
+            float[] temperatures = this.temperatureTable;
+            for (int i = 0; i < x_size * z_size; i++)
+                temperatureArray[i] = temperatures[biomeArray[i]];
+        }
+
+        return biomeArray;
     }
 
     public int getBiomeTC(int x, int z)
@@ -3,7 +3,7 @@ package com.khorn.terraincontrol.bukkit;
 import com.khorn.terraincontrol.configuration.WorldConfig;
 import com.khorn.terraincontrol.IBiomeManager;
 import com.khorn.terraincontrol.LocalWorld;
-import com.khorn.terraincontrol.util.NoiseGeneratorOctaves2;
+import com.khorn.terraincontrol.generator.OldBiomeGenerator;
 import net.minecraft.server.BiomeBase;
 import net.minecraft.server.BiomeCache;
 import net.minecraft.server.ChunkPosition;
@@ -16,14 +16,9 @@ public class TCWorldChunkManagerOld extends WorldChunkManager implements IBiomeM
 {
     private WorldConfig localWrk;
 
-    private NoiseGeneratorOctaves2 TempGen;
-    private NoiseGeneratorOctaves2 RainGen;
-    private NoiseGeneratorOctaves2 TempGen2;
-    public double[] old_temperature;
-    public double[] old_rain;
-    private double[] old_temperature2;
-    private BiomeBase[] temp_biomeBases;
+    private OldBiomeGenerator Generator;
     private BiomeCache Cache = new BiomeCache(this);
+    private final Object LockObject = new Object();
 
 
     private static BiomeBase[] BiomeDiagram = new BiomeBase[4096];
@@ -32,50 +27,24 @@ public class TCWorldChunkManagerOld extends WorldChunkManager implements IBiomeM
     {
         super();
         this.localWrk = world.getSettings();
-        this.TempGen = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 9871L), 4);
-        this.RainGen = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 39811L), 4);
-        this.TempGen2 = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 543321L), 2);
+        this.Generator = new OldBiomeGenerator(world);
     }
 
     @Override
     public BiomeBase getBiome(int i, int i1)
     {
-        return this.Cache.b(i, i1);
+        synchronized (this.LockObject)
+        {
+            return this.Cache.b(i, i1);
+        }
     }
 
     // Temperature
     @Override
     public float[] getTemperatures(float[] temp_out, int x, int z, int x_size, int z_size)
     {
-        if ((temp_out == null) || (temp_out.length < x_size * z_size))
-        {
-            temp_out = new float[x_size * z_size];
-        }
+        temp_out = this.Generator.getTemperatures(temp_out, this.localWrk, x, z, x_size, z_size);
 
-        this.old_temperature = this.TempGen.a(this.old_temperature, x, z, x_size, z_size, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.25D);
-        this.old_temperature2 = this.TempGen2.a(this.old_temperature2, x, z, x_size, z_size, 0.25D / this.localWrk.oldBiomeSize, 0.25D / this.localWrk.oldBiomeSize, 0.5882352941176471D);
-
-        int i = 0;
-        for (int j = 0; j < x_size; j++)
-        {
-            for (int k = 0; k < z_size; k++)
-            {
-                double d1 = this.old_temperature2[i] * 1.1D + 0.5D;
-
-                double d2 = 0.01D;
-                double d3 = 1.0D - d2;
-                double d4 = (temp_out[i] * 0.15D + 0.7D) * d3 + d1 * d2;
-                d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
-
-                if (d4 < this.localWrk.minTemperature)
-                    d4 = this.localWrk.minTemperature;
-                if (d4 > this.localWrk.maxTemperature)
-                    d4 = this.localWrk.maxTemperature;
-                temp_out[i] = (float) d4;
-                i++;
-            }
-
-        }
         if (this.localWrk.isDeprecated)
             this.localWrk = this.localWrk.newSettings;
 
@@ -90,10 +59,10 @@ public class TCWorldChunkManagerOld extends WorldChunkManager implements IBiomeM
         {
             temp_out = new float[x_size * z_size];
         }
-        this.temp_biomeBases = this.a(this.temp_biomeBases, x, z, x_size, z_size, false);
+        OldBiomeGenerator.Climate climate = this.Generator.getClimate(this.localWrk, x, z, x_size, z_size);
 
         for (int i = 0; i < temp_out.length; i++)
-            temp_out[i] = (float) this.old_rain[i];
+            temp_out[i] = (float) climate.wetness[i];
 
         return temp_out;
 
@@ -114,49 +83,18 @@ public class TCWorldChunkManagerOld extends WorldChunkManager implements IBiomeM
         }
         if ((useCache) && (x_size == 16) && (z_size == 16) && ((x & 0xF) == 0) && ((z & 0xF) == 0))
         {
-            BiomeBase[] localObject = this.Cache.e(x, z);
-            System.arraycopy(localObject, 0, paramArrayOfBiomeBase, 0, x_size * z_size);
-            return paramArrayOfBiomeBase;
-        }
-
-
-        this.old_temperature = this.TempGen.a(this.old_temperature, x, z, x_size, x_size, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.25D);
-        this.old_rain = this.RainGen.a(this.old_rain, x, z, x_size, x_size, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.3333333333333333D);
-        this.old_temperature2 = this.TempGen2.a(this.old_temperature2, x, z, x_size, x_size, 0.25D / this.localWrk.oldBiomeSize, 0.25D / this.localWrk.oldBiomeSize, 0.5882352941176471D);
-
-        int i = 0;
-        for (int j = 0; j < x_size; j++)
-        {
-            for (int k = 0; k < z_size; k++)
+            synchronized (this.LockObject)
             {
-                double d1 = this.old_temperature2[i] * 1.1D + 0.5D;
-
-                double d2 = 0.01D;
-                double d3 = 1.0D - d2;
-                double d4 = (this.old_temperature[i] * 0.15D + 0.7D) * d3 + d1 * d2;
-                d2 = 0.002D;
-                d3 = 1.0D - d2;
-                double d5 = (this.old_rain[i] * 0.15D + 0.5D) * d3 + d1 * d2;
-                d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
-
-                if (d4 < this.localWrk.minTemperature)
-                    d4 = this.localWrk.minTemperature;
-                if (d5 < this.localWrk.minMoisture)
-                    d5 = this.localWrk.minMoisture;
-                if (d4 > this.localWrk.maxTemperature)
-                    d4 = this.localWrk.maxTemperature;
-                if (d5 > this.localWrk.maxMoisture)
-                {
-                    d5 = this.localWrk.maxMoisture;
-                }
-                this.old_temperature[i] = d4;
-                this.old_rain[i] = d5;
-
-                paramArrayOfBiomeBase[(i++)] = TCWorldChunkManagerOld.getBiomeFromDiagram(d4, d5);
+                BiomeBase[] localObject = this.Cache.e(x, z);
+                System.arraycopy(localObject, 0, paramArrayOfBiomeBase, 0, x_size * z_size);
             }
-
+            return paramArrayOfBiomeBase;
         }
 
+        OldBiomeGenerator.Climate climate = this.Generator.getClimate(this.localWrk, x, z, x_size, z_size);
+        for (int i = 0; i < x_size * z_size; i++)
+            paramArrayOfBiomeBase[i] = TCWorldChunkManagerOld.getBiomeFromDiagram(climate.temperature[i], climate.wetness[i]);
+
         if (this.localWrk.isDeprecated)
             this.localWrk = this.localWrk.newSettings;
 
@@ -222,7 +160,10 @@ public class TCWorldChunkManagerOld extends WorldChunkManager implements IBiomeM
     @Override
     public void b()
     {
-        this.Cache.a();
+        synchronized (this.LockObject)
+        {
+            this.Cache.a();
+        }
     }
 
 
@@ -294,53 +235,35 @@ public class TCWorldChunkManagerOld extends WorldChunkManager implements IBiomeM
         }
         if ( (x_size == 16) && (z_size == 16) && ((x & 0xF) == 0) && ((z & 0xF) == 0))
         {
-            BiomeBase[] localObject = this.Cache.e(x, z);
-            for(int i= 0; i< x_size*z_size;i++)
-                biomeArray[i] = localObject[i].id;
+            synchronized (this.LockObject)
+            {
+                BiomeBase[] localObject = this.Cache.e(x, z);
+                for(int i= 0; i< x_size*z_size;i++)
+                    biomeArray[i] = localObject[i].id;
+            }
             return biomeArray;
         }
 
+        OldBiomeGenerator.Climate climate = this.Generator.getClimate(this.localWrk, x, z, x_size, z_size);
+        for (int i = 0; i < x_size * z_size; i++)
+            biomeArray[i] = TCWorldChunkManagerOld.getBiomeFromDiagram(climate.temperature[i], climate.wetness[i]).id;
 
-        this.old_temperature = this.TempGen.a(this.old_temperature, x, z, x_size, x_size, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.25D);
-        this.old_rain = this.RainGen.a(this.old_rain, x, z, x_size, x_size, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.3333333333333333D);
-        this.old_temperature2 = this.TempGen2.a(this.old_temperature2, x, z, x_size, x_size, 0.25D / this.localWrk.oldBiomeSize, 0.25D / this.localWrk.oldBiomeSize, 0.5882352941176471D);
+        if (this.localWrk.isDeprecated)
+            this.localWrk = this.localWrk.newSettings;
 
-        int i = 0;
-        for (int j = 0; j < x_size; j++)
-        {
-            for (int k = 0; k < z_size; k++)
-            {
-                double d1 = this.old_temperature2[i] * 1.1D + 0.5D;
-
-                double d2 = 0.01D;
-                double d3 = 1.0D - d2;
-                double d4 = (this.old_temperature[i] * 0.15D + 0.7D) * d3 + d1 * d2;
-                d2 = 0.002D;
-                d3 = 1.0D - d2;
-                double d5 = (this.old_rain[i] * 0.15D + 0.5D) * d3 + d1 * d2;
-                d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
-
-                if (d4 < this.localWrk.minTemperature)
-                    d4 = this.localWrk.minTemperature;
-                if (d5 < this.localWrk.minMoisture)
-                    d5 = this.localWrk.minMoisture;
-                if (d4 > this.localWrk.maxTemperature)
-                    d4 = this.localWrk.maxTemperature;
-                if (d5 > this.localWrk.maxMoisture)
-                {
-                    d5 = this.localWrk.maxMoisture;
-                }
-                this.old_temperature[i] = d4;
-                this.old_rain[i] = d5;
-
-                biomeArray[(i++)] = TCWorldChunkManagerOld.getBiomeFromDiagram(d4, d5).id;
-            }
+        return biomeArray;
+    }
 
+    public byte[] getBiomesUnZoomedTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
+        {
+            biomeArray = new byte[x_size * z_size];
         }
 
-        if (this.localWrk.isDeprecated)
-            this.localWrk = this.localWrk.newSettings;
-
+        int[] biomes = this.getBiomesUnZoomedTC(new int[x_size * z_size], x, z, x_size, z_size);
+        for (int i = 0; i < x_size * z_size; i++)
+            biomeArray[i] = (byte) biomes[i];
         return biomeArray;
     }
 
@@ -354,6 +277,29 @@ public class TCWorldChunkManagerOld extends WorldChunkManager implements IBiomeM
         return this.getBiomesUnZoomedTC(biomeArray,x,z,x_size,z_size);
     }
 
+    public byte[] getBiomesTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return this.getBiomesUnZoomedTC(biomeArray, x, z, x_size, z_size);
+    }
+
+    public int[] getBiomesTC(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        // The old generator derives the climate from noise, not from the biome ids
+        biomeArray = this.getBiomesUnZoomedTC(biomeArray, x, z, x_size, z_size);
+        if (temperatureArray != null)
+            System.arraycopy(this.getTemperaturesTC(x, z, x_size, z_size), 0, temperatureArray, 0, x_size * z_size);
+        if (wetnessArray != null)
+            System.arraycopy(this.getWetness(null, x, z, x_size, z_size), 0, wetnessArray, 0, x_size * z_size);
+        return biomeArray;
+    }
+
+    public int[] getBiomesTC(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
+    {
+        // Nothing to share, the old generator has no layers
+        this.getBiomesUnZoomedTC(unZoomedArray, ux, uz, ux_size, uz_size);
+        return this.getBiomesTC(biomeArray, temperatureArray, null, x, z, x_size, z_size);
+    }
+
     public int getBiomeTC(int x, int z)
     {
         return this.getBiome(x,z).id;
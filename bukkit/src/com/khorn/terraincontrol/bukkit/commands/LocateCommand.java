@@ -0,0 +1,127 @@
+package com.khorn.terraincontrol.bukkit.commands;
+
+import com.khorn.terraincontrol.LocalBiome;
+import com.khorn.terraincontrol.biomelayers.BiomeLocator;
+import com.khorn.terraincontrol.bukkit.BukkitWorld;
+import com.khorn.terraincontrol.bukkit.TCPerm;
+import com.khorn.terraincontrol.bukkit.TCPlugin;
+import com.khorn.terraincontrol.configuration.WorldConfig;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+public class LocateCommand extends BaseCommand
+{
+    private static final int MaxRadius = 30000;
+
+    public LocateCommand(TCPlugin _plugin)
+    {
+        super(_plugin);
+        name = "locate";
+        perm = TCPerm.CMD_LOCATE.node;
+        usage = "locate biome_name [-r radius] [-t seconds] [World]";
+        workOnConsole = true;
+    }
+
+    @Override
+    public boolean onCommand(final CommandSender sender, List<String> args)
+    {
+        if (args.size() == 0)
+        {
+            sender.sendMessage(ErrorColor + "Usage: /tc " + usage);
+            return true;
+        }
+
+        String biomeName = args.remove(0).replace('_', ' ');
+        int radius = 4096;
+        int seconds = 10;
+        String worldName = "";
+
+        for (int i = 0; i < args.size(); i++)
+        {
+            try
+            {
+                if (args.get(i).equals("-r"))
+                    radius = Math.min(MaxRadius, Integer.parseInt(args.get(++i)));
+                else if (args.get(i).equals("-t"))
+                    seconds = Integer.parseInt(args.get(++i));
+                else
+                    worldName = args.get(i);
+            } catch (Exception e)
+            {
+                sender.sendMessage(ErrorColor + "Wrong value for " + args.get(i - 1));
+                return true;
+            }
+        }
+
+        final BukkitWorld world = this.getWorld(sender, worldName);
+        if (world == null)
+        {
+            sender.sendMessage(ErrorColor + "You need to select world");
+            return true;
+        }
+
+        WorldConfig.BiomeMode mode = world.getSettings().ModeBiome;
+        if (mode != WorldConfig.BiomeMode.Normal && mode != WorldConfig.BiomeMode.FromImage)
+        {
+            sender.sendMessage(ErrorColor + "Biomes can only be located in the Normal and FromImage biome modes");
+            return true;
+        }
+
+        LocalBiome biome = null;
+        for (int i = 0; i < world.getMaxBiomesCount() && biome == null; i++)
+        {
+            LocalBiome localBiome = world.getBiomeById(i);
+            if (localBiome != null && localBiome.getName().equalsIgnoreCase(biomeName))
+                biome = localBiome;
+        }
+        if (biome == null)
+        {
+            sender.sendMessage(ErrorColor + "Unknown biome " + biomeName);
+            return true;
+        }
+
+        int x = 0;
+        int z = 0;
+        if (sender instanceof Player && ((Player) sender).getWorld().getName().equals(world.getName()))
+        {
+            x = ((Player) sender).getLocation().getBlockX();
+            z = ((Player) sender).getLocation().getBlockZ();
+        }
+
+        final int biomeId = biome.getId();
+        final String foundName = biome.getName();
+        final int centerX = x;
+        final int centerZ = z;
+        final int searchRadius = radius;
+        final long timeLimit = seconds * 1000L;
+
+        sender.sendMessage(MessageColor + "Searching " + ValueColor + foundName + MessageColor + " within " + radius + " blocks");
+        this.plugin.getServer().getScheduler().scheduleAsyncDelayedTask(this.plugin, new Runnable()
+        {
+            public void run()
+            {
+                BiomeLocator.Result result = BiomeLocator.locate(world, biomeId, centerX, centerZ, searchRadius, timeLimit);
+                if (result.found)
+                {
+                    int distance = (int) Math.sqrt((double) (result.x - centerX) * (result.x - centerX) + (double) (result.z - centerZ) * (result.z - centerZ));
+                    sender.sendMessage(ValueColor + foundName + MessageColor + " found at x=" + ValueColor + result.x + MessageColor + ", z=" + ValueColor + result.z + MessageColor + " (" + distance + " blocks away)");
+                    if (result.timedOut)
+                        sender.sendMessage(MessageColor + "Time limit reached, there may be a nearer one");
+                } else if (result.busy)
+                {
+                    sender.sendMessage(ErrorColor + "Other biome searches are still running, try again later");
+                } else if (result.timedOut)
+                {
+                    sender.sendMessage(ErrorColor + "Time limit reached after searching " + result.searchedRadius + " blocks around");
+                } else
+                {
+                    sender.sendMessage(ErrorColor + "No " + foundName + " within " + searchRadius + " blocks");
+                }
+            }
+        });
+
+        return true;
+    }
+}
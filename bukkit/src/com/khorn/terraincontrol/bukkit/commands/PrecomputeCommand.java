@@ -0,0 +1,99 @@
+package com.khorn.terraincontrol.bukkit.commands;
+
+import com.khorn.terraincontrol.biomelayers.PrecomputedBiomeMap;
+import com.khorn.terraincontrol.bukkit.BukkitWorld;
+import com.khorn.terraincontrol.bukkit.TCPerm;
+import com.khorn.terraincontrol.bukkit.TCPlugin;
+import com.khorn.terraincontrol.bukkit.TCWorldChunkManager;
+import com.khorn.terraincontrol.configuration.WorldConfig;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.craftbukkit.CraftWorld;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PrecomputeCommand extends BaseCommand
+{
+    // Cleared by the async task
+    private static final AtomicBoolean isWorking = new AtomicBoolean();
+
+    public PrecomputeCommand(TCPlugin _plugin)
+    {
+        super(_plugin);
+        name = "precompute";
+        perm = TCPerm.CMD_PRECOMPUTE.node;
+        usage = "precompute minX minZ maxX maxZ [World]";
+        workOnConsole = true;
+    }
+
+    @Override
+    public boolean onCommand(final CommandSender sender, List<String> args)
+    {
+        if (args.size() < 4)
+        {
+            sender.sendMessage(ErrorColor + "Usage: /tc " + usage);
+            return true;
+        }
+
+        final int[] area = new int[4];
+        try
+        {
+            for (int i = 0; i < 4; i++)
+                area[i] = Integer.parseInt(args.get(i));
+        } catch (NumberFormatException e)
+        {
+            sender.sendMessage(ErrorColor + "Wrong coordinates");
+            return true;
+        }
+
+        final BukkitWorld world = this.getWorld(sender, args.size() > 4 ? args.get(4) : "");
+        if (world == null)
+        {
+            sender.sendMessage(ErrorColor + "You need to select world");
+            return true;
+        }
+
+        if (world.getSettings().ModeBiome != WorldConfig.BiomeMode.Normal)
+        {
+            sender.sendMessage(ErrorColor + "Biomes can only be precomputed in the Normal biome mode");
+            return true;
+        }
+
+        if (!isWorking.compareAndSet(false, true))
+        {
+            sender.sendMessage(ErrorColor + "Biomes are already being precomputed");
+            return true;
+        }
+
+        sender.sendMessage(MessageColor + "Precomputing biomes of " + world.getName() + ", this can take a while");
+        this.plugin.getServer().getScheduler().scheduleAsyncDelayedTask(this.plugin, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    PrecomputedBiomeMap.generate(world, area[0], area[1], area[2], area[3]);
+
+                    net.minecraft.server.World worldServer = ((CraftWorld) Bukkit.getWorld(world.getName())).getHandle();
+                    ((TCWorldChunkManager) worldServer.worldProvider.d).ReloadPrecomputedBiomes(world);
+
+                    sender.sendMessage(MessageColor + "Done. Biomes of " + world.getName() + " are precomputed");
+                } catch (IllegalArgumentException e)
+                {
+                    sender.sendMessage(ErrorColor + e.getMessage());
+                } catch (IOException e)
+                {
+                    sender.sendMessage(ErrorColor + "Failed to write the precomputed biomes: " + e.getMessage());
+                    e.printStackTrace();
+                } finally
+                {
+                    isWorking.set(false);
+                }
+            }
+        });
+
+        return true;
+    }
+}
@@ -0,0 +1,179 @@
+package com.khorn.terraincontrol.bukkit.commands;
+
+import com.khorn.terraincontrol.bukkit.BukkitWorld;
+import com.khorn.terraincontrol.bukkit.TCPerm;
+import com.khorn.terraincontrol.bukkit.TCPlugin;
+import com.khorn.terraincontrol.generator.PopulationScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+public class PregenerateCommand extends BaseCommand
+{
+    // Chunks per side of the square that is generated and populated in one tick
+    private static final int BatchSize = 16;
+
+    // Only used on the main thread
+    private static boolean isWorking;
+
+    public PregenerateCommand(TCPlugin _plugin)
+    {
+        super(_plugin);
+        name = "pregenerate";
+        perm = TCPerm.CMD_PREGENERATE.node;
+        usage = "pregenerate minX minZ maxX maxZ [World]";
+        workOnConsole = true;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, List<String> args)
+    {
+        if (args.size() < 4)
+        {
+            sender.sendMessage(ErrorColor + "Usage: /tc " + usage);
+            return true;
+        }
+
+        int[] area = new int[4];
+        try
+        {
+            for (int i = 0; i < 4; i++)
+                area[i] = Integer.parseInt(args.get(i));
+        } catch (NumberFormatException e)
+        {
+            sender.sendMessage(ErrorColor + "Wrong coordinates");
+            return true;
+        }
+        if (area[2] < area[0] || area[3] < area[1])
+        {
+            sender.sendMessage(ErrorColor + "The maximum coordinates must not be smaller than the minimum coordinates");
+            return true;
+        }
+
+        BukkitWorld world = this.getWorld(sender, args.size() > 4 ? args.get(4) : "");
+        if (world == null)
+        {
+            sender.sendMessage(ErrorColor + "You need to select world");
+            return true;
+        }
+
+        if (isWorking)
+        {
+            sender.sendMessage(ErrorColor + "An area is already being pregenerated");
+            return true;
+        }
+        isWorking = true;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Pregenerator pregenerator = new Pregenerator(sender, world, area[0] >> 4, area[1] >> 4, area[2] >> 4, area[3] >> 4, threads);
+        sender.sendMessage(MessageColor + "Pregenerating " + pregenerator.total + " chunks of " + world.getName() + " on " + threads + " threads");
+        pregenerator.taskId = this.plugin.getServer().getScheduler().scheduleSyncRepeatingTask(this.plugin, pregenerator, 1, 1);
+
+        return true;
+    }
+
+    /**
+     * Generates a batch of chunks every tick. The server populates a chunk
+     * once the chunks next to it are loaded. The world defers those
+     * populations during the tick, and they run on the PopulationScheduler
+     * while the main thread waits, so nothing else uses the world.
+     */
+    private class Pregenerator implements Runnable
+    {
+        private final CommandSender sender;
+        private final BukkitWorld world;
+        private final World bukkitWorld;
+        private final PopulationScheduler scheduler;
+        private final int minChunkX;
+        private final int maxChunkX;
+        private final int maxChunkZ;
+        private final long total;
+
+        private int taskId;
+        private int batchX;
+        private int batchZ;
+        private long done;
+        private int reportedPercent;
+
+        private Pregenerator(CommandSender sender, BukkitWorld world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int threads)
+        {
+            this.sender = sender;
+            this.world = world;
+            this.bukkitWorld = Bukkit.getWorld(world.getName());
+            this.scheduler = new PopulationScheduler(world, threads);
+            this.minChunkX = minChunkX;
+            this.maxChunkX = maxChunkX;
+            this.maxChunkZ = maxChunkZ;
+            this.total = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+            this.batchX = minChunkX;
+            this.batchZ = minChunkZ;
+        }
+
+        public void run()
+        {
+            int maxX = Math.min(this.batchX + BatchSize - 1, this.maxChunkX);
+            int maxZ = Math.min(this.batchZ + BatchSize - 1, this.maxChunkZ);
+
+            this.world.StartDeferringPopulation();
+            try
+            {
+                // One more row and column, so that the last chunks of the
+                // batch have the neighbours they need to be populated
+                for (int x = this.batchX; x <= maxX + 1; x++)
+                    for (int z = this.batchZ; z <= maxZ + 1; z++)
+                        this.bukkitWorld.loadChunk(x, z);
+
+                // Chunks loaded during the population are deferred as well
+                int[] chunks;
+                while ((chunks = this.world.TakeDeferredChunks()).length != 0)
+                    this.scheduler.populate(chunks);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                this.stop(ErrorColor + "Pregeneration of " + this.world.getName() + " was interrupted");
+                return;
+            } catch (RuntimeException e)
+            {
+                this.stop(ErrorColor + "Pregeneration of " + this.world.getName() + " failed, chunks near chunk " + this.batchX + "," + this.batchZ + " may not be populated: " + e.getMessage());
+                e.printStackTrace();
+                return;
+            } finally
+            {
+                this.world.StopDeferringPopulation();
+            }
+
+            for (int x = this.batchX; x <= maxX + 1; x++)
+                for (int z = this.batchZ; z <= maxZ + 1; z++)
+                    this.bukkitWorld.unloadChunkRequest(x, z, true);
+
+            this.done += (long) (maxX - this.batchX + 1) * (maxZ - this.batchZ + 1);
+            this.batchX += BatchSize;
+            if (this.batchX > this.maxChunkX)
+            {
+                this.batchX = this.minChunkX;
+                this.batchZ += BatchSize;
+            }
+
+            if (this.batchZ > this.maxChunkZ)
+            {
+                this.stop(MessageColor + "Done. " + this.total + " chunks of " + this.world.getName() + " are pregenerated");
+                return;
+            }
+            int percent = (int) (this.done * 100 / this.total);
+            if (percent / 10 > this.reportedPercent / 10)
+            {
+                this.reportedPercent = percent;
+                this.sender.sendMessage(MessageColor + "Pregenerated " + percent + "% of " + this.world.getName());
+            }
+        }
+
+        private void stop(String message)
+        {
+            plugin.getServer().getScheduler().cancelTask(this.taskId);
+            isWorking = false;
+            this.sender.sendMessage(message);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.khorn.terraincontrol.bukkit.commands;
+
+import com.khorn.terraincontrol.bukkit.BukkitWorld;
+import com.khorn.terraincontrol.bukkit.TCPerm;
+import com.khorn.terraincontrol.bukkit.TCPlugin;
+import com.khorn.terraincontrol.configuration.TCDefaultValues;
+import com.khorn.terraincontrol.generator.ResourceProfile;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProfileCommand extends BaseCommand
+{
+    public ProfileCommand(TCPlugin _plugin)
+    {
+        super(_plugin);
+        name = "profile";
+        perm = TCPerm.CMD_PROFILE.node;
+        usage = "profile [World] [biome_name] [-s time|calls|attempts|placed|blocks|reads] [-p page] [-csv] [-reset]";
+        workOnConsole = true;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, List<String> args)
+    {
+        ResourceProfile.Column sortBy = ResourceProfile.Column.Time;
+        int page = 1;
+        boolean csv = false;
+        boolean reset = false;
+        List<String> names = new ArrayList<String>();
+
+        for (int i = 0; i < args.size(); i++)
+        {
+            try
+            {
+                if (args.get(i).equals("-s"))
+                {
+                    sortBy = ResourceProfile.Column.fromString(args.get(++i));
+                    if (sortBy == null)
+                    {
+                        sender.sendMessage(ErrorColor + "Can't sort by " + args.get(i));
+                        return true;
+                    }
+                } else if (args.get(i).equals("-p"))
+                    page = Integer.parseInt(args.get(++i));
+                else if (args.get(i).equals("-csv"))
+                    csv = true;
+                else if (args.get(i).equals("-reset"))
+                    reset = true;
+                else
+                    names.add(args.get(i));
+            } catch (Exception e)
+            {
+                sender.sendMessage(ErrorColor + "Wrong value for " + args.get(i - 1));
+                return true;
+            }
+        }
+
+        // The world is optional, so the first name is only a world when one exists
+        BukkitWorld world = null;
+        if (names.size() > 0)
+            world = this.getWorld(sender, names.get(0));
+        if (world != null)
+            names.remove(0);
+        else
+            world = this.getWorld(sender, "");
+        if (world == null)
+        {
+            sender.sendMessage(ErrorColor + "You need to select world");
+            return true;
+        }
+        String biomeName = names.size() > 0 ? names.get(0).replace('_', ' ') : null;
+
+        ResourceProfile profile = ResourceProfile.get(world.getName());
+        if (reset)
+        {
+            profile.reset();
+            sender.sendMessage(MessageColor + "Resource profile of " + world.getName() + " is reset");
+            return true;
+        }
+
+        List<ResourceProfile.Entry> entries = profile.getEntries(biomeName, sortBy);
+        if (entries.size() == 0)
+        {
+            if (!world.getSettings().profileResources)
+                sender.sendMessage(ErrorColor + "Nothing profiled yet, set " + TCDefaultValues.ProfileResources.name() + " to true in the world settings");
+            else
+                sender.sendMessage(ErrorColor + "Nothing profiled yet" + (biomeName == null ? "" : " in " + biomeName));
+            return true;
+        }
+
+        if (csv)
+        {
+            File file = new File(world.getSettings().SettingsDir, TCDefaultValues.ResourceProfileName.stringValue());
+            try
+            {
+                ResourceProfile.writeCsv(entries, file);
+                sender.sendMessage(MessageColor + "Saved " + entries.size() + " resources to " + ValueColor + file.getPath());
+            } catch (IOException e)
+            {
+                sender.sendMessage(ErrorColor + "Failed to write " + file.getName() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+            return true;
+        }
+
+        List<String> lines = new ArrayList<String>();
+        for (ResourceProfile.Entry entry : entries)
+        {
+            long calls = Math.max(1, entry.getInvocations());
+            lines.add(ValueColor + entry.biomeName + " #" + entry.line + " " + entry.resourceString + MessageColor + " " + (entry.getNanos() / 1000000) + " ms, " + (entry.getNanos() / calls / 1000) + " us per chunk, " + entry.getInvocations() + " calls, "
+                    + entry.getPlacements() + "/" + entry.getAttempts() + " placed, " + entry.getBlocks() + " blocks, " + entry.getReads() + " reads");
+        }
+        this.ListMessage(sender, lines, page, "Resources of " + world.getName() + " by " + sortBy.name().toLowerCase());
+        return true;
+    }
+}
@@ -53,6 +53,10 @@ public class TCCommandExecutor implements CommandExecutor
         this.AddCommand(new SpawnCommand(plugin));
         this.AddCommand(new MapCommand(plugin));
         this.AddCommand(new ReplaceBiomeCommand(plugin));
+        this.AddCommand(new PrecomputeCommand(plugin));
+        this.AddCommand(new PregenerateCommand(plugin));
+        this.AddCommand(new LocateCommand(plugin));
+        this.AddCommand(new ProfileCommand(plugin));
         this.AddCommand(this.helpCommand);
     }
 
@@ -0,0 +1,291 @@
+package com.khorn.terraincontrol.configuration;
+
+import com.khorn.terraincontrol.DefaultMaterial;
+import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.TestWorld;
+import com.khorn.terraincontrol.generator.resourcegens.AboveWaterGen;
+import com.khorn.terraincontrol.generator.resourcegens.CactusGen;
+import com.khorn.terraincontrol.generator.resourcegens.GrassGen;
+import com.khorn.terraincontrol.generator.resourcegens.LiquidGen;
+import com.khorn.terraincontrol.generator.resourcegens.OreGen;
+import com.khorn.terraincontrol.generator.resourcegens.PlantGen;
+import com.khorn.terraincontrol.generator.resourcegens.ReedGen;
+import com.khorn.terraincontrol.generator.resourcegens.SmallLakeGen;
+import com.khorn.terraincontrol.generator.resourcegens.UnderWaterOreGen;
+import com.khorn.terraincontrol.generator.resourcegens.UndergroundLakeGen;
+import com.khorn.terraincontrol.generator.resourcegens.VinesGen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that TerrainStageBlockReplace gives the same chunks as doing all
+ * ReplacedBlocks after the population. Populates a few chunks of a random
+ * terrain with the resources of a default biome twice:
+ * <ul>
+ * <li>Like before: every chunk is populated and then all its blocks are
+ * replaced, as DoBlockReplace does.</li>
+ * <li>With the terrain stage: the rules that BiomeConfig allows are done in
+ * the raw terrain first, as ChunkProviderTC does, and the other rules after
+ * the population.</li>
+ * </ul>
+ * Both must give the same blocks. The same check without the population
+ * blocks must find a difference, so the check itself works.
+ * <p/>
+ * Exits with 1 if a check fails. Run with the seed as argument, 0 by default.
+ */
+public class TerrainStageReplaceTest
+{
+    private static final int Chunks = 4;
+    private static final int WaterLevel = 62;
+
+    public static void main(String[] args) throws InvalidResourceException
+    {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 0;
+        Resource[] resources = createResources();
+
+        boolean[] populationBlocks = new boolean[256];
+        for (Resource resource : resources)
+            WorldConfig.addPopulationBlocks(populationBlocks, resource);
+
+        short[][] rows = createReplaceRules();
+        ChunkArea oldPath = generate(seed, resources, rows, null);
+        ChunkArea newPath = generate(seed, resources, rows, populationBlocks);
+        // Without the population blocks, blocks used by resources go to the terrain stage
+        ChunkArea unchecked = generate(seed, resources, rows, new boolean[256]);
+
+        boolean passed = true;
+        if (newPath.terrainRules == 0)
+        {
+            System.out.println("FAILED: no rule is done in the terrain stage");
+            passed = false;
+        }
+        int differences = oldPath.countDifferences(newPath);
+        if (differences != 0)
+        {
+            System.out.println("FAILED: " + differences + " blocks differ from the old path");
+            passed = false;
+        }
+        if (oldPath.countDifferences(unchecked) == 0)
+        {
+            System.out.println("FAILED: replacing every rule in the terrain stage gives the same blocks");
+            passed = false;
+        }
+        if (!passed)
+            System.exit(1);
+        System.out.println("OK: " + newPath.terrainRules + " of " + (newPath.terrainRules + newPath.populationRules) + " rules in the terrain stage, same blocks as the old path");
+    }
+
+    /**
+     * Generates the chunks. With populationBlocks null all rules are done
+     * after the population.
+     */
+    private static ChunkArea generate(long seed, Resource[] resources, short[][] rows, boolean[] populationBlocks)
+    {
+        ChunkArea world = new ChunkArea();
+        world.generateTerrain(new Random(seed));
+
+        boolean[] terrainStage = new boolean[rows.length];
+        boolean[] postPopulation = new boolean[rows.length];
+        for (int id = 0; id < rows.length; id++)
+        {
+            if (rows[id] == null)
+                continue;
+            if (populationBlocks != null && BiomeConfig.canReplaceInTerrain(id, rows[id], populationBlocks))
+            {
+                terrainStage[id] = true;
+                world.terrainRules++;
+            } else
+            {
+                postPopulation[id] = true;
+                world.populationRules++;
+            }
+        }
+
+        // The raw terrain only holds block ids
+        world.replace(new ReplaceTable(rows, terrainStage, world.getHeight()), 0, 0, Chunks * 16, false);
+
+        // The last row and column of chunks are only populated into
+        ReplaceTable replaceTable = new ReplaceTable(rows, postPopulation, world.getHeight());
+        Random random = new Random();
+        for (int chunkX = 0; chunkX < Chunks - 1; chunkX++)
+        {
+            for (int chunkZ = 0; chunkZ < Chunks - 1; chunkZ++)
+            {
+                random.setSeed(chunkX * 341873128712L + chunkZ * 132897987541L ^ seed);
+                for (Resource resource : resources)
+                    resource.process(world, random, chunkX, chunkZ);
+                world.replace(replaceTable, chunkX * 16, chunkZ * 16, 16, true);
+            }
+        }
+        return world;
+    }
+
+    // Terrain blocks replaced with blocks that the resources do and don't use
+    private static short[][] createReplaceRules()
+    {
+        short[][] rows = new short[256][];
+        addRule(rows, DefaultMaterial.BEDROCK, DefaultMaterial.OBSIDIAN);
+        addRule(rows, DefaultMaterial.SANDSTONE, DefaultMaterial.BRICK);
+        addRule(rows, DefaultMaterial.STATIONARY_WATER, DefaultMaterial.STATIONARY_LAVA);
+        addRule(rows, DefaultMaterial.STONE, DefaultMaterial.NETHERRACK);
+        addRule(rows, DefaultMaterial.GRASS, DefaultMaterial.MYCEL);
+        addRule(rows, DefaultMaterial.DIRT, DefaultMaterial.CLAY);
+        addRule(rows, DefaultMaterial.SAND, DefaultMaterial.SOUL_SAND);
+        addRule(rows, DefaultMaterial.GRAVEL, DefaultMaterial.NETHER_BRICK);
+        return rows;
+    }
+
+    private static void addRule(short[][] rows, DefaultMaterial from, DefaultMaterial to)
+    {
+        rows[from.id] = new short[1 << ChunkArea.HeightBits];
+        Arrays.fill(rows[from.id], (short) (to.id << 4));
+    }
+
+    // The resources of BiomeConfig.CreateDefaultResources that run without a server
+    private static Resource[] createResources() throws InvalidResourceException
+    {
+        int height = 1 << ChunkArea.HeightBits;
+        ArrayList<Resource> resources = new ArrayList<Resource>();
+        resources.add(load(new SmallLakeGen(), DefaultMaterial.WATER.id, 4, 7, 8, height - 8));
+        resources.add(load(new SmallLakeGen(), DefaultMaterial.LAVA.id, 2, 3, 8, height - 8));
+        resources.add(load(new UndergroundLakeGen(), 50, 60, 2, 5, 0, 50));
+        resources.add(load(new OreGen(), DefaultMaterial.DIRT.id, 32, 20, 100, 0, height, DefaultMaterial.STONE.id));
+        resources.add(load(new OreGen(), DefaultMaterial.GRAVEL.id, 32, 10, 100, 0, height, DefaultMaterial.STONE.id));
+        resources.add(load(new OreGen(), DefaultMaterial.COAL_ORE.id, 16, 20, 100, 0, height, DefaultMaterial.STONE.id));
+        resources.add(load(new OreGen(), DefaultMaterial.IRON_ORE.id, 8, 20, 100, 0, height / 2, DefaultMaterial.STONE.id));
+        resources.add(load(new UnderWaterOreGen(), DefaultMaterial.SAND.id, 7, 4, 100, DefaultMaterial.DIRT.id, DefaultMaterial.GRASS.id));
+        resources.add(load(new UnderWaterOreGen(), DefaultMaterial.CLAY.id, 4, 2, 100, DefaultMaterial.DIRT.id, DefaultMaterial.CLAY.id));
+        resources.add(load(new PlantGen(), DefaultMaterial.YELLOW_FLOWER.id, 4, 100, 0, height, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id));
+        resources.add(load(new GrassGen(), DefaultMaterial.LONG_GRASS.id, 1, 20, 100, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id));
+        resources.add(load(new ReedGen(), DefaultMaterial.SUGAR_CANE_BLOCK.id, 10, 100, 0, height, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id, DefaultMaterial.SAND.id));
+        resources.add(load(new CactusGen(), DefaultMaterial.CACTUS.id, 5, 100, 0, height, DefaultMaterial.SAND.id));
+        resources.add(load(new AboveWaterGen(), DefaultMaterial.WATER_LILY.id, 4, 100));
+        resources.add(load(new VinesGen(), 10, 100, 64, height));
+        resources.add(load(new LiquidGen(), DefaultMaterial.WATER.id, 20, 100, 8, height - 8, DefaultMaterial.STONE.id));
+        resources.add(load(new LiquidGen(), DefaultMaterial.LAVA.id, 10, 100, 8, height - 16, DefaultMaterial.STONE.id));
+        return resources.toArray(new Resource[resources.size()]);
+    }
+
+    private static Resource load(Resource resource, Object... args) throws InvalidResourceException
+    {
+        String[] stringArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++)
+            stringArgs[i] = "" + args[i];
+        resource.load(Arrays.asList(stringArgs));
+        return resource;
+    }
+
+    /**
+     * A square of chunks from chunk 0,0 that stores its blocks. Blocks
+     * outside of it are air and can't be set.
+     */
+    private static class ChunkArea extends TestWorld
+    {
+        private static final int HeightBits = 7;
+        private static final int Size = Chunks * 16;
+
+        private final byte[] ids = new byte[Size * Size << HeightBits];
+        private final byte[] data = new byte[Size * Size << HeightBits];
+        private int terrainRules;
+        private int populationRules;
+
+        private ChunkArea()
+        {
+            super(HeightBits);
+        }
+
+        private static int getIndex(int x, int y, int z)
+        {
+            if (x < 0 || z < 0 || x >= Size || z >= Size || y < 0 || y >= 1 << HeightBits)
+                return -1;
+            return (x * Size + z) << HeightBits | y;
+        }
+
+        @Override
+        public int getTypeId(int x, int y, int z)
+        {
+            int index = getIndex(x, y, z);
+            return index == -1 ? DefaultMaterial.AIR.id : this.ids[index] & 0xFF;
+        }
+
+        @Override
+        public void setBlock(int x, int y, int z, int typeId, int data, boolean updateLight, boolean applyPhysics, boolean notifyPlayers)
+        {
+            int index = getIndex(x, y, z);
+            if (index == -1)
+                return;
+            this.ids[index] = (byte) typeId;
+            this.data[index] = (byte) data;
+        }
+
+        // Hills of grass and dirt on stone, sandstone under sand and
+        // water below the water level
+        private void generateTerrain(Random random)
+        {
+            for (int x = 0; x < Size; x++)
+            {
+                for (int z = 0; z < Size; z++)
+                {
+                    int top = 54 + (int) (8 * Math.sin(x / 7.0) + 6 * Math.cos(z / 5.0)) + random.nextInt(3);
+                    boolean beach = top <= WaterLevel + 1;
+                    for (int y = 0; y <= Math.max(top, WaterLevel); y++)
+                    {
+                        DefaultMaterial material;
+                        if (y == 0)
+                            material = DefaultMaterial.BEDROCK;
+                        else if (y > top)
+                            material = DefaultMaterial.STATIONARY_WATER;
+                        else if (y == top)
+                            material = beach ? DefaultMaterial.SAND : DefaultMaterial.GRASS;
+                        else if (y > top - 4)
+                            material = beach ? DefaultMaterial.SANDSTONE : DefaultMaterial.DIRT;
+                        else
+                            material = DefaultMaterial.STONE;
+                        this.setBlock(x, y, z, material.id, 0);
+                    }
+                }
+            }
+        }
+
+        // Replaces the blocks of the square from x, z
+        private void replace(ReplaceTable replaceTable, int startX, int startZ, int size, boolean withData)
+        {
+            for (int x = startX; x < startX + size; x++)
+            {
+                for (int z = startZ; z < startZ + size; z++)
+                {
+                    for (int y = replaceTable.getMinY(); y <= replaceTable.getMaxY(); y++)
+                    {
+                        int blockId = this.getTypeId(x, y, z);
+                        if (!replaceTable.isCandidate(blockId))
+                            continue;
+                        int replaceTo = replaceTable.get(blockId, y);
+                        if (replaceTo != -1)
+                            this.setBlock(x, y, z, replaceTo >> 4, withData ? replaceTo & 0xF : this.data[getIndex(x, y, z)]);
+                    }
+                }
+            }
+        }
+
+        // Only the populated chunks, the others are replaced when they are populated
+        private int countDifferences(ChunkArea other)
+        {
+            int count = 0;
+            for (int x = 0; x < Size - 16; x++)
+            {
+                for (int z = 0; z < Size - 16; z++)
+                {
+                    for (int y = 0; y < 1 << HeightBits; y++)
+                    {
+                        int i = getIndex(x, y, z);
+                        if (this.ids[i] != other.ids[i] || this.data[i] != other.data[i])
+                            count++;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+}
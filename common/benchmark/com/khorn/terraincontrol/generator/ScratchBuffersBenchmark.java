@@ -0,0 +1,337 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.DefaultMaterial;
+import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.TerrainControl;
+import com.khorn.terraincontrol.configuration.PlannedResource;
+import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.TCDefaultValues;
+import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.resourcegens.OreGen;
+import com.khorn.terraincontrol.generator.resourcegens.ResourceType;
+import com.khorn.terraincontrol.generator.resourcegens.SmallLakeGen;
+import com.khorn.terraincontrol.generator.resourcegens.UndergroundLakeGen;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the bytes allocated per populated chunk by the lakes and ores of
+ * a default biome. Before runs copies of the resources as they were before
+ * ScratchBuffers, with a new plan for every resource and a new lake buffer
+ * for every spawn. After runs the resources of the plugin. The world is
+ * flat stone and drops the placed blocks, so only the resources allocate.
+ * <p/>
+ * Needs a JVM with com.sun.management.ThreadMXBean. Run with the number of
+ * chunks as argument, 10000 by default.
+ */
+public class ScratchBuffersBenchmark
+{
+    private static final int WorldHeight = 128;
+
+    public static void main(String[] args) throws InvalidResourceException
+    {
+        int chunks = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Resource[][] resources = { createResources(true), createResources(false) };
+        LocalWorld world = new FlatWorld();
+
+        // Once for the JIT and the classes, then measured
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (int mode = 0; mode < 2; mode++)
+            {
+                long threadId = Thread.currentThread().getId();
+                long bytes = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                populate(world, resources[mode], chunks);
+                long nanos = System.nanoTime() - start;
+                bytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+                if (pass == 1)
+                    System.out.println((mode == 0 ? "Before" : "After ") + ": " + bytes / chunks + " bytes and " + nanos / 1000 / chunks + " us per chunk");
+            }
+        }
+    }
+
+    private static void populate(LocalWorld world, Resource[] resources, int chunks)
+    {
+        Random random = new Random();
+        for (int i = 0; i < chunks; i++)
+        {
+            int chunkX = i % 100;
+            int chunkZ = i / 100;
+            random.setSeed(chunkX * 341873128712L + chunkZ * 132897987541L);
+            for (Resource resource : resources)
+                resource.process(world, random, chunkX, chunkZ);
+        }
+    }
+
+    // The lakes and ores of BiomeConfig.CreateDefaultResources
+    private static Resource[] createResources(boolean before) throws InvalidResourceException
+    {
+        ArrayList<Resource> resources = new ArrayList<Resource>();
+        resources.add(load(before ? new BeforeSmallLakeGen() : new SmallLakeGen(), DefaultMaterial.WATER.id, TCDefaultValues.SmallLakeWaterFrequency.intValue(), TCDefaultValues.SmallLakeWaterRarity.intValue(), TCDefaultValues.SmallLakeMinAltitude.intValue(), TCDefaultValues.SmallLakeMaxAltitude.intValue()));
+        resources.add(load(before ? new BeforeSmallLakeGen() : new SmallLakeGen(), DefaultMaterial.LAVA.id, TCDefaultValues.SmallLakeLavaFrequency.intValue(), TCDefaultValues.SmallLakeLavaRarity.intValue(), TCDefaultValues.SmallLakeMinAltitude.intValue(), TCDefaultValues.SmallLakeMaxAltitude.intValue()));
+        resources.add(load(before ? new BeforeUndergroundLakeGen() : new UndergroundLakeGen(), TCDefaultValues.undergroundLakeMinSize.intValue(), TCDefaultValues.undergroundLakeMaxSize.intValue(), TCDefaultValues.undergroundLakeFrequency.intValue(), TCDefaultValues.undergroundLakeRarity.intValue(), TCDefaultValues.undergroundLakeMinAltitude.intValue(), TCDefaultValues.undergroundLakeMaxAltitude.intValue()));
+        resources.add(load(createOre(before), DefaultMaterial.DIRT.id, TCDefaultValues.dirtDepositSize.intValue(), TCDefaultValues.dirtDepositFrequency.intValue(), TCDefaultValues.dirtDepositRarity.intValue(), TCDefaultValues.dirtDepositMinAltitude.intValue(), WorldHeight, DefaultMaterial.STONE.id));
+        resources.add(load(createOre(before), DefaultMaterial.GRAVEL.id, TCDefaultValues.gravelDepositSize.intValue(), TCDefaultValues.gravelDepositFrequency.intValue(), TCDefaultValues.gravelDepositRarity.intValue(), TCDefaultValues.gravelDepositMinAltitude.intValue(), WorldHeight, DefaultMaterial.STONE.id));
+        resources.add(load(createOre(before), DefaultMaterial.CLAY.id, TCDefaultValues.clayDepositSize.intValue(), TCDefaultValues.clayDepositFrequency.intValue(), TCDefaultValues.clayDepositRarity.intValue(), TCDefaultValues.clayDepositMinAltitude.intValue(), WorldHeight, DefaultMaterial.STONE.id));
+        resources.add(load(createOre(before), DefaultMaterial.COAL_ORE.id, TCDefaultValues.coalDepositSize.intValue(), TCDefaultValues.coalDepositFrequency.intValue(), TCDefaultValues.coalDepositRarity.intValue(), TCDefaultValues.coalDepositMinAltitude.intValue(), WorldHeight, DefaultMaterial.STONE.id));
+        resources.add(load(createOre(before), DefaultMaterial.IRON_ORE.id, TCDefaultValues.ironDepositSize.intValue(), TCDefaultValues.ironDepositFrequency.intValue(), TCDefaultValues.ironDepositRarity.intValue(), TCDefaultValues.ironDepositMinAltitude.intValue(), WorldHeight / 2, DefaultMaterial.STONE.id));
+        resources.add(load(createOre(before), DefaultMaterial.GOLD_ORE.id, TCDefaultValues.goldDepositSize.intValue(), TCDefaultValues.goldDepositFrequency.intValue(), TCDefaultValues.goldDepositRarity.intValue(), TCDefaultValues.goldDepositMinAltitude.intValue(), WorldHeight / 4, DefaultMaterial.STONE.id));
+        resources.add(load(createOre(before), DefaultMaterial.REDSTONE_ORE.id, TCDefaultValues.redstoneDepositSize.intValue(), TCDefaultValues.redstoneDepositFrequency.intValue(), TCDefaultValues.redstoneDepositRarity.intValue(), TCDefaultValues.redstoneDepositMinAltitude.intValue(), WorldHeight / 8, DefaultMaterial.STONE.id));
+        resources.add(load(createOre(before), DefaultMaterial.DIAMOND_ORE.id, TCDefaultValues.diamondDepositSize.intValue(), TCDefaultValues.diamondDepositFrequency.intValue(), TCDefaultValues.diamondDepositRarity.intValue(), TCDefaultValues.diamondDepositMinAltitude.intValue(), WorldHeight / 8, DefaultMaterial.STONE.id));
+        return resources.toArray(new Resource[resources.size()]);
+    }
+
+    private static Resource createOre(boolean before)
+    {
+        return before ? new BeforeOreGen() : new OreGen();
+    }
+
+    private static Resource load(Resource resource, Object... args) throws InvalidResourceException
+    {
+        String[] stringArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++)
+            stringArgs[i] = "" + args[i];
+        resource.load(Arrays.asList(stringArgs));
+        return resource;
+    }
+
+    // Before ScratchBuffers, every planned resource made a new plan in every
+    // chunk and never gave it back
+
+    private static class BeforeOreGen extends OreGen
+    {
+        @Override
+        protected ResourcePlan createPlan(LocalWorld world)
+        {
+            return new ResourcePlan(world, false, false, false);
+        }
+
+        @Override
+        public void process(LocalWorld world, Random random, int chunkX, int chunkZ)
+        {
+            plan(world, random, chunkX, chunkZ).apply();
+        }
+    }
+
+    private static class BeforeUndergroundLakeGen extends UndergroundLakeGen
+    {
+        @Override
+        protected ResourcePlan createPlan(LocalWorld world)
+        {
+            return new ResourcePlan(world, false, false, false);
+        }
+
+        @Override
+        public void process(LocalWorld world, Random random, int chunkX, int chunkZ)
+        {
+            plan(world, random, chunkX, chunkZ).apply();
+        }
+    }
+
+    /**
+     * SmallLakeGen as it was before ScratchBuffers, with a new buffer for
+     * every spawn.
+     */
+    private static class BeforeSmallLakeGen extends PlannedResource
+    {
+        private final boolean[] BooleanBuffer = new boolean[2048];
+        private int blockId;
+        private int blockData;
+        private int minAltitude;
+        private int maxAltitude;
+
+        @Override
+        public void spawn(ResourcePlan plan, Random rand, int x, int z)
+        {
+            x -= 8;
+            z -= 8;
+
+            int y = rand.nextInt(maxAltitude - minAltitude) + minAltitude;
+
+            // Search any free space
+            while ((y > 5) && (plan.isEmpty(x, y, z)))
+                y--;
+
+            if (y <= 4)
+                return;
+
+            // y = floor
+            y -= 4;
+
+            synchronized (BooleanBuffer)
+            {
+                boolean[] BooleanBuffer = new boolean[2048];
+                int i = rand.nextInt(4) + 4;
+                for (int j = 0; j < i; j++)
+                {
+                    double d1 = rand.nextDouble() * 6.0D + 3.0D;
+                    double d2 = rand.nextDouble() * 4.0D + 2.0D;
+                    double d3 = rand.nextDouble() * 6.0D + 3.0D;
+
+                    double d4 = rand.nextDouble() * (16.0D - d1 - 2.0D) + 1.0D + d1 / 2.0D;
+                    double d5 = rand.nextDouble() * (8.0D - d2 - 4.0D) + 2.0D + d2 / 2.0D;
+                    double d6 = rand.nextDouble() * (16.0D - d3 - 2.0D) + 1.0D + d3 / 2.0D;
+
+                    for (int k = 1; k < 15; k++)
+                        for (int m = 1; m < 15; m++)
+                            for (int n = 1; n < 7; n++)
+                            {
+                                double d7 = (k - d4) / (d1 / 2.0D);
+                                double d8 = (n - d5) / (d2 / 2.0D);
+                                double d9 = (m - d6) / (d3 / 2.0D);
+                                double d10 = d7 * d7 + d8 * d8 + d9 * d9;
+                                if (d10 >= 1.0D)
+                                    continue;
+                                BooleanBuffer[((k * 16 + m) * 8 + n)] = true;
+                            }
+                }
+                int i1;
+                int i2;
+                for (int j = 0; j < 16; j++)
+                {
+                    for (i1 = 0; i1 < 16; i1++)
+                    {
+                        for (i2 = 0; i2 < 8; i2++)
+                        {
+                            boolean flag = (!BooleanBuffer[((j * 16 + i1) * 8 + i2)])
+                                    && (((j < 15) && (BooleanBuffer[(((j + 1) * 16 + i1) * 8 + i2)])) || ((j > 0) && (BooleanBuffer[(((j - 1) * 16 + i1) * 8 + i2)]))
+                                            || ((i1 < 15) && (BooleanBuffer[((j * 16 + (i1 + 1)) * 8 + i2)])) || ((i1 > 0) && (BooleanBuffer[((j * 16 + (i1 - 1)) * 8 + i2)]))
+                                            || ((i2 < 7) && (BooleanBuffer[((j * 16 + i1) * 8 + (i2 + 1))])) || ((i2 > 0) && (BooleanBuffer[((j * 16 + i1) * 8 + (i2 - 1))])));
+
+                            if (flag)
+                            {
+                                DefaultMaterial localMaterial = plan.getMaterial(x + j, y + i2, z + i1);
+                                if ((i2 >= 4) && (localMaterial.isLiquid()))
+                                    return;
+                                if ((i2 < 4) && (!localMaterial.isSolid()) && (plan.getTypeId(x + j, y + i2, z + i1) != blockId))
+                                    return;
+                            }
+                        }
+                    }
+
+                }
+
+                for (int j = 0; j < 16; j++)
+                {
+                    for (i1 = 0; i1 < 16; i1++)
+                    {
+                        for (i2 = 0; i2 < 4; i2++)
+                        {
+                            if (BooleanBuffer[((j * 16 + i1) * 8 + i2)])
+                            {
+                                plan.setBlock(x + j, y + i2, z + i1, blockId, blockData);
+                                BooleanBuffer[((j * 16 + i1) * 8 + i2)] = false;
+                            }
+                        }
+                        for (i2 = 4; i2 < 8; i2++)
+                        {
+                            if (BooleanBuffer[((j * 16 + i1) * 8 + i2)])
+                            {
+                                plan.setBlock(x + j, y + i2, z + i1, 0, 0);
+                                BooleanBuffer[((j * 16 + i1) * 8 + i2)] = false;
+                            }
+                        }
+                    }
+                }
+
+            }
+        }
+
+        @Override
+        protected ResourcePlan createPlan(LocalWorld world)
+        {
+            return new ResourcePlan(world, false, false, true);
+        }
+
+        @Override
+        public void process(LocalWorld world, Random random, int chunkX, int chunkZ)
+        {
+            plan(world, random, chunkX, chunkZ).apply();
+        }
+
+        @Override
+        public void load(List<String> args) throws InvalidResourceException
+        {
+            assureSize(5, args);
+            blockId = getBlockId(args.get(0));
+            blockData = getBlockData(args.get(0));
+            frequency = getInt(args.get(1), 1, 100);
+            rarity = getInt(args.get(2), 1, 100);
+            minAltitude = getInt(args.get(3), TerrainControl.worldDepth, TerrainControl.worldHeight);
+            maxAltitude = getInt(args.get(4), minAltitude + 1, TerrainControl.worldHeight);
+        }
+
+        @Override
+        public ResourceType getType()
+        {
+            return ResourceType.biomeConfigResource;
+        }
+
+        @Override
+        public String makeString()
+        {
+            return "SmallLake(" + makeMaterial(blockId, blockData) + "," + frequency + "," + rarity + "," + minAltitude + "," + maxAltitude + ")";
+        }
+    }
+
+    /**
+     * Stone up to y 63 with a dirt top and air above it. Placed blocks are
+     * dropped and nothing is allocated.
+     */
+    private static class FlatWorld extends TestWorld
+    {
+        private static final int SurfaceY = 63;
+
+        private FlatWorld()
+        {
+            super(7);
+        }
+
+        @Override
+        public int getTypeId(int x, int y, int z)
+        {
+            if (y < 0 || y > SurfaceY)
+                return DefaultMaterial.AIR.id;
+            if (y == 0)
+                return DefaultMaterial.BEDROCK.id;
+            return y < SurfaceY - 3 ? DefaultMaterial.STONE.id : DefaultMaterial.DIRT.id;
+        }
+
+        @Override
+        public void setBlock(int x, int y, int z, int typeId, int data, boolean updateLight, boolean applyPhysics, boolean notifyPlayers)
+        {
+        }
+
+        @Override
+        public void setBlocks(BlockBatch batch)
+        {
+        }
+
+        @Override
+        public int getLiquidHeight(int x, int z)
+        {
+            return -1;
+        }
+
+        @Override
+        public int getSolidHeight(int x, int z)
+        {
+            return SurfaceY + 1;
+        }
+
+        @Override
+        public int getHighestBlockYAt(int x, int z)
+        {
+            return SurfaceY + 1;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.DefaultMaterial;
+import com.khorn.terraincontrol.LocalBiome;
+import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.configuration.WorldConfig;
+import com.khorn.terraincontrol.generator.resourcegens.TreeType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A world without a server for the benchmarks and tests. Subclasses only
+ * store the blocks. The heights are searched in the blocks, every column
+ * has biome 0, and the default generators place nothing.
+ */
+public abstract class TestWorld implements LocalWorld
+{
+    private final int heightBits;
+
+    protected TestWorld(int heightBits)
+    {
+        this.heightBits = heightBits;
+    }
+
+    public abstract int getTypeId(int x, int y, int z);
+
+    public abstract void setBlock(int x, int y, int z, int typeId, int data, boolean updateLight, boolean applyPhysics, boolean notifyPlayers);
+
+    public boolean isEmpty(int x, int y, int z)
+    {
+        return this.getTypeId(x, y, z) == DefaultMaterial.AIR.id;
+    }
+
+    public DefaultMaterial getMaterial(int x, int y, int z)
+    {
+        return DefaultMaterial.getMaterial(this.getTypeId(x, y, z));
+    }
+
+    public void setBlock(int x, int y, int z, int typeId, int data)
+    {
+        this.setBlock(x, y, z, typeId, data, false, false, false);
+    }
+
+    public void setBlocks(BlockBatch batch)
+    {
+        for (int chunk = 0; chunk < batch.getChunkCount(); chunk++)
+        {
+            int[] blocks = batch.getBlocks(chunk);
+            int x = batch.getChunkX(chunk) << 4;
+            int z = batch.getChunkZ(chunk) << 4;
+            for (int i = 0; i < batch.getSize(chunk); i += 2)
+                this.setBlock(x + PendingBlocks.getX(blocks, i), PendingBlocks.getY(blocks, i), z + PendingBlocks.getZ(blocks, i), PendingBlocks.getTypeId(blocks, i), PendingBlocks.getData(blocks, i), batch.updateLight(), false, batch.notifyPlayers());
+        }
+    }
+
+    public int getLiquidHeight(int x, int z)
+    {
+        for (int y = this.getHeight() - 1; y > 0; y--)
+            if (this.getMaterial(x, y, z).isLiquid())
+                return y;
+        return -1;
+    }
+
+    public int getSolidHeight(int x, int z)
+    {
+        for (int y = this.getHeight() - 1; y > 0; y--)
+            if (this.getMaterial(x, y, z).isSolid())
+                return y;
+        return -1;
+    }
+
+    public int getHighestBlockYAt(int x, int z)
+    {
+        for (int y = this.getHeight() - 1; y >= 0; y--)
+            if (!this.isEmpty(x, y, z))
+                return y + 1;
+        return 0;
+    }
+
+    public int getLightLevel(int x, int y, int z)
+    {
+        return y >= this.getHighestBlockYAt(x, z) ? 15 : 0;
+    }
+
+    public boolean isLoaded(int x, int y, int z)
+    {
+        return true;
+    }
+
+    public void setChunksCreations(boolean createNew)
+    {
+    }
+
+    public void StartPopulation(int chunkX, int chunkZ)
+    {
+    }
+
+    public void EndPopulation()
+    {
+    }
+
+    public String getName()
+    {
+        return this.getClass().getSimpleName();
+    }
+
+    public long getSeed()
+    {
+        return 0;
+    }
+
+    public int getHeight()
+    {
+        return 1 << this.heightBits;
+    }
+
+    public int getHeightBits()
+    {
+        return this.heightBits;
+    }
+
+    public void setHeightBits(int heightBits)
+    {
+    }
+
+    /**
+     * Null, test worlds have no settings.
+     */
+    public WorldConfig getSettings()
+    {
+        return null;
+    }
+
+    // Every column has biome 0
+
+    public int getMaxBiomesCount()
+    {
+        return 256;
+    }
+
+    public int[] getBiomesUnZoomed(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return this.getBiomes(biomeArray, x, z, x_size, z_size);
+    }
+
+    public float[] getTemperatures(int x, int z, int x_size, int z_size)
+    {
+        float[] temperatures = new float[x_size * z_size];
+        Arrays.fill(temperatures, 0.5F);
+        return temperatures;
+    }
+
+    public int[] getBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if (biomeArray == null || biomeArray.length < x_size * z_size)
+            return new int[x_size * z_size];
+        Arrays.fill(biomeArray, 0, x_size * z_size, 0);
+        return biomeArray;
+    }
+
+    public int[] getBiomes(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        return this.getBiomes(biomeArray, x, z, x_size, z_size);
+    }
+
+    public int[] getBiomes(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
+    {
+        return this.getBiomes(biomeArray, x, z, x_size, z_size);
+    }
+
+    public int getCalculatedBiomeId(int x, int z)
+    {
+        return 0;
+    }
+
+    // There are no LocalBiome objects without a server
+
+    public LocalBiome AddBiome(String name, int id)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public LocalBiome getNullBiome(String name)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public int getFreeBiomeId()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public LocalBiome getBiomeById(int id)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public int getBiomeIdByName(String name)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public ArrayList<LocalBiome> getDefaultBiomes()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public LocalBiome getCalculatedBiome(int x, int z)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public LocalBiome getBiome(int x, int z)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    // No structures, dungeons or trees, and the ReplacedBlocks are up to the test
+
+    public void PrepareTerrainObjects(int x, int z, byte[] chunkArray, boolean dry)
+    {
+    }
+
+    public void PlaceDungeons(Random rand, int x, int y, int z)
+    {
+    }
+
+    public boolean PlaceTree(TreeType type, Random rand, int x, int y, int z)
+    {
+        return false;
+    }
+
+    public boolean PlaceTerrainObjects(Random rand, int chunk_x, int chunk_z)
+    {
+        return false;
+    }
+
+    public void DoBlockReplace()
+    {
+    }
+
+    public void DoBiomeReplace()
+    {
+    }
+}
@@ -4,9 +4,22 @@ public interface IBiomeManager
 {
     public int[] getBiomesUnZoomedTC(int[] biomeArray, int x, int z, int x_size, int z_size);
 
+    // Same as the int[] version, with one byte per biome id. Read the ids with & 0xFF.
+    public byte[] getBiomesUnZoomedTC(byte[] biomeArray, int x, int z, int x_size, int z_size);
+
     public float[] getTemperaturesTC(int x, int z, int x_size, int z_size);
 
     public int[] getBiomesTC(int[] biomeArray, int x, int z, int x_size, int z_size);
 
+    public byte[] getBiomesTC(byte[] biomeArray, int x, int z, int x_size, int z_size);
+
+    // Biomes plus temperature and wetness from a single biome evaluation.
+    // temperatureArray and wetnessArray can be null and must otherwise hold x_size * z_size values.
+    public int[] getBiomesTC(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size);
+
+    // Unzoomed biomes of one area plus biomes and temperatures of an area inside it, from a single layer evaluation.
+    // unZoomedArray must hold ux_size * uz_size values, temperatureArray can be null.
+    public int[] getBiomesTC(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size);
+
     public int getBiomeTC(int x, int z);
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.khorn.terraincontrol;
 
 import com.khorn.terraincontrol.configuration.WorldConfig;
+import com.khorn.terraincontrol.generator.BlockBatch;
 import com.khorn.terraincontrol.generator.resourcegens.TreeType;
 
 import java.util.ArrayList;
@@ -31,6 +32,39 @@ public interface LocalWorld
 
     public int[] getBiomes(int[] biomeArray, int x, int z, int x_size, int z_size);
 
+    /**
+     * Calculates the biomes of an area together with their temperatures and
+     * wetness, evaluating the biome generator only once.
+     * 
+     * @param biomeArray
+     *            Array to reuse for the biome ids, may be null.
+     * @param temperatureArray
+     *            Array of at least x_size * z_size to fill with the
+     *            temperatures, or null to skip them.
+     * @param wetnessArray
+     *            Array of at least x_size * z_size to fill with the wetness,
+     *            or null to skip it.
+     * @return The biome ids.
+     */
+    public int[] getBiomes(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size);
+
+    /**
+     * Calculates the unzoomed biomes of an area together with the biomes and
+     * temperatures of an area inside it. The zoomed biomes are made from the
+     * unzoomed ones, so the biome generator is evaluated only once.
+     * 
+     * @param unZoomedArray
+     *            Array of at least ux_size * uz_size to fill with the unzoomed
+     *            biome ids.
+     * @param biomeArray
+     *            Array to reuse for the biome ids, may be null.
+     * @param temperatureArray
+     *            Array of at least x_size * z_size to fill with the
+     *            temperatures, or null to skip them.
+     * @return The biome ids.
+     */
+    public int[] getBiomes(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size);
+
     public int getCalculatedBiomeId(int x, int z);
 
     /**
@@ -55,9 +89,6 @@ public interface LocalWorld
      */
     public LocalBiome getBiome(int x, int z);
 
-    // temperature*rain
-    public double getBiomeFactorForOldBM(int index);
-
     // Default generators
 
     public void PrepareTerrainObjects(int x, int z, byte[] chunkArray, boolean dry);
@@ -72,6 +103,27 @@ public interface LocalWorld
 
     public void DoBiomeReplace();
 
+    // Population
+
+    /**
+     * Starts the population of a chunk on the calling thread. Until
+     * EndPopulation the blocks of this chunk and its neighbours with higher
+     * x and z are looked up and their heights are remembered. The state of a
+     * population belongs to the thread, so chunks whose 2x2 chunks don't
+     * overlap can be populated at the same time.
+     * 
+     * @param chunkX
+     *            The chunk x.
+     * @param chunkZ
+     *            The chunk z.
+     */
+    public void StartPopulation(int chunkX, int chunkZ);
+
+    /**
+     * Ends the population of the chunk started on the calling thread.
+     */
+    public void EndPopulation();
+
     // Blocks
 
     public int getTypeId(int x, int y, int z);
@@ -82,6 +134,18 @@ public interface LocalWorld
 
     public void setBlock(final int x, final int y, final int z, final int typeId, final int data);
 
+    /**
+     * Places all blocks of the batch. Every chunk is looked up once, and the
+     * players are updated once per changed chunk. The light is updated like
+     * setBlock does, but only for the blocks that let through or give off
+     * another amount of light than the block they replace. Blocks in chunks
+     * that can't be changed are handled as setBlock would.
+     * 
+     * @param batch
+     *            The blocks, the batch is not cleared.
+     */
+    public void setBlocks(BlockBatch batch);
+
     // public void setRawBlockIdAndData(int x, int y, int z, int BlockId, int
     // Data);
 
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 
+import com.khorn.terraincontrol.biomelayers.BiomePointQuery;
 import com.khorn.terraincontrol.configuration.Resource;
 import com.khorn.terraincontrol.customobjects.CustomObject;
 import com.khorn.terraincontrol.customobjects.CustomObjectLoader;
@@ -133,6 +134,34 @@ public class TerrainControl
         return world.getBiome(x, z).getName();
     }
 
+    /**
+     * Calculates the biome ids of many points at once. Much faster than
+     * asking for the points one by one, as every chunk is only calculated
+     * once. The ids are the biomes the generator places there, not the
+     * biomes stored in already generated chunks.
+     * 
+     * @param worldName
+     *            The world name.
+     * @param x
+     *            The block x of every point.
+     * @param z
+     *            The block z of every point, same length as x.
+     * @param biomeIds
+     *            Array to store the biome ids in, in the same order as the
+     *            points. A new one is created when it is null or too small.
+     * @return The biome ids, or null if the world isn't managed by Terrain
+     *         Control.
+     */
+    public static int[] getBiomeIds(String worldName, int[] x, int[] z, int[] biomeIds)
+    {
+        LocalWorld world = getWorld(worldName);
+        if (world == null)
+        {
+            return null;
+        }
+        return BiomePointQuery.getBiomeIds(world, x, z, biomeIds);
+    }
+
     /**
      * Logs the message(s) with normal importance. Message will be prefixed with
      * TerrainControl, so don't do that yourself.
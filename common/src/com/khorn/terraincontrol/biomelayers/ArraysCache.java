@@ -1,79 +1,185 @@
 package com.khorn.terraincontrol.biomelayers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
-@SuppressWarnings("rawtypes")
 public class ArraysCache
 {
-    private static final int[][][] SmallArrays = new int[4][][];
-    private static final int[] SmallArraysNext = new int[4];
-	private static final ArrayList[] BigArrays = new ArrayList[4];
-    private static final int[] BigArraysNext = new int[4];
-    private static final boolean[] ArraysInUse = new boolean[4];
+    private static class Slot
+    {
+        private final short[][] SmallArrays = new short[128][];
+        private int SmallArraysNext;
+        private final ArrayList<short[]> BigArrays = new ArrayList<short[]>();
+        private int BigArraysNext;
+        private final ArrayList<long[]> LongArrays = new ArrayList<long[]>();
+        private int LongArraysNext;
+        private boolean InUse;
+        // Set by TrimSlots while the slot was in use
+        private boolean TrimOnRelease;
+    }
+
+    // Bigger arrays are dropped by TrimSlots. Chunk generation and the biome
+    // queries stay far below this, only the precompute bands are bigger.
+    private static final int MaxKeptArraySize = 64 * 1024;
+
+    // Grows when all slots are in use, a slot is never shared by two threads
+    private static volatile Slot[] Slots = new Slot[0];
+    private static final Object LockObject = new Object();
+
+    // Background tasks, like the biome locator and the precompute command,
+    // take a permit for every layer chain they run, so that they can't fill
+    // the cache while the server is generating chunks
+    private static final Semaphore BackgroundPermits = new Semaphore(2, true);
 
     public static int GetCacheId()
     {
-        synchronized (ArraysInUse)
+        synchronized (LockObject)
         {
-            for (int i = 0; i < ArraysInUse.length; i++)
+            Slot[] slots = Slots;
+            for (int i = 0; i < slots.length; i++)
             {
-                if (!ArraysInUse[i])
+                if (!slots[i].InUse)
                 {
-
-                    ArraysInUse[i] = true;
-                    if (SmallArrays[i] == null)
-                        SmallArrays[i] = new int[128][];
-                    if (BigArrays[i] == null)
-                        BigArrays[i] = new ArrayList();
-
+                    slots[i].InUse = true;
                     return i;
                 }
             }
+
+            slots = Arrays.copyOf(slots, slots.length + 1);
+            slots[slots.length - 1] = new Slot();
+            slots[slots.length - 1].InUse = true;
+            Slots = slots;
+            return slots.length - 1;
         }
-        return 0; // Exception ??
     }
 
     public static void ReleaseCacheId(int id)
     {
-        synchronized (ArraysInUse)
+        synchronized (LockObject)
+        {
+            Slot slot = Slots[id];
+            if (!slot.InUse)
+                throw new IllegalStateException("Cache id " + id + " is not in use");
+            slot.InUse = false;
+            slot.SmallArraysNext = 0;
+            slot.BigArraysNext = 0;
+            slot.LongArraysNext = 0;
+            if (slot.TrimOnRelease)
+            {
+                Trim(slot);
+                slot.TrimOnRelease = false;
+            }
+        }
+    }
+
+    /**
+     * Drops the arrays bigger than MaxKeptArraySize, so that a large
+     * background task doesn't keep them for the rest of the server's life.
+     * Slots that are in use are trimmed when they are released.
+     */
+    public static void TrimSlots()
+    {
+        synchronized (LockObject)
+        {
+            for (Slot slot : Slots)
+            {
+                if (slot.InUse)
+                    slot.TrimOnRelease = true;
+                else
+                    Trim(slot);
+            }
+        }
+    }
+
+    private static void Trim(Slot slot)
+    {
+        for (int i = slot.BigArrays.size() - 1; i >= 0; i--)
+        {
+            if (slot.BigArrays.get(i).length > MaxKeptArraySize)
+                slot.BigArrays.remove(i);
+        }
+        for (int i = slot.LongArrays.size() - 1; i >= 0; i--)
         {
-            ArraysInUse[id] = false;
-            SmallArraysNext[id] = 0;
-            BigArraysNext[id] = 0;
+            if (slot.LongArrays.get(i).length > MaxKeptArraySize)
+                slot.LongArrays.remove(i);
         }
     }
 
-    @SuppressWarnings({"unchecked"})
-    public static int[] GetArray(int cacheId, int size)
+    /**
+     * Waits for a background permit, see ReleaseBackgroundPermit.
+     *
+     * @return False if no permit was free within the timeout.
+     */
+    public static boolean AcquireBackgroundPermit(long timeout) throws InterruptedException
+    {
+        return BackgroundPermits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    public static void ReleaseBackgroundPermit()
     {
+        BackgroundPermits.release();
+    }
+
+    public static short[] GetArray(int cacheId, int size)
+    {
+        Slot slot = Slots[cacheId];
         if (size <= 256)
         {
-            int[] array = SmallArrays[cacheId][SmallArraysNext[cacheId]];
+            short[] array = slot.SmallArrays[slot.SmallArraysNext];
             if (array == null)
             {
-                array = new int[256];
-                SmallArrays[cacheId][SmallArraysNext[cacheId]] = array;
+                array = new short[256];
+                slot.SmallArrays[slot.SmallArraysNext] = array;
             }
-            SmallArraysNext[cacheId]++;
+            slot.SmallArraysNext++;
 
             return array;
         }
-        int[] array;
-        if (BigArraysNext[cacheId] == BigArrays[cacheId].size())
+        short[] array;
+        if (slot.BigArraysNext == slot.BigArrays.size())
+        {
+            array = new short[size];
+            slot.BigArrays.add(array);
+        } else
+        {
+            array = slot.BigArrays.get(slot.BigArraysNext);
+            if (array.length < size)
+            {
+                array = new short[size];
+                slot.BigArrays.set(slot.BigArraysNext, array);
+            }
+        }
+
+        slot.BigArraysNext++;
+        return array;
+    }
+
+    /**
+     * Gets a long array of the slot with at least the given size, like the
+     * row seeds of the layers. The layers are shared by all threads, so they
+     * must not keep these arrays in fields.
+     */
+    public static long[] GetLongArray(int cacheId, int size)
+    {
+        Slot slot = Slots[cacheId];
+        long[] array;
+        if (slot.LongArraysNext == slot.LongArrays.size())
         {
-            array = new int[size];
-            BigArrays[cacheId].add(array);
+            array = new long[size];
+            slot.LongArrays.add(array);
         } else
         {
-            array = (int[]) BigArrays[cacheId].get(BigArraysNext[cacheId]);
+            array = slot.LongArrays.get(slot.LongArraysNext);
             if (array.length < size)
             {
-                array = new int[size];
-                BigArrays[cacheId].set(BigArraysNext[cacheId], array);
+                array = new long[size];
+                slot.LongArrays.set(slot.LongArraysNext, array);
             }
         }
 
-        BigArraysNext[cacheId]++;
+        slot.LongArraysNext++;
         return array;
     }
 }
\ No newline at end of file
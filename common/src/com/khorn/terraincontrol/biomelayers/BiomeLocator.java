@@ -0,0 +1,383 @@
+package com.khorn.terraincontrol.biomelayers;
+
+import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.biomelayers.layers.Layer;
+import com.khorn.terraincontrol.configuration.WorldConfig;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the nearest occurrence of a biome without generating any terrain.
+ * The search walks outwards in square rings of tiles over the unzoomed layer
+ * (one cell is 4x4 blocks), spread over a few worker threads. The nearest hit
+ * is then refined with the zoomed layer.
+ * <p/>
+ * Layers are not thread safe, so every worker uses its own layer chain. The
+ * chains are kept per world and reused by later searches until the settings
+ * of the world change, as building one can be expensive: in FromImage mode
+ * it loads the image. Every worker holds a background permit of the
+ * ArraysCache, so searches don't crowd out the chunk generator.
+ * <p/>
+ * Only works for the worlds whose biomes come from the layers, so not for the
+ * old biome generator.
+ */
+public class BiomeLocator
+{
+    // Tile size in unzoomed cells, 64 cells is 256 blocks
+    private static final int TileBits = 6;
+    private static final int TileSize = 1 << TileBits;
+    // Area around the coarse hit that is checked at full resolution
+    private static final int RefineRadius = 16;
+    // Workers of one search, each takes one of the background permits
+    private static final int MaxThreads = 2;
+
+    // Idle layer chains of every world, built from the settings in chainsConfig
+    private static final Map<LocalWorld, ArrayList<Layer[]>> idleChains = new WeakHashMap<LocalWorld, ArrayList<Layer[]>>();
+    private static final Map<LocalWorld, WorldConfig> chainsConfig = new WeakHashMap<LocalWorld, WorldConfig>();
+
+    public static class Result
+    {
+        public final boolean found;
+        public final int x;
+        public final int z;
+        public final boolean timedOut;
+        public final int searchedRadius;
+        // True when other searches kept the search from starting in time
+        public final boolean busy;
+
+        Result(boolean found, int x, int z, boolean timedOut, int searchedRadius, boolean busy)
+        {
+            this.found = found;
+            this.x = x;
+            this.z = z;
+            this.timedOut = timedOut;
+            this.searchedRadius = searchedRadius;
+            this.busy = busy;
+        }
+    }
+
+    private final LocalWorld world;
+    private final int biomeId;
+    private final int x;
+    private final int z;
+    private final int radius;
+    private final long deadline;
+
+    private final int centerX;
+    private final int centerZ;
+    private final int centerTileX;
+    private final int centerTileZ;
+    // Tiles are numbered ring by ring, ring r has 8 * r tiles
+    private final int tiles;
+    private final long maxDistance;
+    private final AtomicInteger nextTile = new AtomicInteger();
+
+    // Guarded by this. Distance squared and position of the nearest cell
+    // found so far, in unzoomed cells.
+    private long best = Long.MAX_VALUE;
+    private int bestX;
+    private int bestZ;
+    private int searchedRing;
+    // Lowest ring with a tile that was skipped because the time ran out
+    private int firstSkippedRing = Integer.MAX_VALUE;
+    private RuntimeException failure;
+
+    private BiomeLocator(LocalWorld world, int biomeId, int x, int z, int radius, long deadline)
+    {
+        this.world = world;
+        this.biomeId = biomeId;
+        this.x = x;
+        this.z = z;
+        this.radius = radius;
+        this.deadline = deadline;
+
+        this.centerX = x >> 2;
+        this.centerZ = z >> 2;
+        this.centerTileX = this.centerX >> TileBits;
+        this.centerTileZ = this.centerZ >> TileBits;
+        int rings = ((radius >> 2) >> TileBits) + 1;
+        this.tiles = (2 * rings + 1) * (2 * rings + 1);
+        this.maxDistance = (long) (radius >> 2) * (radius >> 2);
+    }
+
+    /**
+     * Searches the nearest block column with the given biome.
+     *
+     * @param world
+     *            The world, its biome mode must use the layers.
+     * @param biomeId
+     *            The biome to search.
+     * @param x
+     *            Block x of the search center.
+     * @param z
+     *            Block z of the search center.
+     * @param radius
+     *            Search radius in blocks.
+     * @param timeLimit
+     *            Time budget in milliseconds, including the time spent
+     *            waiting for other searches. When it runs out the nearest
+     *            biome found so far is returned, if any.
+     */
+    public static Result locate(LocalWorld world, int biomeId, int x, int z, int radius, long timeLimit)
+    {
+        long deadline = System.currentTimeMillis() + timeLimit;
+        // The first permit is waited for, the other workers only start when
+        // a permit is free right away
+        int permits = 0;
+        try
+        {
+            if (!ArraysCache.AcquireBackgroundPermit(timeLimit))
+                return new Result(false, 0, 0, true, 0, true);
+            permits++;
+            while (permits < Math.min(MaxThreads, Runtime.getRuntime().availableProcessors()) && ArraysCache.AcquireBackgroundPermit(0))
+                permits++;
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        try
+        {
+            if (permits == 0)
+                return new Result(false, 0, 0, true, 0, true);
+            return new BiomeLocator(world, biomeId, x, z, radius, deadline).search(permits);
+        } finally
+        {
+            for (int i = 0; i < permits; i++)
+                ArraysCache.ReleaseBackgroundPermit();
+        }
+    }
+
+    private static Layer[] takeChain(LocalWorld world)
+    {
+        WorldConfig config = world.getSettings();
+        synchronized (idleChains)
+        {
+            ArrayList<Layer[]> chains = idleChains.get(world);
+            if (chains != null && chainsConfig.get(world) == config && !chains.isEmpty())
+                return chains.remove(chains.size() - 1);
+        }
+        return Layer.Init(world.getSeed(), world);
+    }
+
+    private static void releaseChain(LocalWorld world, WorldConfig config, Layer[] chain)
+    {
+        synchronized (idleChains)
+        {
+            ArrayList<Layer[]> chains = idleChains.get(world);
+            if (chains == null || chainsConfig.get(world) != config)
+            {
+                // Chains of older settings are dropped
+                if (config != world.getSettings())
+                    return;
+                chains = new ArrayList<Layer[]>();
+                idleChains.put(world, chains);
+                chainsConfig.put(world, config);
+            }
+            if (chains.size() < MaxThreads)
+                chains.add(chain);
+        }
+    }
+
+    private Result search(int threads)
+    {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    WorldConfig config = world.getSettings();
+                    Layer[] chain = takeChain(world);
+                    try
+                    {
+                        searchTiles(chain[0]);
+                    } catch (RuntimeException e)
+                    {
+                        synchronized (BiomeLocator.this)
+                        {
+                            if (failure == null)
+                                failure = e;
+                        }
+                        // The chain may have stopped inside a calculation, it is not reused
+                        return;
+                    }
+                    releaseChain(world, config, chain);
+                }
+            }, "TC biome locator " + i);
+            workers[i].start();
+        }
+
+        boolean interrupted = false;
+        for (Thread worker : workers)
+        {
+            while (worker.isAlive())
+            {
+                try
+                {
+                    worker.join();
+                } catch (InterruptedException e)
+                {
+                    // Stops the workers after their current tile
+                    interrupted = true;
+                    this.nextTile.set(this.tiles);
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        long nearest;
+        int cellX;
+        int cellZ;
+        boolean timedOut;
+        int searchedRadius;
+        synchronized (this)
+        {
+            if (this.failure != null)
+                throw new RuntimeException("Biome search failed", this.failure);
+            nearest = this.best;
+            cellX = this.bestX;
+            cellZ = this.bestZ;
+            timedOut = this.firstSkippedRing != Integer.MAX_VALUE || interrupted;
+            int ring = Math.min(this.searchedRing, this.firstSkippedRing - 1);
+            searchedRadius = Math.min(this.radius, (Math.max(0, ring) * TileSize) << 2);
+        }
+
+        if (nearest == Long.MAX_VALUE)
+            return new Result(false, 0, 0, timedOut, searchedRadius, false);
+
+        WorldConfig config = this.world.getSettings();
+        Layer[] chain = takeChain(this.world);
+        Result result = refine(chain[1], this.biomeId, this.x, this.z, cellX, cellZ, timedOut, searchedRadius);
+        releaseChain(this.world, config, chain);
+        return result;
+    }
+
+    // Searches tiles until all are taken, the time runs out or no later tile can be nearer
+    private void searchTiles(Layer layer)
+    {
+        int[] biomes = null;
+        int tile;
+        while ((tile = this.nextTile.getAndIncrement()) < this.tiles)
+        {
+            int[] tilePos = getTilePosition(tile);
+            int ring = Math.max(Math.abs(tilePos[0]), Math.abs(tilePos[1]));
+
+            // Nothing in this ring and the following ones can be nearer. Tiles
+            // are taken in ring order, so the other workers can stop as well.
+            long ringDistance = (long) Math.max(0, ring - 1) * TileSize;
+            synchronized (this)
+            {
+                if (ringDistance * ringDistance > this.best)
+                    return;
+            }
+            if (System.currentTimeMillis() > this.deadline)
+            {
+                synchronized (this)
+                {
+                    this.firstSkippedRing = Math.min(this.firstSkippedRing, ring);
+                }
+                return;
+            }
+
+            int tileX = (this.centerTileX + tilePos[0]) << TileBits;
+            int tileZ = (this.centerTileZ + tilePos[1]) << TileBits;
+            biomes = layer.Calculate(biomes, tileX, tileZ, TileSize, TileSize);
+
+            long nearest = Long.MAX_VALUE;
+            int nearestX = 0;
+            int nearestZ = 0;
+            for (int j = 0; j < TileSize; j++)
+                for (int k = 0; k < TileSize; k++)
+                {
+                    if (biomes[j * TileSize + k] != this.biomeId)
+                        continue;
+                    long dx = tileX + k - this.centerX;
+                    long dz = tileZ + j - this.centerZ;
+                    long distance = dx * dx + dz * dz;
+                    if (distance < nearest)
+                    {
+                        nearest = distance;
+                        nearestX = tileX + k;
+                        nearestZ = tileZ + j;
+                    }
+                }
+
+            synchronized (this)
+            {
+                if (nearest <= this.maxDistance && nearest < this.best)
+                {
+                    this.best = nearest;
+                    this.bestX = nearestX;
+                    this.bestZ = nearestZ;
+                }
+                this.searchedRing = Math.max(this.searchedRing, ring);
+            }
+        }
+    }
+
+    // Looks for the nearest block in the zoomed layer around the unzoomed cell.
+    // The voronoi zoom moves the borders a bit, so the cell center is used when
+    // the biome is not there anymore.
+    private static Result refine(Layer zoomedLayer, int biomeId, int x, int z, int cellX, int cellZ, boolean timedOut, int searchedRadius)
+    {
+        int startX = (cellX << 2) + 2 - RefineRadius;
+        int startZ = (cellZ << 2) + 2 - RefineRadius;
+        int size = RefineRadius * 2;
+        int[] biomes = zoomedLayer.Calculate(startX, startZ, size, size);
+
+        long nearest = Long.MAX_VALUE;
+        int nearestX = (cellX << 2) + 2;
+        int nearestZ = (cellZ << 2) + 2;
+        for (int j = 0; j < size; j++)
+            for (int i = 0; i < size; i++)
+            {
+                if (biomes[j * size + i] != biomeId)
+                    continue;
+                long dx = startX + i - x;
+                long dz = startZ + j - z;
+                if (dx * dx + dz * dz < nearest)
+                {
+                    nearest = dx * dx + dz * dz;
+                    nearestX = startX + i;
+                    nearestZ = startZ + j;
+                }
+            }
+
+        return new Result(true, nearestX, nearestZ, timedOut, searchedRadius, false);
+    }
+
+    // Position of a tile relative to the center tile. Tile 0 is the center,
+    // then ring 1 (8 tiles), ring 2 (16 tiles) and so on.
+    private static int[] getTilePosition(int tile)
+    {
+        if (tile == 0)
+            return new int[] {0, 0};
+
+        int ring = (int) Math.ceil((Math.sqrt(tile + 1) - 1) / 2);
+        while ((2 * ring + 1) * (2 * ring + 1) <= tile)
+            ring++;
+        while ((2 * ring - 1) * (2 * ring - 1) > tile)
+            ring--;
+
+        int index = tile - (2 * ring - 1) * (2 * ring - 1);
+        int side = index / (2 * ring);
+        int offset = index % (2 * ring);
+        switch (side)
+        {
+            case 0:
+                return new int[] {-ring + offset, -ring};
+            case 1:
+                return new int[] {ring, -ring + offset};
+            case 2:
+                return new int[] {ring - offset, ring};
+            default:
+                return new int[] {-ring, ring - offset};
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.khorn.terraincontrol.biomelayers;
+
+import com.khorn.terraincontrol.LocalWorld;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the biomes of many scattered points at once. The points are
+ * sorted by tile of 4x4 chunks and then by chunk. A tile is evaluated once
+ * for the smallest area that holds all of its points, unless that area has
+ * more columns than the chunks with points in it. Then every chunk is
+ * evaluated once for the smallest area that holds its points.
+ * <p/>
+ * The areas go through LocalWorld.getBiomes, so an area that is exactly one
+ * chunk is served from the biome cache of the server, like any other chunk.
+ * Smaller and bigger areas are calculated by the layers directly.
+ */
+public class BiomePointQuery
+{
+    private static final int TileBits = 6;
+    private static final int ChunkSize = 16 * 16;
+
+    /**
+     * Calculates the biome ids of the given points.
+     *
+     * @param world
+     *            The world.
+     * @param x
+     *            The block x of every point.
+     * @param z
+     *            The block z of every point, same length as x.
+     * @param biomeIds
+     *            Array of at least x.length to store the biome ids in, in the
+     *            same order as the points. May be null.
+     * @return The biome ids.
+     */
+    public static int[] getBiomeIds(LocalWorld world, int[] x, int[] z, int[] biomeIds)
+    {
+        if (x.length != z.length)
+            throw new IllegalArgumentException("Got " + x.length + " x coordinates, but " + z.length + " z coordinates");
+        if ((biomeIds == null) || (biomeIds.length < x.length))
+        {
+            biomeIds = new int[x.length];
+        }
+
+        // Sort key in the high half, index of the point in the low half
+        long[] order = new long[x.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = ((long) getSortKey(x[i], z[i]) << 32) | i;
+        Arrays.sort(order);
+
+        int[] biomes = new int[ChunkSize];
+        int start = 0;
+        while (start < order.length)
+        {
+            int first = (int) order[start];
+            int tileX = x[first] >> TileBits;
+            int tileZ = z[first] >> TileBits;
+            int minX = x[first], minZ = z[first], maxX = x[first], maxZ = z[first];
+            int chunks = 0;
+
+            int end = start;
+            int lastChunk = -1;
+            while (end < order.length)
+            {
+                int point = (int) order[end];
+                if ((x[point] >> TileBits) != tileX || (z[point] >> TileBits) != tileZ)
+                    break;
+                minX = Math.min(minX, x[point]);
+                minZ = Math.min(minZ, z[point]);
+                maxX = Math.max(maxX, x[point]);
+                maxZ = Math.max(maxZ, z[point]);
+                int chunk = (int) (order[end] >>> 32);
+                if (end == start || chunk != lastChunk)
+                    chunks++;
+                lastChunk = chunk;
+                end++;
+            }
+
+            if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) <= (long) chunks * ChunkSize)
+                biomes = getArea(world, x, z, order, start, end, minX, minZ, maxX, maxZ, biomes, biomeIds);
+            else
+                biomes = getChunks(world, x, z, order, start, end, biomes, biomeIds);
+
+            start = end;
+        }
+
+        return biomeIds;
+    }
+
+    // Tile, then chunk inside the tile. Far apart tiles may share a key, the
+    // grouping compares the coordinates themselves, so that only costs speed.
+    private static int getSortKey(int x, int z)
+    {
+        return ((x >> TileBits) & 0x3FFF) << 18 | ((z >> TileBits) & 0x3FFF) << 4 | ((x >> 4) & 3) << 2 | ((z >> 4) & 3);
+    }
+
+    private static int[] getChunks(LocalWorld world, int[] x, int[] z, long[] order, int start, int end, int[] biomes, int[] biomeIds)
+    {
+        while (start < end)
+        {
+            int first = (int) order[start];
+            int chunkX = x[first] >> 4;
+            int chunkZ = z[first] >> 4;
+            int minX = x[first], minZ = z[first], maxX = x[first], maxZ = z[first];
+
+            int chunkEnd = start;
+            while (chunkEnd < end)
+            {
+                int point = (int) order[chunkEnd];
+                if ((x[point] >> 4) != chunkX || (z[point] >> 4) != chunkZ)
+                    break;
+                minX = Math.min(minX, x[point]);
+                minZ = Math.min(minZ, z[point]);
+                maxX = Math.max(maxX, x[point]);
+                maxZ = Math.max(maxZ, z[point]);
+                chunkEnd++;
+            }
+
+            biomes = getArea(world, x, z, order, start, chunkEnd, minX, minZ, maxX, maxZ, biomes, biomeIds);
+            start = chunkEnd;
+        }
+        return biomes;
+    }
+
+    private static int[] getArea(LocalWorld world, int[] x, int[] z, long[] order, int start, int end, int minX, int minZ, int maxX, int maxZ, int[] biomes, int[] biomeIds)
+    {
+        int x_size = maxX - minX + 1;
+        int z_size = maxZ - minZ + 1;
+        biomes = world.getBiomes(biomes, minX, minZ, x_size, z_size);
+        for (int i = start; i < end; i++)
+        {
+            int point = (int) order[i];
+            biomeIds[point] = biomes[(z[point] - minZ) * x_size + x[point] - minX];
+        }
+        return biomes;
+    }
+}
@@ -0,0 +1,232 @@
+package com.khorn.terraincontrol.biomelayers;
+
+import com.khorn.terraincontrol.biomelayers.layers.Layer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Coarse index of which biome ids occur in a region of a (unzoomed) layer.
+ * Used by the structure placement checks, which ask the same questions for
+ * overlapping areas again and again. Regions that contain both allowed and
+ * disallowed biomes are ambiguous, for those the layer is evaluated again for
+ * the cells the query actually covers.
+ */
+public class BiomePresenceIndex
+{
+    private static final int RegionBits = 4;
+    private static final int RegionSize = 1 << RegionBits;
+    private static final int MaxRegions = 4096;
+
+    private final Layer layer;
+
+    @SuppressWarnings("serial")
+    private final Map<Long, long[]> regions = new LinkedHashMap<Long, long[]>(256, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest)
+        {
+            return this.size() > MaxRegions;
+        }
+    };
+
+    public BiomePresenceIndex(Layer layer)
+    {
+        this.layer = layer;
+    }
+
+    /**
+     * Returns whether every cell of the area contains an allowed biome.
+     *
+     * @param allowed
+     *            allowed[biomeId] is true for the allowed biomes. Ids outside
+     *            the array are not allowed.
+     */
+    public boolean areBiomesAllowed(int x, int z, int x_size, int z_size, boolean[] allowed)
+    {
+        int rx0 = x >> RegionBits;
+        int rz0 = z >> RegionBits;
+        int rx1 = (x + x_size - 1) >> RegionBits;
+        int rz1 = (z + z_size - 1) >> RegionBits;
+
+        int[] loaded = this.loadRegions(rx0, rz0, rx1, rz1);
+        if (loaded != null)
+        {
+            int alignedX = rx0 << RegionBits;
+            int alignedZ = rz0 << RegionBits;
+            int alignedSize = (rx1 - rx0 + 1) << RegionBits;
+            for (int j = 0; j < z_size; j++)
+                for (int i = 0; i < x_size; i++)
+                    if (!isAllowed(loaded[(z + j - alignedZ) * alignedSize + (x + i - alignedX)], allowed))
+                        return false;
+            return true;
+        }
+
+        long[] mask = getMask(allowed);
+        int[] biomes = null;
+        for (int rz = rz0; rz <= rz1; rz++)
+            for (int rx = rx0; rx <= rx1; rx++)
+            {
+                long[] present = this.getRegion(rx, rz);
+                if (present != null && !hasOther(present, mask))
+                    continue;
+
+                int ix0 = Math.max(x, rx << RegionBits);
+                int iz0 = Math.max(z, rz << RegionBits);
+                int ix1 = Math.min(x + x_size, (rx + 1) << RegionBits);
+                int iz1 = Math.min(z + z_size, (rz + 1) << RegionBits);
+
+                if (present != null && ix1 - ix0 == RegionSize && iz1 - iz0 == RegionSize)
+                    return false;
+
+                // Ambiguous, check the covered cells
+                biomes = this.layer.Calculate(biomes, ix0, iz0, ix1 - ix0, iz1 - iz0);
+                for (int i = 0; i < (ix1 - ix0) * (iz1 - iz0); i++)
+                    if (!isAllowed(biomes[i], allowed))
+                        return false;
+            }
+
+        return true;
+    }
+
+    /**
+     * Returns the biomes of the area, like Layer.Calculate does. Cells in
+     * regions without any allowed biome are not evaluated and are set to -1.
+     *
+     * @param allowed
+     *            allowed[biomeId] is true for the allowed biomes.
+     */
+    public int[] getCandidateBiomes(int x, int z, int x_size, int z_size, boolean[] allowed)
+    {
+        int rx0 = x >> RegionBits;
+        int rz0 = z >> RegionBits;
+        int rx1 = (x + x_size - 1) >> RegionBits;
+        int rz1 = (z + z_size - 1) >> RegionBits;
+
+        int[] out = new int[x_size * z_size];
+
+        int[] loaded = this.loadRegions(rx0, rz0, rx1, rz1);
+        if (loaded != null)
+        {
+            int alignedX = rx0 << RegionBits;
+            int alignedZ = rz0 << RegionBits;
+            int alignedSize = (rx1 - rx0 + 1) << RegionBits;
+            for (int j = 0; j < z_size; j++)
+                System.arraycopy(loaded, (z + j - alignedZ) * alignedSize + (x - alignedX), out, j * x_size, x_size);
+            return out;
+        }
+
+        long[] mask = getMask(allowed);
+        int[] biomes = null;
+        for (int rz = rz0; rz <= rz1; rz++)
+            for (int rx = rx0; rx <= rx1; rx++)
+            {
+                int ix0 = Math.max(x, rx << RegionBits);
+                int iz0 = Math.max(z, rz << RegionBits);
+                int ix1 = Math.min(x + x_size, (rx + 1) << RegionBits);
+                int iz1 = Math.min(z + z_size, (rz + 1) << RegionBits);
+
+                long[] present = this.getRegion(rx, rz);
+                if (present != null && !hasAny(present, mask))
+                {
+                    for (int j = iz0; j < iz1; j++)
+                        for (int i = ix0; i < ix1; i++)
+                            out[(j - z) * x_size + (i - x)] = -1;
+                    continue;
+                }
+
+                biomes = this.layer.Calculate(biomes, ix0, iz0, ix1 - ix0, iz1 - iz0);
+                for (int j = iz0; j < iz1; j++)
+                    System.arraycopy(biomes, (j - iz0) * (ix1 - ix0), out, (j - z) * x_size + (ix0 - x), ix1 - ix0);
+            }
+
+        return out;
+    }
+
+    /**
+     * Makes sure all regions in the range are indexed. When some were
+     * missing the whole range is evaluated at once and returned, so that the
+     * caller can answer exactly from it. Returns null when everything was
+     * already indexed.
+     */
+    private int[] loadRegions(int rx0, int rz0, int rx1, int rz1)
+    {
+        boolean missing = false;
+        synchronized (this.regions)
+        {
+            for (int rz = rz0; rz <= rz1 && !missing; rz++)
+                for (int rx = rx0; rx <= rx1 && !missing; rx++)
+                    missing = !this.regions.containsKey(getKey(rx, rz));
+        }
+        if (!missing)
+            return null;
+
+        int x_size = (rx1 - rx0 + 1) << RegionBits;
+        int z_size = (rz1 - rz0 + 1) << RegionBits;
+        int[] biomes = this.layer.Calculate(rx0 << RegionBits, rz0 << RegionBits, x_size, z_size);
+
+        for (int rz = rz0; rz <= rz1; rz++)
+            for (int rx = rx0; rx <= rx1; rx++)
+            {
+                long[] present = new long[4];
+                for (int j = 0; j < RegionSize; j++)
+                {
+                    int index = (((rz - rz0) << RegionBits) + j) * x_size + ((rx - rx0) << RegionBits);
+                    for (int i = 0; i < RegionSize; i++)
+                    {
+                        int biomeId = biomes[index + i] & 255;
+                        present[biomeId >> 6] |= 1L << (biomeId & 63);
+                    }
+                }
+                synchronized (this.regions)
+                {
+                    this.regions.put(getKey(rx, rz), present);
+                }
+            }
+
+        return biomes;
+    }
+
+    private long[] getRegion(int rx, int rz)
+    {
+        synchronized (this.regions)
+        {
+            return this.regions.get(getKey(rx, rz));
+        }
+    }
+
+    private static long getKey(int rx, int rz)
+    {
+        return ((long) rx << 32) | (rz & 0xFFFFFFFFL);
+    }
+
+    private static long[] getMask(boolean[] allowed)
+    {
+        long[] mask = new long[4];
+        for (int i = 0; i < allowed.length && i < 256; i++)
+            if (allowed[i])
+                mask[i >> 6] |= 1L << (i & 63);
+        return mask;
+    }
+
+    private static boolean hasOther(long[] present, long[] mask)
+    {
+        for (int i = 0; i < 4; i++)
+            if ((present[i] & ~mask[i]) != 0)
+                return true;
+        return false;
+    }
+
+    private static boolean hasAny(long[] present, long[] mask)
+    {
+        for (int i = 0; i < 4; i++)
+            if ((present[i] & mask[i]) != 0)
+                return true;
+        return false;
+    }
+
+    private static boolean isAllowed(int biomeId, boolean[] allowed)
+    {
+        return biomeId >= 0 && biomeId < allowed.length && allowed[biomeId];
+    }
+}
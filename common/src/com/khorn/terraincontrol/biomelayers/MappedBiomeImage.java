@@ -0,0 +1,224 @@
+package com.khorn.terraincontrol.biomelayers;
+
+import com.khorn.terraincontrol.configuration.WorldConfig;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+/**
+ * Biome ids of a biome image, stored one byte per pixel in a file next to the
+ * image and memory-mapped. The image is decoded only when the file is missing
+ * or outdated, and then in strips, so that the full image is never in the
+ * heap.
+ * <p/>
+ * The ids are stored column by column (all pixels with the same image x
+ * after each other). LayerFromImage maps the world z axis on the image x
+ * axis, so a row of a GetBiomes call is a continuous run in the file.
+ */
+public class MappedBiomeImage
+{
+    private static final int Magic = 0x5443424D; // TCBM
+    private static final int Version = 1;
+    private static final int HeaderSize = 32;
+    private static final int MaxBandSize = 1 << 30;
+    private static final int MaxStripPixels = 1 << 24;
+
+    private final int width;
+    private final int height;
+    private final int columnsPerBand;
+    private final MappedByteBuffer[] bands;
+
+    private MappedBiomeImage(File file, int width, int height) throws IOException
+    {
+        this.width = width;
+        this.height = height;
+        this.columnsPerBand = Math.max(1, MaxBandSize / height);
+        this.bands = new MappedByteBuffer[(width + this.columnsPerBand - 1) / this.columnsPerBand];
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            for (int i = 0; i < this.bands.length; i++)
+            {
+                int columns = Math.min(this.columnsPerBand, width - i * this.columnsPerBand);
+                long start = HeaderSize + (long) i * this.columnsPerBand * height;
+                this.bands[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) columns * height);
+            }
+        } finally
+        {
+            // The mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    /**
+     * Returns the biome id of the given image pixel.
+     */
+    public int getBiome(int x, int z)
+    {
+        return this.bands[x / this.columnsPerBand].get((x % this.columnsPerBand) * this.height + z) & 0xFF;
+    }
+
+    /**
+     * Opens the biome file of the image in the settings, converting the image
+     * first if needed.
+     *
+     * @param config
+     *            The settings with the image file and the color map.
+     * @param fillBiome
+     *            Biome for colors that are not in the color map.
+     * @return The mapped biome image, or null if it could not be created.
+     */
+    public static MappedBiomeImage open(WorldConfig config, int fillBiome)
+    {
+        File image = new File(config.SettingsDir, config.imageFile);
+        File file = new File(config.SettingsDir, config.imageFile + ".biomes");
+        int settingsHash = config.biomeColorMap.hashCode() * 31 + fillBiome;
+
+        try
+        {
+            int[] size = readHeader(file, image, settingsHash);
+            if (size == null)
+            {
+                System.out.println("TerrainControl: Converting " + image.getName() + " to " + file.getName());
+                size = convert(image, file, config, fillBiome, settingsHash);
+            }
+            return new MappedBiomeImage(file, size[0], size[1]);
+        } catch (IOException e)
+        {
+            System.out.println("TerrainControl: Failed to map the biome image: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Returns the size of the stored image, or null if the file must be created again
+    private static int[] readHeader(File file, File image, int settingsHash) throws IOException
+    {
+        if (!file.exists())
+            return null;
+
+        DataInputStream stream = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            if (stream.readInt() != Magic || stream.readInt() != Version)
+                return null;
+            int width = stream.readInt();
+            int height = stream.readInt();
+            if (stream.readLong() != image.lastModified() || stream.readInt() != (int) image.length() || stream.readInt() != settingsHash)
+                return null;
+            if (file.length() != HeaderSize + (long) width * height)
+                return null;
+            return new int[] {width, height};
+        } finally
+        {
+            stream.close();
+        }
+    }
+
+    private static int[] convert(File image, File file, WorldConfig config, int fillBiome, int settingsHash) throws IOException
+    {
+        ImageInputStream input = ImageIO.createImageInputStream(image);
+        if (input == null)
+            throw new IOException("Can't read " + image.getName());
+        try
+        {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext())
+                throw new IOException("Unknown image format of " + image.getName());
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(input, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                RandomAccessFile output = new RandomAccessFile(file, "rw");
+                try
+                {
+                    output.writeInt(0);
+                    output.setLength(HeaderSize + (long) width * height);
+                    FileChannel channel = output.getChannel();
+                    int columnsPerBand = Math.max(1, MaxBandSize / height);
+                    int stripHeight = Math.max(1, MaxStripPixels / width);
+                    int[] colors = new int[width * Math.min(stripHeight, height)];
+                    int lastColor = -1;
+                    int lastBiome = fillBiome;
+
+                    for (int y = 0; y < height; y += stripHeight)
+                    {
+                        int rows = Math.min(stripHeight, height - y);
+                        ImageReadParam param = reader.getDefaultReadParam();
+                        param.setSourceRegion(new Rectangle(0, y, width, rows));
+                        BufferedImage strip = reader.read(0, param);
+                        strip.getRGB(0, 0, width, rows, colors, 0, width);
+
+                        for (int band = 0; band * columnsPerBand < width; band++)
+                        {
+                            int firstColumn = band * columnsPerBand;
+                            int columns = Math.min(columnsPerBand, width - firstColumn);
+                            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, HeaderSize + (long) firstColumn * height, (long) columns * height);
+                            for (int column = 0; column < columns; column++)
+                                for (int row = 0; row < rows; row++)
+                                {
+                                    int color = colors[row * width + firstColumn + column] & 0xFFFFFF;
+                                    if (color != lastColor)
+                                    {
+                                        Integer biomeId = config.biomeColorMap.get(color);
+                                        lastColor = color;
+                                        lastBiome = biomeId != null ? biomeId : fillBiome;
+                                    }
+                                    buffer.put(column * height + y + row, (byte) lastBiome);
+                                }
+                            buffer.force();
+                        }
+                    }
+
+                    // Header goes last, so that an interrupted conversion is never used
+                    output.seek(0);
+                    output.writeInt(Magic);
+                    output.writeInt(Version);
+                    output.writeInt(width);
+                    output.writeInt(height);
+                    output.writeLong(image.lastModified());
+                    output.writeInt((int) image.length());
+                    output.writeInt(settingsHash);
+                } finally
+                {
+                    output.close();
+                }
+
+                return new int[] {width, height};
+            } finally
+            {
+                reader.dispose();
+            }
+        } finally
+        {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.khorn.terraincontrol.biomelayers;
+
+import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.TerrainControl;
+import com.khorn.terraincontrol.biomelayers.layers.Layer;
+import com.khorn.terraincontrol.configuration.TCDefaultValues;
+import com.khorn.terraincontrol.configuration.WorldConfig;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Biomes of a fixed rectangle of the world, calculated once by the full
+ * layer chain and stored in a memory-mapped file in the world settings
+ * directory. The biome managers read from it inside the rectangle and only
+ * use the layers outside of it.
+ * <p/>
+ * The file holds one byte per block column for the zoomed biomes and one
+ * byte per 4x4 columns for the unzoomed biomes. It is only used when the
+ * seed and the settings files are still the same as when it was created.
+ */
+public class PrecomputedBiomeMap
+{
+    private static final int Magic = 0x54435042; // TCPB
+    private static final int Version = 1;
+    private static final int HeaderSize = 36;
+    private static final int BandSize = 256;
+    // Every worker holds a background permit of the ArraysCache, there are two of them
+    private static final int MaxThreads = 2;
+
+    private final int minX;
+    private final int minZ;
+    private final int xSize;
+    private final int zSize;
+    private final MappedByteBuffer biomes;
+    private final MappedByteBuffer unZoomedBiomes;
+
+    private PrecomputedBiomeMap(File file, int minX, int minZ, int xSize, int zSize) throws IOException
+    {
+        this.minX = minX;
+        this.minZ = minZ;
+        this.xSize = xSize;
+        this.zSize = zSize;
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            this.biomes = channel.map(FileChannel.MapMode.READ_ONLY, HeaderSize, (long) xSize * zSize);
+            this.unZoomedBiomes = channel.map(FileChannel.MapMode.READ_ONLY, HeaderSize + (long) xSize * zSize, (long) (xSize >> 2) * (zSize >> 2));
+        } finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    public boolean contains(int x, int z, int x_size, int z_size)
+    {
+        return x >= this.minX && z >= this.minZ && x + x_size <= this.minX + this.xSize && z + z_size <= this.minZ + this.zSize;
+    }
+
+    public boolean containsUnZoomed(int x, int z, int x_size, int z_size)
+    {
+        return x >= (this.minX >> 2) && z >= (this.minZ >> 2) && x + x_size <= ((this.minX + this.xSize) >> 2) && z + z_size <= ((this.minZ + this.zSize) >> 2);
+    }
+
+    public int getBiome(int x, int z)
+    {
+        return this.biomes.get((z - this.minZ) * this.xSize + (x - this.minX)) & 0xFF;
+    }
+
+    /**
+     * Returns the biomes of an area inside the map, in the same order as
+     * Layer.Calculate.
+     */
+    public int[] getBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return read(this.biomes, this.xSize, biomeArray, x - this.minX, z - this.minZ, x_size, z_size);
+    }
+
+    /**
+     * Returns the unzoomed biomes of an area inside the map, in the same order
+     * as Layer.Calculate. The coordinates are in unzoomed cells.
+     */
+    public int[] getUnZoomedBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return read(this.unZoomedBiomes, this.xSize >> 2, biomeArray, x - (this.minX >> 2), z - (this.minZ >> 2), x_size, z_size);
+    }
+
+    public byte[] getBiomes(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return read(this.biomes, this.xSize, biomeArray, x - this.minX, z - this.minZ, x_size, z_size);
+    }
+
+    public byte[] getUnZoomedBiomes(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return read(this.unZoomedBiomes, this.xSize >> 2, biomeArray, x - (this.minX >> 2), z - (this.minZ >> 2), x_size, z_size);
+    }
+
+    private static int[] read(MappedByteBuffer buffer, int rowSize, int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
+        {
+            biomeArray = new int[x_size * z_size];
+        }
+
+        for (int j = 0; j < z_size; j++)
+        {
+            int index = (z + j) * rowSize + x;
+            for (int i = 0; i < x_size; i++)
+                biomeArray[j * x_size + i] = buffer.get(index + i) & 0xFF;
+        }
+
+        return biomeArray;
+    }
+
+    private static byte[] read(MappedByteBuffer buffer, int rowSize, byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
+        {
+            biomeArray = new byte[x_size * z_size];
+        }
+
+        ByteBuffer input = buffer.duplicate();
+        for (int j = 0; j < z_size; j++)
+        {
+            input.position((z + j) * rowSize + x);
+            input.get(biomeArray, j * x_size, x_size);
+        }
+
+        return biomeArray;
+    }
+
+    public static File getFile(WorldConfig config)
+    {
+        return new File(config.SettingsDir, TCDefaultValues.PrecomputedBiomesName.stringValue());
+    }
+
+    /**
+     * Opens the precomputed biomes of the world.
+     *
+     * @return The map, or null if there is none or if it is outdated.
+     */
+    public static PrecomputedBiomeMap open(WorldConfig config, long seed)
+    {
+        File file = getFile(config);
+        if (!file.exists())
+            return null;
+
+        try
+        {
+            DataInputStream stream = new DataInputStream(new FileInputStream(file));
+            int minX, minZ, xSize, zSize;
+            try
+            {
+                if (stream.readInt() != Magic || stream.readInt() != Version)
+                    return null;
+                if (stream.readLong() != seed || stream.readInt() != getSettingsHash(config))
+                {
+                    TerrainControl.log("Precomputed biomes in " + file.getName() + " are outdated, run the precompute command again.");
+                    return null;
+                }
+                minX = stream.readInt();
+                minZ = stream.readInt();
+                xSize = stream.readInt();
+                zSize = stream.readInt();
+            } finally
+            {
+                stream.close();
+            }
+            if (file.length() != HeaderSize + (long) xSize * zSize + (long) (xSize >> 2) * (zSize >> 2))
+                return null;
+
+            TerrainControl.log("Using precomputed biomes from x=" + minX + ", z=" + minZ + " to x=" + (minX + xSize) + ", z=" + (minZ + zSize));
+            return new PrecomputedBiomeMap(file, minX, minZ, xSize, zSize);
+        } catch (IOException e)
+        {
+            TerrainControl.log("Failed to read " + file.getName() + ": " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Calculates the biomes of a rectangle of the world in parallel and
+     * writes them to the precomputed biomes file of the world. The rectangle
+     * is expanded to whole chunks. Every worker thread uses its own layer
+     * chain, as layers are not thread safe, and writes its own bands.
+     * <p/>
+     * The biome manager of the world may have the old file mapped, so the
+     * biomes are written to a temporary file that replaces the old one when
+     * it is complete. Reload the biome manager afterwards.
+     *
+     * @throws IOException
+     *             If the file cannot be written or replaced.
+     * @throws IllegalArgumentException
+     *             If the rectangle is empty or too big for one file.
+     */
+    public static void generate(final LocalWorld world, int x1, int z1, int x2, int z2) throws IOException
+    {
+        final int minX = Math.min(x1, x2) & ~15;
+        final int minZ = Math.min(z1, z2) & ~15;
+        final int xSize = ((Math.max(x1, x2) | 15) + 1) - minX;
+        final int zSize = ((Math.max(z1, z2) | 15) + 1) - minZ;
+        if ((long) xSize * zSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Area is too big, the maximum is " + Integer.MAX_VALUE + " blocks");
+
+        WorldConfig config = world.getSettings();
+        File file = getFile(config);
+        File tempFile = new File(file.getPath() + ".tmp");
+        RandomAccessFile output = new RandomAccessFile(tempFile, "rw");
+        boolean written = false;
+        try
+        {
+            output.setLength(0);
+            output.setLength(HeaderSize + (long) xSize * zSize + (long) (xSize >> 2) * (zSize >> 2));
+
+            FileChannel channel = output.getChannel();
+            final MappedByteBuffer biomes = channel.map(FileChannel.MapMode.READ_WRITE, HeaderSize, (long) xSize * zSize);
+            final MappedByteBuffer unZoomedBiomes = channel.map(FileChannel.MapMode.READ_WRITE, HeaderSize + (long) xSize * zSize, (long) (xSize >> 2) * (zSize >> 2));
+
+            final int bands = (zSize + BandSize - 1) / BandSize;
+            final AtomicInteger nextBand = new AtomicInteger();
+            final AtomicInteger bandsDone = new AtomicInteger();
+
+            Thread[] workers = new Thread[Math.max(1, Math.min(MaxThreads, Runtime.getRuntime().availableProcessors()))];
+            for (int i = 0; i < workers.length; i++)
+            {
+                workers[i] = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            if (!ArraysCache.AcquireBackgroundPermit(Long.MAX_VALUE))
+                                return;
+                        } catch (InterruptedException e)
+                        {
+                            return;
+                        }
+
+                        try
+                        {
+                            calculateBands();
+                        } finally
+                        {
+                            ArraysCache.ReleaseBackgroundPermit();
+                        }
+                    }
+
+                    private void calculateBands()
+                    {
+                        Layer[] layers = Layer.Init(world.getSeed(), world);
+                        byte[] zoomed = null;
+                        byte[] unZoomed = null;
+                        int band;
+                        while ((band = nextBand.getAndIncrement()) < bands)
+                        {
+                            int z = band * BandSize;
+                            int rows = Math.min(BandSize, zSize - z);
+
+                            zoomed = layers[1].Calculate(zoomed, minX, minZ + z, xSize, rows);
+                            ByteBuffer output = biomes.duplicate();
+                            output.position(z * xSize);
+                            output.put(zoomed, 0, xSize * rows);
+
+                            unZoomed = layers[0].Calculate(unZoomed, minX >> 2, (minZ + z) >> 2, xSize >> 2, rows >> 2);
+                            output = unZoomedBiomes.duplicate();
+                            output.position((z >> 2) * (xSize >> 2));
+                            output.put(unZoomed, 0, (xSize >> 2) * (rows >> 2));
+
+                            int done = bandsDone.incrementAndGet();
+                            if (done * 10 / bands != (done - 1) * 10 / bands)
+                                TerrainControl.log("Precomputing biomes of " + world.getName() + ": " + (done * 100 / bands) + "%");
+                        }
+                    }
+                }, "TC biome precompute " + i);
+                workers[i].start();
+            }
+
+            try
+            {
+                for (Thread worker : workers)
+                    worker.join();
+            } catch (InterruptedException e)
+            {
+                throw new IOException("Interrupted while precomputing biomes");
+            } finally
+            {
+                // The bands are much bigger than the arrays of chunk generation
+                ArraysCache.TrimSlots();
+            }
+            if (bandsDone.get() != bands)
+                throw new IOException("A worker stopped before all biomes were calculated");
+
+            biomes.force();
+            unZoomedBiomes.force();
+
+            output.seek(0);
+            output.writeInt(Magic);
+            output.writeInt(Version);
+            output.writeLong(world.getSeed());
+            output.writeInt(getSettingsHash(config));
+            output.writeInt(minX);
+            output.writeInt(minZ);
+            output.writeInt(xSize);
+            output.writeInt(zSize);
+            channel.force(true);
+            written = true;
+        } finally
+        {
+            output.close();
+            if (!written)
+                tempFile.delete();
+        }
+
+        // Renaming over the old file is atomic and keeps the old mapping
+        // valid until it is released. Some systems don't allow replacing a
+        // mapped file, the old file is left as it is then.
+        if (!tempFile.renameTo(file))
+        {
+            tempFile.delete();
+            throw new IOException("Can't replace " + file.getName() + ", stop the server and try again");
+        }
+    }
+
+    // Checksum of the settings files, the biomes must be precomputed again when they change
+    private static int getSettingsHash(WorldConfig config)
+    {
+        CRC32 crc = new CRC32();
+        updateHash(crc, new File(config.SettingsDir, TCDefaultValues.WorldSettingsName.stringValue()));
+
+        File[] biomeFiles = new File(config.SettingsDir, TCDefaultValues.WorldBiomeConfigDirectoryName.stringValue()).listFiles();
+        if (biomeFiles != null)
+        {
+            Arrays.sort(biomeFiles);
+            for (File biomeFile : biomeFiles)
+                updateHash(crc, biomeFile);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void updateHash(CRC32 crc, File file)
+    {
+        if (!file.isFile())
+            return;
+        crc.update(file.getName().getBytes());
+        try
+        {
+            FileInputStream stream = new FileInputStream(file);
+            try
+            {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = stream.read(buffer)) != -1)
+                    crc.update(buffer, 0, read);
+            } finally
+            {
+                stream.close();
+            }
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
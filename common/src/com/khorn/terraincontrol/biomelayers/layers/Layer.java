@@ -79,6 +79,10 @@ public abstract class Layer
         LocalBiome[][] NormalBiomeMap = new LocalBiome[config.GenerationDepth + 1][];
         LocalBiome[][] IceBiomeMap = new LocalBiome[config.GenerationDepth + 1][];
 
+        // Local copies, so that the layers can be created more than once from the same config
+        int normalBiomesRarity = config.normalBiomesRarity;
+        int iceBiomesRarity = config.iceBiomesRarity;
+
 
         for (int i = 0; i < config.GenerationDepth + 1; i++)
         {
@@ -93,24 +97,24 @@ public abstract class Layer
                 {
                     for (int t = 0; t < biomeConfig.BiomeRarity; t++)
                         normalBiomes.add(biomeConfig.Biome);
-                    config.normalBiomesRarity -= biomeConfig.BiomeRarity;
+                    normalBiomesRarity -= biomeConfig.BiomeRarity;
                 }
 
                 if (config.IceBiomes.contains(biomeConfig.Name))
                 {
                     for (int t = 0; t < biomeConfig.BiomeRarity; t++)
                         iceBiomes.add(biomeConfig.Biome);
-                    config.iceBiomesRarity -= biomeConfig.BiomeRarity;
+                    iceBiomesRarity -= biomeConfig.BiomeRarity;
                 }
 
             }
             if (normalBiomes.size() != 0)
-                NormalBiomeMap[i] = normalBiomes.toArray(new LocalBiome[normalBiomes.size() + config.normalBiomesRarity]);
+                NormalBiomeMap[i] = normalBiomes.toArray(new LocalBiome[normalBiomes.size() + normalBiomesRarity]);
             else
                 NormalBiomeMap[i] = new LocalBiome[0];
 
             if (iceBiomes.size() != 0)
-                IceBiomeMap[i] = iceBiomes.toArray(new LocalBiome[iceBiomes.size() + config.iceBiomesRarity]);
+                IceBiomeMap[i] = iceBiomes.toArray(new LocalBiome[iceBiomes.size() + iceBiomesRarity]);
             else
                 IceBiomeMap[i] = new LocalBiome[0];
 
@@ -268,6 +272,41 @@ public abstract class Layer
         this.c += paramLong2;
     }
 
+    /**
+     * Calculates the seeds SetSeed gives for count cells of a row, at x,
+     * x + xStep, x + 2 * xStep and so on. The cells don't depend on each
+     * other, so the loop is a good candidate for unrolling and vectorisation
+     * by the JIT. The seeds are bit for bit the same as with SetSeed.
+     *
+     * @param seeds Array to reuse, a new one is returned when it is too small.
+     * @return The seeds, use them with SetSeed(long).
+     */
+    protected long[] GetRowSeeds(long[] seeds, int x, int xStep, int z, int count)
+    {
+        if ((seeds == null) || (seeds.length < count))
+            seeds = new long[count];
+
+        long first = this.b * (this.b * 6364136223846793005L + 1442695040888963407L);
+        for (int i = 0; i < count; i++)
+        {
+            long cellX = x + i * xStep;
+            long seed = first + cellX;
+            seed *= (seed * 6364136223846793005L + 1442695040888963407L);
+            seed += z;
+            seed *= (seed * 6364136223846793005L + 1442695040888963407L);
+            seed += cellX;
+            seed *= (seed * 6364136223846793005L + 1442695040888963407L);
+            seed += z;
+            seeds[i] = seed;
+        }
+        return seeds;
+    }
+
+    protected void SetSeed(long cellSeed)
+    {
+        this.c = cellSeed;
+    }
+
     protected int nextInt(int paramInt)
     {
         int i = (int) ((this.c >> 24) % paramInt);
@@ -278,11 +317,47 @@ public abstract class Layer
         return i;
     }
 
-    protected abstract int[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size);
+    // Layer values fit in a short: the biome id plus the Land, Ice, River and Island bits
+    protected abstract short[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size);
 
     public int[] Calculate(int x, int z, int x_size, int z_size)
     {
         return new int[0];
     }
 
+    /**
+     * Same as Calculate, but stores the biome ids in the given array, which
+     * is reused when it is big enough.
+     */
+    public int[] Calculate(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return new int[0];
+    }
+
+    /**
+     * Same as Calculate, but stores the biome ids in a byte array, which is
+     * reused when it is big enough. Read the ids with & 0xFF.
+     */
+    public byte[] Calculate(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return new byte[0];
+    }
+
+    /**
+     * For the zoomed layer: calculates the unzoomed biomes of one area and the
+     * zoomed biomes of an area inside it, evaluating the layers below the zoom
+     * only once. When the zoomed area needs unzoomed cells outside the
+     * unzoomed area, those are calculated separately.
+     *
+     * @param unZoomedArray
+     *            Array of at least ux_size * uz_size for the unzoomed biomes.
+     * @param biomeArray
+     *            Array to reuse for the zoomed biomes, may be null.
+     * @return The zoomed biomes.
+     */
+    public int[] Calculate(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return new int[0];
+    }
+
 }
@@ -15,16 +15,18 @@ public class LayerBiome extends Layer
         this.child = paramGenLayer;
     }
 
-    public int[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size)
+    public short[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size)
     {
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, x, z, x_size, z_size);
+        short[] arrayOfInt1 = this.child.GetBiomes(cacheId, x, z, x_size, z_size);
 
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, x_size * z_size);
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, x_size * z_size);
+        long[] seeds = ArraysCache.GetLongArray(cacheId, x_size);
         for (int i = 0; i < z_size; i++)
         {
+            GetRowSeeds(seeds, x, 1, i + z, x_size);
             for (int j = 0; j < x_size; j++)
             {
-                SetSeed(j + x, i + z);
+                SetSeed(seeds[j]);
                 int currentPiece = arrayOfInt1[(j + i * x_size)];
 
 
@@ -43,7 +45,7 @@ public class LayerBiome extends Layer
                     }
                 }
 
-                arrayOfInt2[(j + i * x_size)] = currentPiece;
+                arrayOfInt2[(j + i * x_size)] = (short) currentPiece;
 
 
             }
@@ -33,16 +33,16 @@ public class LayerBiomeBorder extends Layer
     }
 
     @Override
-    public int[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    public short[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
     {
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, paramInt1 - 1, paramInt2 - 1, paramInt3 + 2, paramInt4 + 2);
+        short[] arrayOfInt1 = this.child.GetBiomes(cacheId, paramInt1 - 1, paramInt2 - 1, paramInt3 + 2, paramInt4 + 2);
 
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
         for (int i = 0; i < paramInt4; i++)
         {
             for (int j = 0; j < paramInt3; j++)
             {
-                SetSeed(j + paramInt1, i + paramInt2);
+                // No randomness here, so no SetSeed for every cell
                 int currentPiece = arrayOfInt1[(j + 1 + (i + 1) * (paramInt3 + 2))];
 
                 int biomeId = GetBiomeFromLayer(currentPiece);
@@ -58,7 +58,7 @@ public class LayerBiomeBorder extends Layer
                             currentPiece = (currentPiece & (IslandBit | RiverBits | IceBit)) | LandBit | BordersTo[biomeId];
                 }
 
-                arrayOfInt2[(j + i * paramInt3)] = currentPiece;
+                arrayOfInt2[(j + i * paramInt3)] = (short) currentPiece;
 
             }
         }
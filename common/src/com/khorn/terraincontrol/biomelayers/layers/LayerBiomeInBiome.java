@@ -23,15 +23,15 @@ public class LayerBiomeInBiome extends Layer
     }
 
     @Override
-    public int[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    public short[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
     {
         int i = paramInt1 - 1;
         int j = paramInt2 - 1;
         int k = paramInt3 + 2;
         int m = paramInt4 + 2;
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
+        short[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
 
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
 
         for (int n = 0; n < paramInt4; n++)
         {
@@ -68,7 +68,7 @@ public class LayerBiomeInBiome extends Layer
 
                 }
 
-                arrayOfInt2[(i1 + n * paramInt3)] = currentPiece;
+                arrayOfInt2[(i1 + n * paramInt3)] = (short) currentPiece;
             }
         }
         return arrayOfInt2;
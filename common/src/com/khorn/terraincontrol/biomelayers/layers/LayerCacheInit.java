@@ -11,17 +11,81 @@ public class LayerCacheInit extends Layer
     }
 
     @Override
-    public int[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size)
+    public short[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size)
     {
-        return new int[0];
+        return new short[0];
     }
 
     @Override
     public int[] Calculate(int x, int z, int x_size, int z_size)
     {
+        return this.Calculate((int[]) null, x, z, x_size, z_size);
+    }
+
+    @Override
+    public int[] Calculate(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
+        {
+            biomeArray = new int[x_size * z_size];
+        }
+
+        int cache = ArraysCache.GetCacheId();
+        try
+        {
+            short[] biomes = this.child.GetBiomes(cache, x, z, x_size, z_size);
+            for (int i = 0; i < x_size * z_size; i++)
+                biomeArray[i] = biomes[i];
+        } finally
+        {
+            ArraysCache.ReleaseCacheId(cache);
+        }
+        return biomeArray;
+    }
+
+    @Override
+    public byte[] Calculate(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
+        {
+            biomeArray = new byte[x_size * z_size];
+        }
+
+        int cache = ArraysCache.GetCacheId();
+        try
+        {
+            short[] biomes = this.child.GetBiomes(cache, x, z, x_size, z_size);
+            for (int i = 0; i < x_size * z_size; i++)
+                biomeArray[i] = (byte) biomes[i];
+        } finally
+        {
+            ArraysCache.ReleaseCacheId(cache);
+        }
+        return biomeArray;
+    }
+
+    @Override
+    public int[] Calculate(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
+        {
+            biomeArray = new int[x_size * z_size];
+        }
+
+        LayerZoomVoronoi zoomLayer = (LayerZoomVoronoi) this.child;
         int cache = ArraysCache.GetCacheId();
-        int[] out = this.child.GetBiomes(cache, x, z, x_size, z_size);
-        ArraysCache.ReleaseCacheId(cache);
-        return out;
+        try
+        {
+            short[] unZoomed = zoomLayer.child.GetBiomes(cache, ux, uz, ux_size, uz_size);
+            for (int i = 0; i < ux_size * uz_size; i++)
+                unZoomedArray[i] = unZoomed[i];
+            short[] biomes = zoomLayer.GetBiomes(cache, unZoomed, ux, uz, ux_size, uz_size, x, z, x_size, z_size);
+            for (int i = 0; i < x_size * z_size; i++)
+                biomeArray[i] = biomes[i];
+        } finally
+        {
+            ArraysCache.ReleaseCacheId(cache);
+        }
+        return biomeArray;
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.khorn.terraincontrol.biomelayers.layers;
 
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.biomelayers.ArraysCache;
+import com.khorn.terraincontrol.biomelayers.MappedBiomeImage;
 import com.khorn.terraincontrol.configuration.WorldConfig;
 
 import javax.imageio.ImageIO;
@@ -12,6 +13,7 @@ import java.io.IOException;
 public class LayerFromImage extends Layer
 {
     private int[] biomeMap;
+    private MappedBiomeImage mappedMap;
     private int mapHeight;
     private int mapWidth;
     private int fillBiome = 0;
@@ -28,6 +30,17 @@ public class LayerFromImage extends Layer
         this.imageMode = config.imageMode;
         this.fillBiome = world.getBiomeIdByName(config.imageFillBiome);
 
+        if (config.imageMapped)
+        {
+            this.mappedMap = MappedBiomeImage.open(config, this.fillBiome);
+            if (this.mappedMap != null)
+            {
+                this.mapHeight = this.mappedMap.getHeight();
+                this.mapWidth = this.mappedMap.getWidth();
+                return;
+            }
+        }
+
         //read from file
 
         try
@@ -59,10 +72,10 @@ public class LayerFromImage extends Layer
 
 
     @Override
-    protected int[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size)
+    protected short[] GetBiomes(int cacheId, int x, int z, int x_size, int z_size)
     {
-        int[] arrayOfInt1 = ArraysCache.GetArray(cacheId, x_size * z_size);
-        int[] arrayOfInt2 = null;
+        short[] arrayOfInt1 = ArraysCache.GetArray(cacheId, x_size * z_size);
+        short[] arrayOfInt2 = null;
 
         if (this.child != null)
             arrayOfInt2 = this.child.GetBiomes(cacheId, x, z, x_size, z_size);
@@ -80,7 +93,7 @@ public class LayerFromImage extends Layer
                 {
                     Buffer_x = this.mapWidth - 1 - Math.abs((z + i - zOffset) % this.mapWidth);
                     Buffer_z = Math.abs((x + t - xOffset) % this.mapHeight);
-                    arrayOfInt1[(t + i * x_size)] = this.biomeMap[Buffer_x + Buffer_z * this.mapWidth];
+                    arrayOfInt1[(t + i * x_size)] = (short) this.getMapBiome(Buffer_x, Buffer_z);
                 } else
                 {
                     Buffer_x = this.mapWidth - (z + i - zOffset);
@@ -89,9 +102,9 @@ public class LayerFromImage extends Layer
                         if (arrayOfInt2 != null)
                             arrayOfInt1[(t + i * x_size)] = arrayOfInt2[(t + i * x_size)];
                         else
-                            arrayOfInt1[(t + i * x_size)] = this.fillBiome;
+                            arrayOfInt1[(t + i * x_size)] = (short) this.fillBiome;
                     else
-                        arrayOfInt1[(t + i * x_size)] = this.biomeMap[Buffer_x + Buffer_z * this.mapWidth];
+                        arrayOfInt1[(t + i * x_size)] = (short) this.getMapBiome(Buffer_x, Buffer_z);
 
                 }
             }
@@ -101,4 +114,11 @@ public class LayerFromImage extends Layer
 
         return arrayOfInt1;
     }
+
+    private int getMapBiome(int x, int z)
+    {
+        if (this.mappedMap != null)
+            return this.mappedMap.getBiome(x, z);
+        return this.biomeMap[x + z * this.mapWidth];
+    }
 }
@@ -17,12 +17,12 @@ public class LayerMix extends Layer
     private WorldConfig worldConfig;
 
     @Override
-    public int[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    public short[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
     {
 
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, paramInt1, paramInt2, paramInt3, paramInt4);
+        short[] arrayOfInt1 = this.child.GetBiomes(cacheId, paramInt1, paramInt2, paramInt3, paramInt4);
 
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
         for (int i = 0; i < paramInt4; i++)
         {
             for (int j = 0; j < paramInt3; j++)
@@ -42,7 +42,7 @@ public class LayerMix extends Layer
                     currentPiece = DefaultBiome.FROZEN_OCEAN.Id;
                 else
                     currentPiece = DefaultBiome.OCEAN.Id;
-                arrayOfInt2[(j + i * paramInt3)] = currentPiece;
+                arrayOfInt2[(j + i * paramInt3)] = (short) currentPiece;
             }
         }
 
@@ -11,15 +11,15 @@ public class LayerRiver extends Layer
         this.child = paramGenLayer;
     }
 
-    public int[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    public short[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
     {
         int i = paramInt1 - 1;
         int j = paramInt2 - 1;
         int k = paramInt3 + 2;
         int m = paramInt4 + 2;
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
+        short[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
 
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
         for (int n = 0; n < paramInt4; n++)
         {
             for (int i1 = 0; i1 < paramInt3; i1++)
@@ -39,7 +39,7 @@ public class LayerRiver extends Layer
                     currentPiece |= RiverBits;
                     currentPiece ^= RiverBits;
                 }
-                arrayOfInt2[(i1 + n * paramInt3)] = currentPiece;
+                arrayOfInt2[(i1 + n * paramInt3)] = (short) currentPiece;
             }
         }
 
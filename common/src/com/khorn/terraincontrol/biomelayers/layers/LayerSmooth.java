@@ -11,15 +11,15 @@ public class LayerSmooth extends Layer
         this.child = paramGenLayer;
     }
 
-    public int[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    public short[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
     {
         int i = paramInt1 - 1;
         int j = paramInt2 - 1;
         int k = paramInt3 + 2;
         int m = paramInt4 + 2;
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
+        short[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
 
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
         for (int n = 0; n < paramInt4; n++)
         {
             for (int i1 = 0; i1 < paramInt3; i1++)
@@ -43,7 +43,7 @@ public class LayerSmooth extends Layer
                     if (i4 == i5)
                         i6 = i4;
                 }
-                arrayOfInt2[(i1 + n * paramInt3)] = i6;
+                arrayOfInt2[(i1 + n * paramInt3)] = (short) i6;
             }
 
         }
@@ -11,15 +11,15 @@ public class LayerZoomFuzzy extends Layer
         this.child = paramGenLayer;
     }
 
-    public int[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    public short[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
     {
         int i = paramInt1 >> 1;
         int j = paramInt2 >> 1;
         int k = (paramInt3 >> 1) + 3;
         int m = (paramInt4 >> 1) + 3;
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
+        short[] arrayOfInt1 = this.child.GetBiomes(cacheId, i, j, k, m);
 
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, k * 2 * (m * 2));
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, k * 2 * (m * 2));
         int n = k << 1;
         for (int i1 = 0; i1 < m - 1; i1++)
         {
@@ -33,16 +33,16 @@ public class LayerZoomFuzzy extends Layer
                 int i7 = arrayOfInt1[(i6 + 1 + (i1 + 0) * k)];
                 int i8 = arrayOfInt1[(i6 + 1 + (i1 + 1) * k)];
 
-                arrayOfInt2[i3] = i4;
-                arrayOfInt2[(i3++ + n)] = RndParam(i4, i5);
-                arrayOfInt2[i3] = RndParam(i4, i7);
-                arrayOfInt2[(i3++ + n)] = b(i4, i7, i5, i8);
+                arrayOfInt2[i3] = (short) i4;
+                arrayOfInt2[(i3++ + n)] = (short) RndParam(i4, i5);
+                arrayOfInt2[i3] = (short) RndParam(i4, i7);
+                arrayOfInt2[(i3++ + n)] = (short) b(i4, i7, i5, i8);
 
                 i4 = i7;
                 i5 = i8;
             }
         }
-        int[] arrayOfInt3 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
+        short[] arrayOfInt3 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
         for (int i2 = 0; i2 < paramInt4; i2++)
         {
             System.arraycopy(arrayOfInt2, (i2 + (paramInt2 & 0x1)) * (k << 1) + (paramInt1 & 0x1), arrayOfInt3, i2 * paramInt3, paramInt3);
@@ -11,7 +11,16 @@ public class LayerZoomVoronoi extends Layer
         this.child = paramGenLayer;
     }
 
-    public int[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    public short[] GetBiomes(int cacheId, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
+    {
+        return this.GetBiomes(cacheId, null, 0, 0, 0, 0, paramInt1, paramInt2, paramInt3, paramInt4);
+    }
+
+    /**
+     * Same as GetBiomes, but takes the child biomes from an already
+     * calculated area of the child layer when that area covers them.
+     */
+    short[] GetBiomes(int cacheId, short[] childBiomes, int childX, int childZ, int childXSize, int childZSize, int paramInt1, int paramInt2, int paramInt3, int paramInt4)
     {
         paramInt1 -= 2;
         paramInt2 -= 2;
@@ -21,28 +30,39 @@ public class LayerZoomVoronoi extends Layer
         int m = paramInt2 >> i;
         int n = (paramInt3 >> i) + 3;
         int i1 = (paramInt4 >> i) + 3;
-        int[] arrayOfInt1 = this.child.GetBiomes(cacheId, k, m, n, i1);
+        short[] arrayOfInt1;
+        if (childBiomes != null && k >= childX && m >= childZ && k + n <= childX + childXSize && m + i1 <= childZ + childZSize)
+        {
+            arrayOfInt1 = ArraysCache.GetArray(cacheId, n * i1);
+            for (int row = 0; row < i1; row++)
+                System.arraycopy(childBiomes, (m + row - childZ) * childXSize + (k - childX), arrayOfInt1, row * n, n);
+        } else
+            arrayOfInt1 = this.child.GetBiomes(cacheId, k, m, n, i1);
 
         int i2 = n << i;
         int i3 = i1 << i;
-        int[] arrayOfInt2 = ArraysCache.GetArray(cacheId, i2 * i3);
+        short[] arrayOfInt2 = ArraysCache.GetArray(cacheId, i2 * i3);
+        // Cell corners of a row of cells, the bottom row is the top row of the next
+        long[] top = GetRowSeeds(ArraysCache.GetLongArray(cacheId, n), k << i, j, m << i, n);
+        long[] bottom = ArraysCache.GetLongArray(cacheId, n);
         for (int i4 = 0; i4 < i1 - 1; i4++)
         {
+            GetRowSeeds(bottom, k << i, j, i4 + m + 1 << i, n);
             int i5 = arrayOfInt1[(0 + (i4 + 0) * n)];
             int i6 = arrayOfInt1[(0 + (i4 + 1) * n)];
             for (int i7 = 0; i7 < n - 1; i7++)
             {
                 double d1 = j * 0.9D;
-                SetSeed(i7 + k << i, i4 + m << i);
+                SetSeed(top[i7]);
                 double d2 = (nextInt(1024) / 1024.0D - 0.5D) * d1;
                 double d3 = (nextInt(1024) / 1024.0D - 0.5D) * d1;
-                SetSeed(i7 + k + 1 << i, i4 + m << i);
+                SetSeed(top[i7 + 1]);
                 double d4 = (nextInt(1024) / 1024.0D - 0.5D) * d1 + j;
                 double d5 = (nextInt(1024) / 1024.0D - 0.5D) * d1;
-                SetSeed(i7 + k << i, i4 + m + 1 << i);
+                SetSeed(bottom[i7]);
                 double d6 = (nextInt(1024) / 1024.0D - 0.5D) * d1;
                 double d7 = (nextInt(1024) / 1024.0D - 0.5D) * d1 + j;
-                SetSeed(i7 + k + 1 << i, i4 + m + 1 << i);
+                SetSeed(bottom[i7 + 1]);
                 double d8 = (nextInt(1024) / 1024.0D - 0.5D) * d1 + j;
                 double d9 = (nextInt(1024) / 1024.0D - 0.5D) * d1 + j;
 
@@ -60,14 +80,14 @@ public class LayerZoomVoronoi extends Layer
                         double d13 = (i10 - d9) * (i10 - d9) + (i12 - d8) * (i12 - d8);
 
                         if ((d10 < d11) && (d10 < d12) && (d10 < d13))
-                            arrayOfInt2[(i11++)] = i5;
+                            arrayOfInt2[(i11++)] = (short) i5;
                         else if ((d11 < d10) && (d11 < d12) && (d11 < d13))
-                            arrayOfInt2[(i11++)] = i8;
+                            arrayOfInt2[(i11++)] = (short) i8;
                         else if ((d12 < d10) && (d12 < d11) && (d12 < d13))
-                            arrayOfInt2[(i11++)] = i6;
+                            arrayOfInt2[(i11++)] = (short) i6;
                         else
                         {
-                            arrayOfInt2[(i11++)] = i9;
+                            arrayOfInt2[(i11++)] = (short) i9;
                         }
                     }
                 }
@@ -75,8 +95,12 @@ public class LayerZoomVoronoi extends Layer
                 i5 = i8;
                 i6 = i9;
             }
+
+            long[] swap = top;
+            top = bottom;
+            bottom = swap;
         }
-        int[] arrayOfInt3 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
+        short[] arrayOfInt3 = ArraysCache.GetArray(cacheId, paramInt3 * paramInt4);
         for (int i5 = 0; i5 < paramInt4; i5++)
         {
             System.arraycopy(arrayOfInt2, (i5 + (paramInt2 & j - 1)) * (n << i) + (paramInt1 & j - 1), arrayOfInt3, i5 * paramInt3, paramInt3);
@@ -40,6 +40,11 @@ public class BiomeConfig extends ConfigFile
     public short[][] ReplaceMatrixBlocks = new short[256][];
     public int ReplaceCount = 0;
 
+    // ReplaceMatrixBlocks split in the blocks that are replaced in the raw
+    // terrain and the blocks that are replaced after the population
+    private ReplaceTable terrainReplaceTable;
+    private ReplaceTable replaceTable;
+
     public int BiomeSize;
     public int BiomeRarity;
 
@@ -77,7 +82,8 @@ public class BiomeConfig extends ConfigFile
     public int FoliageColor;
     public boolean FoliageColorIsMultiplier;
 
-    public Resource[] ResourceSequence = new Resource[256];
+    // Exactly ResourceCount long once the settings are loaded
+    public Resource[] ResourceSequence = new Resource[0];
     public SaplingGen[] SaplingTypes = new SaplingGen[4];
     public SaplingGen SaplingResource = null;
 
@@ -128,6 +134,8 @@ public class BiomeConfig extends ConfigFile
         this.CorrectSettings();
         if (!settingsFile.exists())
             this.CreateDefaultResources();
+        if (this.ResourceSequence.length != this.ResourceCount)
+            this.ResourceSequence = Arrays.copyOf(this.ResourceSequence, this.ResourceCount);
         if (config.SettingsMode != WorldConfig.ConfigMode.WriteDisable)
             this.WriteSettingsFile(settingsFile, (config.SettingsMode == WorldConfig.ConfigMode.WriteAll));
 
@@ -159,77 +167,77 @@ public class BiomeConfig extends ConfigFile
 
         // Small lakes
         resource = Resource.create(worldConfig, SmallLakeGen.class, DefaultMaterial.WATER.id, TCDefaultValues.SmallLakeWaterFrequency.intValue(), TCDefaultValues.SmallLakeWaterRarity.intValue(), TCDefaultValues.SmallLakeMinAltitude.intValue(), TCDefaultValues.SmallLakeMaxAltitude.intValue());
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Small lakes
         resource = Resource.create(worldConfig, SmallLakeGen.class, DefaultMaterial.LAVA.id, TCDefaultValues.SmallLakeLavaFrequency.intValue(), TCDefaultValues.SmallLakeLavaRarity.intValue(), TCDefaultValues.SmallLakeMinAltitude.intValue(), TCDefaultValues.SmallLakeMaxAltitude.intValue());
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Underground lakes
         resource = Resource.create(worldConfig, UndergroundLakeGen.class, TCDefaultValues.undergroundLakeMinSize.intValue(), TCDefaultValues.undergroundLakeMaxSize.intValue(), TCDefaultValues.undergroundLakeFrequency.intValue(), TCDefaultValues.undergroundLakeRarity.intValue(), TCDefaultValues.undergroundLakeMinAltitude.intValue(), TCDefaultValues.undergroundLakeMaxAltitude.intValue());
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Dungeon
         resource = Resource.create(worldConfig, DungeonGen.class, TCDefaultValues.dungeonFrequency.intValue(), TCDefaultValues.dungeonRarity.intValue(), TCDefaultValues.dungeonMinAltitude.intValue(), this.worldConfig.WorldHeight);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Dirt
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.DIRT.id, TCDefaultValues.dirtDepositSize.intValue(), TCDefaultValues.dirtDepositFrequency.intValue(), TCDefaultValues.dirtDepositRarity.intValue(), TCDefaultValues.dirtDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Gravel
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.GRAVEL.id, TCDefaultValues.gravelDepositSize.intValue(), TCDefaultValues.gravelDepositFrequency.intValue(), TCDefaultValues.gravelDepositRarity.intValue(), TCDefaultValues.gravelDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Clay
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.CLAY.id, TCDefaultValues.clayDepositSize.intValue(), TCDefaultValues.clayDepositFrequency.intValue(), TCDefaultValues.clayDepositRarity.intValue(), TCDefaultValues.clayDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Coal
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.COAL_ORE.id, TCDefaultValues.coalDepositSize.intValue(), TCDefaultValues.coalDepositFrequency.intValue(), TCDefaultValues.coalDepositRarity.intValue(), TCDefaultValues.coalDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Iron
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.IRON_ORE.id, TCDefaultValues.ironDepositSize.intValue(), TCDefaultValues.ironDepositFrequency.intValue(), TCDefaultValues.ironDepositRarity.intValue(), TCDefaultValues.ironDepositMinAltitude.intValue(), this.worldConfig.WorldHeight / 2, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Gold
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.GOLD_ORE.id, TCDefaultValues.goldDepositSize.intValue(), TCDefaultValues.goldDepositFrequency.intValue(), TCDefaultValues.goldDepositRarity.intValue(), TCDefaultValues.goldDepositMinAltitude.intValue(), this.worldConfig.WorldHeight / 4, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Redstone
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.REDSTONE_ORE.id, TCDefaultValues.redstoneDepositSize.intValue(), TCDefaultValues.redstoneDepositFrequency.intValue(), TCDefaultValues.redstoneDepositRarity.intValue(), TCDefaultValues.redstoneDepositMinAltitude.intValue(), this.worldConfig.WorldHeight / 8, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Diamond
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.DIAMOND_ORE.id, TCDefaultValues.diamondDepositSize.intValue(), TCDefaultValues.diamondDepositFrequency.intValue(), TCDefaultValues.diamondDepositRarity.intValue(), TCDefaultValues.diamondDepositMinAltitude.intValue(), this.worldConfig.WorldHeight / 8, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Lapislazuli
         resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.LAPIS_ORE.id, TCDefaultValues.lapislazuliDepositSize.intValue(), TCDefaultValues.lapislazuliDepositFrequency.intValue(), TCDefaultValues.lapislazuliDepositRarity.intValue(), TCDefaultValues.lapislazuliDepositMinAltitude.intValue(), this.worldConfig.WorldHeight / 8, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         DefaultBiome biome = DefaultBiome.getBiome(this.Biome.getId());
 
         if (biome != null && (biome == DefaultBiome.EXTREME_HILLS || biome == DefaultBiome.SMALL_MOUNTAINS))
         {
             resource = Resource.create(worldConfig, OreGen.class, DefaultMaterial.EMERALD_ORE.id, TCDefaultValues.emeraldDepositSize.intValue(), TCDefaultValues.emeraldDepositFrequency.intValue(), TCDefaultValues.emeraldDepositRarity.intValue(), TCDefaultValues.emeraldDepositMinAltitude.intValue(), this.worldConfig.WorldHeight / 4, DefaultMaterial.STONE.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         // Under water sand
         resource = Resource.create(worldConfig, UnderWaterOreGen.class, DefaultMaterial.SAND.id, TCDefaultValues.waterSandDepositSize.intValue(), TCDefaultValues.waterSandDepositFrequency.intValue(), TCDefaultValues.waterSandDepositRarity.intValue(), DefaultMaterial.DIRT.id, DefaultMaterial.GRASS.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Under water clay
         if (this.DefaultClay > 0)
         {
             resource = Resource.create(worldConfig, UnderWaterOreGen.class, DefaultMaterial.CLAY.id, TCDefaultValues.waterClayDepositSize.intValue(), this.DefaultClay, TCDefaultValues.waterClayDepositRarity.intValue(), DefaultMaterial.DIRT.id, DefaultMaterial.CLAY.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
         // Custom objects
         resource = Resource.create(worldConfig, CustomObjectGen.class, "UseWorld");
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Trees
         if (biome != null)
@@ -240,7 +248,7 @@ public class BiomeConfig extends ConfigFile
             case RIVER: // River - default
             case SMALL_MOUNTAINS: // SmallHills
                 resource = Resource.create(worldConfig, TreeGen.class, this.DefaultTrees, TreeType.BigTree, 1, TreeType.Tree, 9);
-                this.ResourceSequence[this.ResourceCount++] = resource;
+                this.AddResource(resource);
                 break;
             case PLAINS: // Plains - no tree
             case DESERT: // Desert - no tree
@@ -249,100 +257,100 @@ public class BiomeConfig extends ConfigFile
             case FOREST_HILLS: // HillsForest
             case FOREST: // Forest - forest
                 resource = Resource.create(worldConfig, TreeGen.class, this.DefaultTrees, TreeType.Forest, 20, TreeType.BigTree, 10, TreeType.Tree, 100);
-                this.ResourceSequence[this.ResourceCount++] = resource;
+                this.AddResource(resource);
                 break;
             case TAIGA_HILLS: // HillsTaiga
             case TAIGA: // Taiga - taiga
                 resource = Resource.create(worldConfig, TreeGen.class, this.DefaultTrees, TreeType.Taiga1, 35, TreeType.Taiga2, 100);
-                this.ResourceSequence[this.ResourceCount++] = resource;
+                this.AddResource(resource);
                 break;
             case SWAMPLAND: // Swamp - swamp
                 resource = Resource.create(worldConfig, TreeGen.class, this.DefaultTrees, TreeType.SwampTree, 100);
-                this.ResourceSequence[this.ResourceCount++] = resource;
+                this.AddResource(resource);
                 break;
             case MUSHROOM_ISLAND: // Mushroom island
                 resource = Resource.create(worldConfig, TreeGen.class, this.DefaultTrees, TreeType.HugeMushroom, 100);
-                this.ResourceSequence[this.ResourceCount++] = resource;
+                this.AddResource(resource);
                 break;
             case JUNGLE:// Jungle
             case JUNGLE_HILLS:
                 resource = Resource.create(worldConfig, TreeGen.class, this.DefaultTrees, TreeType.BigTree, 10, TreeType.GroundBush, 50, TreeType.JungleTree, 35, TreeType.CocoaTree, 100);
-                this.ResourceSequence[this.ResourceCount++] = resource;
+                this.AddResource(resource);
                 break;
 
             }
         if (this.DefaultWaterLily > 0)
         {
             resource = Resource.create(worldConfig, AboveWaterGen.class, DefaultMaterial.WATER_LILY.id, this.DefaultWaterLily, 100);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         if (this.DefaultFlowers > 0)
         {
             // Red flower
             resource = Resource.create(worldConfig, PlantGen.class, DefaultMaterial.RED_ROSE.id, this.DefaultFlowers, TCDefaultValues.roseDepositRarity.intValue(), TCDefaultValues.roseDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id, DefaultMaterial.SOIL.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
 
             // Yellow flower
             resource = Resource.create(worldConfig, PlantGen.class, DefaultMaterial.YELLOW_FLOWER.id, this.DefaultFlowers, TCDefaultValues.flowerDepositRarity.intValue(), TCDefaultValues.flowerDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id, DefaultMaterial.SOIL.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         if (this.DefaultMushroom > 0)
         {
             // Red mushroom
             resource = Resource.create(worldConfig, PlantGen.class, DefaultMaterial.RED_MUSHROOM.id, this.DefaultMushroom, TCDefaultValues.redMushroomDepositRarity.intValue(), TCDefaultValues.redMushroomDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
 
             // Brown mushroom
             resource = Resource.create(worldConfig, PlantGen.class, DefaultMaterial.BROWN_MUSHROOM.id, this.DefaultMushroom, TCDefaultValues.brownMushroomDepositRarity.intValue(), TCDefaultValues.brownMushroomDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         if (this.DefaultGrass > 0)
         {
             // Grass
             resource = Resource.create(worldConfig, GrassGen.class, DefaultMaterial.LONG_GRASS.id, 1, this.DefaultGrass, TCDefaultValues.longGrassDepositRarity.intValue(), DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         if (this.DefaultDeadBrush > 0)
         {
             // Dead Bush
             resource = Resource.create(worldConfig, GrassGen.class, DefaultMaterial.DEAD_BUSH.id, 0, this.DefaultDeadBrush, TCDefaultValues.deadBushDepositRarity.intValue(), DefaultMaterial.SAND.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         // Pumpkin
         resource = Resource.create(worldConfig, PlantGen.class, DefaultMaterial.PUMPKIN.id, TCDefaultValues.pumpkinDepositFrequency.intValue(), TCDefaultValues.pumpkinDepositRarity.intValue(), TCDefaultValues.pumpkinDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.GRASS.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         if (this.DefaultReed > 0)
         {
             // Reed
             resource = Resource.create(worldConfig, ReedGen.class, DefaultMaterial.SUGAR_CANE_BLOCK.id, this.DefaultReed, TCDefaultValues.reedDepositRarity.intValue(), TCDefaultValues.reedDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id, DefaultMaterial.SAND.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         if (this.DefaultCactus > 0)
         {
             // Cactus
             resource = Resource.create(worldConfig, CactusGen.class, DefaultMaterial.CACTUS.id, this.DefaultCactus, TCDefaultValues.cactusDepositRarity.intValue(), TCDefaultValues.cactusDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.SAND.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
         if (biome == DefaultBiome.JUNGLE || biome == DefaultBiome.JUNGLE_HILLS) 
         {
             resource = Resource.create(worldConfig, VinesGen.class, TCDefaultValues.vinesFrequency.intValue(), TCDefaultValues.vinesRarity.intValue(), TCDefaultValues.vinesMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.VINE.id);
-            this.ResourceSequence[this.ResourceCount++] = resource;
+            this.AddResource(resource);
         }
 
         // Water source
         resource = Resource.create(worldConfig, LiquidGen.class, DefaultMaterial.WATER.id, TCDefaultValues.waterSourceDepositFrequency.intValue(), TCDefaultValues.waterSourceDepositRarity.intValue(), TCDefaultValues.waterSourceDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
         // Lava source
         resource = Resource.create(worldConfig, LiquidGen.class, DefaultMaterial.LAVA.id, TCDefaultValues.lavaSourceDepositFrequency.intValue(), TCDefaultValues.lavaSourceDepositRarity.intValue(), TCDefaultValues.lavaSourceDepositMinAltitude.intValue(), this.worldConfig.WorldHeight, DefaultMaterial.STONE.id);
-        this.ResourceSequence[this.ResourceCount++] = resource;
+        this.AddResource(resource);
 
     }
 
@@ -484,6 +492,98 @@ public class BiomeConfig extends ConfigFile
 
     }
 
+    /**
+     * Decides for every replaced block whether it can already be replaced in
+     * the raw terrain. Called by WorldConfig once the resources of all biomes
+     * are loaded, as the population of a chunk uses the resources of the
+     * biomes around it.
+     *
+     * @param populationBlocks
+     *            The block ids that something in the population of the world
+     *            looks for or places.
+     */
+    void BuildReplaceTable(boolean[] populationBlocks)
+    {
+        boolean[] terrainStage = new boolean[this.ReplaceMatrixBlocks.length];
+        boolean[] postPopulation = new boolean[this.ReplaceMatrixBlocks.length];
+        for (int id = 0; id < this.ReplaceMatrixBlocks.length; id++)
+        {
+            if (this.ReplaceMatrixBlocks[id] == null)
+                continue;
+            if (worldConfig.terrainStageBlockReplace && this.isTerrainBlock(id) && canReplaceInTerrain(id, this.ReplaceMatrixBlocks[id], populationBlocks))
+                terrainStage[id] = true;
+            else
+                postPopulation[id] = true;
+        }
+
+        this.terrainReplaceTable = new ReplaceTable(this.ReplaceMatrixBlocks, terrainStage, worldConfig.WorldHeight);
+        this.replaceTable = new ReplaceTable(this.ReplaceMatrixBlocks, postPopulation, worldConfig.WorldHeight);
+    }
+
+    private boolean isTerrainBlock(int id)
+    {
+        return id == DefaultMaterial.STONE.id || id == DefaultMaterial.SANDSTONE.id || id == (this.SurfaceBlock & 0xFF) || id == (this.GroundBlock & 0xFF) || id == this.waterBlock || id == this.iceBlock || id == worldConfig.bedrockBlock;
+    }
+
+    /**
+     * Whether replacing the block before the population gives the same chunk
+     * as replacing it after. The raw terrain holds no data values. Nothing in
+     * the population may use the block or what it is replaced with, as it
+     * would see or place other blocks than before. The population does look
+     * at whether blocks are air, solid or liquid, so that must stay the same.
+     *
+     * @param id
+     *            The replaced block id.
+     * @param row
+     *            What the block is replaced with at every height, as
+     *            (id << 4 | data) or -1.
+     * @param populationBlocks
+     *            The block ids that something in the population looks for or
+     *            places.
+     */
+    static boolean canReplaceInTerrain(int id, short[] row, boolean[] populationBlocks)
+    {
+        if (id == DefaultMaterial.AIR.id || populationBlocks[id])
+            return false;
+        DefaultMaterial material = DefaultMaterial.getMaterial(id);
+        for (short replaceTo : row)
+        {
+            if (replaceTo == -1)
+                continue;
+            int toId = replaceTo >> 4;
+            if ((replaceTo & 0xF) != 0 || toId > 255 || toId == DefaultMaterial.AIR.id || populationBlocks[toId])
+                return false;
+            DefaultMaterial toMaterial = DefaultMaterial.getMaterial(toId);
+            if (toMaterial.isSolid() != material.isSolid() || toMaterial.isLiquid() != material.isLiquid())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the blocks that are replaced in the raw terrain, when the chunk is
+     * generated. Empty unless TerrainStageBlockReplace is on.
+     */
+    public ReplaceTable getTerrainReplaceTable()
+    {
+        return this.terrainReplaceTable;
+    }
+
+    /**
+     * Gets the blocks that are replaced after the chunk is populated.
+     */
+    public ReplaceTable getReplaceTable()
+    {
+        return this.replaceTable;
+    }
+
+    private void AddResource(Resource resource)
+    {
+        if (this.ResourceCount == this.ResourceSequence.length)
+            this.ResourceSequence = Arrays.copyOf(this.ResourceSequence, Math.max(16, this.ResourceCount * 2));
+        this.ResourceSequence[this.ResourceCount++] = resource;
+    }
+
     private void ReadResourceSettings()
     {
         ArrayList<Integer> LineNumbers = new ArrayList<Integer>();
@@ -514,7 +614,7 @@ public class BiomeConfig extends ConfigFile
                     } else if (res.getType() == ResourceType.biomeConfigResource)
                     {
                         LineNumbers.add(Integer.valueOf(entry.getValue()));
-                        this.ResourceSequence[this.ResourceCount++] = res;
+                        this.AddResource(res);
                     }
                 }
             }
@@ -0,0 +1,70 @@
+package com.khorn.terraincontrol.configuration;
+
+import java.util.Random;
+
+import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.generator.ProfilingWorld;
+import com.khorn.terraincontrol.generator.ResourcePlan;
+import com.khorn.terraincontrol.generator.ScratchBuffers;
+
+/**
+ * A resource that is spawned in two phases. In the plan phase it makes all
+ * its random decisions and reads the world, but its blocks go to a
+ * ResourcePlan. In the apply phase the plan checks the blocks and places
+ * them at once. The random numbers are used in the same order as when the
+ * blocks were placed right away, so the same seed gives the same world.
+ */
+public abstract class PlannedResource extends Resource
+{
+    /**
+     * Plans the resource for a chunk, like process would spawn it.
+     *
+     * @return The plan, call apply on it to place the blocks.
+     */
+    public ResourcePlan plan(LocalWorld world, Random random, int chunkX, int chunkZ)
+    {
+        ResourcePlan plan = this.createPlan(world);
+        for (int t = 0; t < frequency; t++)
+        {
+            if (random.nextInt(100) > rarity)
+                continue;
+            ProfilingWorld.countAttempt(world);
+            int x = chunkX * 16 + random.nextInt(16) + 8;
+            int z = chunkZ * 16 + random.nextInt(16) + 8;
+            spawn(plan, random, x, z);
+        }
+        return plan;
+    }
+
+    /**
+     * Gets an empty plan with the flags this resource places its blocks
+     * with, from the ScratchBuffers of the thread. By default blocks are
+     * placed without light updates, physics or notifications.
+     */
+    protected ResourcePlan createPlan(LocalWorld world)
+    {
+        return ScratchBuffers.takePlan(world, false, false, false);
+    }
+
+    /**
+     * Plans the resource at this position, ignoring rarity and frequency.
+     */
+    public abstract void spawn(ResourcePlan plan, Random random, int x, int z);
+
+    @Override
+    public void spawn(LocalWorld world, Random random, int x, int z)
+    {
+        ResourcePlan plan = this.createPlan(world);
+        spawn(plan, random, x, z);
+        plan.apply();
+        ScratchBuffers.releasePlan(plan);
+    }
+
+    @Override
+    public void process(LocalWorld world, Random random, int chunkX, int chunkZ)
+    {
+        ResourcePlan plan = plan(world, random, chunkX, chunkZ);
+        plan.apply();
+        ScratchBuffers.releasePlan(plan);
+    }
+}
@@ -0,0 +1,106 @@
+package com.khorn.terraincontrol.configuration;
+
+/**
+ * The ReplacedBlocks of a biome in the form used while replacing: a bitmap of
+ * the replaced block ids, the range of heights with replacements and the rows
+ * of the replace matrix after each other in one array.
+ */
+public final class ReplaceTable
+{
+    private final long[] candidates = new long[4];
+    private final int[] slots = new int[256];
+    private final short[] table;
+    private final int height;
+    private int minY;
+    private int maxY = -1;
+
+    /**
+     * @param rows
+     *            The replace matrix, for every block id null or what it is
+     *            replaced with at every height, as (id << 4 | data) or -1.
+     * @param included
+     *            Which block ids of the matrix go in this table.
+     * @param height
+     *            The height of the world.
+     */
+    ReplaceTable(short[][] rows, boolean[] included, int height)
+    {
+        this.height = height;
+        this.minY = height;
+
+        int slotCount = 0;
+        for (int id = 0; id < rows.length; id++)
+        {
+            if (rows[id] == null || !included[id])
+            {
+                this.slots[id] = -1;
+                continue;
+            }
+            this.slots[id] = slotCount++;
+            this.candidates[id >> 6] |= 1L << id;
+        }
+
+        this.table = new short[slotCount * height];
+        for (int id = 0; id < rows.length; id++)
+        {
+            if (this.slots[id] == -1)
+                continue;
+            short[] row = rows[id];
+            System.arraycopy(row, 0, this.table, this.slots[id] * height, height);
+            for (int y = 0; y < height; y++)
+            {
+                if (row[y] == -1)
+                    continue;
+                this.minY = Math.min(this.minY, y);
+                this.maxY = Math.max(this.maxY, y);
+            }
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return this.maxY == -1;
+    }
+
+    /**
+     * Adds the replaced block ids to a bitmap of four longs, one bit for every
+     * block id below 256.
+     */
+    public void addCandidates(long[] bitmap)
+    {
+        for (int i = 0; i < bitmap.length; i++)
+            bitmap[i] |= this.candidates[i];
+    }
+
+    public boolean isCandidate(int blockId)
+    {
+        return blockId >= 0 && blockId < 256 && (this.candidates[blockId >> 6] & (1L << blockId)) != 0;
+    }
+
+    /**
+     * The lowest height at which a block is replaced, or the world height if
+     * nothing is replaced.
+     */
+    public int getMinY()
+    {
+        return this.minY;
+    }
+
+    /**
+     * The highest height at which a block is replaced, or -1 if nothing is
+     * replaced.
+     */
+    public int getMaxY()
+    {
+        return this.maxY;
+    }
+
+    /**
+     * Gets what a block is replaced with, as (id << 4 | data), or -1 if it
+     * stays. Only call this for ids for which isCandidate is true.
+     */
+    public int get(int blockId, int y)
+    {
+        return this.table[this.slots[blockId] * this.height + y];
+    }
+}
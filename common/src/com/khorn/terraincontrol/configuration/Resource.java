@@ -8,7 +8,9 @@ import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ProfilingWorld;
 import com.khorn.terraincontrol.generator.resourcegens.ResourceType;
+import com.khorn.terraincontrol.util.MaterialSet;
 
 public abstract class Resource
 {
@@ -39,8 +41,12 @@ public abstract class Resource
         {
             stringArgs.add("" + arg);
         }
-        
-        Resource resource;
+
+        Resource resource = config.getSharedResource(clazz, stringArgs);
+        if (resource != null)
+            return resource;
+        List<String> key = new ArrayList<String>(stringArgs);
+
         try
         {
             resource = clazz.newInstance();
@@ -54,6 +60,7 @@ public abstract class Resource
         resource.setWorldConfig(config);
         try {
             resource.load(stringArgs);
+            config.addSharedResource(clazz, key, resource);
         } catch(InvalidResourceException e)
         {
             TerrainControl.log("Invalid default resource! Please report! " + clazz.getName() + ": "+e.getMessage());
@@ -98,12 +105,28 @@ public abstract class Resource
         {
             if (random.nextInt(100) > rarity)
                 continue;
+            ProfilingWorld.countAttempt(world);
             int x = chunkX * 16 + random.nextInt(16) + 8;
             int z = chunkZ * 16 + random.nextInt(16) + 8;
             spawn(world, random, x, z);
         }
     }
 
+    /**
+     * Returns whether this resource looks for or places blocks with this id
+     * while it spawns. Resources that only check whether a block is air,
+     * solid or liquid don't use the id. Decides which ReplacedBlocks can be
+     * done before the population. By default every id is used.
+     *
+     * @param id
+     *            The block id.
+     * @return Whether the resource uses the block id.
+     */
+    public boolean usesBlock(int id)
+    {
+        return true;
+    }
+
     /**
      * Gets the type of this resource.
      * 
@@ -192,6 +215,25 @@ public abstract class Resource
         return getInt(string, 0, 16);
     }
 
+    /**
+     * Reads the block ids of the arguments from start to the end.
+     * 
+     * @param args
+     * @param start
+     * @return
+     * @throws InvalidResourceException
+     *             If one of the blocks is invalid.
+     */
+    public MaterialSet getMaterials(List<String> args, int start) throws InvalidResourceException
+    {
+        int[] ids = new int[Math.max(0, args.size() - start)];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = getBlockId(args.get(start + i));
+        }
+        return new MaterialSet(ids);
+    }
+
     public void assureSize(int size, List<String> args) throws InvalidResourceException
     {
         if (args.size() < size)
@@ -242,13 +284,13 @@ public abstract class Resource
     /**
      * Returns a String in the format ",materialName,materialName,etc"
      * 
-     * @param ids
+     * @param materials
      * @return
      */
-    public String makeMaterial(List<Integer> ids)
+    public String makeMaterial(MaterialSet materials)
     {
         String string = "";
-        for (int blockId : ids)
+        for (int blockId : materials.getIds())
         {
             string += ",";
             string += makeMaterial(blockId);
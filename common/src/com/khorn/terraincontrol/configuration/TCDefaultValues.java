@@ -10,6 +10,10 @@ public enum TCDefaultValues
     BO_WorldDirectoryName("WorldObjects"),
     WorldBiomeConfigDirectoryName("BiomeConfigs"),
     WorldBiomeConfigName("BiomeConfig.ini"),
+    PrecomputedBiomesName("PrecomputedBiomes.dat"),
+    // In the data folder of the world save
+    PendingBlocksName("TerrainControlPendingBlocks"),
+    ResourceProfileName("ResourceProfile.csv"),
     // End files
 
     //Network
@@ -57,6 +61,7 @@ public enum TCDefaultValues
     ImageFillBiome("Ocean"),
     ImageXOffset(0),
     ImageZOffset(0),
+    ImageMapped(false),
 
     oldBiomeSize(1.5D),
     minMoisture(0.0f),
@@ -104,7 +109,10 @@ public enum TCDefaultValues
     FlatBedrock(false),
     BedrockobBlock(7),
     RemoveSurfaceStone(false),
+    TerrainStageBlockReplace(false),
     objectSpawnRatio(2),
+    DeferCrossChunkBlocks(false),
+    ProfileResources(false),
 
     //End world settings
 
@@ -1,6 +1,7 @@
 package com.khorn.terraincontrol.configuration;
 
 import com.khorn.terraincontrol.DefaultBiome;
+import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalBiome;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
@@ -12,6 +13,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class WorldConfig extends ConfigFile
@@ -26,6 +28,11 @@ public class WorldConfig extends ConfigFile
      */
     public Map<String,CustomObject> customObjects = new HashMap<String, CustomObject>();
 
+    /**
+     * The loaded resources of all biomes, by their type and arguments.
+     */
+    private Map<List<Object>, Resource> sharedResources = new HashMap<List<Object>, Resource>();
+
     public ArrayList<String> NormalBiomes = new ArrayList<String>();
     public ArrayList<String> IceBiomes = new ArrayList<String>();
     public ArrayList<String> IsleBiomes = new ArrayList<String>();
@@ -71,6 +78,7 @@ public class WorldConfig extends ConfigFile
     public String imageFillBiome;
     public int imageXOffset;
     public int imageZOffset;
+    public boolean imageMapped;
 
     public HashMap<Integer, Integer> biomeColorMap;
 
@@ -126,9 +134,12 @@ public class WorldConfig extends ConfigFile
 
 
     public boolean removeSurfaceStone;
+    public boolean terrainStageBlockReplace;
 
     //public boolean customObjects;
     public int objectSpawnRatio;
+    public boolean deferCrossChunkBlocks;
+    public boolean profileResources;
     //public boolean denyObjectsUnderFill;
     //public int customTreeChance;
     public File CustomObjectsDirectory;
@@ -151,6 +162,22 @@ public class WorldConfig extends ConfigFile
 
     public BiomeConfig[] biomeConfigs;
     public boolean BiomeConfigsHaveReplacement = false;
+    public boolean BiomeConfigsHaveTerrainReplacement = false;
+
+    // What strongholds, mineshafts, villages, temples and nether fortresses
+    // are built of, or look for
+    private static final DefaultMaterial[] StructureBlocks = { DefaultMaterial.COBBLESTONE, DefaultMaterial.MOSSY_COBBLESTONE, DefaultMaterial.COBBLESTONE_STAIRS,
+            DefaultMaterial.WOOD, DefaultMaterial.WOOD_STAIRS, DefaultMaterial.LOG, DefaultMaterial.SANDSTONE, DefaultMaterial.SANDSTONE_STAIRS, DefaultMaterial.SAND,
+            DefaultMaterial.GRAVEL, DefaultMaterial.DIRT, DefaultMaterial.GRASS, DefaultMaterial.SOIL, DefaultMaterial.CROPS, DefaultMaterial.WATER,
+            DefaultMaterial.STATIONARY_WATER, DefaultMaterial.LAVA, DefaultMaterial.STATIONARY_LAVA, DefaultMaterial.SMOOTH_BRICK, DefaultMaterial.SMOOTH_STAIRS,
+            DefaultMaterial.MONSTER_EGGS, DefaultMaterial.STEP, DefaultMaterial.DOUBLE_STEP, DefaultMaterial.WOOL, DefaultMaterial.GLASS, DefaultMaterial.THIN_GLASS,
+            DefaultMaterial.BOOKSHELF, DefaultMaterial.FENCE, DefaultMaterial.IRON_FENCE, DefaultMaterial.WEB, DefaultMaterial.RAILS, DefaultMaterial.TORCH,
+            DefaultMaterial.LADDER, DefaultMaterial.WOODEN_DOOR, DefaultMaterial.IRON_DOOR_BLOCK, DefaultMaterial.CHEST, DefaultMaterial.MOB_SPAWNER, DefaultMaterial.TNT,
+            DefaultMaterial.STONE_PLATE, DefaultMaterial.STONE_BUTTON, DefaultMaterial.LEVER, DefaultMaterial.PISTON_STICKY_BASE, DefaultMaterial.REDSTONE_WIRE,
+            DefaultMaterial.DIODE_BLOCK_OFF, DefaultMaterial.DISPENSER, DefaultMaterial.TRIPWIRE, DefaultMaterial.TRIPWIRE_HOOK, DefaultMaterial.VINE,
+            DefaultMaterial.WORKBENCH, DefaultMaterial.FURNACE, DefaultMaterial.BED_BLOCK, DefaultMaterial.ENDER_PORTAL_FRAME, DefaultMaterial.GOLD_BLOCK,
+            DefaultMaterial.DIAMOND_BLOCK, DefaultMaterial.LAPIS_BLOCK, DefaultMaterial.NETHER_BRICK, DefaultMaterial.NETHER_FENCE, DefaultMaterial.NETHER_BRICK_STAIRS,
+            DefaultMaterial.NETHER_WARTS, DefaultMaterial.SOUL_SAND, DefaultMaterial.NETHERRACK };
 
     public int normalBiomesRarity;
     public int iceBiomesRarity;
@@ -235,8 +262,6 @@ public class WorldConfig extends ConfigFile
                 this.iceBiomesRarity += config.BiomeRarity;
 
             this.biomeConfigs[localBiome.getId()] = config;
-            if (!this.BiomeConfigsHaveReplacement)
-                this.BiomeConfigsHaveReplacement = config.ReplaceCount > 0;
             if (this.biomes.size() != 0)
                 LoadedBiomeNames += ", ";
             LoadedBiomeNames += localBiome.getName();
@@ -261,11 +286,88 @@ public class WorldConfig extends ConfigFile
             }
         }
 
+        // Needs the resources of all biomes
+        boolean[] populationBlocks = this.getPopulationBlocks();
+        for (BiomeConfig config : this.biomes)
+        {
+            config.BuildReplaceTable(populationBlocks);
+            if (!this.BiomeConfigsHaveReplacement)
+                this.BiomeConfigsHaveReplacement = !config.getReplaceTable().isEmpty();
+            if (!this.BiomeConfigsHaveTerrainReplacement)
+                this.BiomeConfigsHaveTerrainReplacement = !config.getTerrainReplaceTable().isEmpty();
+        }
+
         System.out.println("TerrainControl: Loaded biomes - " + LoadedBiomeNames);
 
 
     }
 
+    // The block ids that the population of a chunk looks for or places. A
+    // chunk is populated with the resources of the biomes around it, so
+    // this is the same for all biomes.
+    private boolean[] getPopulationBlocks()
+    {
+        boolean[] blocks = new boolean[256];
+        if (this.StrongholdsEnabled || this.MineshaftsEnabled || this.VillagesEnabled || this.PyramidsEnabled || this.NetherFortress)
+        {
+            for (DefaultMaterial material : StructureBlocks)
+                blocks[material.id] = true;
+        }
+
+        // Snow and ice of the cold biomes
+        blocks[DefaultMaterial.SNOW.id] = true;
+        for (BiomeConfig config : this.biomes)
+        {
+            if (config.iceBlock >= 0 && config.iceBlock < blocks.length)
+                blocks[config.iceBlock] = true;
+            for (int i = 0; i < config.ResourceCount; i++)
+                addPopulationBlocks(blocks, config.ResourceSequence[i]);
+        }
+        return blocks;
+    }
+
+    static void addPopulationBlocks(boolean[] blocks, Resource resource)
+    {
+        for (int id = 0; id < blocks.length; id++)
+        {
+            if (!blocks[id] && resource.usesBlock(id))
+                blocks[id] = true;
+        }
+    }
+
+    /**
+     * Gets the resource that was loaded before with the same type and
+     * arguments in this world. Resources don't change after they are loaded,
+     * so all biomes with the same resource line can use the same instance.
+     *
+     * @return The resource, or null if there is none yet.
+     */
+    public Resource getSharedResource(Class<? extends Resource> type, List<String> args)
+    {
+        return this.sharedResources.get(getResourceKey(type, args));
+    }
+
+    /**
+     * Remembers a resource that loaded without errors, so that
+     * getSharedResource returns it for the same type and arguments.
+     *
+     * @param args
+     *            The arguments as they were before loading, as load may
+     *            change the list.
+     */
+    public void addSharedResource(Class<? extends Resource> type, List<String> args, Resource resource)
+    {
+        this.sharedResources.put(getResourceKey(type, args), resource);
+    }
+
+    private static List<Object> getResourceKey(Class<? extends Resource> type, List<String> args)
+    {
+        List<Object> key = new ArrayList<Object>(args.size() + 1);
+        key.add(type);
+        key.addAll(args);
+        return key;
+    }
+
 
     private void ReadWorldCustomObjects()
     {
@@ -431,6 +533,7 @@ public class WorldConfig extends ConfigFile
         this.imageFillBiome = this.ReadSettings(TCDefaultValues.ImageFillBiome);
         this.imageXOffset = this.ReadSettings(TCDefaultValues.ImageXOffset);
         this.imageZOffset = this.ReadSettings(TCDefaultValues.ImageZOffset);
+        this.imageMapped = this.ReadSettings(TCDefaultValues.ImageMapped);
 
 
         this.oldBiomeSize = ReadSettings(TCDefaultValues.oldBiomeSize);
@@ -488,11 +591,14 @@ public class WorldConfig extends ConfigFile
         this.bedrockBlock = ReadSettings(TCDefaultValues.BedrockobBlock);
 
         this.removeSurfaceStone = ReadSettings(TCDefaultValues.RemoveSurfaceStone);
+        this.terrainStageBlockReplace = ReadSettings(TCDefaultValues.TerrainStageBlockReplace);
 
         this.oldTerrainGenerator = this.ModeTerrain == TerrainMode.OldGenerator;
 
 
         this.objectSpawnRatio = this.ReadSettings(TCDefaultValues.objectSpawnRatio);
+        this.deferCrossChunkBlocks = this.ReadSettings(TCDefaultValues.DeferCrossChunkBlocks);
+        this.profileResources = this.ReadSettings(TCDefaultValues.ProfileResources);
 
         /*this.customObjects = this.ReadSettings(TCDefaultValues.CustomObjects.name(), TCDefaultValues.CustomObjects.booleanValue());
 
@@ -652,6 +758,11 @@ public class WorldConfig extends ConfigFile
         WriteValue(TCDefaultValues.ImageXOffset.name(), this.imageXOffset);
         WriteValue(TCDefaultValues.ImageZOffset.name(), this.imageZOffset);
 
+        WriteNewLine();
+        WriteComment("Set to true for very big images. The biomes of the image are then stored once");
+        WriteComment("in a file next to the image, which is read directly instead of loaded in memory.");
+        WriteValue(TCDefaultValues.ImageMapped.name(), this.imageMapped);
+
 
         WriteTitle("Terrain Generator Variables");
         WriteComment("Height bits determinate generation height. Min 5, max 8");
@@ -698,6 +809,15 @@ public class WorldConfig extends ConfigFile
         WriteComment("BlockId used as bedrock");
         WriteValue(TCDefaultValues.BedrockobBlock.name(), this.bedrockBlock);
 
+        WriteNewLine();
+        WriteComment("ReplacedBlocks of the biomes that replace a block the terrain is made of (stone, sandstone,");
+        WriteComment("the surface, ground, water, ice and bedrock blocks) with a block without data are done");
+        WriteComment("right after the terrain is generated, which is much faster. This is only done when the");
+        WriteComment("world looks the same: no resource, custom object, tree, dungeon or map object may use the");
+        WriteComment("old or the new block, and both must be solid, liquid or neither. Custom objects use all");
+        WriteComment("blocks, so in worlds with custom objects all ReplacedBlocks stay after the population.");
+        WriteValue(TCDefaultValues.TerrainStageBlockReplace.name(), this.terrainStageBlockReplace);
+
         WriteTitle("Map objects");
         WriteValue(TCDefaultValues.StrongholdsEnabled.name(), this.StrongholdsEnabled);
         WriteValue(TCDefaultValues.VillagesEnabled.name(), this.VillagesEnabled);
@@ -725,6 +845,16 @@ public class WorldConfig extends ConfigFile
         WriteNewLine();
         WriteComment("Number of attempts for place per chunk");
         this.WriteValue(TCDefaultValues.objectSpawnRatio.name(), Integer.valueOf(this.objectSpawnRatio).intValue());
+        WriteNewLine();
+        WriteComment("Objects that don't fit in the populated chunks are placed when the chunk they");
+        WriteComment("belong to is loaded, instead of generating that chunk right away.");
+        WriteComment("Stops the lag of chunks generating each other, the blocks wait in data/" + TCDefaultValues.PendingBlocksName.stringValue() + ".dat of the world.");
+        this.WriteValue(TCDefaultValues.DeferCrossChunkBlocks.name(), this.deferCrossChunkBlocks);
+        WriteNewLine();
+        WriteComment("Measures the time and the block reads and writes of every resource line of every biome.");
+        WriteComment("See them with /tc profile, which can also save them to " + TCDefaultValues.ResourceProfileName.stringValue());
+        WriteComment("Slows down the population a bit, so only turn it on while looking for slow resources.");
+        this.WriteValue(TCDefaultValues.ProfileResources.name(), this.profileResources);
         /*
         WriteNewLine();
         WriteComment("Deny custom objects underFill even it enabled in objects ");
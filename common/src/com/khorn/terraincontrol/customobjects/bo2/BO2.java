@@ -15,6 +15,8 @@ import com.khorn.terraincontrol.configuration.ConfigFile;
 import com.khorn.terraincontrol.customobjects.BODefaultValues;
 import com.khorn.terraincontrol.customobjects.CustomObject;
 import com.khorn.terraincontrol.customobjects.ObjectCoordinate;
+import com.khorn.terraincontrol.generator.BlockBatch;
+import com.khorn.terraincontrol.util.MaterialSet;
 
 /**
  * The good old BO2.
@@ -31,9 +33,9 @@ public class BO2 extends ConfigFile implements CustomObject
     public HashSet<String> SpawnInBiome;
 
     public String Version;
-    public HashSet<Integer> SpawnOnBlockType;
+    public MaterialSet SpawnOnBlockType;
 
-    public HashSet<Integer> CollisionBlockType;
+    public MaterialSet CollisionBlockType;
 
     public boolean SpawnWater;
     public boolean SpawnLava;
@@ -132,18 +134,20 @@ public class BO2 extends ConfigFile implements CustomObject
 
         }
 
+        BlockBatch batch = new BlockBatch(true, true);
         for (ObjectCoordinate point : data)
         {
 
             if (world.getTypeId(x + point.x, y + point.y, z + point.z) == 0)
             {
-                world.setBlock((x + point.x), y + point.y, z + point.z, point.BlockId, point.BlockData, true, false, true);
+                batch.setBlock((x + point.x), y + point.y, z + point.z, point.BlockId, point.BlockData);
             } else if (Dig)
             {
-                world.setBlock((x + point.x), y + point.y, z + point.z, point.BlockId, point.BlockData, true, false, true);
+                batch.setBlock((x + point.x), y + point.y, z + point.z, point.BlockId, point.BlockData);
             }
 
         }
+        world.setBlocks(batch);
         return true;
     }
 
@@ -322,7 +326,7 @@ public class BO2 extends ConfigFile implements CustomObject
 
     }
 
-    private HashSet<Integer> ReadBlockList(ArrayList<String> blocks, String settingName)
+    private MaterialSet ReadBlockList(ArrayList<String> blocks, String settingName)
     {
         HashSet<Integer> output = new HashSet<Integer>();
 
@@ -346,7 +350,7 @@ public class BO2 extends ConfigFile implements CustomObject
             try
             {
                 int blockID = Integer.decode(block);
-                if (blockID != 0)
+                if (blockID > 0)
                     output.add(blockID);
             } catch (NumberFormatException e)
             {
@@ -367,7 +371,11 @@ public class BO2 extends ConfigFile implements CustomObject
         if (nonIntegerValues)
             System.out.println("TerrainControl: Custom object " + this.Name + " have wrong value " + settingName);
 
-        return output;
+        int[] ids = new int[output.size()];
+        int i = 0;
+        for (int id : output)
+            ids[i++] = id;
+        return new MaterialSet(ids);
 
     }
 
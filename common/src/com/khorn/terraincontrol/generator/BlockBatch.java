@@ -0,0 +1,149 @@
+package com.khorn.terraincontrol.generator;
+
+/**
+ * Many block changes that are placed in the world at once with
+ * LocalWorld.setBlocks. The blocks are grouped by chunk, so the world looks up
+ * every chunk once and does the client updates once per chunk instead of
+ * once per block.
+ * <p>
+ * Blocks are not visible in the world before the batch is placed, so a batch
+ * must not be used when a later block depends on an earlier one. When the
+ * same position is set twice, the last block wins.
+ */
+public class BlockBatch
+{
+    private final boolean updateLight;
+    private final boolean notifyPlayers;
+
+    private int chunkCount;
+    private int[] chunkX = new int[4];
+    private int[] chunkZ = new int[4];
+    private int[] sizes = new int[4];
+    // Two ints for every block, in the layout of PendingBlocks
+    private int[][] blocks = new int[4][];
+
+    private int lastChunk = -1;
+
+    /**
+     * @param updateLight
+     *            Whether the light around the changed blocks must be updated.
+     * @param notifyPlayers
+     *            Whether the changed chunks must be sent again to the players
+     *            that see them.
+     */
+    public BlockBatch(boolean updateLight, boolean notifyPlayers)
+    {
+        this.updateLight = updateLight;
+        this.notifyPlayers = notifyPlayers;
+    }
+
+    public void setBlock(int x, int y, int z, int typeId, int data)
+    {
+        if (y < 0)
+            return;
+
+        int chunk = this.getChunk(x >> 4, z >> 4);
+        int size = this.sizes[chunk];
+        int[] chunkBlocks = this.blocks[chunk];
+        if (size + 2 > chunkBlocks.length)
+        {
+            int[] newBlocks = new int[chunkBlocks.length * 2];
+            System.arraycopy(chunkBlocks, 0, newBlocks, 0, size);
+            this.blocks[chunk] = chunkBlocks = newBlocks;
+        }
+        chunkBlocks[size] = (y << 8) | ((z & 0xF) << 4) | (x & 0xF);
+        chunkBlocks[size + 1] = (typeId << 4) | (data & 0xF);
+        this.sizes[chunk] = size + 2;
+    }
+
+    // Index of the chunk, most blocks are in the same chunk as the block before
+    private int getChunk(int x, int z)
+    {
+        if (this.lastChunk != -1 && this.chunkX[this.lastChunk] == x && this.chunkZ[this.lastChunk] == z)
+            return this.lastChunk;
+
+        for (int i = 0; i < this.chunkCount; i++)
+        {
+            if (this.chunkX[i] == x && this.chunkZ[i] == z)
+                return this.lastChunk = i;
+        }
+
+        if (this.chunkCount == this.chunkX.length)
+        {
+            int length = this.chunkCount * 2;
+            int[] newChunkX = new int[length];
+            int[] newChunkZ = new int[length];
+            int[] newSizes = new int[length];
+            int[][] newBlocks = new int[length][];
+            System.arraycopy(this.chunkX, 0, newChunkX, 0, this.chunkCount);
+            System.arraycopy(this.chunkZ, 0, newChunkZ, 0, this.chunkCount);
+            System.arraycopy(this.sizes, 0, newSizes, 0, this.chunkCount);
+            System.arraycopy(this.blocks, 0, newBlocks, 0, this.chunkCount);
+            this.chunkX = newChunkX;
+            this.chunkZ = newChunkZ;
+            this.sizes = newSizes;
+            this.blocks = newBlocks;
+        }
+
+        int i = this.chunkCount++;
+        this.chunkX[i] = x;
+        this.chunkZ[i] = z;
+        this.sizes[i] = 0;
+        if (this.blocks[i] == null)
+            this.blocks[i] = new int[64];
+        return this.lastChunk = i;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.chunkCount == 0;
+    }
+
+    /**
+     * Removes all blocks, so the batch can be used again.
+     */
+    public void clear()
+    {
+        this.chunkCount = 0;
+        this.lastChunk = -1;
+    }
+
+    public boolean updateLight()
+    {
+        return this.updateLight;
+    }
+
+    public boolean notifyPlayers()
+    {
+        return this.notifyPlayers;
+    }
+
+    public int getChunkCount()
+    {
+        return this.chunkCount;
+    }
+
+    public int getChunkX(int chunk)
+    {
+        return this.chunkX[chunk];
+    }
+
+    public int getChunkZ(int chunk)
+    {
+        return this.chunkZ[chunk];
+    }
+
+    /**
+     * The blocks of a chunk, to read with the methods of PendingBlocks. Only
+     * the first getSize(chunk) ints are used.
+     */
+    public int[] getBlocks(int chunk)
+    {
+        return this.blocks[chunk];
+    }
+
+    public int getSize(int chunk)
+    {
+        return this.sizes[chunk];
+    }
+}
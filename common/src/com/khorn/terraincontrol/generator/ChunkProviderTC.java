@@ -2,6 +2,7 @@ package com.khorn.terraincontrol.generator;
 
 import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.configuration.ReplaceTable;
 import com.khorn.terraincontrol.configuration.WorldConfig;
 import com.khorn.terraincontrol.generator.terrainsgens.CanyonsGen;
 import com.khorn.terraincontrol.generator.terrainsgens.CavesGen;
@@ -47,6 +48,12 @@ public class ChunkProviderTC
     private TerrainGenBase CanyonGen;
 
     private int[] BiomeArray;
+    // Unzoomed biomes around the chunk for the terrain noise, 16x16 for the old generator
+    private int[] UnZoomedBiomeArray = new int[ChunkMaxX * ChunkMaxZ];
+    private float[] TemperatureArray = new float[ChunkMaxX * ChunkMaxZ];
+    // Climate of the chunk for the old biome generator, owned by this provider
+    private OldBiomeGenerator OldBiomeGen;
+    private OldBiomeGenerator.Climate OldClimate;
 
     private int height;
     private int heightBits;
@@ -99,16 +106,19 @@ public class ChunkProviderTC
         int i4 = i1 + 1;
         int i5 = this.height / 8 + 1;
         int i6 = i1 + 1;
+        // The biomes of the chunk are zoomed from the unzoomed biomes the terrain noise needs,
+        // so both come from one evaluation. Temperatures too, ReplaceForBiomeAndReturnWaterless uses them
         if (this.worldSettings.ModeBiome == WorldConfig.BiomeMode.OldGenerator)
         {
-            this.BiomeArray = this.localWorld.getBiomesUnZoomed(this.BiomeArray, chunkX * 16, chunkZ * 16, 16, 16);
+            this.BiomeArray = this.localWorld.getBiomes(this.UnZoomedBiomeArray, chunkX * 16, chunkZ * 16, 16, 16, this.BiomeArray, this.TemperatureArray, chunkX * 16, chunkZ * 16, ChunkMaxX, ChunkMaxZ);
+            if (this.OldBiomeGen == null)
+                this.OldBiomeGen = new OldBiomeGenerator(this.localWorld);
+            this.OldClimate = this.OldBiomeGen.getClimate(this.OldClimate, this.worldSettings, chunkX * 16, chunkZ * 16, 16, 16);
         } else
-            this.BiomeArray = this.localWorld.getBiomesUnZoomed(this.BiomeArray, chunkX * 4 - 2, chunkZ * 4 - 2, i4 + 5, i6 + 5);
+            this.BiomeArray = this.localWorld.getBiomes(this.UnZoomedBiomeArray, chunkX * 4 - 2, chunkZ * 4 - 2, i4 + 5, i6 + 5, this.BiomeArray, this.TemperatureArray, chunkX * 16, chunkZ * 16, ChunkMaxX, ChunkMaxZ);
 
         this.u = GenerateTerrainNoise(this.u, chunkX * i1, 0, chunkZ * i1, i4, i5, i6);
 
-        this.BiomeArray = this.localWorld.getBiomes(this.BiomeArray, chunkX * 16, chunkZ * 16, ChunkMaxX, ChunkMaxZ);
-
         double d1 = 0.125D;
         double d10 = 0.25D;
         int z_step = 1 << this.heightBits;
@@ -182,7 +192,7 @@ public class ChunkProviderTC
 
         double d1 = 0.03125D;
         this.v = this.r.Noise3D(this.v, paramInt1 * 16, paramInt2 * 16, 0, 16, 16, 1, d1 * 2.0D, d1 * 2.0D, d1 * 2.0D);
-        float[] TemperatureArray = this.localWorld.getTemperatures(paramInt1 * 16, paramInt2 * 16, 16, 16);
+        float[] TemperatureArray = this.TemperatureArray;
 
 
         for (int x = 0; x < 16; x++)
@@ -266,6 +276,32 @@ public class ChunkProviderTC
     }
 
 
+    // The ReplacedBlocks that are done in the raw terrain, the others are done
+    // after the population by LocalWorld.DoBlockReplace
+    private void ReplaceTerrainBlocks(byte[] paramArrayOfByte)
+    {
+        for (int x = 0; x < 16; x++)
+            for (int z = 0; z < 16; z++)
+            {
+                ReplaceTable replaceTable = this.worldSettings.biomeConfigs[BiomeArray[(z + x * 16)]].getTerrainReplaceTable();
+                if (replaceTable.isEmpty())
+                    continue;
+
+                int column = (z * 16 + x) * this.height;
+                int maxY = replaceTable.getMaxY();
+                for (int y = replaceTable.getMinY(); y <= maxY; y++)
+                {
+                    int blockId = paramArrayOfByte[column + y] & 0xFF;
+                    if (!replaceTable.isCandidate(blockId))
+                        continue;
+
+                    int replaceTo = replaceTable.get(blockId, y);
+                    if (replaceTo != -1)
+                        paramArrayOfByte[column + y] = (byte) (replaceTo >> 4);
+                }
+            }
+    }
+
     private double[] GenerateTerrainNoise(double[] outArray, int paramInt1, int paramInt2, int paramInt3, int max_X, int max_Y, int max_Z)
     {
         if (outArray == null)
@@ -293,7 +329,7 @@ public class ChunkProviderTC
             for (int z = 0; z < max_Z; z++)
             {
 
-                int biomeId = this.BiomeArray[(x + 2 + (z + 2) * (max_X + 5))];
+                int biomeId = this.UnZoomedBiomeArray[(x + 2 + (z + 2) * (max_X + 5))];
 
                 double d3 = this.k[i2D] / 8000.0D;
                 if (d3 < 0.0D)
@@ -371,11 +407,12 @@ public class ChunkProviderTC
     {
         if (this.worldSettings.ModeBiome == WorldConfig.BiomeMode.OldGenerator)
         {
-            this.VolatilityFactor = (1.0D - localWorld.getBiomeFactorForOldBM(z * 48 + 17 + x * 3));
+            int index = z * 48 + 17 + x * 3;
+            this.VolatilityFactor = (1.0D - this.OldClimate.temperature[index] * this.OldClimate.wetness[index]);
 
         } else
         {
-            int biomeId = this.BiomeArray[(x + 2 + (z + 2) * (max_X + 5))];
+            int biomeId = this.UnZoomedBiomeArray[(x + 2 + (z + 2) * (max_X + 5))];
             this.VolatilityFactor = (1.0D - worldSettings.biomeConfigs[biomeId].BiomeTemperature * worldSettings.biomeConfigs[biomeId].BiomeWetness);
         }
         this.VolatilityFactor *= this.VolatilityFactor;
@@ -399,12 +436,12 @@ public class ChunkProviderTC
 
         int i7 = 2;
 
-        int biomeId = this.BiomeArray[(x + 2 + (z + 2) * (max_X + 5))];
+        int biomeId = this.UnZoomedBiomeArray[(x + 2 + (z + 2) * (max_X + 5))];
         for (int nextX = -i7; nextX <= i7; nextX++)
         {
             for (int nextZ = -i7; nextZ <= i7; nextZ++)
             {
-                int nextBiomeId = this.BiomeArray[(x + nextX + 2 + (z + nextZ + 2) * (max_X + 5))];
+                int nextBiomeId = this.UnZoomedBiomeArray[(x + nextX + 2 + (z + nextZ + 2) * (max_X + 5))];
                 float f5 = this.NearBiomeWeight[(nextX + 2 + (nextZ + 2) * 5)] / (this.worldSettings.biomeConfigs[nextBiomeId].BiomeHeight + 2.0F);
                 f5 = Math.abs(f5);
                 if (this.worldSettings.biomeConfigs[nextBiomeId].BiomeHeight > this.worldSettings.biomeConfigs[biomeId].BiomeHeight)
@@ -451,6 +488,9 @@ public class ChunkProviderTC
         if (this.worldSettings.ModeTerrain == WorldConfig.TerrainMode.Normal || this.worldSettings.ModeTerrain == WorldConfig.TerrainMode.OldGenerator)
             this.localWorld.PrepareTerrainObjects(x, z, arrayOfByte, dry);
 
+        if (this.worldSettings.BiomeConfigsHaveTerrainReplacement)
+            ReplaceTerrainBlocks(arrayOfByte);
+
         if (this.worldSettings.isDeprecated)
             this.worldSettings = this.worldSettings.newSettings;
 
@@ -0,0 +1,151 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.DefaultMaterial;
+
+import java.util.Arrays;
+
+/**
+ * Heights of the columns of the 2x2 chunks that are being populated, so the
+ * worlds scan a column at most once per population. The worlds fill in a
+ * height the first time it is asked for and report every block they place,
+ * which keeps the known heights right or forgets them. Blocks placed by the
+ * server itself, like trees, must be followed by a call to invalidate.
+ */
+public class ColumnHeights
+{
+    /**
+     * Returned for heights that must be calculated by the world.
+     */
+    public static final int Unknown = -2;
+
+    private final int[] solid = new int[1024];
+    private final int[] liquid = new int[1024];
+    private final int[] highest = new int[1024];
+
+    private boolean active;
+    private int startX;
+    private int startZ;
+
+    /**
+     * Starts the population of a chunk, forgetting all heights.
+     *
+     * @param chunkX
+     *            The chunk with the lowest coordinates of the 2x2 chunks.
+     */
+    public void start(int chunkX, int chunkZ)
+    {
+        this.startX = chunkX * 16;
+        this.startZ = chunkZ * 16;
+        this.active = true;
+        this.invalidate();
+    }
+
+    /**
+     * Ends the population, after this no heights are known.
+     */
+    public void stop()
+    {
+        this.active = false;
+    }
+
+    /**
+     * Forgets all heights.
+     */
+    public void invalidate()
+    {
+        Arrays.fill(this.solid, Unknown);
+        Arrays.fill(this.liquid, Unknown);
+        Arrays.fill(this.highest, Unknown);
+    }
+
+    // Index of the column, or -1 if it isn't in the 2x2 chunks
+    private int getIndex(int x, int z)
+    {
+        if (!this.active)
+            return -1;
+        x -= this.startX;
+        z -= this.startZ;
+        if (x < 0 || x >= 32 || z < 0 || z >= 32)
+            return -1;
+        return (x << 5) | z;
+    }
+
+    public int getSolidHeight(int x, int z)
+    {
+        int index = this.getIndex(x, z);
+        return index == -1 ? Unknown : this.solid[index];
+    }
+
+    public void setSolidHeight(int x, int z, int y)
+    {
+        int index = this.getIndex(x, z);
+        if (index != -1)
+            this.solid[index] = y;
+    }
+
+    public int getLiquidHeight(int x, int z)
+    {
+        int index = this.getIndex(x, z);
+        return index == -1 ? Unknown : this.liquid[index];
+    }
+
+    public void setLiquidHeight(int x, int z, int y)
+    {
+        int index = this.getIndex(x, z);
+        if (index != -1)
+            this.liquid[index] = y;
+    }
+
+    public int getHighestBlockY(int x, int z)
+    {
+        int index = this.getIndex(x, z);
+        return index == -1 ? Unknown : this.highest[index];
+    }
+
+    public void setHighestBlockY(int x, int z, int y)
+    {
+        int index = this.getIndex(x, z);
+        if (index != -1)
+            this.highest[index] = y;
+    }
+
+    /**
+     * Updates the heights of a column for a block that was placed in it.
+     */
+    public void blockChanged(int x, int y, int z, int typeId)
+    {
+        int index = this.getIndex(x, z);
+        if (index == -1)
+            return;
+
+        this.highest[index] = updateHighest(this.highest[index], y, typeId);
+
+        // The bottom block never counts
+        if (y <= 0)
+            return;
+        DefaultMaterial material = DefaultMaterial.getMaterial(typeId);
+        this.solid[index] = update(this.solid[index], y, material.isSolid());
+        this.liquid[index] = update(this.liquid[index], y, material.isLiquid());
+    }
+
+    // The highest block y is the first air block above the top of the column
+    private static int updateHighest(int highest, int y, int typeId)
+    {
+        if (highest == Unknown)
+            return Unknown;
+        if (typeId != DefaultMaterial.AIR.id)
+            return Math.max(highest, y + 1);
+        // The top block is gone, the next one is somewhere below
+        return y == highest - 1 ? Unknown : highest;
+    }
+
+    private static int update(int height, int y, boolean counts)
+    {
+        if (height == Unknown)
+            return Unknown;
+        if (counts)
+            return Math.max(height, y);
+        // The top block is gone, the next one is somewhere below
+        return y == height ? Unknown : height;
+    }
+}
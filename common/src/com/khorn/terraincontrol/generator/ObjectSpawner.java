@@ -15,6 +15,14 @@ public class ObjectSpawner
     private WorldConfig worldSettings;
     private Random rand;
     private LocalWorld world;
+    // Counts the block reads and writes of the resources while they are profiled
+    private ProfilingWorld profilingWorld;
+
+    // Biomes of the snow and ice pass and which of them freeze, made again
+    // when the settings change
+    private int[] freezeBiomes;
+    private boolean[] biomeFreezes;
+    private WorldConfig biomeFreezesConfig;
 
     public ObjectSpawner(WorldConfig wrk, LocalWorld localWorld)
     {
@@ -39,54 +47,90 @@ public class ObjectSpawner
         boolean Village = world.PlaceTerrainObjects(rand, chunkX, chunkZ);
 
         // Resource sequence
+        ResourceProfile profile = this.worldSettings.profileResources ? ResourceProfile.get(world.getName()) : null;
         for (int i = 0; i < localBiomeConfig.ResourceCount; i++)
         {
             Resource res = localBiomeConfig.ResourceSequence[i];
             if (res instanceof SmallLakeGen && Village)
                 continue;
             world.setChunksCreations(false);
-            res.process(world, rand, chunkX, chunkZ);
+            if (profile != null)
+                this.processProfiled(profile, localBiomeConfig, i, chunkX, chunkZ);
+            else
+                res.process(world, rand, chunkX, chunkZ);
         }
 
-        // Snow and ice
+        this.freezeSurface(x + 8, z + 8);
+
+        world.DoBlockReplace();
+
+        world.DoBiomeReplace();
+
+        if (this.worldSettings.isDeprecated)
+            this.worldSettings = this.worldSettings.newSettings;
+    }
+
+    // Spawns a resource of the biome and adds its time and counts to the profile
+    private void processProfiled(ResourceProfile profile, BiomeConfig biomeConfig, int index, int chunkX, int chunkZ)
+    {
+        if (this.profilingWorld == null)
+            this.profilingWorld = new ProfilingWorld(world);
+        this.profilingWorld.start();
+        long start = System.nanoTime();
+        biomeConfig.ResourceSequence[index].process(this.profilingWorld, rand, chunkX, chunkZ);
+        this.profilingWorld.finish(profile.getEntry(biomeConfig, index), System.nanoTime() - start);
+    }
+
+    // Snow and ice for the 16x16 columns from x, z
+    private void freezeSurface(int x, int z)
+    {
+        if (this.biomeFreezesConfig != this.worldSettings)
+        {
+            BiomeConfig[] biomeConfigs = this.worldSettings.biomeConfigs;
+            this.biomeFreezes = new boolean[biomeConfigs.length];
+            for (int i = 0; i < biomeConfigs.length; i++)
+                this.biomeFreezes[i] = biomeConfigs[i] != null && biomeConfigs[i].BiomeTemperature < TCDefaultValues.snowAndIceMaxTemp.floatValue();
+            this.biomeFreezesConfig = this.worldSettings;
+        }
+
+        // One biome lookup for all columns, and nothing else when none of them freezes
+        this.freezeBiomes = world.getBiomes(this.freezeBiomes, x, z, 16, 16);
+        boolean anyFreezes = false;
+        for (int i = 0; i < 256 && !anyFreezes; i++)
+            anyFreezes = this.biomeFreezes[this.freezeBiomes[i]];
+        if (!anyFreezes)
+            return;
+
+        // Every column only looks at itself, so all blocks can be placed at the end
+        BlockBatch batch = new BlockBatch(false, true);
         for (int i = 0; i < 16; i++)
         {
             for (int j = 0; j < 16; j++)
             {
-                int blockToFreezeX = x + 8 + i;
-                int blockToFreezeZ = z + 8 + j;
-                BiomeConfig biomeConfig = worldSettings.biomeConfigs[world.getCalculatedBiomeId(blockToFreezeX, blockToFreezeZ)];
-                if (biomeConfig.BiomeTemperature < TCDefaultValues.snowAndIceMaxTemp.floatValue())
+                int biomeId = this.freezeBiomes[j * 16 + i];
+                if (!this.biomeFreezes[biomeId])
+                    continue;
+
+                int blockToFreezeX = x + i;
+                int blockToFreezeZ = z + j;
+                int blockToFreezeY = world.getHighestBlockYAt(blockToFreezeX, blockToFreezeZ);
+                if (blockToFreezeY <= 0)
+                    continue;
+
+                DefaultMaterial below = DefaultMaterial.getMaterial(world.getTypeId(blockToFreezeX, blockToFreezeY - 1, blockToFreezeZ));
+                // Ice has to be placed one block in the world
+                if (below.isLiquid())
+                {
+                    batch.setBlock(blockToFreezeX, blockToFreezeY - 1, blockToFreezeZ, this.worldSettings.biomeConfigs[biomeId].iceBlock, 0);
+                } else if (below.isSolid() && world.getTypeId(blockToFreezeX, blockToFreezeY, blockToFreezeZ) == DefaultMaterial.AIR.id)
                 {
-                    int blockToFreezeY = world.getHighestBlockYAt(blockToFreezeX, blockToFreezeZ);
-                    if (blockToFreezeY > 0)
-                    {
-                        // Ice has to be placed one block in the world
-                        if (DefaultMaterial.getMaterial(world.getTypeId(blockToFreezeX, blockToFreezeY - 1, blockToFreezeZ)).isLiquid())
-                        {
-                            world.setBlock(blockToFreezeX, blockToFreezeY - 1, blockToFreezeZ, biomeConfig.iceBlock, 0);
-                        } else
-                        {
-                            // Snow has to be placed on an empty space on a
-                            // solid block in the world
-                            if (world.getMaterial(blockToFreezeX, blockToFreezeY, blockToFreezeZ) == DefaultMaterial.AIR)
-                            {
-                                if (world.getMaterial(blockToFreezeX, blockToFreezeY - 1, blockToFreezeZ).isSolid())
-                                {
-                                    world.setBlock(blockToFreezeX, blockToFreezeY, blockToFreezeZ, DefaultMaterial.SNOW.id, 0);
-                                }
-                            }
-                        }
-                    }
+                    // Snow has to be placed on an empty space on a solid
+                    // block in the world
+                    batch.setBlock(blockToFreezeX, blockToFreezeY, blockToFreezeZ, DefaultMaterial.SNOW.id, 0);
                 }
             }
         }
 
-        world.DoBlockReplace();
-
-        world.DoBiomeReplace();
-
-        if (this.worldSettings.isDeprecated)
-            this.worldSettings = this.worldSettings.newSettings;
+        world.setBlocks(batch);
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.configuration.WorldConfig;
+import com.khorn.terraincontrol.util.NoiseGeneratorOctaves2;
+
+import java.util.Random;
+
+/**
+ * Temperature and wetness noise of the old (1.7.3 style) biome generator.
+ * The noise generators are only read after construction, so one instance can
+ * be used by many threads as long as every thread brings its own Climate.
+ */
+public class OldBiomeGenerator
+{
+    /**
+     * Result of a climate calculation, owned by the caller and reused for
+     * every call. Both arrays are in the same order as the biomes of the old
+     * biome manager.
+     */
+    public static class Climate
+    {
+        public double[] temperature;
+        public double[] wetness;
+        private double[] temperature2;
+    }
+
+    private final NoiseGeneratorOctaves2 temperatureGenerator;
+    private final NoiseGeneratorOctaves2 wetnessGenerator;
+    private final NoiseGeneratorOctaves2 temperatureGenerator2;
+
+    // For the callers that don't keep a Climate around
+    private final ThreadLocal<Climate> threadClimate = new ThreadLocal<Climate>()
+    {
+        @Override
+        protected Climate initialValue()
+        {
+            return new Climate();
+        }
+    };
+
+    public OldBiomeGenerator(LocalWorld world)
+    {
+        this.temperatureGenerator = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 9871L), 4);
+        this.wetnessGenerator = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 39811L), 4);
+        this.temperatureGenerator2 = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 543321L), 2);
+    }
+
+    /**
+     * Calculates the temperature and wetness of an area.
+     *
+     * @param climate
+     *            The climate to fill, may be null.
+     * @return The climate, a new one if the given one was null.
+     */
+    public Climate getClimate(Climate climate, WorldConfig config, int x, int z, int x_size, int z_size)
+    {
+        if (climate == null)
+        {
+            climate = new Climate();
+        }
+
+        climate.temperature = this.temperatureGenerator.a(climate.temperature, x, z, x_size, x_size, 0.025000000372529D / config.oldBiomeSize, 0.025000000372529D / config.oldBiomeSize, 0.25D);
+        climate.wetness = this.wetnessGenerator.a(climate.wetness, x, z, x_size, x_size, 0.0500000007450581D / config.oldBiomeSize, 0.0500000007450581D / config.oldBiomeSize, 0.3333333333333333D);
+        climate.temperature2 = this.temperatureGenerator2.a(climate.temperature2, x, z, x_size, x_size, 0.25D / config.oldBiomeSize, 0.25D / config.oldBiomeSize, 0.5882352941176471D);
+
+        for (int i = 0; i < x_size * z_size; i++)
+        {
+            double d1 = climate.temperature2[i] * 1.1D + 0.5D;
+
+            double d2 = 0.01D;
+            double d3 = 1.0D - d2;
+            double d4 = (climate.temperature[i] * 0.15D + 0.7D) * d3 + d1 * d2;
+            d2 = 0.002D;
+            d3 = 1.0D - d2;
+            double d5 = (climate.wetness[i] * 0.15D + 0.5D) * d3 + d1 * d2;
+            d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
+
+            if (d4 < config.minTemperature)
+                d4 = config.minTemperature;
+            if (d5 < config.minMoisture)
+                d5 = config.minMoisture;
+            if (d4 > config.maxTemperature)
+                d4 = config.maxTemperature;
+            if (d5 > config.maxMoisture)
+                d5 = config.maxMoisture;
+
+            climate.temperature[i] = d4;
+            climate.wetness[i] = d5;
+        }
+
+        return climate;
+    }
+
+    /**
+     * Same as getClimate, but fills the climate of the current thread. The
+     * result is only valid until the next call on the same thread.
+     */
+    public Climate getClimate(WorldConfig config, int x, int z, int x_size, int z_size)
+    {
+        return this.getClimate(this.threadClimate.get(), config, x, z, x_size, z_size);
+    }
+
+    /**
+     * The temperatures as the old biome manager reports them to the server.
+     * They are calculated from the given values, not from the temperature
+     * noise.
+     */
+    public float[] getTemperatures(float[] temperatureArray, WorldConfig config, int x, int z, int x_size, int z_size)
+    {
+        if ((temperatureArray == null) || (temperatureArray.length < x_size * z_size))
+        {
+            temperatureArray = new float[x_size * z_size];
+        }
+
+        Climate climate = this.threadClimate.get();
+        climate.temperature2 = this.temperatureGenerator2.a(climate.temperature2, x, z, x_size, z_size, 0.25D / config.oldBiomeSize, 0.25D / config.oldBiomeSize, 0.5882352941176471D);
+
+        for (int i = 0; i < x_size * z_size; i++)
+        {
+            double d1 = climate.temperature2[i] * 1.1D + 0.5D;
+
+            double d2 = 0.01D;
+            double d3 = 1.0D - d2;
+            double d4 = (temperatureArray[i] * 0.15D + 0.7D) * d3 + d1 * d2;
+            d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
+
+            if (d4 < config.minTemperature)
+                d4 = config.minTemperature;
+            if (d4 > config.maxTemperature)
+                d4 = config.maxTemperature;
+            temperatureArray[i] = (float) d4;
+        }
+
+        return temperatureArray;
+    }
+}
@@ -0,0 +1,271 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.TerrainControl;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Blocks that the population of a chunk wanted to place in a chunk that
+ * wasn't loaded. Loading that chunk would generate and populate it and its
+ * neighbours recursively, so the blocks are kept here until the chunk is
+ * loaded anyway. Every block is stored as two ints, the position in the chunk
+ * and the block id with its data, and the buffers are saved to a file in the
+ * data folder of the world save. The file also holds the seed, so that a new
+ * world with the same name doesn't get the blocks of the old one.
+ */
+public class PendingBlocks
+{
+    private static final int Magic = 0x54435042;
+    private static final int Version = 2;
+    private static final int HeaderSize = 20;
+    // Chunk key and block count
+    private static final int ChunkHeaderSize = 12;
+
+    private static class Buffer
+    {
+        int size;
+        int[] blocks = new int[16];
+
+        void add(int position, int block)
+        {
+            if (this.size + 2 > this.blocks.length)
+            {
+                int[] newBlocks = new int[this.blocks.length * 2];
+                System.arraycopy(this.blocks, 0, newBlocks, 0, this.size);
+                this.blocks = newBlocks;
+            }
+            this.blocks[this.size++] = position;
+            this.blocks[this.size++] = block;
+        }
+    }
+
+    private final File file;
+    private final long seed;
+    private final Map<Long, Buffer> chunks = new HashMap<Long, Buffer>();
+    private boolean changed;
+
+    private PendingBlocks(File file, long seed)
+    {
+        this.file = file;
+        this.seed = seed;
+    }
+
+    private static long getKey(int chunkX, int chunkZ)
+    {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Stores a block for a chunk that isn't loaded. A later block at the same
+     * position wins, as it would have in the world.
+     */
+    public synchronized void add(int x, int y, int z, int typeId, int data)
+    {
+        Long key = getKey(x >> 4, z >> 4);
+        Buffer buffer = this.chunks.get(key);
+        if (buffer == null)
+        {
+            buffer = new Buffer();
+            this.chunks.put(key, buffer);
+        }
+        buffer.add((y << 8) | ((z & 0xF) << 4) | (x & 0xF), (typeId << 4) | (data & 0xF));
+        this.changed = true;
+    }
+
+    /**
+     * Stores the blocks of a batch for a chunk that isn't loaded.
+     */
+    public synchronized void addAll(int chunkX, int chunkZ, int[] blocks, int size)
+    {
+        Long key = getKey(chunkX, chunkZ);
+        Buffer buffer = this.chunks.get(key);
+        if (buffer == null)
+        {
+            buffer = new Buffer();
+            this.chunks.put(key, buffer);
+        }
+        for (int i = 0; i < size; i += 2)
+            buffer.add(blocks[i], blocks[i + 1]);
+        this.changed = true;
+    }
+
+    /**
+     * Removes the blocks of a chunk.
+     *
+     * @return The blocks, two ints for every block, or null if there are
+     *         none. Use getX, getY, getZ, getTypeId and getData to read them.
+     */
+    public synchronized int[] remove(int chunkX, int chunkZ)
+    {
+        if (this.chunks.isEmpty())
+            return null;
+        Buffer buffer = this.chunks.remove(getKey(chunkX, chunkZ));
+        if (buffer == null)
+            return null;
+        this.changed = true;
+
+        int[] blocks = new int[buffer.size];
+        System.arraycopy(buffer.blocks, 0, blocks, 0, buffer.size);
+        return blocks;
+    }
+
+    public static int getX(int[] blocks, int i)
+    {
+        return blocks[i] & 0xF;
+    }
+
+    public static int getY(int[] blocks, int i)
+    {
+        return blocks[i] >>> 8;
+    }
+
+    public static int getZ(int[] blocks, int i)
+    {
+        return (blocks[i] >> 4) & 0xF;
+    }
+
+    public static int getTypeId(int[] blocks, int i)
+    {
+        return blocks[i + 1] >>> 4;
+    }
+
+    public static int getData(int[] blocks, int i)
+    {
+        return blocks[i + 1] & 0xF;
+    }
+
+    private static File getTempFile(File file)
+    {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Loads the pending blocks of the world. A missing or damaged file, or a
+     * file of a world with another seed, gives an empty buffer.
+     *
+     * @param file
+     *            The file in the data folder of the world save.
+     */
+    public static PendingBlocks load(File file, long seed)
+    {
+        PendingBlocks pending = new PendingBlocks(file, seed);
+        File source = pending.file;
+        if (!source.exists())
+        {
+            // The server stopped after save deleted the old file, but
+            // before the new one got its name
+            source = getTempFile(file);
+            if (!source.exists())
+                return pending;
+            pending.changed = true;
+        }
+
+        try
+        {
+            // Counts are checked against the bytes left, so that a damaged
+            // file can't make us allocate huge arrays
+            long remaining = source.length() - HeaderSize;
+            DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(source)));
+            try
+            {
+                if (stream.readInt() != Magic || stream.readInt() != Version)
+                {
+                    TerrainControl.log("Ignoring " + pending.file.getName() + ", it has an unknown format.");
+                    return pending;
+                }
+                if (stream.readLong() != seed)
+                {
+                    TerrainControl.log("Ignoring " + pending.file.getName() + ", it belongs to a world with another seed.");
+                    pending.changed = true;
+                    return pending;
+                }
+                int chunkCount = stream.readInt();
+                if (chunkCount < 0 || (long) chunkCount * ChunkHeaderSize > remaining)
+                    throw new IOException("Invalid chunk count " + chunkCount);
+                for (int i = 0; i < chunkCount; i++)
+                {
+                    long key = stream.readLong();
+                    Buffer buffer = new Buffer();
+                    buffer.size = stream.readInt();
+                    remaining -= ChunkHeaderSize;
+                    if (buffer.size < 0 || buffer.size % 2 != 0 || buffer.size * 4L > remaining)
+                        throw new IOException("Invalid block count " + buffer.size);
+                    remaining -= buffer.size * 4L;
+                    buffer.blocks = new int[Math.max(16, buffer.size)];
+                    for (int j = 0; j < buffer.size; j++)
+                        buffer.blocks[j] = stream.readInt();
+                    pending.chunks.put(key, buffer);
+                }
+            } finally
+            {
+                stream.close();
+            }
+        } catch (IOException e)
+        {
+            TerrainControl.log("Failed to read " + pending.file.getName() + ": " + e.getMessage());
+            pending.chunks.clear();
+        }
+        return pending;
+    }
+
+    /**
+     * Writes the pending blocks to the file of the world, if they changed
+     * since the last save. They are written to a temporary file first, that
+     * replaces the old file once it is complete, so a crash while saving
+     * doesn't lose the blocks.
+     */
+    public synchronized void save()
+    {
+        if (!this.changed)
+            return;
+
+        try
+        {
+            if (this.chunks.isEmpty())
+            {
+                if (this.file.exists() && !this.file.delete())
+                    throw new IOException("Cannot delete the file");
+            } else
+            {
+                File folder = this.file.getParentFile();
+                if (folder != null && !folder.exists() && !folder.mkdirs())
+                    throw new IOException("Cannot create " + folder.getName());
+                File tempFile = getTempFile(this.file);
+                FileOutputStream output = new FileOutputStream(tempFile);
+                DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(output));
+                try
+                {
+                    stream.writeInt(Magic);
+                    stream.writeInt(Version);
+                    stream.writeLong(this.seed);
+                    stream.writeInt(this.chunks.size());
+                    for (Map.Entry<Long, Buffer> entry : this.chunks.entrySet())
+                    {
+                        Buffer buffer = entry.getValue();
+                        stream.writeLong(entry.getKey());
+                        stream.writeInt(buffer.size);
+                        for (int i = 0; i < buffer.size; i++)
+                            stream.writeInt(buffer.blocks[i]);
+                    }
+                    stream.flush();
+                    output.getFD().sync();
+                } finally
+                {
+                    stream.close();
+                }
+
+                // Renaming over the old file is atomic where the system
+                // allows it. Elsewhere the old file is deleted first, and
+                // load takes the temporary file if the rename didn't happen.
+                if (!tempFile.renameTo(this.file) && !(this.file.delete() && tempFile.renameTo(this.file)))
+                    throw new IOException("Cannot replace the file");
+            }
+            this.changed = false;
+        } catch (IOException e)
+        {
+            TerrainControl.log("Failed to write " + this.file.getName() + ": " + e.getMessage());
+        }
+    }
+}
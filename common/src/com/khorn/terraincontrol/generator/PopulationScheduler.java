@@ -0,0 +1,146 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.LocalWorld;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Populates a list of chunks on several threads. The population of a chunk
+ * places blocks in the 2x2 chunks starting at it, and objects and trees near
+ * the edge reach one chunk further on both sides, so from chunk x - 1 to
+ * x + 2. The chunks are therefore split into sixteen colours by their
+ * coordinates modulo four: chunks of the same colour are four chunks apart,
+ * so their populations never touch the same chunk and can run at the same
+ * time. The colours are populated one after another, in the same order as
+ * the list within a colour.
+ * <p/>
+ * Every worker has its own ObjectSpawner, and the world keeps the population
+ * state per thread, see LocalWorld.StartPopulation. Calls into the server
+ * that aren't thread safe are serialized by the world, so nothing else may
+ * use the world while populate runs.
+ */
+public class PopulationScheduler
+{
+    private static final int Colours = 16;
+
+    private final LocalWorld world;
+    private final int threads;
+
+    /**
+     * @param threads
+     *            The number of worker threads, at least one.
+     */
+    public PopulationScheduler(LocalWorld world, int threads)
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least one thread, got " + threads);
+        this.world = world;
+        this.threads = threads;
+    }
+
+    /**
+     * Populates the chunks and waits until all of them are done.
+     *
+     * @param chunks
+     *            The chunk coordinates, as x and z after each other.
+     * @throws InterruptedException
+     *             If the waiting thread was interrupted. The workers finish
+     *             the colour they are working on.
+     * @throws RuntimeException
+     *             If the population of a chunk failed, with the first failure
+     *             as cause. The workers stop after their current chunk, so
+     *             the chunks after it may not be populated.
+     */
+    public void populate(int[] chunks) throws InterruptedException
+    {
+        if (chunks.length % 2 != 0)
+            throw new IllegalArgumentException("Chunk coordinates must come in pairs");
+
+        // The indexes of the chunks of every colour
+        int[] colourSizes = new int[Colours];
+        for (int i = 0; i < chunks.length; i += 2)
+            colourSizes[getColour(chunks[i], chunks[i + 1])]++;
+        final int[][] colours = new int[Colours][];
+        for (int colour = 0; colour < Colours; colour++)
+            colours[colour] = new int[colourSizes[colour]];
+        int[] filled = new int[Colours];
+        for (int i = 0; i < chunks.length; i += 2)
+        {
+            int colour = getColour(chunks[i], chunks[i + 1]);
+            colours[colour][filled[colour]++] = i;
+        }
+
+        final int[] chunkArray = chunks;
+        final AtomicInteger[] nextChunk = new AtomicInteger[Colours];
+        for (int colour = 0; colour < Colours; colour++)
+            nextChunk[colour] = new AtomicInteger();
+        final CyclicBarrier colourDone = new CyclicBarrier(this.threads);
+        // The first failure. The workers then skip their chunks, but still
+        // pass the barriers, so that none of them waits for a stopped one
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+        Thread[] workers = new Thread[this.threads];
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    ObjectSpawner spawner = new ObjectSpawner(world.getSettings(), world);
+                    try
+                    {
+                        for (int colour = 0; colour < Colours; colour++)
+                        {
+                            int index;
+                            while (failure.get() == null && (index = nextChunk[colour].getAndIncrement()) < colours[colour].length)
+                            {
+                                int chunkX = chunkArray[colours[colour][index]];
+                                int chunkZ = chunkArray[colours[colour][index] + 1];
+                                try
+                                {
+                                    world.StartPopulation(chunkX, chunkZ);
+                                    try
+                                    {
+                                        spawner.populate(chunkX, chunkZ);
+                                    } finally
+                                    {
+                                        world.EndPopulation();
+                                    }
+                                } catch (RuntimeException e)
+                                {
+                                    failure.compareAndSet(null, new RuntimeException("Population of chunk " + chunkX + "," + chunkZ + " failed", e));
+                                } catch (Error e)
+                                {
+                                    failure.compareAndSet(null, new RuntimeException("Population of chunk " + chunkX + "," + chunkZ + " failed", e));
+                                }
+                            }
+                            colourDone.await();
+                        }
+                    } catch (InterruptedException e)
+                    {
+                        // Breaks the barrier for the other workers
+                        failure.compareAndSet(null, new RuntimeException("Population worker was interrupted", e));
+                    } catch (BrokenBarrierException e)
+                    {
+                        failure.compareAndSet(null, new RuntimeException("Population worker stopped", e));
+                    }
+                }
+            }, "TC population " + i);
+            workers[i].start();
+        }
+
+        for (Thread worker : workers)
+            worker.join();
+
+        if (failure.get() != null)
+            throw failure.get();
+    }
+
+    private static int getColour(int chunkX, int chunkZ)
+    {
+        return (chunkX & 3) << 2 | (chunkZ & 3);
+    }
+}
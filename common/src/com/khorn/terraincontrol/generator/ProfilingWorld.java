@@ -0,0 +1,360 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.DefaultMaterial;
+import com.khorn.terraincontrol.LocalBiome;
+import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.configuration.WorldConfig;
+import com.khorn.terraincontrol.generator.resourcegens.TreeType;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A world that counts the block reads and writes of a resource before
+ * passing them on. ObjectSpawner hands it to the resources when
+ * ProfileResources is on, and adds the counts to the ResourceProfile after
+ * every resource.
+ * <p/>
+ * The resources tell it where a spawn attempt starts with countAttempt. An
+ * attempt counts as a placement when it wrote or planned a block, or
+ * placed a tree. A resource that doesn't count its attempts counts as one
+ * attempt per chunk.
+ */
+public class ProfilingWorld implements LocalWorld
+{
+    private final LocalWorld world;
+
+    private int attempts;
+    private int placements;
+    private long blocks;
+    private long reads;
+    private boolean attemptStarted;
+    private boolean attemptPlaced;
+
+    public ProfilingWorld(LocalWorld world)
+    {
+        this.world = world;
+    }
+
+    /**
+     * Starts a spawn attempt, if the world is a ProfilingWorld.
+     */
+    public static void countAttempt(LocalWorld world)
+    {
+        if (world instanceof ProfilingWorld)
+            ((ProfilingWorld) world).attempt();
+    }
+
+    private void attempt()
+    {
+        this.endAttempt();
+        this.attempts++;
+        this.attemptStarted = true;
+    }
+
+    private void endAttempt()
+    {
+        if (this.attemptPlaced)
+            this.placements++;
+        this.attemptPlaced = false;
+    }
+
+    /**
+     * Called by ResourcePlan for every block it plans.
+     */
+    void blockPlanned()
+    {
+        this.attemptPlaced = true;
+    }
+
+    /**
+     * Starts counting for the next resource.
+     */
+    public void start()
+    {
+        this.attempts = 0;
+        this.placements = 0;
+        this.blocks = 0;
+        this.reads = 0;
+        this.attemptStarted = false;
+        this.attemptPlaced = false;
+    }
+
+    /**
+     * Adds the counts since start to the entry.
+     */
+    public void finish(ResourceProfile.Entry entry, long nanos)
+    {
+        if (!this.attemptStarted)
+            this.attempts++;
+        this.endAttempt();
+        entry.add(this.attempts, this.placements, this.blocks, this.reads, nanos);
+    }
+
+    // Counted methods
+
+    @Override
+    public boolean PlaceTree(TreeType type, Random rand, int x, int y, int z)
+    {
+        if (!this.world.PlaceTree(type, rand, x, y, z))
+            return false;
+        this.attemptPlaced = true;
+        return true;
+    }
+
+    @Override
+    public int getTypeId(int x, int y, int z)
+    {
+        this.reads++;
+        return this.world.getTypeId(x, y, z);
+    }
+
+    @Override
+    public boolean isEmpty(int x, int y, int z)
+    {
+        this.reads++;
+        return this.world.isEmpty(x, y, z);
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, int typeId, int data, boolean updateLight, boolean applyPhysics, boolean notifyPlayers)
+    {
+        this.blocks++;
+        this.attemptPlaced = true;
+        this.world.setBlock(x, y, z, typeId, data, updateLight, applyPhysics, notifyPlayers);
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, int typeId, int data)
+    {
+        this.blocks++;
+        this.attemptPlaced = true;
+        this.world.setBlock(x, y, z, typeId, data);
+    }
+
+    @Override
+    public void setBlocks(BlockBatch batch)
+    {
+        for (int i = 0; i < batch.getChunkCount(); i++)
+            this.blocks += batch.getSize(i) / 2;
+        this.attemptPlaced |= batch.getChunkCount() > 0;
+        this.world.setBlocks(batch);
+    }
+
+    @Override
+    public int getLiquidHeight(int x, int z)
+    {
+        this.reads++;
+        return this.world.getLiquidHeight(x, z);
+    }
+
+    @Override
+    public int getSolidHeight(int x, int z)
+    {
+        this.reads++;
+        return this.world.getSolidHeight(x, z);
+    }
+
+    @Override
+    public int getHighestBlockYAt(int x, int z)
+    {
+        this.reads++;
+        return this.world.getHighestBlockYAt(x, z);
+    }
+
+    @Override
+    public DefaultMaterial getMaterial(int x, int y, int z)
+    {
+        this.reads++;
+        return this.world.getMaterial(x, y, z);
+    }
+
+    @Override
+    public int getLightLevel(int x, int y, int z)
+    {
+        this.reads++;
+        return this.world.getLightLevel(x, y, z);
+    }
+
+    // Passed on without counting
+
+    @Override
+    public LocalBiome AddBiome(String name, int id)
+    {
+        return this.world.AddBiome(name, id);
+    }
+
+    @Override
+    public LocalBiome getNullBiome(String name)
+    {
+        return this.world.getNullBiome(name);
+    }
+
+    @Override
+    public int getMaxBiomesCount()
+    {
+        return this.world.getMaxBiomesCount();
+    }
+
+    @Override
+    public int getFreeBiomeId()
+    {
+        return this.world.getFreeBiomeId();
+    }
+
+    @Override
+    public LocalBiome getBiomeById(int id)
+    {
+        return this.world.getBiomeById(id);
+    }
+
+    @Override
+    public int getBiomeIdByName(String name)
+    {
+        return this.world.getBiomeIdByName(name);
+    }
+
+    @Override
+    public ArrayList<LocalBiome> getDefaultBiomes()
+    {
+        return this.world.getDefaultBiomes();
+    }
+
+    @Override
+    public int[] getBiomesUnZoomed(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return this.world.getBiomesUnZoomed(biomeArray, x, z, x_size, z_size);
+    }
+
+    @Override
+    public float[] getTemperatures(int x, int z, int x_size, int z_size)
+    {
+        return this.world.getTemperatures(x, z, x_size, z_size);
+    }
+
+    @Override
+    public int[] getBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return this.world.getBiomes(biomeArray, x, z, x_size, z_size);
+    }
+
+    @Override
+    public int[] getBiomes(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        return this.world.getBiomes(biomeArray, temperatureArray, wetnessArray, x, z, x_size, z_size);
+    }
+
+    @Override
+    public int[] getBiomes(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
+    {
+        return this.world.getBiomes(unZoomedArray, ux, uz, ux_size, uz_size, biomeArray, temperatureArray, x, z, x_size, z_size);
+    }
+
+    @Override
+    public int getCalculatedBiomeId(int x, int z)
+    {
+        return this.world.getCalculatedBiomeId(x, z);
+    }
+
+    @Override
+    public LocalBiome getCalculatedBiome(int x, int z)
+    {
+        return this.world.getCalculatedBiome(x, z);
+    }
+
+    @Override
+    public LocalBiome getBiome(int x, int z)
+    {
+        return this.world.getBiome(x, z);
+    }
+
+    @Override
+    public void PrepareTerrainObjects(int x, int z, byte[] chunkArray, boolean dry)
+    {
+        this.world.PrepareTerrainObjects(x, z, chunkArray, dry);
+    }
+
+    @Override
+    public void PlaceDungeons(Random rand, int x, int y, int z)
+    {
+        this.world.PlaceDungeons(rand, x, y, z);
+    }
+
+    @Override
+    public boolean PlaceTerrainObjects(Random rand, int chunk_x, int chunk_z)
+    {
+        return this.world.PlaceTerrainObjects(rand, chunk_x, chunk_z);
+    }
+
+    @Override
+    public void DoBlockReplace()
+    {
+        this.world.DoBlockReplace();
+    }
+
+    @Override
+    public void DoBiomeReplace()
+    {
+        this.world.DoBiomeReplace();
+    }
+
+    @Override
+    public void StartPopulation(int chunkX, int chunkZ)
+    {
+        this.world.StartPopulation(chunkX, chunkZ);
+    }
+
+    @Override
+    public void EndPopulation()
+    {
+        this.world.EndPopulation();
+    }
+
+    @Override
+    public void setChunksCreations(boolean createNew)
+    {
+        this.world.setChunksCreations(createNew);
+    }
+
+    @Override
+    public boolean isLoaded(int x, int y, int z)
+    {
+        return this.world.isLoaded(x, y, z);
+    }
+
+    @Override
+    public WorldConfig getSettings()
+    {
+        return this.world.getSettings();
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.world.getName();
+    }
+
+    @Override
+    public long getSeed()
+    {
+        return this.world.getSeed();
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.world.getHeight();
+    }
+
+    @Override
+    public int getHeightBits()
+    {
+        return this.world.getHeightBits();
+    }
+
+    @Override
+    public void setHeightBits(int heightBits)
+    {
+        this.world.setHeightBits(heightBits);
+    }
+}
@@ -0,0 +1,294 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.DefaultMaterial;
+import com.khorn.terraincontrol.LocalWorld;
+
+import java.util.Arrays;
+
+/**
+ * The blocks a resource wants to place, collected in the plan phase and
+ * placed in the world at once by apply. Reads go through the plan, so a
+ * resource sees its own planned blocks exactly as if they were already in
+ * the world. The only exception is the height of a column, that depends on
+ * the light of the blocks, so asking it for a column with planned blocks
+ * places the blocks first.
+ * <p>
+ * For every planned block the plan remembers the block it replaces. When
+ * the plan is applied, blocks whose position has changed in the meantime
+ * are left out.
+ */
+public class ResourcePlan
+{
+    private LocalWorld world;
+    private boolean updateLight;
+    private boolean applyPhysics;
+    private boolean notifyPlayers;
+
+    private int size;
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+    private int[] zs = new int[64];
+    // The planned block as (id << 4 | data) and the id that was there before
+    private int[] blocks = new int[64];
+    private int[] expected = new int[64];
+
+    // Index + 1 of the planned block at a position, and the planned columns
+    private long[] positionKeys = new long[128];
+    private int[] positionIndexes = new int[128];
+    private long[] columnKeys = new long[128];
+    private boolean[] columnUsed = new boolean[128];
+    private int columnCount;
+
+    // A batch for every combination of updateLight and notifyPlayers, a
+    // reused plan switches between them from resource to resource
+    private final BlockBatch[] batches = new BlockBatch[4];
+
+    /**
+     * The flags are passed to the world like the flags of
+     * LocalWorld.setBlock.
+     */
+    public ResourcePlan(LocalWorld world, boolean updateLight, boolean applyPhysics, boolean notifyPlayers)
+    {
+        this.world = world;
+        this.updateLight = updateLight;
+        this.applyPhysics = applyPhysics;
+        this.notifyPlayers = notifyPlayers;
+    }
+
+    /**
+     * Empties the plan and gives it new flags, so that ScratchBuffers can
+     * hand it out again.
+     */
+    void reset(LocalWorld world, boolean updateLight, boolean applyPhysics, boolean notifyPlayers)
+    {
+        this.clear();
+        this.world = world;
+        this.applyPhysics = applyPhysics;
+        this.updateLight = updateLight;
+        this.notifyPlayers = notifyPlayers;
+    }
+
+    /**
+     * Empties the plan and forgets the world, see ScratchBuffers.
+     */
+    void release()
+    {
+        this.clear();
+        this.world = null;
+    }
+
+    public LocalWorld getWorld()
+    {
+        return this.world;
+    }
+
+    public int getTypeId(int x, int y, int z)
+    {
+        int index = this.findPosition(x, y, z);
+        if (index != -1)
+            return this.blocks[index] >>> 4;
+        return this.world.getTypeId(x, y, z);
+    }
+
+    public boolean isEmpty(int x, int y, int z)
+    {
+        return this.getTypeId(x, y, z) == 0;
+    }
+
+    public DefaultMaterial getMaterial(int x, int y, int z)
+    {
+        return DefaultMaterial.getMaterial(this.getTypeId(x, y, z));
+    }
+
+    public int getHighestBlockYAt(int x, int z)
+    {
+        if (this.hasColumn(x, z))
+            this.apply();
+        return this.world.getHighestBlockYAt(x, z);
+    }
+
+    /**
+     * Plans a block. A later block at the same position replaces it.
+     */
+    public void setBlock(int x, int y, int z, int typeId, int data)
+    {
+        if (y < 0)
+            return;
+
+        int block = (typeId << 4) | (data & 0xF);
+        int index = this.findPosition(x, y, z);
+        if (index != -1)
+        {
+            this.blocks[index] = block;
+            return;
+        }
+
+        if (this.size == this.xs.length)
+        {
+            int length = this.size * 2;
+            this.xs = Arrays.copyOf(this.xs, length);
+            this.ys = Arrays.copyOf(this.ys, length);
+            this.zs = Arrays.copyOf(this.zs, length);
+            this.blocks = Arrays.copyOf(this.blocks, length);
+            this.expected = Arrays.copyOf(this.expected, length);
+        }
+        index = this.size++;
+        this.xs[index] = x;
+        this.ys[index] = y;
+        this.zs[index] = z;
+        this.blocks[index] = block;
+        this.expected[index] = this.world.getTypeId(x, y, z);
+
+        this.addPosition(x, y, z, index);
+        this.addColumn(x, z);
+        if (this.world instanceof ProfilingWorld)
+            ((ProfilingWorld) this.world).blockPlanned();
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * Places the planned blocks whose position still has the block that was
+     * there when they were planned, and empties the plan.
+     */
+    public void apply()
+    {
+        if (this.size == 0)
+            return;
+
+        if (this.applyPhysics)
+        {
+            for (int i = 0; i < this.size; i++)
+            {
+                if (this.world.getTypeId(this.xs[i], this.ys[i], this.zs[i]) == this.expected[i])
+                    this.world.setBlock(this.xs[i], this.ys[i], this.zs[i], this.blocks[i] >>> 4, this.blocks[i] & 0xF, this.updateLight, true, this.notifyPlayers);
+            }
+        } else
+        {
+            int flags = (this.updateLight ? 2 : 0) | (this.notifyPlayers ? 1 : 0);
+            BlockBatch batch = this.batches[flags];
+            if (batch == null)
+                batch = this.batches[flags] = new BlockBatch(this.updateLight, this.notifyPlayers);
+            for (int i = 0; i < this.size; i++)
+            {
+                if (this.world.getTypeId(this.xs[i], this.ys[i], this.zs[i]) == this.expected[i])
+                    batch.setBlock(this.xs[i], this.ys[i], this.zs[i], this.blocks[i] >>> 4, this.blocks[i] & 0xF);
+            }
+            this.world.setBlocks(batch);
+            batch.clear();
+        }
+
+        this.clear();
+    }
+
+    private void clear()
+    {
+        if (this.size == 0 && this.columnCount == 0)
+            return;
+        this.size = 0;
+        Arrays.fill(this.positionIndexes, 0);
+        Arrays.fill(this.columnUsed, false);
+        this.columnCount = 0;
+    }
+
+    private static long getPositionKey(int x, int y, int z)
+    {
+        return ((x & 0x3FFFFFFL) << 38) | ((z & 0x3FFFFFFL) << 12) | (y & 0xFFF);
+    }
+
+    private static long getColumnKey(int x, int z)
+    {
+        return ((x & 0x3FFFFFFL) << 26) | (z & 0x3FFFFFFL);
+    }
+
+    private static int getSlot(long key, int length)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (length - 1);
+    }
+
+    private int findPosition(int x, int y, int z)
+    {
+        if (this.size == 0)
+            return -1;
+        long key = getPositionKey(x, y, z);
+        int mask = this.positionKeys.length - 1;
+        for (int slot = getSlot(key, this.positionKeys.length); this.positionIndexes[slot] != 0; slot = (slot + 1) & mask)
+        {
+            if (this.positionKeys[slot] == key)
+                return this.positionIndexes[slot] - 1;
+        }
+        return -1;
+    }
+
+    private void addPosition(int x, int y, int z, int index)
+    {
+        // At most half full
+        if (this.size * 2 > this.positionKeys.length)
+        {
+            this.positionKeys = new long[this.positionKeys.length * 2];
+            this.positionIndexes = new int[this.positionIndexes.length * 2];
+            for (int i = 0; i < index; i++)
+                this.putPosition(getPositionKey(this.xs[i], this.ys[i], this.zs[i]), i);
+        }
+        this.putPosition(getPositionKey(x, y, z), index);
+    }
+
+    private void putPosition(long key, int index)
+    {
+        int mask = this.positionKeys.length - 1;
+        int slot = getSlot(key, this.positionKeys.length);
+        while (this.positionIndexes[slot] != 0)
+            slot = (slot + 1) & mask;
+        this.positionKeys[slot] = key;
+        this.positionIndexes[slot] = index + 1;
+    }
+
+    private boolean hasColumn(int x, int z)
+    {
+        if (this.columnCount == 0)
+            return false;
+        long key = getColumnKey(x, z);
+        int mask = this.columnKeys.length - 1;
+        for (int slot = getSlot(key, this.columnKeys.length); this.columnUsed[slot]; slot = (slot + 1) & mask)
+        {
+            if (this.columnKeys[slot] == key)
+                return true;
+        }
+        return false;
+    }
+
+    private void addColumn(int x, int z)
+    {
+        if (this.hasColumn(x, z))
+            return;
+
+        if ((this.columnCount + 1) * 2 > this.columnKeys.length)
+        {
+            long[] oldKeys = this.columnKeys;
+            boolean[] oldUsed = this.columnUsed;
+            this.columnKeys = new long[oldKeys.length * 2];
+            this.columnUsed = new boolean[oldUsed.length * 2];
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldUsed[i])
+                    this.putColumn(oldKeys[i]);
+            }
+        }
+        this.putColumn(getColumnKey(x, z));
+        this.columnCount++;
+    }
+
+    private void putColumn(long key)
+    {
+        int mask = this.columnKeys.length - 1;
+        int slot = getSlot(key, this.columnKeys.length);
+        while (this.columnUsed[slot])
+            slot = (slot + 1) & mask;
+        this.columnKeys[slot] = key;
+        this.columnUsed[slot] = true;
+    }
+}
@@ -0,0 +1,259 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.configuration.BiomeConfig;
+import com.khorn.terraincontrol.configuration.Resource;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The time and the block reads and writes of every resource line of every
+ * biome of a world, collected while ProfileResources is on. Several
+ * population threads may add to the same entry.
+ */
+public class ResourceProfile
+{
+    private static final Map<String, ResourceProfile> profiles = new HashMap<String, ResourceProfile>();
+
+    /**
+     * The columns the entries can be sorted by, largest first.
+     */
+    public enum Column
+    {
+        Time, Calls, Attempts, Placed, Blocks, Reads;
+
+        private long get(Entry entry)
+        {
+            switch (this)
+            {
+            case Calls:
+                return entry.getInvocations();
+            case Attempts:
+                return entry.getAttempts();
+            case Placed:
+                return entry.getPlacements();
+            case Blocks:
+                return entry.getBlocks();
+            case Reads:
+                return entry.getReads();
+            default:
+                return entry.getNanos();
+            }
+        }
+
+        /**
+         * Gets a column by its name, ignoring the case.
+         *
+         * @return The column, or null if there is none with that name.
+         */
+        public static Column fromString(String name)
+        {
+            for (Column column : values())
+            {
+                if (column.name().equalsIgnoreCase(name))
+                    return column;
+            }
+            return null;
+        }
+    }
+
+    public static class Entry
+    {
+        public final String biomeName;
+        // Position in the ResourceSequence of the biome, starting at 1
+        public final int line;
+        public final String resourceString;
+        private final Resource resource;
+
+        private long invocations;
+        private long attempts;
+        private long placements;
+        private long blocks;
+        private long reads;
+        private long nanos;
+
+        private Entry(String biomeName, int line, Resource resource)
+        {
+            this(biomeName, line, resource, resource.makeString());
+        }
+
+        private Entry(String biomeName, int line, Resource resource, String resourceString)
+        {
+            this.biomeName = biomeName;
+            this.line = line;
+            this.resource = resource;
+            this.resourceString = resourceString;
+        }
+
+        // The counts as they are now, so that they can be sorted while
+        // the population goes on
+        private synchronized Entry copy()
+        {
+            Entry copy = new Entry(this.biomeName, this.line, this.resource, this.resourceString);
+            copy.invocations = this.invocations;
+            copy.attempts = this.attempts;
+            copy.placements = this.placements;
+            copy.blocks = this.blocks;
+            copy.reads = this.reads;
+            copy.nanos = this.nanos;
+            return copy;
+        }
+
+        synchronized void add(int attempts, int placements, long blocks, long reads, long nanos)
+        {
+            this.invocations++;
+            this.attempts += attempts;
+            this.placements += placements;
+            this.blocks += blocks;
+            this.reads += reads;
+            this.nanos += nanos;
+        }
+
+        public synchronized long getInvocations()
+        {
+            return this.invocations;
+        }
+
+        public synchronized long getAttempts()
+        {
+            return this.attempts;
+        }
+
+        public synchronized long getPlacements()
+        {
+            return this.placements;
+        }
+
+        public synchronized long getBlocks()
+        {
+            return this.blocks;
+        }
+
+        public synchronized long getReads()
+        {
+            return this.reads;
+        }
+
+        public synchronized long getNanos()
+        {
+            return this.nanos;
+        }
+    }
+
+    // Entries by biome id and position in the ResourceSequence
+    private final Entry[][] entries = new Entry[256][];
+
+    private ResourceProfile()
+    {
+    }
+
+    /**
+     * Gets the profile of a world, creating an empty one if needed.
+     */
+    public static synchronized ResourceProfile get(String worldName)
+    {
+        ResourceProfile profile = profiles.get(worldName);
+        if (profile == null)
+        {
+            profile = new ResourceProfile();
+            profiles.put(worldName, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Gets the entry of a resource line of a biome. The entry starts again
+     * from zero when the settings were reloaded in the meantime.
+     */
+    public synchronized Entry getEntry(BiomeConfig biomeConfig, int index)
+    {
+        int biomeId = biomeConfig.Biome.getId();
+        Entry[] biomeEntries = this.entries[biomeId];
+        if (biomeEntries == null || biomeEntries.length < biomeConfig.ResourceCount)
+        {
+            Entry[] newEntries = new Entry[biomeConfig.ResourceCount];
+            if (biomeEntries != null)
+                System.arraycopy(biomeEntries, 0, newEntries, 0, biomeEntries.length);
+            this.entries[biomeId] = biomeEntries = newEntries;
+        }
+
+        Resource resource = biomeConfig.ResourceSequence[index];
+        Entry entry = biomeEntries[index];
+        if (entry == null || entry.resource != resource)
+            biomeEntries[index] = entry = new Entry(biomeConfig.Name, index + 1, resource);
+        return entry;
+    }
+
+    /**
+     * Gets a copy of the entries, sorted by a column.
+     *
+     * @param biomeName
+     *            Only the entries of the biome with this name, ignoring the
+     *            case, or null for all biomes.
+     */
+    public List<Entry> getEntries(String biomeName, final Column sortBy)
+    {
+        List<Entry> list = new ArrayList<Entry>();
+        synchronized (this)
+        {
+            for (Entry[] biomeEntries : this.entries)
+            {
+                if (biomeEntries == null)
+                    continue;
+                for (Entry entry : biomeEntries)
+                {
+                    if (entry != null && (biomeName == null || entry.biomeName.equalsIgnoreCase(biomeName)))
+                        list.add(entry.copy());
+                }
+            }
+        }
+
+        Collections.sort(list, new Comparator<Entry>()
+        {
+            public int compare(Entry a, Entry b)
+            {
+                long valueA = sortBy.get(a);
+                long valueB = sortBy.get(b);
+                return valueA < valueB ? 1 : (valueA > valueB ? -1 : 0);
+            }
+        });
+        return list;
+    }
+
+    public synchronized void reset()
+    {
+        for (int i = 0; i < this.entries.length; i++)
+            this.entries[i] = null;
+    }
+
+    /**
+     * Writes the entries as comma separated values, one line per entry.
+     */
+    public static void writeCsv(List<Entry> entries, File file) throws IOException
+    {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try
+        {
+            writer.write("Biome,Line,Resource,Invocations,Attempts,Placements,Blocks,Reads,Nanoseconds");
+            writer.newLine();
+            for (Entry entry : entries)
+            {
+                writer.write(quote(entry.biomeName) + "," + entry.line + "," + quote(entry.resourceString) + "," + entry.getInvocations() + "," + entry.getAttempts() + "," + entry.getPlacements() + "," + entry.getBlocks() + "," + entry.getReads() + "," + entry.getNanos());
+                writer.newLine();
+            }
+        } finally
+        {
+            writer.close();
+        }
+    }
+
+    private static String quote(String value)
+    {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
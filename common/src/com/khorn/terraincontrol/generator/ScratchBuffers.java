@@ -0,0 +1,72 @@
+package com.khorn.terraincontrol.generator;
+
+import com.khorn.terraincontrol.LocalWorld;
+
+import java.util.Arrays;
+
+/**
+ * Buffers that resources need while spawning, kept per thread so that they
+ * can be reused for every chunk without a lock. Resources are shared by all
+ * worlds and all population threads, so they must not keep these buffers in
+ * fields themselves.
+ */
+public final class ScratchBuffers
+{
+    private static final ThreadLocal<ScratchBuffers> threadBuffers = new ThreadLocal<ScratchBuffers>()
+    {
+        @Override
+        protected ScratchBuffers initialValue()
+        {
+            return new ScratchBuffers();
+        }
+    };
+
+    private boolean[] booleans = new boolean[0];
+    // Null while the plan of this thread is in use
+    private ResourcePlan plan = new ResourcePlan(null, false, false, false);
+
+    private ScratchBuffers()
+    {
+    }
+
+    /**
+     * Gets a boolean array of the calling thread with at least the given
+     * length. The first length entries are false. The array is only valid
+     * until the next call on the same thread.
+     */
+    public static boolean[] getBooleans(int length)
+    {
+        ScratchBuffers buffers = threadBuffers.get();
+        if (buffers.booleans.length < length)
+            buffers.booleans = new boolean[length];
+        else
+            Arrays.fill(buffers.booleans, 0, length, false);
+        return buffers.booleans;
+    }
+
+    /**
+     * Gets an empty plan with the given flags. This is the plan of the
+     * calling thread, or a new plan when that one is still in use. Give it
+     * back with releasePlan after it has been applied.
+     */
+    public static ResourcePlan takePlan(LocalWorld world, boolean updateLight, boolean applyPhysics, boolean notifyPlayers)
+    {
+        ScratchBuffers buffers = threadBuffers.get();
+        ResourcePlan plan = buffers.plan;
+        if (plan == null)
+            return new ResourcePlan(world, updateLight, applyPhysics, notifyPlayers);
+        buffers.plan = null;
+        plan.reset(world, updateLight, applyPhysics, notifyPlayers);
+        return plan;
+    }
+
+    /**
+     * Gives a plan back, so that the next call to takePlan on this thread
+     * can use it again. Blocks that weren't applied are dropped.
+     */
+    public static void releasePlan(ResourcePlan plan)
+    {
+        plan.release();
+        threadBuffers.get().plan = plan;
+    }
+}
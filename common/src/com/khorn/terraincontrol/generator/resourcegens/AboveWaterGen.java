@@ -44,6 +44,12 @@ public class AboveWaterGen extends Resource
         }
     }
 
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == blockId;
+    }
+
     @Override
     public ResourceType getType()
     {
@@ -1,24 +1,24 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
-import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
-import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.PlannedResource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ResourcePlan;
+import com.khorn.terraincontrol.util.MaterialSet;
 
-public class CactusGen extends Resource
+public class CactusGen extends PlannedResource
 {
     private int blockId;
     private int blockData;
     private int minAltitude;
     private int maxAltitude;
-    private List<Integer> sourceBlocks;
+    private MaterialSet sourceBlocks;
 
     @Override
-    public void spawn(LocalWorld world, Random rand, int x, int z)
+    public void spawn(ResourcePlan plan, Random rand, int x, int z)
     {
         int y = rand.nextInt(maxAltitude - minAltitude) + minAltitude;
 
@@ -27,21 +27,27 @@ public class CactusGen extends Resource
             int j = x + rand.nextInt(8) - rand.nextInt(8);
             int k = y + rand.nextInt(4) - rand.nextInt(4);
             int m = z + rand.nextInt(8) - rand.nextInt(8);
-            if (world.isEmpty(j, k, m))
+            if (plan.isEmpty(j, k, m))
             {
                 int n = 1 + rand.nextInt(rand.nextInt(3) + 1);
                 for (int i1 = 0; i1 < n; i1++)
                 {
-                    int id = world.getTypeId(j, k + i1 - 1, m);
+                    int id = plan.getTypeId(j, k + i1 - 1, m);
                     if (sourceBlocks.contains(id))
                     {
-                        world.setBlock(j, k + i1, m, blockId, blockData, false, false, false);
+                        plan.setBlock(j, k + i1, m, blockId, blockData);
                     }
                 }
             }
         }
     }
 
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == blockId || sourceBlocks.contains(id);
+    }
+
     @Override
     public ResourceType getType()
     {
@@ -68,10 +74,6 @@ public class CactusGen extends Resource
         rarity = getInt(args.get(2), 1, 100);
         minAltitude = getInt(args.get(3), TerrainControl.worldDepth, TerrainControl.worldHeight);
         maxAltitude = getInt(args.get(4), minAltitude + 1, TerrainControl.worldHeight);
-        sourceBlocks = new ArrayList<Integer>();
-        for (int i = 5; i < args.size(); i++)
-        {
-            sourceBlocks.add(getBlockId(args.get(i)));
-        }
+        sourceBlocks = getMaterials(args, 5);
     }
 }
\ No newline at end of file
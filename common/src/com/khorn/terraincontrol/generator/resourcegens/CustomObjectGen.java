@@ -9,6 +9,7 @@ import com.khorn.terraincontrol.TerrainControl;
 import com.khorn.terraincontrol.configuration.Resource;
 import com.khorn.terraincontrol.customobjects.CustomObject;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ProfilingWorld;
 import com.khorn.terraincontrol.util.Txt;
 
 public class CustomObjectGen extends Resource
@@ -48,6 +49,7 @@ public class CustomObjectGen extends Resource
     {
         for (CustomObject object : objects)
         {
+            ProfilingWorld.countAttempt(world);
             object.process(world, random, chunkX, chunkZ);
         }
     }
@@ -1,5 +1,6 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
+import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.configuration.Resource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
 import com.khorn.terraincontrol.LocalWorld;
@@ -33,6 +34,13 @@ public class DungeonGen extends Resource
         world.PlaceDungeons(random, x, y, z);
     }
 
+    @Override
+    public boolean usesBlock(int id)
+    {
+        // The walls and the floor only need to be solid
+        return id == DefaultMaterial.COBBLESTONE.id || id == DefaultMaterial.MOSSY_COBBLESTONE.id || id == DefaultMaterial.MOB_SPAWNER.id || id == DefaultMaterial.CHEST.id;
+    }
+
     @Override
     public ResourceType getType()
     {
@@ -1,19 +1,21 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
-import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.PlannedResource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ProfilingWorld;
+import com.khorn.terraincontrol.generator.ResourcePlan;
 import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.util.MaterialSet;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
-public class GrassGen extends Resource
+public class GrassGen extends PlannedResource
 {
     private int blockId;
     private int blockData;
-    private List<Integer> sourceBlocks;
+    private MaterialSet sourceBlocks;
 
     @Override
     public void load(List<String> args) throws InvalidResourceException
@@ -26,38 +28,44 @@ public class GrassGen extends Resource
         blockData = getInt(args.get(1), 0, 16);
         frequency = getInt(args.get(2), 1, 500);
         rarity = getInt(args.get(3), 1, 100);
-        sourceBlocks = new ArrayList<Integer>();
-        for (int i = 4; i < args.size(); i++)
-        {
-            sourceBlocks.add(getBlockId(args.get(i)));
-        }
+        sourceBlocks = getMaterials(args, 4);
     }
 
     @Override
-    public void spawn(LocalWorld world, Random random, int x, int z)
+    public void spawn(ResourcePlan plan, Random random, int x, int z)
     {
-        // Handled by process().
+        // Handled by plan().
     }
 
     @Override
-    public void process(LocalWorld world, Random random, int chunkX, int chunkZ)
+    public ResourcePlan plan(LocalWorld world, Random random, int chunkX, int chunkZ)
     {
+        ResourcePlan plan = createPlan(world);
         for (int t = 0; t < frequency; t++)
         {
             if (random.nextInt(100) >= rarity)
                 continue;
+            ProfilingWorld.countAttempt(world);
             int x = chunkX * 16 + random.nextInt(16) + 8;
             int z = chunkZ * 16 + random.nextInt(16) + 8;
-            int y = world.getHighestBlockYAt(x, z);
+            int y = plan.getHighestBlockYAt(x, z);
 
             int i;
-            while ((((i = world.getTypeId(x, y, z)) == 0) || (i == DefaultMaterial.LEAVES.id)) && (y > 0))
+            while ((((i = plan.getTypeId(x, y, z)) == 0) || (i == DefaultMaterial.LEAVES.id)) && (y > 0))
                 y--;
 
-            if ((!world.isEmpty(x, y + 1, z)) || (!sourceBlocks.contains(world.getTypeId(x, y, z))))
+            if ((!plan.isEmpty(x, y + 1, z)) || (!sourceBlocks.contains(plan.getTypeId(x, y, z))))
                 continue;
-            world.setBlock(x, y + 1, z, blockId, blockData, false, false, false);
+            plan.setBlock(x, y + 1, z, blockId, blockData);
         }
+        return plan;
+    }
+
+    @Override
+    public boolean usesBlock(int id)
+    {
+        // Leaves are looked through on the way down
+        return id == blockId || id == DefaultMaterial.LEAVES.id || sourceBlocks.contains(id);
     }
 
     @Override
@@ -3,66 +3,75 @@ package com.khorn.terraincontrol.generator.resourcegens;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
 
-import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.PlannedResource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ResourcePlan;
+import com.khorn.terraincontrol.generator.ScratchBuffers;
+import com.khorn.terraincontrol.util.MaterialSet;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
-public class LiquidGen extends Resource
+public class LiquidGen extends PlannedResource
 {
     private int blockId;
     private int blockData;
-    private List<Integer> sourceBlocks;
+    private MaterialSet sourceBlocks;
     private int minAltitude;
     private int maxAltitude;
 
     @Override
-    public void spawn(LocalWorld world, Random rand, int x, int z)
+    public void spawn(ResourcePlan plan, Random rand, int x, int z)
     {
         int y = rand.nextInt(maxAltitude - minAltitude) + minAltitude;
 
-        if (sourceBlocks.contains(world.getTypeId(x, y + 1, z)))
+        if (sourceBlocks.contains(plan.getTypeId(x, y + 1, z)))
             return;
-        if (sourceBlocks.contains(world.getTypeId(x, y - 1, z)))
+        if (sourceBlocks.contains(plan.getTypeId(x, y - 1, z)))
             return;
 
-        if ((world.getTypeId(x, y, z) != 0) && (sourceBlocks.contains(world.getTypeId(x, y, z))))
+        if ((plan.getTypeId(x, y, z) != 0) && (sourceBlocks.contains(plan.getTypeId(x, y, z))))
             return;
 
         int i = 0;
         int j = 0;
 
-        int tempBlock = world.getTypeId(x - 1, y, z);
+        int tempBlock = plan.getTypeId(x - 1, y, z);
 
         i = (sourceBlocks.contains(tempBlock)) ? i + 1 : i;
         j = (tempBlock == 0) ? j + 1 : j;
 
-        tempBlock = world.getTypeId(x + 1, y, z);
+        tempBlock = plan.getTypeId(x + 1, y, z);
 
         i = (sourceBlocks.contains(tempBlock)) ? i + 1 : i;
         j = (tempBlock == 0) ? j + 1 : j;
 
-        tempBlock = world.getTypeId(x, y, z - 1);
+        tempBlock = plan.getTypeId(x, y, z - 1);
 
         i = (sourceBlocks.contains(tempBlock)) ? i + 1 : i;
         j = (tempBlock == 0) ? j + 1 : j;
 
-        tempBlock = world.getTypeId(x, y, z + 1);
+        tempBlock = plan.getTypeId(x, y, z + 1);
 
         i = (sourceBlocks.contains(tempBlock)) ? i + 1 : i;
         j = (tempBlock == 0) ? j + 1 : j;
 
         if ((i == 3) && (j == 1))
         {
-            world.setBlock(x, y, z, blockId, 0, true, true, true);
+            plan.setBlock(x, y, z, blockId, 0);
             // this.world.f = true;
             // Block.byId[res.BlockId].a(this.world, x, y, z, this.rand);
             // this.world.f = false;
         }
     }
 
+    @Override
+    protected ResourcePlan createPlan(LocalWorld world)
+    {
+        // The physics of the liquid happen when the plan is applied
+        return ScratchBuffers.takePlan(world, true, true, true);
+    }
+
     @Override
     public void load(List<String> args) throws InvalidResourceException
     {
@@ -76,11 +85,13 @@ public class LiquidGen extends Resource
         rarity = getInt(args.get(2), 1, 100);
         minAltitude = getInt(args.get(3), TerrainControl.worldDepth, TerrainControl.worldHeight);
         maxAltitude = getInt(args.get(4), minAltitude + 1, TerrainControl.worldHeight);
-        sourceBlocks = new ArrayList<Integer>();
-        for (int i = 5; i < args.size(); i++)
-        {
-            sourceBlocks.add(getBlockId(args.get(i)));
-        }
+        sourceBlocks = getMaterials(args, 5);
+    }
+
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == blockId || sourceBlocks.contains(id);
     }
 
     @Override
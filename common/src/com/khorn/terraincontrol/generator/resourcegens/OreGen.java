@@ -1,26 +1,26 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
-import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
-import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.PlannedResource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ResourcePlan;
 import com.khorn.terraincontrol.util.MathHelper;
+import com.khorn.terraincontrol.util.MaterialSet;
 
-public class OreGen extends Resource
+public class OreGen extends PlannedResource
 {
     private int blockId;
     private int blockData;
     private int minAltitude;
     private int maxAltitude;
     private int maxSize;
-    private List<Integer> sourceBlocks;
+    private MaterialSet sourceBlocks;
 
     @Override
-    public void spawn(LocalWorld world, Random rand, int x, int z)
+    public void spawn(ResourcePlan plan, Random rand, int x, int z)
     {
         int y = rand.nextInt(maxAltitude - minAltitude) + minAltitude;
 
@@ -40,34 +40,37 @@ public class OreGen extends Resource
             double d8 = d5 + (d6 - d5) * i / maxSize;
             double d9 = d3 + (d4 - d3) * i / maxSize;
 
+            // The vein is as high as it is wide, so one radius is enough
             double d10 = rand.nextDouble() * maxSize / 16.0D;
             double d11 = (MathHelper.sin(i * 3.141593F / maxSize) + 1.0F) * d10 + 1.0D;
-            double d12 = (MathHelper.sin(i * 3.141593F / maxSize) + 1.0F) * d10 + 1.0D;
+            double radius = d11 / 2.0D;
 
-            int j = MathHelper.floor(d7 - d11 / 2.0D);
-            int k = MathHelper.floor(d8 - d12 / 2.0D);
-            int m = MathHelper.floor(d9 - d11 / 2.0D);
+            int j = MathHelper.floor(d7 - radius);
+            int k = MathHelper.floor(d8 - radius);
+            int m = MathHelper.floor(d9 - radius);
 
-            int n = MathHelper.floor(d7 + d11 / 2.0D);
-            int i1 = MathHelper.floor(d8 + d12 / 2.0D);
-            int i2 = MathHelper.floor(d9 + d11 / 2.0D);
+            int n = MathHelper.floor(d7 + radius);
+            int i1 = MathHelper.floor(d8 + radius);
+            int i2 = MathHelper.floor(d9 + radius);
 
             for (int i3 = j; i3 <= n; i3++)
             {
-                double d13 = (i3 + 0.5D - d7) / (d11 / 2.0D);
-                if (d13 * d13 < 1.0D)
+                double d13 = (i3 + 0.5D - d7) / radius;
+                double xDistance = d13 * d13;
+                if (xDistance < 1.0D)
                 {
                     for (int i4 = k; i4 <= i1; i4++)
                     {
-                        double d14 = (i4 + 0.5D - d8) / (d12 / 2.0D);
-                        if (d13 * d13 + d14 * d14 < 1.0D)
+                        double d14 = (i4 + 0.5D - d8) / radius;
+                        double xyDistance = xDistance + d14 * d14;
+                        if (xyDistance < 1.0D)
                         {
                             for (int i5 = m; i5 <= i2; i5++)
                             {
-                                double d15 = (i5 + 0.5D - d9) / (d11 / 2.0D);
-                                if ((d13 * d13 + d14 * d14 + d15 * d15 < 1.0D) && sourceBlocks.contains(world.getTypeId(i3, i4, i5)))
+                                double d15 = (i5 + 0.5D - d9) / radius;
+                                if ((xyDistance + d15 * d15 < 1.0D) && sourceBlocks.contains(plan.getTypeId(i3, i4, i5)))
                                 {
-                                    world.setBlock(i3, i4, i5, blockId, blockData, false, false, false);
+                                    plan.setBlock(i3, i4, i5, blockId, blockData);
                                 }
                             }
                         }
@@ -91,11 +94,13 @@ public class OreGen extends Resource
         rarity = getInt(args.get(3), 1, 100);
         minAltitude = getInt(args.get(4), TerrainControl.worldDepth, TerrainControl.worldHeight);
         maxAltitude = getInt(args.get(5), minAltitude + 1, TerrainControl.worldHeight);
-        sourceBlocks = new ArrayList<Integer>();
-        for (int i = 6; i < args.size(); i++)
-        {
-            sourceBlocks.add(getBlockId(args.get(i)));
-        }
+        sourceBlocks = getMaterials(args, 6);
+    }
+
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == blockId || sourceBlocks.contains(id);
     }
 
     @Override
@@ -1,24 +1,24 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
-import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.PlannedResource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
-import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.generator.ResourcePlan;
 import com.khorn.terraincontrol.TerrainControl;
+import com.khorn.terraincontrol.util.MaterialSet;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
-public class PlantGen extends Resource
+public class PlantGen extends PlannedResource
 {
     private int blockId;
     private int blockData;
     private int minAltitude;
     private int maxAltitude;
-    private List<Integer> sourceBlocks;
+    private MaterialSet sourceBlocks;
 
     @Override
-    public void spawn(LocalWorld world, Random rand, int x, int z)
+    public void spawn(ResourcePlan plan, Random rand, int x, int z)
     {
         int y = rand.nextInt(maxAltitude - minAltitude) + minAltitude;
 
@@ -27,10 +27,10 @@ public class PlantGen extends Resource
             int j = x + rand.nextInt(8) - rand.nextInt(8);
             int k = y + rand.nextInt(4) - rand.nextInt(4);
             int m = z + rand.nextInt(8) - rand.nextInt(8);
-            if ((!world.isEmpty(j, k, m)) || (!sourceBlocks.contains(world.getTypeId(j, k - 1, m))))
+            if ((!plan.isEmpty(j, k, m)) || (!sourceBlocks.contains(plan.getTypeId(j, k - 1, m))))
                 continue;
 
-            world.setBlock(j, k, m, blockId, blockData, false, false, false);
+            plan.setBlock(j, k, m, blockId, blockData);
         }
     }
 
@@ -47,11 +47,13 @@ public class PlantGen extends Resource
         rarity = getInt(args.get(2), 1, 100);
         minAltitude = getInt(args.get(3), TerrainControl.worldDepth, TerrainControl.worldHeight);
         maxAltitude = getInt(args.get(4), minAltitude + 1, TerrainControl.worldHeight);
-        sourceBlocks = new ArrayList<Integer>();
-        for (int i = 5; i < args.size(); i++)
-        {
-            sourceBlocks.add(getBlockId(args.get(i)));
-        }
+        sourceBlocks = getMaterials(args, 5);
+    }
+
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == blockId || sourceBlocks.contains(id);
     }
 
     @Override
@@ -1,5 +1,6 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -41,7 +42,9 @@ public class ResourcesManager
     }
 
     /**
-     * Creates a resource with the specified name.
+     * Creates a resource with the specified name. A resource with the same
+     * type and args that was loaded before in the same world is returned
+     * instead of a new one, see WorldConfig.getSharedResource.
      * 
      * @param name
      *            Name of the resource, like Ore
@@ -53,10 +56,16 @@ public class ResourcesManager
     {
         if (resourceTypes.containsKey(name.toLowerCase()))
         {
-            Resource resource;
+            Class<? extends Resource> type = resourceTypes.get(name.toLowerCase());
+            WorldConfig worldConfig = biomeConfig.worldConfig;
+            Resource resource = worldConfig.getSharedResource(type, args);
+            if (resource != null)
+                return resource;
+            List<String> key = new ArrayList<String>(args);
+
             try
             {
-                resource = resourceTypes.get(name.toLowerCase()).newInstance();
+                resource = type.newInstance();
             } catch (InstantiationException e)
             {
                 TerrainControl.log("Reflection error while loading the resources: " + e.getMessage());
@@ -68,7 +77,7 @@ public class ResourcesManager
                 e.printStackTrace();
                 return null;
             }
-            resource.setWorldConfig(biomeConfig.worldConfig);
+            resource.setWorldConfig(worldConfig);
             try
             {
                 resource.load(args);
@@ -78,6 +87,7 @@ public class ResourcesManager
                 return null;
             }
 
+            worldConfig.addSharedResource(type, key, resource);
             return resource;
 
         }
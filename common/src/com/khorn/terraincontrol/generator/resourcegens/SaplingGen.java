@@ -57,6 +57,13 @@ public class SaplingGen extends Resource
         }
     }
 
+    @Override
+    public boolean usesBlock(int id)
+    {
+        // Saplings grow after the population
+        return false;
+    }
+
     @Override
     public ResourceType getType()
     {
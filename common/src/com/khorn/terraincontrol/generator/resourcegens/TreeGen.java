@@ -4,14 +4,23 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
 import com.khorn.terraincontrol.configuration.Resource;
 import com.khorn.terraincontrol.customobjects.CustomObject;
+import com.khorn.terraincontrol.customobjects.TreeObject;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ProfilingWorld;
+import com.khorn.terraincontrol.util.MaterialSet;
 
 public class TreeGen extends Resource
 {
+    // What the vanilla trees grow on, grow through and are made of
+    private static final MaterialSet VanillaTreeBlocks = new MaterialSet(DefaultMaterial.GRASS.id, DefaultMaterial.DIRT.id, DefaultMaterial.MYCEL.id, DefaultMaterial.LOG.id,
+            DefaultMaterial.LEAVES.id, DefaultMaterial.SAPLING.id, DefaultMaterial.VINE.id, DefaultMaterial.COCOA.id, DefaultMaterial.HUGE_MUSHROOM_1.id, DefaultMaterial.HUGE_MUSHROOM_2.id,
+            DefaultMaterial.WATER.id, DefaultMaterial.STATIONARY_WATER.id, DefaultMaterial.SNOW.id, DefaultMaterial.LONG_GRASS.id);
+
     private List<CustomObject> trees;
     private List<String> treeNames;
     private List<Integer> treeChances;
@@ -25,6 +34,7 @@ public class TreeGen extends Resource
             {
                 if (random.nextInt(100) < treeChances.get(treeNumber))
                 {
+                    ProfilingWorld.countAttempt(world);
                     int x = chunkX * 16 + random.nextInt(16);
                     int z = chunkZ * 16 + random.nextInt(16);
                     if (trees.get(treeNumber).spawnAsTree(world, random, x, z))
@@ -65,6 +75,18 @@ public class TreeGen extends Resource
         }
     }
 
+    @Override
+    public boolean usesBlock(int id)
+    {
+        for (CustomObject tree : trees)
+        {
+            // Custom objects may look at any block
+            if (!(tree instanceof TreeObject) || VanillaTreeBlocks.contains(id))
+                return true;
+        }
+        return false;
+    }
+
     @Override
     public ResourceType getType()
     {
@@ -1,17 +1,17 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.configuration.Resource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.util.MaterialSet;
 
 public class UnderWaterOreGen extends Resource
 {
     private int blockId;
-    private List<Integer> sourceBlocks;
+    private MaterialSet sourceBlocks;
     private int size;
     private int blockData;
 
@@ -54,11 +54,13 @@ public class UnderWaterOreGen extends Resource
         size = getInt(args.get(1), 1, 8);
         frequency = getInt(args.get(2), 1, 100);
         rarity = getInt(args.get(3), 1, 100);
-        sourceBlocks = new ArrayList<Integer>();
-        for (int i = 4; i < args.size(); i++)
-        {
-            sourceBlocks.add(getBlockId(args.get(i)));
-        }
+        sourceBlocks = getMaterials(args, 4);
+    }
+
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == blockId || sourceBlocks.contains(id);
     }
 
     @Override
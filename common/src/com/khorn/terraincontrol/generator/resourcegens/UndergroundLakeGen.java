@@ -1,16 +1,16 @@
 package com.khorn.terraincontrol.generator.resourcegens;
 
-import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.PlannedResource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ResourcePlan;
 import com.khorn.terraincontrol.DefaultMaterial;
-import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
 import com.khorn.terraincontrol.util.MathHelper;
 
 import java.util.List;
 import java.util.Random;
 
-public class UndergroundLakeGen extends Resource
+public class UndergroundLakeGen extends PlannedResource
 {
     private int minSize;
     private int maxSize;
@@ -18,11 +18,11 @@ public class UndergroundLakeGen extends Resource
     private int maxAltitude;
 
     @Override
-    public void spawn(LocalWorld world, Random rand, int x, int z)
+    public void spawn(ResourcePlan plan, Random rand, int x, int z)
     {
         int y = rand.nextInt(maxAltitude - minAltitude) + minAltitude;
 
-        if (y >= world.getHighestBlockYAt(x, z))
+        if (y >= plan.getHighestBlockYAt(x, z))
             return;
         int size = rand.nextInt(maxSize - minSize) + minSize;
 
@@ -44,26 +44,28 @@ public class UndergroundLakeGen extends Resource
 
             double horizontalSizeMultiplier = rand.nextDouble() * size / 16.0D;
             double verticalSizeMultiplier = rand.nextDouble() * size / 32.0D;
-            double horizontalSize = (MathHelper.sin(i * 3.141593F / size) + 1.0F) * horizontalSizeMultiplier + 1.0D;
-            double verticalSize = (MathHelper.sin(i * 3.141593F / size) + 1.0F) * verticalSizeMultiplier + 1.0D;
+            float sizeFactor = MathHelper.sin(i * 3.141593F / size) + 1.0F;
+            double horizontalRadius = (sizeFactor * horizontalSizeMultiplier + 1.0D) / 2.0D;
+            double verticalRadius = (sizeFactor * verticalSizeMultiplier + 1.0D) / 2.0D;
 
-            for (int xLake = (int) (xAdjusted - horizontalSize / 2.0D); xLake <= (int) (xAdjusted + horizontalSize / 2.0D); xLake++)
-                for (int yLake = (int) (yAdjusted - verticalSize / 2.0D); yLake <= (int) (yAdjusted + verticalSize / 2.0D); yLake++)
-                    for (int zLake = (int) (zAdjusted - horizontalSize / 2.0D); zLake <= (int) (zAdjusted + horizontalSize / 2.0D); zLake++)
+            for (int xLake = (int) (xAdjusted - horizontalRadius); xLake <= (int) (xAdjusted + horizontalRadius); xLake++)
+                for (int yLake = (int) (yAdjusted - verticalRadius); yLake <= (int) (yAdjusted + verticalRadius); yLake++)
+                    for (int zLake = (int) (zAdjusted - horizontalRadius); zLake <= (int) (zAdjusted + horizontalRadius); zLake++)
                     {
-                        if (world.getTypeId(xLake, yLake, zLake) == 0)
-                            continue;
-                        double xBounds = (xLake + 0.5D - xAdjusted) / (horizontalSize / 2.0D);
-                        double yBounds = (yLake + 0.5D - yAdjusted) / (verticalSize / 2.0D);
-                        double zBounds = (zLake + 0.5D - zAdjusted) / (horizontalSize / 2.0D);
+                        // Only blocks inside the lake are looked up
+                        double xBounds = (xLake + 0.5D - xAdjusted) / horizontalRadius;
+                        double yBounds = (yLake + 0.5D - yAdjusted) / verticalRadius;
+                        double zBounds = (zLake + 0.5D - zAdjusted) / horizontalRadius;
                         if (xBounds * xBounds + yBounds * yBounds + zBounds * zBounds >= 1.0D)
                             continue;
-                        int uBlock = world.getTypeId(xLake, yLake - 1, zLake);
+                        if (plan.getTypeId(xLake, yLake, zLake) == 0)
+                            continue;
+                        int uBlock = plan.getTypeId(xLake, yLake - 1, zLake);
                         if (uBlock != 0) // not air
-                            world.setBlock(xLake, yLake, zLake, DefaultMaterial.WATER.id, 0, false, false, false);
+                            plan.setBlock(xLake, yLake, zLake, DefaultMaterial.WATER.id, 0);
                         else
                             // Air block
-                            world.setBlock(xLake, yLake, zLake, 0, 0, false, false, false);
+                            plan.setBlock(xLake, yLake, zLake, 0, 0);
                     }
         }
     }
@@ -80,6 +82,12 @@ public class UndergroundLakeGen extends Resource
         maxAltitude = getInt(args.get(5), minAltitude + 1, TerrainControl.worldHeight);
     }
 
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == DefaultMaterial.WATER.id;
+    }
+
     @Override
     public ResourceType getType()
     {
@@ -6,16 +6,18 @@ import java.util.Random;
 import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
-import com.khorn.terraincontrol.configuration.Resource;
+import com.khorn.terraincontrol.configuration.PlannedResource;
 import com.khorn.terraincontrol.exception.InvalidResourceException;
+import com.khorn.terraincontrol.generator.ResourcePlan;
+import com.khorn.terraincontrol.generator.ScratchBuffers;
 
-public class VinesGen extends Resource
+public class VinesGen extends PlannedResource
 {
     private int minAltitude;
     private int maxAltitude;
 
     @Override
-    public void spawn(LocalWorld world, Random rand, int x, int z)
+    public void spawn(ResourcePlan plan, Random rand, int x, int z)
     {
         int _x = x;
         int _z = z;
@@ -23,12 +25,12 @@ public class VinesGen extends Resource
 
         while (y < maxAltitude)
         {
-            if (world.isEmpty(_x, y, _z))
+            if (plan.isEmpty(_x, y, _z))
             {
                 for (int direction = 2; direction <= 5; direction++)
-                    if (canPlace(world, _x, y, _z, direction))
+                    if (canPlace(plan, _x, y, _z, direction))
                     {
-                        world.setBlock(_x, y, _z, DefaultMaterial.VINE.id, 1 << d[OPPOSITE_FACING[direction]]);
+                        plan.setBlock(_x, y, _z, DefaultMaterial.VINE.id, 1 << d[OPPOSITE_FACING[direction]]);
                         break;
                     }
             } else
@@ -41,7 +43,7 @@ public class VinesGen extends Resource
 
     }
 
-    public boolean canPlace(LocalWorld world, int x, int y, int z, int paramInt4)
+    public boolean canPlace(ResourcePlan plan, int x, int y, int z, int paramInt4)
     {
         int id;
         switch (paramInt4)
@@ -49,19 +51,19 @@ public class VinesGen extends Resource
         default:
             return false;
         case 1:
-            id = (world.getTypeId(x, y + 1, z));
+            id = (plan.getTypeId(x, y + 1, z));
             break;
         case 2:
-            id = (world.getTypeId(x, y, z + 1));
+            id = (plan.getTypeId(x, y, z + 1));
             break;
         case 3:
-            id = (world.getTypeId(x, y, z - 1));
+            id = (plan.getTypeId(x, y, z - 1));
             break;
         case 5:
-            id = (world.getTypeId(x - 1, y, z));
+            id = (plan.getTypeId(x - 1, y, z));
             break;
         case 4:
-            id = (world.getTypeId(x + 1, y, z));
+            id = (plan.getTypeId(x + 1, y, z));
             break;
         }
         return DefaultMaterial.getMaterial(id).isSolid();
@@ -70,6 +72,12 @@ public class VinesGen extends Resource
     public static final int[] d = { -1, -1, 2, 0, 1, 3 };
     public static final int[] OPPOSITE_FACING = { 1, 0, 3, 2, 5, 4 };
 
+    @Override
+    protected ResourcePlan createPlan(LocalWorld world)
+    {
+        return ScratchBuffers.takePlan(world, false, false, true);
+    }
+
     @Override
     public void load(List<String> args) throws InvalidResourceException
     {
@@ -80,6 +88,12 @@ public class VinesGen extends Resource
         maxAltitude = getInt(args.get(3), minAltitude + 1, TerrainControl.worldHeight);
     }
 
+    @Override
+    public boolean usesBlock(int id)
+    {
+        return id == DefaultMaterial.VINE.id;
+    }
+
     @Override
     public ResourceType getType()
     {
@@ -5,11 +5,11 @@ import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.util.MathHelper;
 
+import java.util.List;
 import java.util.Random;
 
 public class CanyonsGen extends TerrainGenBase
 {
-    private float[] a = new float[1024];
     private WorldConfig worldSettings;
 
     public CanyonsGen(WorldConfig wrk, LocalWorld world)
@@ -18,30 +18,27 @@ public class CanyonsGen extends TerrainGenBase
         this.worldSettings = wrk;
     }
 
-    protected void a(long paramLong, int chunk_x, int chunk_z, byte[] paramArrayOfByte, double paramDouble1, double paramDouble2, double paramDouble3, float paramFloat1, float paramFloat2, float paramFloat3, int size, double paramDouble4)
+    protected void a(List<CarverPath> paths, long paramLong, double paramDouble1, double paramDouble2, double paramDouble3, float paramFloat1, float paramFloat2, float paramFloat3, int size, double paramDouble4)
     {
         Random localRandom = new Random(paramLong);
 
-        double d1 = chunk_x * 16 + 8;
-        double d2 = chunk_z * 16 + 8;
-
         float f1 = 0.0F;
         float f2 = 0.0F;
 
-        int i = 0;
-
+        float[] heightFactors = new float[worldSettings.WorldHeight];
         float f3 = 1.0F;
-        for (int j = 0; ; j++)
+        for (int j = 0; j < worldSettings.WorldHeight; j++)
         {
-            if (j >= worldSettings.WorldHeight)
-                break;
             if ((j == 0) || (localRandom.nextInt(3) == 0))
             {
                 f3 = 1.0F + localRandom.nextFloat() * localRandom.nextFloat() * 1.0F;
             }
-            this.a[j] = (f3 * f3);
+            heightFactors[j] = (f3 * f3);
         }
 
+        CarverPath path = new CarverPath(paramFloat1, size, false, heightFactors);
+        paths.add(path);
+
         for (int stepCount = 0; stepCount < size; stepCount++)
         {
             double d3 = 1.5D + MathHelper.sin(stepCount * 3.141593F / size) * paramFloat1 * 1.0F;
@@ -66,29 +63,47 @@ public class CanyonsGen extends TerrainGenBase
             f2 += (localRandom.nextFloat() - localRandom.nextFloat()) * localRandom.nextFloat() * 2.0F;
             f1 += (localRandom.nextFloat() - localRandom.nextFloat()) * localRandom.nextFloat() * 4.0F;
 
-            if ((i == 0) && (localRandom.nextInt(4) == 0))
+            if (localRandom.nextInt(4) == 0)
             {
                 continue;
             }
-            double d5 = paramDouble1 - d1;
-            double d6 = paramDouble3 - d2;
-            double d7 = size - stepCount;
-            double d8 = paramFloat1 + 2.0F + 16.0F;
+            path.add(paramDouble1, paramDouble2, paramDouble3, d3, d4, stepCount);
+        }
+        path.subtreeEnd = paths.size();
+    }
+
+    protected boolean a(CarverPath path, int chunk_x, int chunk_z, byte[] paramArrayOfByte, LiquidColumns liquid)
+    {
+        double d1 = chunk_x * 16 + 8;
+        double d2 = chunk_z * 16 + 8;
+        double d8 = path.radius + 2.0F + 16.0F;
+
+        for (int sphere = 0; sphere < path.size; sphere++)
+        {
+            double x = path.spheres[sphere * 5];
+            double y = path.spheres[sphere * 5 + 1];
+            double z = path.spheres[sphere * 5 + 2];
+            double d3 = path.spheres[sphere * 5 + 3];
+            double d4 = path.spheres[sphere * 5 + 4];
+
+            double d5 = x - d1;
+            double d6 = z - d2;
+            double d7 = path.maxSteps - path.steps[sphere];
             if (d5 * d5 + d6 * d6 - d7 * d7 > d8 * d8)
             {
-                return;
+                return false;
             }
 
-            if ((paramDouble1 < d1 - 16.0D - d3 * 2.0D) || (paramDouble3 < d2 - 16.0D - d3 * 2.0D) || (paramDouble1 > d1 + 16.0D + d3 * 2.0D) || (paramDouble3 > d2 + 16.0D + d3 * 2.0D))
+            if ((x < d1 - 16.0D - d3 * 2.0D) || (z < d2 - 16.0D - d3 * 2.0D) || (x > d1 + 16.0D + d3 * 2.0D) || (z > d2 + 16.0D + d3 * 2.0D))
                 continue;
-            int k = MathHelper.floor(paramDouble1 - d3) - chunk_x * 16 - 1;
-            int m = MathHelper.floor(paramDouble1 + d3) - chunk_x * 16 + 1;
+            int k = MathHelper.floor(x - d3) - chunk_x * 16 - 1;
+            int m = MathHelper.floor(x + d3) - chunk_x * 16 + 1;
 
-            int n = MathHelper.floor(paramDouble2 - d4) - 1;
-            int i1 = MathHelper.floor(paramDouble2 + d4) + 1;
+            int n = MathHelper.floor(y - d4) - 1;
+            int i1 = MathHelper.floor(y + d4) + 1;
 
-            int i2 = MathHelper.floor(paramDouble3 - d3) - chunk_z * 16 - 1;
-            int i3 = MathHelper.floor(paramDouble3 + d3) - chunk_z * 16 + 1;
+            int i2 = MathHelper.floor(z - d3) - chunk_z * 16 - 1;
+            int i3 = MathHelper.floor(z + d3) - chunk_z * 16 + 1;
 
             if (k < 0)
                 k = 0;
@@ -105,47 +120,35 @@ public class CanyonsGen extends TerrainGenBase
             if (i3 > 16)
                 i3 = 16;
 
-            int i4 = 0;
+            boolean water = false;
             int i8;
-            for (int i5 = k; (i4 == 0) && (i5 < m); i5++)
+            for (int i5 = k; !water && (i5 < m); i5++)
             {
-                for (int i6 = i2; (i4 == 0) && (i6 < i3); i6++)
+                for (int i6 = i2; !water && (i6 < i3); i6++)
                 {
-                    for (int i7 = i1 + 1; (i4 == 0) && (i7 >= n - 1); i7--)
-                    {
-                        i8 = (i5 * 16 + i6) * worldSettings.WorldHeight + i7;
-                        if (i7 < 0)
-                            continue;
-                        if (i7 < worldSettings.WorldHeight)
-                        {
-                            if ((paramArrayOfByte[i8] == DefaultMaterial.WATER.id) || (paramArrayOfByte[i8] == DefaultMaterial.STATIONARY_WATER.id))
-                            {
-                                i4 = 1;
-                            }
-                            if ((i7 != n - 1) && (i5 != k) && (i5 != m - 1) && (i6 != i2) && (i6 != i3 - 1))
-                                i7 = n;
-                        }
-                    }
+                    // The sides of the box are checked from top to bottom, the inside only at the top and the bottom
+                    if ((i5 != k) && (i5 != m - 1) && (i6 != i2) && (i6 != i3 - 1))
+                        water = (i1 + 1 >= n - 1) && (liquid.hasWater(i5 * 16 + i6, i1 + 1, i1 + 1) || liquid.hasWater(i5 * 16 + i6, n - 1, n - 1));
+                    else
+                        water = liquid.hasWater(i5 * 16 + i6, n - 1, i1 + 1);
                 }
             }
-            if (i4 != 0)
-            {
+            if (water)
                 continue;
-            }
             for (int i5 = k; i5 < m; i5++)
             {
-                double d9 = (i5 + chunk_x * 16 + 0.5D - paramDouble1) / d3;
+                double d9 = (i5 + chunk_x * 16 + 0.5D - x) / d3;
                 for (i8 = i2; i8 < i3; i8++)
                 {
-                    double d10 = (i8 + chunk_z * 16 + 0.5D - paramDouble3) / d3;
+                    double d10 = (i8 + chunk_z * 16 + 0.5D - z) / d3;
                     int i9 = (i5 * 16 + i8) * worldSettings.WorldHeight + i1;
                     int i10 = 0;
                     if (d9 * d9 + d10 * d10 < 1.0D)
                     {
                         for (int i11 = i1 - 1; i11 >= n; i11--)
                         {
-                            double d11 = (i11 + 0.5D - paramDouble2) / d4;
-                            if ((d9 * d9 + d10 * d10) * this.a[i11] + d11 * d11 / 6.0D < 1.0D)
+                            double d11 = (i11 + 0.5D - y) / d4;
+                            if ((d9 * d9 + d10 * d10) * path.heightFactors[i11] + d11 * d11 / 6.0D < 1.0D)
                             {
                                 int i12 = paramArrayOfByte[i9];
                                 if (i12 == DefaultMaterial.GRASS.id)
@@ -168,30 +171,29 @@ public class CanyonsGen extends TerrainGenBase
                     }
                 }
             }
-            if (i != 0)
-                break;
         }
+        return true;
     }
 
-    protected void a(int paramInt1, int paramInt2, int chunk_x, int chunk_z, byte[] paramArrayOfByte)
+    protected void a(Random random, int paramInt1, int paramInt2, List<CarverPath> paths)
     {
-        if (this.c.nextInt(100) >= this.worldSettings.canyonRarity)
+        if (random.nextInt(100) >= this.worldSettings.canyonRarity)
             return;
-        double d1 = paramInt1 * 16 + this.c.nextInt(16);
-        double d2 = this.c.nextInt(this.worldSettings.canyonMaxAltitude - this.worldSettings.canyonMinAltitude) + this.worldSettings.canyonMinAltitude;
-        double d3 = paramInt2 * 16 + this.c.nextInt(16);
+        double d1 = paramInt1 * 16 + random.nextInt(16);
+        double d2 = random.nextInt(this.worldSettings.canyonMaxAltitude - this.worldSettings.canyonMinAltitude) + this.worldSettings.canyonMinAltitude;
+        double d3 = paramInt2 * 16 + random.nextInt(16);
 
         int i = 1;
 
         for (int j = 0; j < i; j++)
         {
-            float f1 = this.c.nextFloat() * 3.141593F * 2.0F;
-            float f2 = (this.c.nextFloat() - 0.5F) * 2.0F / 8.0F;
-            float f3 = (this.c.nextFloat() * 2.0F + this.c.nextFloat()) * 2.0F;
+            float f1 = random.nextFloat() * 3.141593F * 2.0F;
+            float f2 = (random.nextFloat() - 0.5F) * 2.0F / 8.0F;
+            float f3 = (random.nextFloat() * 2.0F + random.nextFloat()) * 2.0F;
 
-            int size = this.c.nextInt(this.worldSettings.canyonMaxLength - this.worldSettings.canyonMinLength) + this.worldSettings.canyonMinLength;
+            int size = random.nextInt(this.worldSettings.canyonMaxLength - this.worldSettings.canyonMinLength) + this.worldSettings.canyonMinLength;
 
-            a(this.c.nextLong(), chunk_x, chunk_z, paramArrayOfByte, d1, d2, d3, f3, f1, f2, size, this.worldSettings.canyonDepth);
+            a(paths, random.nextLong(), d1, d2, d3, f3, f1, f2, size, this.worldSettings.canyonDepth);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.khorn.terraincontrol.generator.terrainsgens;
+
+/**
+ * One tunnel or canyon of a carver, stored as the spheres it carves along its
+ * way. Tracing a path only uses the random of its source chunk, so the same
+ * path can be replayed for every chunk around the source. Which spheres are
+ * actually carved still depends on the chunk, that part is done by the carver.
+ */
+class CarverPath
+{
+    // Radius the path was started with, the carvers use it to stop early
+    final float radius;
+    final int maxSteps;
+    // Caves with one room stop after their first carved sphere
+    final boolean singleSphere;
+    // Height profile of a canyon, null for caves
+    final float[] heightFactors;
+
+    int size;
+    // x, y, z, horizontal radius and vertical radius of every sphere
+    double[] spheres = new double[5 * 16];
+    int[] steps = new int[16];
+
+    // Area in which the chunk centers must be for this path or the paths
+    // branching from it to carve anything, with a block to spare
+    double minX = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double minZ = Double.POSITIVE_INFINITY;
+    double maxZ = Double.NEGATIVE_INFINITY;
+
+    // Index of the first path after the ones branching from this one
+    int subtreeEnd;
+
+    CarverPath(float radius, int maxSteps, boolean singleSphere, float[] heightFactors)
+    {
+        this.radius = radius;
+        this.maxSteps = maxSteps;
+        this.singleSphere = singleSphere;
+        this.heightFactors = heightFactors;
+    }
+
+    void add(double x, double y, double z, double radius, double verticalRadius, int step)
+    {
+        if (this.size == this.steps.length)
+        {
+            double[] newSpheres = new double[this.spheres.length * 2];
+            System.arraycopy(this.spheres, 0, newSpheres, 0, this.spheres.length);
+            this.spheres = newSpheres;
+            int[] newSteps = new int[this.steps.length * 2];
+            System.arraycopy(this.steps, 0, newSteps, 0, this.steps.length);
+            this.steps = newSteps;
+        }
+
+        int i = this.size * 5;
+        this.spheres[i] = x;
+        this.spheres[i + 1] = y;
+        this.spheres[i + 2] = z;
+        this.spheres[i + 3] = radius;
+        this.spheres[i + 4] = verticalRadius;
+        this.steps[this.size] = step;
+        this.size++;
+
+        // The carvers skip spheres further than 16 + 2 * radius from the chunk center
+        this.minX = Math.min(this.minX, x - 16.0D - radius * 2.0D - 1.0D);
+        this.maxX = Math.max(this.maxX, x + 16.0D + radius * 2.0D + 1.0D);
+        this.minZ = Math.min(this.minZ, z - 16.0D - radius * 2.0D - 1.0D);
+        this.maxZ = Math.max(this.maxZ, z + 16.0D + radius * 2.0D + 1.0D);
+    }
+
+    void include(CarverPath branch)
+    {
+        this.minX = Math.min(this.minX, branch.minX);
+        this.maxX = Math.max(this.maxX, branch.maxX);
+        this.minZ = Math.min(this.minZ, branch.minZ);
+        this.maxZ = Math.max(this.maxZ, branch.maxZ);
+    }
+
+    /**
+     * Returns false when neither this path nor the paths branching from it
+     * can carve anything in the chunk.
+     */
+    boolean reaches(int chunk_x, int chunk_z)
+    {
+        double x = chunk_x * 16 + 8;
+        double z = chunk_z * 16 + 8;
+        return x >= this.minX && x <= this.maxX && z >= this.minZ && z <= this.maxZ;
+    }
+}
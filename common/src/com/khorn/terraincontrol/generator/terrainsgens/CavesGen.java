@@ -5,6 +5,7 @@ import com.khorn.terraincontrol.DefaultMaterial;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.util.MathHelper;
 
+import java.util.List;
 import java.util.Random;
 
 public class CavesGen extends TerrainGenBase
@@ -17,16 +18,13 @@ public class CavesGen extends TerrainGenBase
         this.worldSettings = wrk;
     }
 
-    protected void a(long paramLong, int paramInt1, int paramInt2, byte[] paramArrayOfByte, double paramDouble1, double paramDouble2, double paramDouble3)
+    protected void a(List<CarverPath> paths, Random random, long paramLong, double paramDouble1, double paramDouble2, double paramDouble3)
     {
-        a(paramLong, paramInt1, paramInt2, paramArrayOfByte, paramDouble1, paramDouble2, paramDouble3, 1.0F + this.c.nextFloat() * 6.0F, 0.0F, 0.0F, -1, -1, 0.5D);
+        a(paths, paramLong, paramDouble1, paramDouble2, paramDouble3, 1.0F + random.nextFloat() * 6.0F, 0.0F, 0.0F, -1, -1, 0.5D);
     }
 
-    protected void a(long paramLong, int paramInt1, int paramInt2, byte[] paramArrayOfByte, double paramDouble1, double paramDouble2, double paramDouble3, float paramFloat1, float paramFloat2, float paramFloat3, int paramInt3, int paramInt4, double paramDouble4)
+    protected void a(List<CarverPath> paths, long paramLong, double paramDouble1, double paramDouble2, double paramDouble3, float paramFloat1, float paramFloat2, float paramFloat3, int paramInt3, int paramInt4, double paramDouble4)
     {
-        double d1 = paramInt1 * 16 + 8;
-        double d2 = paramInt2 * 16 + 8;
-
         float f1 = 0.0F;
         float f2 = 0.0F;
 
@@ -48,6 +46,9 @@ public class CavesGen extends TerrainGenBase
         int j = localRandom.nextInt(paramInt4 / 2) + paramInt4 / 4;
         int k = localRandom.nextInt(6) == 0 ? 1 : 0;
 
+        CarverPath path = new CarverPath(paramFloat1, paramInt4, i != 0, null);
+        paths.add(path);
+
         for (; paramInt3 < paramInt4; paramInt3++)
         {
             double d3 = 1.5D + MathHelper.sin(paramInt3 * 3.141593F / paramInt4) * paramFloat1 * 1.0F;
@@ -75,33 +76,54 @@ public class CavesGen extends TerrainGenBase
 
             if ((i == 0) && (paramInt3 == j) && (paramFloat1 > 1.0F) && (paramInt4 > 0))
             {
-                a(localRandom.nextLong(), paramInt1, paramInt2, paramArrayOfByte, paramDouble1, paramDouble2, paramDouble3, localRandom.nextFloat() * 0.5F + 0.5F, paramFloat2 - 1.570796F, paramFloat3 / 3.0F, paramInt3, paramInt4, 1.0D);
-                a(localRandom.nextLong(), paramInt1, paramInt2, paramArrayOfByte, paramDouble1, paramDouble2, paramDouble3, localRandom.nextFloat() * 0.5F + 0.5F, paramFloat2 + 1.570796F, paramFloat3 / 3.0F, paramInt3, paramInt4, 1.0D);
-                return;
+                int firstBranch = paths.size();
+                a(paths, localRandom.nextLong(), paramDouble1, paramDouble2, paramDouble3, localRandom.nextFloat() * 0.5F + 0.5F, paramFloat2 - 1.570796F, paramFloat3 / 3.0F, paramInt3, paramInt4, 1.0D);
+                a(paths, localRandom.nextLong(), paramDouble1, paramDouble2, paramDouble3, localRandom.nextFloat() * 0.5F + 0.5F, paramFloat2 + 1.570796F, paramFloat3 / 3.0F, paramInt3, paramInt4, 1.0D);
+                for (int branch = firstBranch; branch < paths.size(); branch++)
+                    path.include(paths.get(branch));
+                break;
             }
             if ((i == 0) && (localRandom.nextInt(4) == 0))
             {
                 continue;
             }
-            double d5 = paramDouble1 - d1;
-            double d6 = paramDouble3 - d2;
-            double d7 = paramInt4 - paramInt3;
-            double d8 = paramFloat1 + 2.0F + 16.0F;
+            path.add(paramDouble1, paramDouble2, paramDouble3, d3, d4, paramInt3);
+        }
+        path.subtreeEnd = paths.size();
+    }
+
+    protected boolean a(CarverPath path, int paramInt1, int paramInt2, byte[] paramArrayOfByte, LiquidColumns liquid)
+    {
+        double d1 = paramInt1 * 16 + 8;
+        double d2 = paramInt2 * 16 + 8;
+        double d8 = path.radius + 2.0F + 16.0F;
+
+        for (int sphere = 0; sphere < path.size; sphere++)
+        {
+            double x = path.spheres[sphere * 5];
+            double y = path.spheres[sphere * 5 + 1];
+            double z = path.spheres[sphere * 5 + 2];
+            double d3 = path.spheres[sphere * 5 + 3];
+            double d4 = path.spheres[sphere * 5 + 4];
+
+            double d5 = x - d1;
+            double d6 = z - d2;
+            double d7 = path.maxSteps - path.steps[sphere];
             if (d5 * d5 + d6 * d6 - d7 * d7 > d8 * d8)
             {
-                return;
+                return false;
             }
 
-            if ((paramDouble1 < d1 - 16.0D - d3 * 2.0D) || (paramDouble3 < d2 - 16.0D - d3 * 2.0D) || (paramDouble1 > d1 + 16.0D + d3 * 2.0D) || (paramDouble3 > d2 + 16.0D + d3 * 2.0D))
+            if ((x < d1 - 16.0D - d3 * 2.0D) || (z < d2 - 16.0D - d3 * 2.0D) || (x > d1 + 16.0D + d3 * 2.0D) || (z > d2 + 16.0D + d3 * 2.0D))
                 continue;
-            int m = MathHelper.floor(paramDouble1 - d3) - paramInt1 * 16 - 1;
-            int n = MathHelper.floor(paramDouble1 + d3) - paramInt1 * 16 + 1;
+            int m = MathHelper.floor(x - d3) - paramInt1 * 16 - 1;
+            int n = MathHelper.floor(x + d3) - paramInt1 * 16 + 1;
 
-            int i1 = MathHelper.floor(paramDouble2 - d4) - 1;
-            int i2 = MathHelper.floor(paramDouble2 + d4) + 1;
+            int i1 = MathHelper.floor(y - d4) - 1;
+            int i2 = MathHelper.floor(y + d4) + 1;
 
-            int i3 = MathHelper.floor(paramDouble3 - d3) - paramInt2 * 16 - 1;
-            int i4 = MathHelper.floor(paramDouble3 + d3) - paramInt2 * 16 + 1;
+            int i3 = MathHelper.floor(z - d3) - paramInt2 * 16 - 1;
+            int i4 = MathHelper.floor(z + d3) - paramInt2 * 16 + 1;
 
             if (m < 0)
                 m = 0;
@@ -119,38 +141,27 @@ public class CavesGen extends TerrainGenBase
             if (i4 > 16)
                 i4 = 16;
 
-            int i5 = 0;
+            boolean water = false;
             int i9;
-            for (int i6 = m; (i5 == 0) && (i6 < n); i6++)
+            for (int i6 = m; !water && (i6 < n); i6++)
             {
-                for (int i7 = i3; (i5 == 0) && (i7 < i4); i7++)
+                for (int i7 = i3; !water && (i7 < i4); i7++)
                 {
-                    for (int i8 = i2 + 1; (i5 == 0) && (i8 >= i1 - 1); i8--)
-                    {
-                        i9 = (i6 * 16 + i7) * this.worldSettings.WorldHeight + i8;
-                        if (i8 < 0)
-                            continue;
-
-                        if (i8 < this.worldSettings.WorldHeight)
-                        {
-                            if ((paramArrayOfByte[i9] == DefaultMaterial.WATER.id) || (paramArrayOfByte[i9] == DefaultMaterial.STATIONARY_WATER.id))
-                            {
-                                i5 = 1;
-                            }
-                            if ((i8 != i1 - 1) && (i6 != m) && (i6 != n - 1) && (i7 != i3) && (i7 != i4 - 1))
-                                i8 = i1;
-                        }
-                    }
+                    // The sides of the box are checked from top to bottom, the inside only at the top and the bottom
+                    if ((i6 != m) && (i6 != n - 1) && (i7 != i3) && (i7 != i4 - 1))
+                        water = (i2 + 1 >= i1 - 1) && (liquid.hasWater(i6 * 16 + i7, i2 + 1, i2 + 1) || liquid.hasWater(i6 * 16 + i7, i1 - 1, i1 - 1));
+                    else
+                        water = liquid.hasWater(i6 * 16 + i7, i1 - 1, i2 + 1);
                 }
             }
-            if (i5 != 0)
+            if (water)
                 continue;
             for (int i6 = m; i6 < n; i6++)
             {
-                double d9 = (i6 + paramInt1 * 16 + 0.5D - paramDouble1) / d3;
+                double d9 = (i6 + paramInt1 * 16 + 0.5D - x) / d3;
                 for (i9 = i3; i9 < i4; i9++)
                 {
-                    double d10 = (i9 + paramInt2 * 16 + 0.5D - paramDouble3) / d3;
+                    double d10 = (i9 + paramInt2 * 16 + 0.5D - z) / d3;
 
                     int i10 = (i6 * 16 + i9) * this.worldSettings.WorldHeight + i2;
                     int i11 = 0;
@@ -158,7 +169,7 @@ public class CavesGen extends TerrainGenBase
                      {
                         for (int i12 = i2 - 1; i12 >= i1; i12--)
                         {
-                            double d11 = (i12 + 0.5D - paramDouble2) / d4;
+                            double d11 = (i12 + 0.5D - y) / d4;
                             if ((d11 > -0.7D) && (d9 * d9 + d11 * d11 + d10 * d10 < 1.0D))
                             {
                                 int i13 = paramArrayOfByte[i10];
@@ -182,50 +193,51 @@ public class CavesGen extends TerrainGenBase
                     }
                 }
             }
-            if (i != 0)
+            if (path.singleSphere)
                 break;
         }
+        return true;
     }
 
-    protected void a( int paramInt1, int paramInt2, int paramInt3, int paramInt4, byte[] paramArrayOfByte)
+    protected void a(Random random, int paramInt1, int paramInt2, List<CarverPath> paths)
     {
-        int i = this.c.nextInt(this.c.nextInt(this.c.nextInt(this.worldSettings.caveFrequency) + 1) + 1);
+        int i = random.nextInt(random.nextInt(random.nextInt(this.worldSettings.caveFrequency) + 1) + 1);
         if (this.worldSettings.evenCaveDistribution)
             i = this.worldSettings.caveFrequency;
-        if (this.c.nextInt(100) >= this.worldSettings.caveRarity)
+        if (random.nextInt(100) >= this.worldSettings.caveRarity)
             i = 0;
 
         for (int j = 0; j < i; j++)
         {
-            double d1 = paramInt1 * 16 + this.c.nextInt(16);
+            double d1 = paramInt1 * 16 + random.nextInt(16);
 
             double d2;
 
             if (this.worldSettings.evenCaveDistribution)
-                d2 = this.c.nextInt(this.worldSettings.caveMaxAltitude - this.worldSettings.caveMinAltitude) + this.worldSettings.caveMinAltitude;
+                d2 = random.nextInt(this.worldSettings.caveMaxAltitude - this.worldSettings.caveMinAltitude) + this.worldSettings.caveMinAltitude;
             else
-                d2 = this.c.nextInt(this.c.nextInt(this.worldSettings.caveMaxAltitude - this.worldSettings.caveMinAltitude) + this.worldSettings.caveMinAltitude + 1);
-            double d3 = paramInt2 * 16 + this.c.nextInt(16);
+                d2 = random.nextInt(random.nextInt(this.worldSettings.caveMaxAltitude - this.worldSettings.caveMinAltitude) + this.worldSettings.caveMinAltitude + 1);
+            double d3 = paramInt2 * 16 + random.nextInt(16);
 
             int k = this.worldSettings.caveSystemFrequency;
             boolean l = false;
-            if (this.c.nextInt(100) <= this.worldSettings.individualCaveRarity)
+            if (random.nextInt(100) <= this.worldSettings.individualCaveRarity)
             {
-                a(this.c.nextLong(), paramInt3, paramInt4, paramArrayOfByte, d1, d2, d3);
+                a(paths, random, random.nextLong(), d1, d2, d3);
                 l = true;
             }
 
-            if ((l) || (this.c.nextInt(100) <= this.worldSettings.caveSystemPocketChance - 1))
+            if ((l) || (random.nextInt(100) <= this.worldSettings.caveSystemPocketChance - 1))
             {
-                k += this.c.nextInt(this.worldSettings.caveSystemPocketMaxSize - this.worldSettings.caveSystemPocketMinSize) + this.worldSettings.caveSystemPocketMinSize;
+                k += random.nextInt(this.worldSettings.caveSystemPocketMaxSize - this.worldSettings.caveSystemPocketMinSize) + this.worldSettings.caveSystemPocketMinSize;
             }
             for (int m = 0; m < k; m++)
             {
-                float f1 = this.c.nextFloat() * 3.141593F * 2.0F;
-                float f2 = (this.c.nextFloat() - 0.5F) * 2.0F / 8.0F;
-                float f3 = this.c.nextFloat() * 2.0F + this.c.nextFloat();
+                float f1 = random.nextFloat() * 3.141593F * 2.0F;
+                float f2 = (random.nextFloat() - 0.5F) * 2.0F / 8.0F;
+                float f3 = random.nextFloat() * 2.0F + random.nextFloat();
 
-                a(this.c.nextLong(), paramInt3, paramInt4, paramArrayOfByte, d1, d2, d3, f3, f1, f2, 0, 0, 1.0D);
+                a(paths, random.nextLong(), d1, d2, d3, f3, f1, f2, 0, 0, 1.0D);
             }
         }
     }
@@ -0,0 +1,75 @@
+package com.khorn.terraincontrol.generator.terrainsgens;
+
+import com.khorn.terraincontrol.DefaultMaterial;
+
+/**
+ * Which columns of a chunk contain water, for the water checks of the
+ * carvers. Carving never adds or removes water, so every column is looked at
+ * only once per chunk, the first time a carver asks for it.
+ */
+class LiquidColumns
+{
+    private final byte[] blocks;
+    private final int height;
+
+    private final boolean[] known = new boolean[256];
+    // Lowest and highest water block of every column and the number of water blocks
+    private final int[] lowest = new int[256];
+    private final int[] highest = new int[256];
+    private final int[] count = new int[256];
+
+    LiquidColumns(byte[] blocks)
+    {
+        this.blocks = blocks;
+        this.height = blocks.length / 256;
+    }
+
+    private void scan(int column)
+    {
+        int lowestY = -1;
+        int highestY = -1;
+        int waterBlocks = 0;
+        int index = column * this.height;
+        for (int y = 0; y < this.height; y++)
+        {
+            int block = this.blocks[index + y];
+            if ((block == DefaultMaterial.WATER.id) || (block == DefaultMaterial.STATIONARY_WATER.id))
+            {
+                if (lowestY == -1)
+                    lowestY = y;
+                highestY = y;
+                waterBlocks++;
+            }
+        }
+        this.lowest[column] = lowestY;
+        this.highest[column] = highestY;
+        this.count[column] = waterBlocks;
+        this.known[column] = true;
+    }
+
+    /**
+     * Returns whether the column (x * 16 + z) has water between minY and
+     * maxY, both inclusive.
+     */
+    boolean hasWater(int column, int minY, int maxY)
+    {
+        if (maxY < minY)
+            return false;
+        if (!this.known[column])
+            scan(column);
+        if (this.count[column] == 0 || maxY < this.lowest[column] || minY > this.highest[column])
+            return false;
+        // One body of water
+        if (this.count[column] == this.highest[column] - this.lowest[column] + 1)
+            return true;
+
+        int index = column * this.height;
+        for (int y = Math.max(minY, 0); y <= maxY && y < this.height; y++)
+        {
+            int block = this.blocks[index + y];
+            if ((block == DefaultMaterial.WATER.id) || (block == DefaultMaterial.STATIONARY_WATER.id))
+                return true;
+        }
+        return false;
+    }
+}
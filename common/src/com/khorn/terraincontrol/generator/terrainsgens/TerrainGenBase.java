@@ -1,15 +1,76 @@
 package com.khorn.terraincontrol.generator.terrainsgens;
 
 import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.TerrainControl;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.logging.Level;
 
 public class TerrainGenBase
 {
+    // Source chunks to keep the traced paths of. Every source chunk is used by
+    // the 17x17 chunks around it, so this must hold a few rows of chunks.
+    private static final int PathCacheSize = 2048;
+    private static final SourceChunk NoPaths = new SourceChunk(new CarverPath[0]);
+    // Chunks between two log messages of the skip ratio
+    private static final int LogInterval = 4096;
+
     protected int b = 8;
-    protected Random c = new Random();
     protected LocalWorld d;
 
+    private final Map<Long, SourceChunk> pathCache = new LinkedHashMap<Long, SourceChunk>(PathCacheSize, 0.75F, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SourceChunk> eldest)
+        {
+            return size() > PathCacheSize;
+        }
+    };
+
+    // Guarded by pathCache, carving itself has no shared state and can
+    // happen on many threads at once
+    private long sourcesVisited;
+    private long sourcesSkipped;
+    private int chunksCarved;
+
+    /**
+     * The paths of a source chunk, with the area in which the chunk centers
+     * must be for any of them to carve something.
+     */
+    private static class SourceChunk
+    {
+        final CarverPath[] paths;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        double maxZ = Double.NEGATIVE_INFINITY;
+
+        SourceChunk(CarverPath[] paths)
+        {
+            this.paths = paths;
+            for (CarverPath path : paths)
+            {
+                this.minX = Math.min(this.minX, path.minX);
+                this.maxX = Math.max(this.maxX, path.maxX);
+                this.minZ = Math.min(this.minZ, path.minZ);
+                this.maxZ = Math.max(this.maxZ, path.maxZ);
+            }
+        }
+
+        boolean reaches(int chunk_x, int chunk_z)
+        {
+            double x = chunk_x * 16 + 8;
+            double z = chunk_z * 16 + 8;
+            return x >= this.minX && x <= this.maxX && z >= this.minZ && z <= this.maxZ;
+        }
+    }
+
     public TerrainGenBase(LocalWorld world)
     {
         this.d = world;
@@ -19,21 +80,106 @@ public class TerrainGenBase
     {
         int i = this.b;
 
-        this.c.setSeed(this.d.getSeed());
-        long l1 = this.c.nextLong();
-        long l2 = this.c.nextLong();
+        Random random = new Random(this.d.getSeed());
+        long l1 = random.nextLong();
+        long l2 = random.nextLong();
 
+        LiquidColumns liquid = null;
+        int skipped = 0;
         for (int j = chunk_x - i; j <= chunk_x + i; j++)
             for (int k = chunk_z - i; k <= chunk_z + i; k++)
             {
-                long l3 = j * l1;
-                long l4 = k * l2;
-                this.c.setSeed(l3 ^ l4 ^ this.d.getSeed());
-                a(j, k, chunk_x, chunk_z, paramArrayOfByte);
+                SourceChunk source = this.getSource(j, k, l1, l2);
+                if (!source.reaches(chunk_x, chunk_z))
+                {
+                    skipped++;
+                    continue;
+                }
+                if (liquid == null)
+                    liquid = new LiquidColumns(paramArrayOfByte);
+
+                CarverPath[] paths = source.paths;
+                int p = 0;
+                while (p < paths.length)
+                {
+                    CarverPath path = paths[p];
+                    // When a path stops early, the paths branching from it are never started
+                    if (path.reaches(chunk_x, chunk_z) && this.a(path, chunk_x, chunk_z, paramArrayOfByte, liquid))
+                        p++;
+                    else
+                        p = path.subtreeEnd;
+                }
+            }
+
+        boolean log;
+        synchronized (this.pathCache)
+        {
+            this.sourcesVisited += (2 * i + 1) * (2 * i + 1);
+            this.sourcesSkipped += skipped;
+            log = ++this.chunksCarved % LogInterval == 0;
+        }
+        if (log)
+            TerrainControl.log(Level.FINE, getClass().getSimpleName() + " skipped " + (int) (getSkipRatio() * 100) + "% of the source chunks");
+    }
+
+    /**
+     * Part of the visited source chunks that had nothing to carve in the
+     * chunk, without looking at their paths.
+     */
+    public double getSkipRatio()
+    {
+        synchronized (this.pathCache)
+        {
+            return this.sourcesVisited == 0 ? 0 : (double) this.sourcesSkipped / this.sourcesVisited;
+        }
+    }
+
+    private SourceChunk getSource(int source_x, int source_z, long l1, long l2)
+    {
+        Long key = ((long) source_x << 32) | (source_z & 0xFFFFFFFFL);
+        SourceChunk source;
+        synchronized (this.pathCache)
+        {
+            source = this.pathCache.get(key);
+        }
+        if (source == null)
+        {
+            // Traced outside of the lock, two threads tracing the same source
+            // chunk get the same paths
+            long l3 = source_x * l1;
+            long l4 = source_z * l2;
+            Random random = new Random(l3 ^ l4 ^ this.d.getSeed());
+
+            List<CarverPath> pathList = new ArrayList<CarverPath>();
+            a(random, source_x, source_z, pathList);
+            // Most source chunks have no paths, their first random numbers already decide that
+            source = pathList.isEmpty() ? NoPaths : new SourceChunk(pathList.toArray(new CarverPath[pathList.size()]));
+            synchronized (this.pathCache)
+            {
+                this.pathCache.put(key, source);
             }
+        }
+        return source;
+    }
+
+    /**
+     * Traces the paths starting in a source chunk, using the given random
+     * seeded for that chunk. A path must be followed directly by the paths
+     * branching from it, with subtreeEnd pointing after them.
+     */
+    protected void a(Random random, int paramInt1, int paramInt2, List<CarverPath> paths)
+    {
     }
 
-    protected void a(int paramInt1, int paramInt2, int chunk_x, int chunk_z, byte[] paramArrayOfByte)
+    /**
+     * Carves a traced path in a chunk. The liquid columns answer the water
+     * checks, so the chunk isn't scanned again for every sphere.
+     *
+     * @return False if the path stopped before its end, so the paths
+     *         branching from it must be skipped.
+     */
+    protected boolean a(CarverPath path, int chunk_x, int chunk_z, byte[] paramArrayOfByte, LiquidColumns liquid)
     {
+        return true;
     }
 }
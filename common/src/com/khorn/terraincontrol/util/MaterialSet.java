@@ -0,0 +1,47 @@
+package com.khorn.terraincontrol.util;
+
+/**
+ * Immutable set of block ids, for the blocks a resource or an object may be
+ * placed on or in. Lookups are a single bit test, so they can be done for
+ * every block without boxing the id.
+ */
+public final class MaterialSet
+{
+    private final long[] bits;
+    // The ids in the order they were given, to write the settings back
+    private final int[] ids;
+
+    public MaterialSet(int... ids)
+    {
+        int max = 255;
+        for (int id : ids)
+        {
+            if (id < 0)
+                throw new IllegalArgumentException("Negative block id " + id);
+            max = Math.max(max, id);
+        }
+
+        this.ids = ids.clone();
+        this.bits = new long[(max >> 6) + 1];
+        for (int id : ids)
+            this.bits[id >> 6] |= 1L << id;
+    }
+
+    public boolean contains(int id)
+    {
+        return id >= 0 && (id >> 6) < this.bits.length && (this.bits[id >> 6] & (1L << id)) != 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.ids.length == 0;
+    }
+
+    /**
+     * Gets the ids in the order they were given, including duplicates.
+     */
+    public int[] getIds()
+    {
+        return this.ids.clone();
+    }
+}
@@ -12,6 +12,8 @@ import net.minecraft.src.WorldChunkManager;
 import com.khorn.terraincontrol.DefaultBiome;
 import com.khorn.terraincontrol.IBiomeManager;
 import com.khorn.terraincontrol.LocalWorld;
+import com.khorn.terraincontrol.biomelayers.BiomePresenceIndex;
+import com.khorn.terraincontrol.biomelayers.PrecomputedBiomeMap;
 import com.khorn.terraincontrol.biomelayers.layers.Layer;
 import com.khorn.terraincontrol.configuration.WorldConfig;
 
@@ -19,6 +21,8 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
 {
     private Layer unZoomedLayer;
     private Layer biomeLayer;
+    private BiomePresenceIndex presenceIndex;
+    private PrecomputedBiomeMap precomputedMap;
 
     private final Object lockObject = new Object();
 
@@ -27,6 +31,8 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
     private ArrayList<BiomeGenBase> biomesToSpawnIn = new ArrayList<BiomeGenBase>();
 
     private WorldConfig worldConfig;
+    private float[] temperatureTable;
+    private float[] wetnessTable;
 
     public BiomeManager(LocalWorld world)
     {
@@ -55,7 +61,55 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
 
         this.unZoomedLayer = layers[0];
         this.biomeLayer = layers[1];
+        this.presenceIndex = new BiomePresenceIndex(this.unZoomedLayer);
+        this.precomputedMap = PrecomputedBiomeMap.open(this.worldConfig, world.getSeed());
 
+        this.initClimateTables();
+    }
+
+    // From the precomputed biomes when the area is inside them, otherwise from
+    // the layers. The array is reused when it is big enough.
+    private int[] calculateBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.precomputedMap;
+        if (map != null && map.contains(x, z, x_size, z_size))
+            return map.getBiomes(biomeArray, x, z, x_size, z_size);
+        return this.biomeLayer.Calculate(biomeArray, x, z, x_size, z_size);
+    }
+
+    private int[] calculateUnZoomedBiomes(int[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.precomputedMap;
+        if (map != null && map.containsUnZoomed(x, z, x_size, z_size))
+            return map.getUnZoomedBiomes(biomeArray, x, z, x_size, z_size);
+        return this.unZoomedLayer.Calculate(biomeArray, x, z, x_size, z_size);
+    }
+
+    private void initClimateTables()
+    {
+        float[] temperatures = new float[this.worldConfig.biomeConfigs.length];
+        float[] wetness = new float[this.worldConfig.biomeConfigs.length];
+        for (int i = 0; i < this.worldConfig.biomeConfigs.length; i++)
+        {
+            if (this.worldConfig.biomeConfigs[i] == null)
+                continue;
+
+            float f1 = this.worldConfig.biomeConfigs[i].getTemperature() / 65536.0F;
+            if (f1 < this.worldConfig.minTemperature)
+                f1 = this.worldConfig.minTemperature;
+            if (f1 > this.worldConfig.maxTemperature)
+                f1 = this.worldConfig.maxTemperature;
+            temperatures[i] = f1;
+
+            f1 = this.worldConfig.biomeConfigs[i].getWetness() / 65536.0F;
+            if (f1 < this.worldConfig.minMoisture)
+                f1 = this.worldConfig.minMoisture;
+            if (f1 > this.worldConfig.maxMoisture)
+                f1 = this.worldConfig.maxMoisture;
+            wetness[i] = f1;
+        }
+        this.temperatureTable = temperatures;
+        this.wetnessTable = wetness;
     }
 
     @SuppressWarnings("rawtypes")
@@ -81,15 +135,10 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
             paramArrayOfFloat = new float[paramInt3 * paramInt4];
         }
 
-        int[] arrayOfInt = this.biomeLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] arrayOfInt = this.calculateBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
-            float f1 = worldConfig.biomeConfigs[arrayOfInt[i]].getWetness() / 65536.0F;
-            if (f1 < this.worldConfig.minMoisture)
-                f1 = this.worldConfig.minMoisture;
-            if (f1 > this.worldConfig.maxMoisture)
-                f1 = this.worldConfig.maxMoisture;
-            paramArrayOfFloat[i] = f1;
+            paramArrayOfFloat[i] = this.wetnessTable[arrayOfInt[i]];
         }
 
         return paramArrayOfFloat;
@@ -103,15 +152,10 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
             paramArrayOfFloat = new float[paramInt3 * paramInt4];
         }
 
-        int[] arrayOfInt = this.biomeLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] arrayOfInt = this.calculateBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
-            float f1 = worldConfig.biomeConfigs[arrayOfInt[i]].getTemperature() / 65536.0F;
-            if (f1 < this.worldConfig.minTemperature)
-                f1 = this.worldConfig.minTemperature;
-            if (f1 > this.worldConfig.maxTemperature)
-                f1 = this.worldConfig.maxTemperature;
-            paramArrayOfFloat[i] = f1;
+            paramArrayOfFloat[i] = this.temperatureTable[arrayOfInt[i]];
         }
 
         return paramArrayOfFloat;
@@ -124,7 +168,7 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
             paramArrayOfBiomeBase = new BiomeGenBase[paramInt3 * paramInt4];
         }
 
-        int[] arrayOfInt = this.unZoomedLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] arrayOfInt = this.calculateUnZoomedBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
             paramArrayOfBiomeBase[i] = BiomeGenBase.biomeList[arrayOfInt[i]];
@@ -149,7 +193,7 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
             }
             return paramArrayOfBiomeBase;
         }
-        int[] localObject = this.biomeLayer.Calculate(paramInt1, paramInt2, paramInt3, paramInt4);
+        int[] localObject = this.calculateBiomes(null, paramInt1, paramInt2, paramInt3, paramInt4);
         for (int i = 0; i < paramInt3 * paramInt4; i++)
         {
             paramArrayOfBiomeBase[i] = BiomeGenBase.biomeList[localObject[i]];
@@ -168,17 +212,7 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
 
         int n = k - i + 1;
         int i1 = m - j + 1;
-        int[] arrayOfInt = this.unZoomedLayer.Calculate(i, j, n, i1);
-        for (int i2 = 0; i2 < n * i1; i2++)
-        {
-            if (arrayOfInt[i2] >= DefaultBiome.values().length)
-                return false;
-            BiomeGenBase localBiomeBase = BiomeGenBase.biomeList[arrayOfInt[i2]];
-            if (!paramList.contains(localBiomeBase))
-                return false;
-        }
-
-        return true;
+        return this.presenceIndex.areBiomesAllowed(i, j, n, i1, this.getAllowedBiomes(paramList));
     }
 
     @SuppressWarnings("rawtypes")
@@ -191,17 +225,17 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
 
         int n = k - i + 1;
         int i1 = m - j + 1;
-        int[] arrayOfInt = this.unZoomedLayer.Calculate(i, j, n, i1);
+        boolean[] allowed = this.getAllowedBiomes(paramList);
+        int[] arrayOfInt = this.presenceIndex.getCandidateBiomes(i, j, n, i1, allowed);
         ChunkPosition localChunkPosition = null;
         int i2 = 0;
         for (int i3 = 0; i3 < arrayOfInt.length; i3++)
         {
-            if (arrayOfInt[i3] >= DefaultBiome.values().length)
+            if (arrayOfInt[i3] < 0 || arrayOfInt[i3] >= allowed.length)
                 continue;
             int i4 = i + i3 % n << 2;
             int i5 = j + i3 / n << 2;
-            BiomeGenBase localBiomeBase = BiomeGenBase.biomeList[arrayOfInt[i3]];
-            if ((!paramList.contains(localBiomeBase)) || ((localChunkPosition != null) && (paramRandom.nextInt(i2 + 1) != 0)))
+            if ((!allowed[arrayOfInt[i3]]) || ((localChunkPosition != null) && (paramRandom.nextInt(i2 + 1) != 0)))
                 continue;
             localChunkPosition = new ChunkPosition(i4, 0, i5);
             i2++;
@@ -210,6 +244,16 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
         return localChunkPosition;
     }
 
+    // Custom biomes are never allowed, like in vanilla
+    @SuppressWarnings("rawtypes")
+    private boolean[] getAllowedBiomes(List paramList)
+    {
+        boolean[] allowed = new boolean[DefaultBiome.values().length];
+        for (int i = 0; i < allowed.length; i++)
+            allowed[i] = paramList.contains(BiomeGenBase.biomeList[i]);
+        return allowed;
+    }
+
     public void cleanUpcache()
     {
         synchronized (this.lockObject)
@@ -220,20 +264,19 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
 
     public int[] getBiomesUnZoomedTC(int[] biomeArray, int x, int z, int x_size, int z_size)
     {
-        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
-        {
-            biomeArray = new int[x_size * z_size];
-        }
-
-        int[] arrayOfInt = this.unZoomedLayer.Calculate(x, z, x_size, z_size);
-
-        System.arraycopy(arrayOfInt, 0, biomeArray, 0, x_size * z_size);
-
-        return biomeArray;
+        return this.calculateUnZoomedBiomes(biomeArray, x, z, x_size, z_size);
     }
 
     private float[] Tbuffer = new float[256];
 
+    public byte[] getBiomesUnZoomedTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.precomputedMap;
+        if (map != null && map.containsUnZoomed(x, z, x_size, z_size))
+            return map.getUnZoomedBiomes(biomeArray, x, z, x_size, z_size);
+        return this.unZoomedLayer.Calculate(biomeArray, x, z, x_size, z_size);
+    }
+
     public float[] getTemperaturesTC(int x, int z, int x_size, int z_size)
     {
         return this.getTemperatures(Tbuffer, x, z, x_size, z_size);
@@ -258,12 +301,53 @@ public class BiomeManager extends WorldChunkManager implements IBiomeManager
             return biomeArray;
         }
 
-        int[] arrayOfInt = this.biomeLayer.Calculate(x, z, x_size, z_size);
+        return this.calculateBiomes(biomeArray, x, z, x_size, z_size);
+
+    }
+
+    public byte[] getBiomesTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.precomputedMap;
+        if (map != null && map.contains(x, z, x_size, z_size))
+            return map.getBiomes(biomeArray, x, z, x_size, z_size);
+        return this.biomeLayer.Calculate(biomeArray, x, z, x_size, z_size);
+    }
 
-        System.arraycopy(arrayOfInt, 0, biomeArray, 0, x_size * z_size);
+    public int[] getBiomesTC(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        biomeArray = this.getBiomesTC(biomeArray, x, z, x_size, z_size);
+
+        float[] temperatures = this.temperatureTable;
+        float[] wetness = this.wetnessTable;
+        for (int i = 0; i < x_size * z_size; i++)
+        {
+            if (temperatureArray != null)
+                temperatureArray[i] = temperatures[biomeArray[i]];
+            if (wetnessArray != null)
+                wetnessArray[i] = wetness[biomeArray[i]];
+        }
 
         return biomeArray;
+    }
+
+    public int[] getBiomesTC(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
+    {
+        PrecomputedBiomeMap map = this.precomputedMap;
+        if (map != null && (map.containsUnZoomed(ux, uz, ux_size, uz_size) || map.contains(x, z, x_size, z_size)))
+        {
+            this.getBiomesUnZoomedTC(unZoomedArray, ux, uz, ux_size, uz_size);
+            biomeArray = this.getBiomesTC(biomeArray, x, z, x_size, z_size);
+        } else
+            biomeArray = this.biomeLayer.Calculate(unZoomedArray, ux, uz, ux_size, uz_size, biomeArray, x, z, x_size, z_size);
 
+        if (temperatureArray != null)
+        {
+            float[] temperatures = this.temperatureTable;
+            for (int i = 0; i < x_size * z_size; i++)
+                temperatureArray[i] = temperatures[biomeArray[i]];
+        }
+
+        return biomeArray;
     }
 
     public int getBiomeTC(int x, int z)
@@ -13,21 +13,16 @@ import com.khorn.terraincontrol.DefaultBiome;
 import com.khorn.terraincontrol.IBiomeManager;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.configuration.WorldConfig;
-import com.khorn.terraincontrol.util.NoiseGeneratorOctaves2;
+import com.khorn.terraincontrol.generator.OldBiomeGenerator;
 
 public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
 {
 
     private WorldConfig localWrk;
 
-    private NoiseGeneratorOctaves2 temperatureGenerator;
-    private NoiseGeneratorOctaves2 wetnessGenerator;
-    private NoiseGeneratorOctaves2 temperatureGenerator2;
-    public double[] oldTemperature;
-    public double[] oldWetness;
-    private double[] oldTemperature2;
-    private BiomeGenBase[] tempBiomeBases;
+    private OldBiomeGenerator generator;
     private BiomeCache cache = new BiomeCache(this);
+    private final Object lockObject = new Object();
 
     private ArrayList<BiomeGenBase> biomesToSpawnIn = new ArrayList<BiomeGenBase>();
 
@@ -40,51 +35,24 @@ public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
         this.biomesToSpawnIn.add(BiomeGenBase.biomeList[DefaultBiome.TAIGA.Id]);
 
         this.localWrk = world.getSettings();
-        this.temperatureGenerator = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 9871L), 4);
-        this.wetnessGenerator = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 39811L), 4);
-        this.temperatureGenerator2 = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 543321L), 2);
-
+        this.generator = new OldBiomeGenerator(world);
     }
 
     @Override
     public BiomeGenBase getBiomeGenAt(int i, int i1)
     {
-        return this.cache.getBiomeGenAt(i, i1);
+        synchronized (this.lockObject)
+        {
+            return this.cache.getBiomeGenAt(i, i1);
+        }
     }
 
     // Temperature
     @Override
     public float[] getTemperatures(float[] temp_out, int x, int z, int x_size, int z_size)
     {
-        if ((temp_out == null) || (temp_out.length < x_size * z_size))
-        {
-            temp_out = new float[x_size * z_size];
-        }
-
-        this.oldTemperature = this.temperatureGenerator.a(this.oldTemperature, x, z, x_size, z_size, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.25D);
-        this.oldTemperature2 = this.temperatureGenerator2.a(this.oldTemperature2, x, z, x_size, z_size, 0.25D / this.localWrk.oldBiomeSize, 0.25D / this.localWrk.oldBiomeSize, 0.5882352941176471D);
-
-        int i = 0;
-        for (int j = 0; j < x_size; j++)
-        {
-            for (int k = 0; k < z_size; k++)
-            {
-                double d1 = this.oldTemperature2[i] * 1.1D + 0.5D;
-
-                double d2 = 0.01D;
-                double d3 = 1.0D - d2;
-                double d4 = (temp_out[i] * 0.15D + 0.7D) * d3 + d1 * d2;
-                d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
-
-                if (d4 < this.localWrk.minTemperature)
-                    d4 = this.localWrk.minTemperature;
-                if (d4 > this.localWrk.maxTemperature)
-                    d4 = this.localWrk.maxTemperature;
-                temp_out[i] = (float) d4;
-                i++;
-            }
+        temp_out = this.generator.getTemperatures(temp_out, this.localWrk, x, z, x_size, z_size);
 
-        }
         if (this.localWrk.isDeprecated)
             this.localWrk = this.localWrk.newSettings;
 
@@ -99,10 +67,10 @@ public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
         {
             temp_out = new float[x_size * z_size];
         }
-        this.tempBiomeBases = this.getBiomeGenAt(this.tempBiomeBases, x, z, x_size, z_size, false);
+        OldBiomeGenerator.Climate climate = this.generator.getClimate(this.localWrk, x, z, x_size, z_size);
 
         for (int i = 0; i < temp_out.length; i++)
-            temp_out[i] = (float) this.oldWetness[i];
+            temp_out[i] = (float) climate.wetness[i];
 
         return temp_out;
 
@@ -123,47 +91,16 @@ public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
         }
         if ((useCache) && (x_size == 16) && (z_size == 16) && ((x & 0xF) == 0) && ((z & 0xF) == 0))
         {
-            BiomeGenBase[] localObject = this.cache.getCachedBiomes(x, z);
-            System.arraycopy(localObject, 0, paramArrayOfzp, 0, x_size * z_size);
-            return paramArrayOfzp;
-        }
-
-        this.oldTemperature = this.temperatureGenerator.a(this.oldTemperature, x, z, x_size, x_size, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.25D);
-        this.oldWetness = this.wetnessGenerator.a(this.oldWetness, x, z, x_size, x_size, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.3333333333333333D);
-        this.oldTemperature2 = this.temperatureGenerator2.a(this.oldTemperature2, x, z, x_size, x_size, 0.25D / this.localWrk.oldBiomeSize, 0.25D / this.localWrk.oldBiomeSize, 0.5882352941176471D);
-
-        int i = 0;
-        for (int j = 0; j < x_size; j++)
-        {
-            for (int k = 0; k < z_size; k++)
+            synchronized (this.lockObject)
             {
-                double d1 = this.oldTemperature2[i] * 1.1D + 0.5D;
-
-                double d2 = 0.01D;
-                double d3 = 1.0D - d2;
-                double d4 = (this.oldTemperature[i] * 0.15D + 0.7D) * d3 + d1 * d2;
-                d2 = 0.002D;
-                d3 = 1.0D - d2;
-                double d5 = (this.oldWetness[i] * 0.15D + 0.5D) * d3 + d1 * d2;
-                d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
-
-                if (d4 < this.localWrk.minTemperature)
-                    d4 = this.localWrk.minTemperature;
-                if (d5 < this.localWrk.minMoisture)
-                    d5 = this.localWrk.minMoisture;
-                if (d4 > this.localWrk.maxTemperature)
-                    d4 = this.localWrk.maxTemperature;
-                if (d5 > this.localWrk.maxMoisture)
-                {
-                    d5 = this.localWrk.maxMoisture;
-                }
-                this.oldTemperature[i] = d4;
-                this.oldWetness[i] = d5;
-
-                paramArrayOfzp[(i++)] = BiomeManagerOld.getBiomeFromDiagram(d4, d5);
+                BiomeGenBase[] localObject = this.cache.getCachedBiomes(x, z);
+                System.arraycopy(localObject, 0, paramArrayOfzp, 0, x_size * z_size);
             }
-
+            return paramArrayOfzp;
         }
+        OldBiomeGenerator.Climate climate = this.generator.getClimate(this.localWrk, x, z, x_size, z_size);
+        for (int i = 0; i < x_size * z_size; i++)
+            paramArrayOfzp[i] = BiomeManagerOld.getBiomeFromDiagram(climate.temperature[i], climate.wetness[i]);
 
         if (this.localWrk.isDeprecated)
             this.localWrk = this.localWrk.newSettings;
@@ -230,7 +167,10 @@ public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
     @Override
     public void cleanupCache()
     {
-        this.cache.cleanupCache();
+        synchronized (this.lockObject)
+        {
+            this.cache.cleanupCache();
+        }
     }
 
     private static BiomeGenBase getBiomeFromDiagram(double temp, double rain)
@@ -297,48 +237,17 @@ public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
         }
         if ((x_size == 16) && (z_size == 16) && ((x & 0xF) == 0) && ((z & 0xF) == 0))
         {
-            BiomeGenBase[] localObject = this.cache.getCachedBiomes(x, z);
-            for (int i = 0; i < x_size * z_size; i++)
-                biomeArray[i] = localObject[i].biomeID;
-            return biomeArray;
-        }
-
-        this.oldTemperature = this.temperatureGenerator.a(this.oldTemperature, x, z, x_size, x_size, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.025000000372529D / this.localWrk.oldBiomeSize, 0.25D);
-        this.oldWetness = this.wetnessGenerator.a(this.oldWetness, x, z, x_size, x_size, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.0500000007450581D / this.localWrk.oldBiomeSize, 0.3333333333333333D);
-        this.oldTemperature2 = this.temperatureGenerator2.a(this.oldTemperature2, x, z, x_size, x_size, 0.25D / this.localWrk.oldBiomeSize, 0.25D / this.localWrk.oldBiomeSize, 0.5882352941176471D);
-
-        int i = 0;
-        for (int j = 0; j < x_size; j++)
-        {
-            for (int k = 0; k < z_size; k++)
+            synchronized (this.lockObject)
             {
-                double d1 = this.oldTemperature2[i] * 1.1D + 0.5D;
-
-                double d2 = 0.01D;
-                double d3 = 1.0D - d2;
-                double d4 = (this.oldTemperature[i] * 0.15D + 0.7D) * d3 + d1 * d2;
-                d2 = 0.002D;
-                d3 = 1.0D - d2;
-                double d5 = (this.oldWetness[i] * 0.15D + 0.5D) * d3 + d1 * d2;
-                d4 = 1.0D - (1.0D - d4) * (1.0D - d4);
-
-                if (d4 < this.localWrk.minTemperature)
-                    d4 = this.localWrk.minTemperature;
-                if (d5 < this.localWrk.minMoisture)
-                    d5 = this.localWrk.minMoisture;
-                if (d4 > this.localWrk.maxTemperature)
-                    d4 = this.localWrk.maxTemperature;
-                if (d5 > this.localWrk.maxMoisture)
-                {
-                    d5 = this.localWrk.maxMoisture;
-                }
-                this.oldTemperature[i] = d4;
-                this.oldWetness[i] = d5;
-
-                biomeArray[(i++)] = BiomeManagerOld.getBiomeFromDiagram(d4, d5).biomeID;
+                BiomeGenBase[] localObject = this.cache.getCachedBiomes(x, z);
+                for (int i = 0; i < x_size * z_size; i++)
+                    biomeArray[i] = localObject[i].biomeID;
             }
-
+            return biomeArray;
         }
+        OldBiomeGenerator.Climate climate = this.generator.getClimate(this.localWrk, x, z, x_size, z_size);
+        for (int i = 0; i < x_size * z_size; i++)
+            biomeArray[i] = BiomeManagerOld.getBiomeFromDiagram(climate.temperature[i], climate.wetness[i]).biomeID;
 
         if (this.localWrk.isDeprecated)
             this.localWrk = this.localWrk.newSettings;
@@ -348,6 +257,19 @@ public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
 
     private float[] Tbuffer = new float[256];
 
+    public byte[] getBiomesUnZoomedTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        if ((biomeArray == null) || (biomeArray.length < x_size * z_size))
+        {
+            biomeArray = new byte[x_size * z_size];
+        }
+
+        int[] biomes = this.getBiomesUnZoomedTC(new int[x_size * z_size], x, z, x_size, z_size);
+        for (int i = 0; i < x_size * z_size; i++)
+            biomeArray[i] = (byte) biomes[i];
+        return biomeArray;
+    }
+
     public float[] getTemperaturesTC(int x, int z, int x_size, int z_size)
     {
         return this.getTemperatures(Tbuffer, x, z, x_size, z_size);
@@ -358,6 +280,29 @@ public class BiomeManagerOld extends WorldChunkManager implements IBiomeManager
         return this.getBiomesUnZoomedTC(biomeArray, x, z, x_size, z_size);
     }
 
+    public byte[] getBiomesTC(byte[] biomeArray, int x, int z, int x_size, int z_size)
+    {
+        return this.getBiomesUnZoomedTC(biomeArray, x, z, x_size, z_size);
+    }
+
+    public int[] getBiomesTC(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        // The old generator derives the climate from noise, not from the biome ids
+        biomeArray = this.getBiomesUnZoomedTC(biomeArray, x, z, x_size, z_size);
+        if (temperatureArray != null)
+            System.arraycopy(this.getTemperaturesTC(x, z, x_size, z_size), 0, temperatureArray, 0, x_size * z_size);
+        if (wetnessArray != null)
+            System.arraycopy(this.getRainfall(null, x, z, x_size, z_size), 0, wetnessArray, 0, x_size * z_size);
+        return biomeArray;
+    }
+
+    public int[] getBiomesTC(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
+    {
+        // Nothing to share, the old generator has no layers
+        this.getBiomesUnZoomedTC(unZoomedArray, ux, uz, ux_size, uz_size);
+        return this.getBiomesTC(biomeArray, temperatureArray, null, x, z, x_size, z_size);
+    }
+
     public int getBiomeTC(int x, int z)
     {
         return this.getBiomeGenAt(x, z).biomeID;
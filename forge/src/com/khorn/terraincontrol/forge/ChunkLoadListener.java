@@ -0,0 +1,24 @@
+package com.khorn.terraincontrol.forge;
+
+import net.minecraftforge.event.ForgeSubscribe;
+import net.minecraftforge.event.world.ChunkEvent;
+
+public class ChunkLoadListener
+{
+    private TCWorldType worldType;
+
+    public ChunkLoadListener(TCWorldType worldType)
+    {
+        this.worldType = worldType;
+    }
+
+    @ForgeSubscribe
+    public void onChunkLoad(ChunkEvent.Load event)
+    {
+        // Chunks loaded from disk don't pass the chunk provider, their
+        // pending blocks are placed here
+        SingleWorld world = this.worldType.worldTC;
+        if (world != null && world.getWorld() == event.world)
+            world.applyPendingBlocks(event.getChunk());
+    }
+}
@@ -71,6 +71,7 @@ public class ChunkProvider implements IChunkProvider
                     }
                 }
         world.FillChunkForBiomes(chunk, chunkX, chunkZ);
+        world.applyPendingBlocks(chunk);
 
         chunk.generateSkylightMap();
         return chunk;
@@ -90,12 +91,14 @@ public class ChunkProvider implements IChunkProvider
         BlockSand.fallInstantly = true;
         this.world.LoadChunk(x, z);
         this.spawner.populate(x, z);
+        this.world.EndPopulation();
         BlockSand.fallInstantly = false;
     }
 
     @Override
     public boolean saveChunks(boolean b, IProgressUpdate il)
     {
+        this.world.savePendingBlocks();
         return true;
     }
 
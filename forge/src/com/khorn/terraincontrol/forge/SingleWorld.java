@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.Random;
 
 import net.minecraft.src.BiomeGenBase;
+import net.minecraft.src.Block;
 import net.minecraft.src.Chunk;
 import net.minecraft.src.ExtendedBlockStorage;
 import net.minecraft.src.MapGenMineshaft;
@@ -31,7 +32,12 @@ import com.khorn.terraincontrol.IBiomeManager;
 import com.khorn.terraincontrol.LocalBiome;
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.configuration.BiomeConfig;
+import com.khorn.terraincontrol.configuration.ReplaceTable;
+import com.khorn.terraincontrol.configuration.TCDefaultValues;
 import com.khorn.terraincontrol.configuration.WorldConfig;
+import com.khorn.terraincontrol.generator.BlockBatch;
+import com.khorn.terraincontrol.generator.ColumnHeights;
+import com.khorn.terraincontrol.generator.PendingBlocks;
 import com.khorn.terraincontrol.generator.resourcegens.TreeType;
 
 public class SingleWorld implements LocalWorld
@@ -42,7 +48,6 @@ public class SingleWorld implements LocalWorld
     private String name;
     private long seed;
     private IBiomeManager biomeManager;
-    private BiomeManagerOld oldBiomeManager;
 
     private static int nextBiomeId = 0;
     private static int maxBiomeCount = 256;
@@ -72,12 +77,38 @@ public class SingleWorld implements LocalWorld
     private WorldGenHugeTrees jungleTree;
     private WorldGenShrub groundBush;
 
-    private boolean createNewChunks;
-    private Chunk[] chunkCache;
-    private Chunk cachedChunk;
+    // Not null when blocks for unloaded chunks are kept instead of dropped
+    private PendingBlocks pendingBlocks;
 
-    private int currentChunkX;
-    private int currentChunkZ;
+    private static class PopulationState
+    {
+        boolean createNewChunks;
+        Chunk[] chunkCache = new Chunk[4];
+        // Heights of the columns of chunkCache while populating
+        ColumnHeights heights = new ColumnHeights();
+        // Biome of every column and the replaced block ids of the chunk in DoBlockReplace
+        ReplaceTable[] replaceTables = new ReplaceTable[256];
+        long[] replaceCandidates = new long[4];
+        // Blocks of a batch chunk whose light must be updated, see setBlocks
+        int[] relightBlocks = new int[64];
+        Chunk cachedChunk;
+
+        int currentChunkX;
+        int currentChunkZ;
+    }
+
+    // Every thread populates its own chunks, see PopulationScheduler
+    private final ThreadLocal<PopulationState> populationState = new ThreadLocal<PopulationState>()
+    {
+        @Override
+        protected PopulationState initialValue()
+        {
+            return new PopulationState();
+        }
+    };
+    // Held while calling server code that isn't thread safe: biomes,
+    // structures, trees, physics, light and chunk loading
+    private final Object serverLock = new Object();
 
     private BiomeGenBase[] biomeGenBaseArray;
     private int[] biomeIntArray;
@@ -166,15 +197,18 @@ public class SingleWorld implements LocalWorld
     @Override
     public int[] getBiomesUnZoomed(int[] biomeArray, int x, int z, int x_size, int z_size)
     {
+        // The biome manager of TerrainControl has its own locks
         if (this.biomeManager != null)
             return this.biomeManager.getBiomesUnZoomedTC(biomeArray, x, z, x_size, z_size);
-
-        biomeGenBaseArray = this.world.provider.worldChunkMgr.getBiomesForGeneration(biomeGenBaseArray, x, z, x_size, z_size);
-        if (biomeArray == null || biomeArray.length < x_size * z_size)
-            biomeArray = new int[x_size * z_size];
-        for (int i = 0; i < x_size * z_size; i++)
-            biomeArray[i] = biomeGenBaseArray[i].biomeID;
-        return biomeArray;
+        synchronized (this.serverLock)
+        {
+            biomeGenBaseArray = this.world.provider.worldChunkMgr.getBiomesForGeneration(biomeGenBaseArray, x, z, x_size, z_size);
+            if (biomeArray == null || biomeArray.length < x_size * z_size)
+                biomeArray = new int[x_size * z_size];
+            for (int i = 0; i < x_size * z_size; i++)
+                biomeArray[i] = biomeGenBaseArray[i].biomeID;
+            return biomeArray;
+        }
     }
 
     @Override
@@ -182,7 +216,10 @@ public class SingleWorld implements LocalWorld
     {
         if (this.biomeManager != null)
             return this.biomeManager.getTemperaturesTC(x, z, x_size, z_size);
-        return this.world.provider.worldChunkMgr.getTemperatures(new float[0], x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            return this.world.provider.worldChunkMgr.getTemperatures(new float[0], x, z, x_size, z_size);
+        }
     }
 
     @Override
@@ -190,27 +227,54 @@ public class SingleWorld implements LocalWorld
     {
         if (this.biomeManager != null)
             return this.biomeManager.getBiomesTC(biomeArray, x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            biomeGenBaseArray = this.world.provider.worldChunkMgr.getBiomeGenAt(biomeGenBaseArray, x, z, x_size, z_size, true);
+            if (biomeArray == null || biomeArray.length < x_size * z_size)
+                biomeArray = new int[x_size * z_size];
+            for (int i = 0; i < x_size * z_size; i++)
+                biomeArray[i] = biomeGenBaseArray[i].biomeID;
+            return biomeArray;
+        }
+    }
 
-        biomeGenBaseArray = this.world.provider.worldChunkMgr.getBiomeGenAt(biomeGenBaseArray, x, z, x_size, z_size, true);
-        if (biomeArray == null || biomeArray.length < x_size * z_size)
-            biomeArray = new int[x_size * z_size];
-        for (int i = 0; i < x_size * z_size; i++)
-            biomeArray[i] = biomeGenBaseArray[i].biomeID;
-        return biomeArray;
+    @Override
+    public int[] getBiomes(int[] biomeArray, float[] temperatureArray, float[] wetnessArray, int x, int z, int x_size, int z_size)
+    {
+        if (this.biomeManager != null)
+            return this.biomeManager.getBiomesTC(biomeArray, temperatureArray, wetnessArray, x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            biomeArray = this.getBiomes(biomeArray, x, z, x_size, z_size);
+            if (temperatureArray != null)
+                this.world.provider.worldChunkMgr.getTemperatures(temperatureArray, x, z, x_size, z_size);
+            if (wetnessArray != null)
+                this.world.provider.worldChunkMgr.getRainfall(wetnessArray, x, z, x_size, z_size);
+            return biomeArray;
+        }
     }
 
     @Override
-    public int getCalculatedBiomeId(int x, int z)
+    public int[] getBiomes(int[] unZoomedArray, int ux, int uz, int ux_size, int uz_size, int[] biomeArray, float[] temperatureArray, int x, int z, int x_size, int z_size)
     {
         if (this.biomeManager != null)
-            return this.biomeManager.getBiomeTC(x, z);
-        return this.world.provider.worldChunkMgr.getBiomeGenAt(x, z).biomeID;
+            return this.biomeManager.getBiomesTC(unZoomedArray, ux, uz, ux_size, uz_size, biomeArray, temperatureArray, x, z, x_size, z_size);
+        synchronized (this.serverLock)
+        {
+            this.getBiomesUnZoomed(unZoomedArray, ux, uz, ux_size, uz_size);
+            return this.getBiomes(biomeArray, temperatureArray, null, x, z, x_size, z_size);
+        }
     }
 
     @Override
-    public double getBiomeFactorForOldBM(int index)
+    public int getCalculatedBiomeId(int x, int z)
     {
-        return this.oldBiomeManager.oldTemperature[index] * this.oldBiomeManager.oldWetness[index];
+        if (this.biomeManager != null)
+            return this.biomeManager.getBiomeTC(x, z);
+        synchronized (this.serverLock)
+        {
+            return this.world.provider.worldChunkMgr.getBiomeGenAt(x, z).biomeID;
+        }
     }
 
     @Override
@@ -233,11 +297,29 @@ public class SingleWorld implements LocalWorld
     @Override
     public void PlaceDungeons(Random rand, int x, int y, int z)
     {
-        dungeonGen.generate(this.world, rand, x, y, z);
+        synchronized (this.serverLock)
+        {
+            if (!dungeonGen.generate(this.world, rand, x, y, z))
+                return;
+        }
+        this.populationState.get().heights.invalidate();
     }
 
     @Override
     public boolean PlaceTree(TreeType type, Random rand, int x, int y, int z)
+    {
+        // The server places the blocks of the tree, so the heights are
+        // outdated
+        synchronized (this.serverLock)
+        {
+            if (!this.spawnTree(type, rand, x, y, z))
+                return false;
+        }
+        this.populationState.get().heights.invalidate();
+        return true;
+    }
+
+    private boolean spawnTree(TreeType type, Random rand, int x, int y, int z)
     {
         switch (type)
         {
@@ -273,16 +355,20 @@ public class SingleWorld implements LocalWorld
     public boolean PlaceTerrainObjects(Random rand, int chunk_x, int chunk_z)
     {
         boolean isVillagePlaced = false;
-        if (this.settings.StrongholdsEnabled)
-            this.strongholdGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.MineshaftsEnabled)
-            this.mineshaftGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.VillagesEnabled)
-            isVillagePlaced = this.villageGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.PyramidsEnabled)
-            this.pyramidsGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
-        if (this.settings.NetherFortress)
-            this.netherFortress.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
+        synchronized (this.serverLock)
+        {
+            if (this.settings.StrongholdsEnabled)
+                this.strongholdGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.MineshaftsEnabled)
+                this.mineshaftGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.VillagesEnabled)
+                isVillagePlaced = this.villageGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.PyramidsEnabled)
+                this.pyramidsGen.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
+            if (this.settings.NetherFortress)
+                this.netherFortress.generateStructuresInChunk(this.world, rand, chunk_x, chunk_z);
+        }
+        this.populationState.get().heights.invalidate();
 
         return isVillagePlaced;
     }
@@ -290,51 +376,95 @@ public class SingleWorld implements LocalWorld
     @Override
     public void DoBlockReplace()
     {
-        if (this.settings.BiomeConfigsHaveReplacement)
-        {
+        if (!this.settings.BiomeConfigsHaveReplacement)
+            return;
 
-            Chunk rawChunk = this.chunkCache[0];
+        PopulationState state = this.populationState.get();
+        Chunk rawChunk = state.chunkCache[0];
 
-            ExtendedBlockStorage[] sectionsArray = rawChunk.getBlockStorageArray();
+        byte[] ChunkBiomes = rawChunk.getBiomeArray();
 
-            byte[] ChunkBiomes = rawChunk.getBiomeArray();
+        // Only the biomes in this chunk matter
+        Arrays.fill(state.replaceCandidates, 0);
+        int minY = Integer.MAX_VALUE;
+        int maxY = -1;
+        for (int i = 0; i < 256; i++)
+        {
+            BiomeConfig biomeConfig = this.settings.biomeConfigs[ChunkBiomes[i] & 0xFF];
+            if (biomeConfig == null || biomeConfig.getReplaceTable().isEmpty())
+            {
+                state.replaceTables[i] = null;
+                continue;
+            }
+            ReplaceTable replaceTable = biomeConfig.getReplaceTable();
+            state.replaceTables[i] = replaceTable;
+            if (i > 0 && state.replaceTables[i - 1] == replaceTable)
+                continue;
+            replaceTable.addCandidates(state.replaceCandidates);
+            minY = Math.min(minY, replaceTable.getMinY());
+            maxY = Math.max(maxY, replaceTable.getMaxY());
+        }
+        if (maxY == -1)
+            return;
 
-            int x = this.currentChunkX * 16;
-            int z = this.currentChunkZ * 16;
+        boolean replaced = false;
+        for (ExtendedBlockStorage section : rawChunk.getBlockStorageArray())
+        {
+            if (section == null)
+                continue;
 
-            for (ExtendedBlockStorage section : sectionsArray)
-            {
-                if (section == null)
-                    continue;
+            int sectionBase = section.getYLocation();
+            int startY = Math.max(minY - sectionBase, 0);
+            int endY = Math.min(maxY - sectionBase, 15);
+            if (startY > endY || !hasReplaceCandidates(section.getBlockLSBArray(), state.replaceCandidates))
+                continue;
 
-                for (int sectionX = 0; sectionX < 16; sectionX++)
+            for (int sectionX = 0; sectionX < 16; sectionX++)
+            {
+                for (int sectionZ = 0; sectionZ < 16; sectionZ++)
                 {
-                    for (int sectionZ = 0; sectionZ < 16; sectionZ++)
+                    ReplaceTable replaceTable = state.replaceTables[(sectionZ << 4) | sectionX];
+                    if (replaceTable == null)
+                        continue;
+
+                    for (int sectionY = startY; sectionY <= endY; sectionY++)
                     {
-                        BiomeConfig biomeConfig = this.settings.biomeConfigs[ChunkBiomes[(sectionZ << 4) | sectionX] & 0xFF ];
-
-                        if (biomeConfig.ReplaceCount > 0)
-                        {
-                            for (int sectionY = 0; sectionY < 16; sectionY++)
-                            {
-                                int blockId = section.getExtBlockID(sectionX, sectionY, sectionZ);
-                                if (biomeConfig.ReplaceMatrixBlocks[blockId] == null)
-                                    continue;
-
-                                int replaceTo = biomeConfig.ReplaceMatrixBlocks[blockId][section.getYLocation() + sectionY];
-                                if (replaceTo == -1)
-                                    continue;
-
-                                section.setExtBlockID(sectionX, sectionY, sectionZ, replaceTo >> 4);
-                                section.setExtBlockMetadata(sectionX, sectionY, sectionZ, replaceTo & 0xF);
-                                world.getFullBlockLightValue((x + sectionX), (section.getYLocation() + sectionY), (z + sectionZ));
-
-                            }
-                        }
+                        int blockId = section.getExtBlockID(sectionX, sectionY, sectionZ);
+                        if (!replaceTable.isCandidate(blockId))
+                            continue;
+
+                        int replaceTo = replaceTable.get(blockId, sectionBase + sectionY);
+                        if (replaceTo == -1)
+                            continue;
+
+                        section.setExtBlockID(sectionX, sectionY, sectionZ, replaceTo >> 4);
+                        section.setExtBlockMetadata(sectionX, sectionY, sectionZ, replaceTo & 0xF);
+                        replaced = true;
                     }
                 }
             }
         }
+
+        // The chunk is marked once instead of block by block
+        if (replaced)
+        {
+            state.heights.invalidate();
+            rawChunk.setChunkModified();
+        }
+    }
+
+    // Whether one of the block ids of a section is replaced. Only the lowest
+    // eight bits of the ids are looked at, which may give a false positive
+    // but never misses a block.
+    private static boolean hasReplaceCandidates(byte[] blockIds, long[] candidates)
+    {
+        for (byte blockId : blockIds)
+        {
+            int id = blockId & 0xFF;
+            if ((candidates[id >> 6] & (1L << id)) != 0)
+                return true;
+        }
+        return false;
     }
 
     @Override
@@ -342,7 +472,7 @@ public class SingleWorld implements LocalWorld
     {
         if (this.settings.HaveBiomeReplace)
         {
-            byte[] ChunkBiomes = this.chunkCache[0].getBiomeArray();
+            byte[] ChunkBiomes = this.populationState.get().chunkCache[0].getBiomeArray();
 
             for (int i = 0; i < ChunkBiomes.length; i++)
                 ChunkBiomes[i] = this.settings.ReplaceMatrixBiomes[ChunkBiomes[i]];
@@ -350,69 +480,124 @@ public class SingleWorld implements LocalWorld
 
     }
 
+    @Override
+    public void StartPopulation(int chunkX, int chunkZ)
+    {
+        this.LoadChunk(chunkX, chunkZ);
+    }
+
     public void LoadChunk(int x, int z)
     {
-        this.currentChunkX = x;
-        this.currentChunkZ = z;
-        this.chunkCache[0] = this.world.getChunkFromChunkCoords(x, z);
-        this.chunkCache[1] = this.world.getChunkFromChunkCoords(x + 1, z);
-        this.chunkCache[2] = this.world.getChunkFromChunkCoords(x, z + 1);
-        this.chunkCache[3] = this.world.getChunkFromChunkCoords(x + 1, z + 1);
-        this.createNewChunks = true;
+        PopulationState state = this.populationState.get();
+        state.currentChunkX = x;
+        state.currentChunkZ = z;
+        synchronized (this.serverLock)
+        {
+            state.chunkCache[0] = this.world.getChunkFromChunkCoords(x, z);
+            state.chunkCache[1] = this.world.getChunkFromChunkCoords(x + 1, z);
+            state.chunkCache[2] = this.world.getChunkFromChunkCoords(x, z + 1);
+            state.chunkCache[3] = this.world.getChunkFromChunkCoords(x + 1, z + 1);
+        }
+        state.cachedChunk = null;
+        state.createNewChunks = true;
+
+        // Chunks loaded from disk don't pass the chunk provider
+        for (Chunk chunk : state.chunkCache)
+            this.applyPendingBlocks(chunk);
+        state.heights.start(x, z);
+    }
+
+    @Override
+    public void EndPopulation()
+    {
+        this.populationState.get().heights.stop();
     }
 
-    private Chunk getChunk(int x, int y, int z)
+    /**
+     * Places the blocks that were left for the chunk while it wasn't loaded.
+     */
+    public void applyPendingBlocks(Chunk chunk)
+    {
+        if (this.pendingBlocks == null)
+            return;
+        int[] blocks = this.pendingBlocks.remove(chunk.xPosition, chunk.zPosition);
+        if (blocks == null)
+            return;
+        for (int i = 0; i < blocks.length; i += 2)
+            chunk.setBlockIDWithMetadata(PendingBlocks.getX(blocks, i), PendingBlocks.getY(blocks, i), PendingBlocks.getZ(blocks, i), PendingBlocks.getTypeId(blocks, i), PendingBlocks.getData(blocks, i));
+    }
+
+    public void savePendingBlocks()
+    {
+        if (this.pendingBlocks != null)
+            this.pendingBlocks.save();
+    }
+
+    private Chunk getChunk(PopulationState state, int x, int y, int z)
     {
         if (y < 0 || y >= this.worldHeight)
             return null;
 
         x = x >> 4;
         z = z >> 4;
-        if (this.cachedChunk != null && this.cachedChunk.xPosition == x && this.cachedChunk.zPosition == z)
-            return this.cachedChunk;
+        if (state.cachedChunk != null && state.cachedChunk.xPosition == x && state.cachedChunk.zPosition == z)
+            return state.cachedChunk;
 
-        int index_x = (x - this.currentChunkX);
-        int index_z = (z - this.currentChunkZ);
+        int index_x = (x - state.currentChunkX);
+        int index_z = (z - state.currentChunkZ);
         if ((index_x == 0 || index_x == 1) && (index_z == 0 || index_z == 1))
-            return cachedChunk = this.chunkCache[index_x | (index_z << 1)];
-        else if (this.createNewChunks || this.world.getChunkProvider().chunkExists(x, z))
-            return cachedChunk = this.world.getChunkFromBlockCoords(x, z);
-        else
-            return null;
-
+            return state.cachedChunk = state.chunkCache[index_x | (index_z << 1)];
+        synchronized (this.serverLock)
+        {
+            if ((state.createNewChunks && this.pendingBlocks == null) || this.world.getChunkProvider().chunkExists(x, z))
+                return state.cachedChunk = this.world.getChunkFromBlockCoords(x, z);
+        }
+        return null;
     }
 
     @Override
     public int getLiquidHeight(int x, int z)
     {
-        Chunk chunk = this.getChunk(x, 0, z);
+        PopulationState state = this.populationState.get();
+        int height = state.heights.getLiquidHeight(x, z);
+        if (height != ColumnHeights.Unknown)
+            return height;
+        Chunk chunk = this.getChunk(state, x, 0, z);
         if (chunk == null)
             return -1;
-        z = z & 0xF;
-        x = x & 0xF;
         for (int y = worldHeight - 1; y > 0; y--)
         {
-            int id = chunk.getBlockID(x, y, z);
+            int id = chunk.getBlockID(x & 0xF, y, z & 0xF);
             if (DefaultMaterial.getMaterial(id).isLiquid())
+            {
+                state.heights.setLiquidHeight(x, z, y);
                 return y;
+            }
         }
+        state.heights.setLiquidHeight(x, z, -1);
         return -1;
     }
 
     @Override
     public int getSolidHeight(int x, int z)
     {
-        Chunk chunk = this.getChunk(x, 0, z);
+        PopulationState state = this.populationState.get();
+        int height = state.heights.getSolidHeight(x, z);
+        if (height != ColumnHeights.Unknown)
+            return height;
+        Chunk chunk = this.getChunk(state, x, 0, z);
         if (chunk == null)
             return -1;
-        z = z & 0xF;
-        x = x & 0xF;
         for (int y = worldHeight - 1; y > 0; y--)
         {
-            int id = chunk.getBlockID(x, y, z);
+            int id = chunk.getBlockID(x & 0xF, y, z & 0xF);
             if (DefaultMaterial.getMaterial(id).isSolid())
+            {
+                state.heights.setSolidHeight(x, z, y);
                 return y;
+            }
         }
+        state.heights.setSolidHeight(x, z, -1);
         return -1;
     }
 
@@ -425,7 +610,8 @@ public class SingleWorld implements LocalWorld
     @Override
     public int getTypeId(int x, int y, int z)
     {
-        Chunk chunk = this.getChunk(x, y, z);
+        PopulationState state = this.populationState.get();
+        Chunk chunk = this.getChunk(state, x, y, z);
         if (chunk == null)
             return 0;
 
@@ -438,32 +624,43 @@ public class SingleWorld implements LocalWorld
     @Override
     public void setBlock(final int x, final int y, final int z, final int typeId, final int data, final boolean updateLight, final boolean applyPhysics, final boolean notifyPlayers)
     {
+        PopulationState state = this.populationState.get();
         // If minecraft was updated and obfuscation is off - take a look at
         // these methods:
         // this.world.setRawTypeIdAndData(i, j, k, l, i1)
         // this.world.setTypeIdAndData(i, j, k, l, i1)
 
         // We fetch the chunk from a custom cache in order to speed things up.
-        Chunk chunk = this.getChunk(x, y, z);
+        Chunk chunk = this.getChunk(state, x, y, z);
         if (chunk == null)
         {
+            if (this.pendingBlocks != null && y >= 0 && y < this.worldHeight)
+                this.pendingBlocks.add(x, y, z, typeId, data);
             return;
         }
 
-        if (applyPhysics)
+        // Placing a block calls onBlockAdded of the block, which can
+        // schedule liquid ticks and add tile entities in the world
+        synchronized (this.serverLock)
         {
             int oldTypeId = chunk.getBlockID(x & 15, y, z & 15);
-            chunk.setBlockIDWithMetadata(x & 15, y, z & 15, typeId, data);
-            this.world.notifyBlocksOfNeighborChange(x, y, z, typeId == 0 ? oldTypeId : typeId);
-        } else
-            chunk.setBlockIDWithMetadata(x & 15, y, z & 15, typeId, data); // Set
-                                                                           // typeId
-                                                                           // and
-                                                                           // Data
+            chunk.setBlockIDWithMetadata(x & 15, y, z & 15, typeId, data); // Set typeId and Data
+            if (applyPhysics)
+                this.world.notifyBlocksOfNeighborChange(x, y, z, typeId == 0 ? oldTypeId : typeId);
+        }
+
+        // Physics can change the blocks around it
+        if (applyPhysics)
+            state.heights.invalidate();
+        else
+            state.heights.blockChanged(x, y, z, typeId);
 
         if (updateLight)
         {
-            this.world.updateAllLightTypes(x, y, z);
+            synchronized (this.serverLock)
+            {
+                this.world.updateAllLightTypes(x, y, z);
+            }
         }
 
         if (notifyPlayers)
@@ -479,19 +676,80 @@ public class SingleWorld implements LocalWorld
         this.setBlock(x, y, z, typeId, data, false, false, false);
     }
 
+    @Override
+    public void setBlocks(BlockBatch batch)
+    {
+        PopulationState state = this.populationState.get();
+        for (int i = 0; i < batch.getChunkCount(); i++)
+        {
+            int chunkX = batch.getChunkX(i);
+            int chunkZ = batch.getChunkZ(i);
+            int[] blocks = batch.getBlocks(i);
+            int size = batch.getSize(i);
+
+            Chunk chunk = this.getChunk(state, chunkX << 4, 0, chunkZ << 4);
+            if (chunk == null)
+            {
+                if (this.pendingBlocks != null)
+                    this.pendingBlocks.addAll(chunkX, chunkZ, blocks, size);
+                continue;
+            }
+
+            // Placing blocks has side effects in the world, like in
+            // setBlock, so the blocks of a chunk are placed and relit under
+            // one lock
+            synchronized (this.serverLock)
+            {
+                int relightCount = 0;
+                for (int j = 0; j < size; j += 2)
+                {
+                    int x = PendingBlocks.getX(blocks, j);
+                    int y = PendingBlocks.getY(blocks, j);
+                    int z = PendingBlocks.getZ(blocks, j);
+                    int typeId = PendingBlocks.getTypeId(blocks, j);
+                    if (y >= this.worldHeight)
+                        continue;
+                    int oldTypeId = chunk.getBlockID(x, y, z);
+                    chunk.setBlockIDWithMetadata(x, y, z, typeId, PendingBlocks.getData(blocks, j));
+                    state.heights.blockChanged((chunkX << 4) + x, y, (chunkZ << 4) + z, typeId);
+
+                    // Light only changes where the block lets through or gives
+                    // off another amount
+                    if (batch.updateLight() && (Block.lightOpacity[oldTypeId] != Block.lightOpacity[typeId] || Block.lightValue[oldTypeId] != Block.lightValue[typeId]))
+                    {
+                        if (relightCount == state.relightBlocks.length)
+                            state.relightBlocks = Arrays.copyOf(state.relightBlocks, relightCount * 2);
+                        state.relightBlocks[relightCount++] = j;
+                    }
+                }
+
+                // The same update as setBlock, once all blocks of the chunk
+                // are placed
+                for (int k = 0; k < relightCount; k++)
+                {
+                    int j = state.relightBlocks[k];
+                    this.world.updateAllLightTypes((chunkX << 4) + PendingBlocks.getX(blocks, j), PendingBlocks.getY(blocks, j), (chunkZ << 4) + PendingBlocks.getZ(blocks, j));
+                }
+            }
+        }
+    }
+
     @Override
     public int getHighestBlockYAt(int x, int z)
     {
-        Chunk chunk = this.getChunk(x, 0, z);
+        PopulationState state = this.populationState.get();
+        int y = state.heights.getHighestBlockY(x, z);
+        if (y != ColumnHeights.Unknown)
+            return y;
+        Chunk chunk = this.getChunk(state, x, 0, z);
         if (chunk == null)
             return -1;
-        z = z & 0xF;
-        x = x & 0xF;
-        int y = chunk.getHeightValue(x, z);
-        while(chunk.getBlockID(x, y, z) != DefaultMaterial.AIR.id && y <= worldHeight) {
+        y = chunk.getHeightValue(x & 0xF, z & 0xF);
+        while(chunk.getBlockID(x & 0xF, y, z & 0xF) != DefaultMaterial.AIR.id && y <= worldHeight) {
             // Fix for incorrect lightmap
             y += 1;
         }
+        state.heights.setHighestBlockY(x, z, y);
         return y;
     }
 
@@ -505,24 +763,30 @@ public class SingleWorld implements LocalWorld
     @Override
     public void setChunksCreations(boolean createNew)
     {
-        this.createNewChunks = createNew;
+        this.populationState.get().createNewChunks = createNew;
     }
 
     @Override
     public int getLightLevel(int x, int y, int z)
     {
-        return world.getBlockLightValue(x, y, z);
+        synchronized (this.serverLock)
+        {
+            return world.getBlockLightValue(x, y, z);
+        }
     }
 
     @Override
     public boolean isLoaded(int x, int y, int z)
     {
-        if (y < 0 || y >= this.worldHeight)
-            return false;
-        x = x >> 4;
-        z = z >> 4;
+        synchronized (this.serverLock)
+        {
+            if (y < 0 || y >= this.worldHeight)
+                return false;
+            x = x >> 4;
+            z = z >> 4;
 
-        return world.getChunkProvider().chunkExists(x, z);
+            return world.getChunkProvider().chunkExists(x, z);
+        }
     }
 
     @Override
@@ -602,7 +866,8 @@ public class SingleWorld implements LocalWorld
         this.jungleTree = new WorldGenHugeTrees(false, 15, 3, 3);
         this.groundBush = new WorldGenShrub(3, 0);
 
-        this.chunkCache = new Chunk[4];
+        if (this.settings.deferCrossChunkBlocks)
+            this.pendingBlocks = PendingBlocks.load(this.world.getSaveHandler().getMapFileFromName(TCDefaultValues.PendingBlocksName.stringValue()), this.seed);
         this.generator = new ChunkProvider(this);
     }
 
@@ -613,7 +878,6 @@ public class SingleWorld implements LocalWorld
 
     public void setOldBiomeManager(BiomeManagerOld manager)
     {
-        this.oldBiomeManager = manager;
         this.biomeManager = manager;
     }
 
@@ -650,6 +914,9 @@ public class SingleWorld implements LocalWorld
     @Override
     public LocalBiome getBiome(int x, int z)
     {
-        return getBiomeById(world.getBiomeGenForCoords(x, z).biomeID);
+        synchronized (this.serverLock)
+        {
+            return getBiomeById(world.getBiomeGenForCoords(x, z).biomeID);
+        }
     }
 }
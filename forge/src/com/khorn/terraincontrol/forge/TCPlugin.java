@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.logging.Level;
 
 import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.common.MinecraftForge;
 
 import com.khorn.terraincontrol.LocalWorld;
 import com.khorn.terraincontrol.TerrainControl;
@@ -60,6 +61,8 @@ public class TCPlugin implements TerrainControlEngine
         }
         // Register player tracker
         GameRegistry.registerPlayerTracker(new PlayerTracker(this));
+        // Register chunk load listener, for the pending blocks
+        MinecraftForge.EVENT_BUS.register(new ChunkLoadListener(worldType));
     }
 
     @PostInit